@@ -0,0 +1,75 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.load;
+
+import org.trustedanalytics.store.InFolderObjectStore;
+import org.trustedanalytics.store.MemoryObjectStore;
+import org.trustedanalytics.store.ObjectStore;
+import org.trustedanalytics.store.config.S3TransferProperties;
+import org.trustedanalytics.store.s3.S3ObjectStore;
+import org.trustedanalytics.store.s3.S3TransferEngine;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+
+/**
+ * Gives load generator the store of an organization. Multitenant backends create it per
+ * operation, the way applications do per request, others share one store by all organizations.
+ */
+public interface Backend extends Closeable {
+
+    ObjectStore open(String org) throws Exception;
+
+    static Backend create(LoadProfile profile) throws IOException {
+        FaultInjector faults = profile.getBackendFaults();
+        switch (profile.getBackend()) {
+            case "memory":
+                return shared(new FaultInjectingObjectStore(new MemoryObjectStore(), faults), () -> {
+                });
+            case "in-folder":
+                Path folder = Files.createTempDirectory("load-in-folder");
+                return shared(new FaultInjectingObjectStore(new InFolderObjectStore(folder.toString()), faults),
+                        () -> LoadFiles.deleteRecursively(folder));
+            case "s3":
+                S3TransferEngine engine = new S3TransferEngine("load-s3", InMemoryS3.create("load", faults),
+                        new S3TransferProperties());
+                return shared(new S3ObjectStore(engine, "load", name -> name + "-" + UUID.randomUUID()),
+                        engine::close);
+            case "hdfs":
+                return new MiniHdfsBackend(profile);
+            default:
+                throw new IllegalArgumentException("Unknown backend " + profile.getBackend()
+                        + ", expected memory, in-folder, s3 or hdfs");
+        }
+    }
+
+    static Backend shared(ObjectStore store, Closeable cleanup) {
+        return new Backend() {
+            @Override
+            public ObjectStore open(String org) {
+                return store;
+            }
+
+            @Override
+            public void close() throws IOException {
+                cleanup.close();
+            }
+        };
+    }
+}
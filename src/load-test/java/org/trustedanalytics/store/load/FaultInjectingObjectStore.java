@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.load;
+
+import org.trustedanalytics.store.ObjectStore;
+import org.trustedanalytics.store.ObjectStoreOutputStream;
+import org.trustedanalytics.store.WriteOptions;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.stream.Stream;
+
+/**
+ * Injects latency and faults in front of backends which have no client to inject them into.
+ */
+public class FaultInjectingObjectStore implements ObjectStore {
+
+    private final ObjectStore store;
+    private final FaultInjector faults;
+
+    public FaultInjectingObjectStore(ObjectStore store, FaultInjector faults) {
+        this.store = store;
+        this.faults = faults;
+    }
+
+    @Override
+    public String save(InputStream input, String dataSetName) throws IOException {
+        faults.inject("save");
+        return store.save(input, dataSetName);
+    }
+
+    @Override
+    public String save(InputStream input, String dataSetName, WriteOptions options) throws IOException {
+        faults.inject("save");
+        return store.save(input, dataSetName, options);
+    }
+
+    @Override
+    public ObjectStoreOutputStream openForWrite(String dataSetName, WriteOptions options) throws IOException {
+        faults.inject("openForWrite");
+        return store.openForWrite(dataSetName, options);
+    }
+
+    @Override
+    public InputStream getContent(String objectId) throws IOException {
+        faults.inject("getContent");
+        return store.getContent(objectId);
+    }
+
+    @Override
+    public InputStream getContent(String objectId, long offset) throws IOException {
+        faults.inject("getContent");
+        return store.getContent(objectId, offset);
+    }
+
+    @Override
+    public void remove(String objectId) throws IOException {
+        faults.inject("remove");
+        store.remove(objectId);
+    }
+
+    @Override
+    public Stream<String> listObjectIds() throws IOException {
+        faults.inject("listObjectIds");
+        return store.listObjectIds();
+    }
+
+    @Override
+    public void warmUp() throws IOException {
+        store.warmUp();
+    }
+
+    @Override
+    public String getId() {
+        return store.getId();
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.load;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Delays calls to a stand-in backend and makes some of them fail. Besides constant latency
+ * with uniform jitter, a fraction of calls can stall for long, which is what drives tail
+ * latency of real NameNodes (GC pauses, lock contention) and S3 (throttling).
+ */
+public class FaultInjector {
+
+    public static final FaultInjector NONE = new FaultInjector(0, 0, 0, 0, 0);
+
+    private final long latencyMillis;
+    private final long jitterMillis;
+    private final double stallRate;
+    private final long stallMillis;
+    private final double faultRate;
+
+    private final LongAdder injectedFaults = new LongAdder();
+
+    public FaultInjector(long latencyMillis, long jitterMillis, double stallRate, long stallMillis,
+            double faultRate) {
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+        this.stallRate = stallRate;
+        this.stallMillis = stallMillis;
+        this.faultRate = faultRate;
+    }
+
+    /**
+     * Sleeps for injected latency.
+     */
+    public void delay() throws InterruptedIOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long millis = latencyMillis;
+        if (jitterMillis > 0) {
+            millis += random.nextLong(jitterMillis + 1);
+        }
+        if (stallRate > 0 && random.nextDouble() < stallRate) {
+            millis += stallMillis;
+        }
+        if (millis > 0) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted during injected latency");
+            }
+        }
+    }
+
+    /**
+     * @return true when the call should fail, caller throws exception natural for the backend
+     */
+    public boolean shouldFail() {
+        if (faultRate > 0 && ThreadLocalRandom.current().nextDouble() < faultRate) {
+            injectedFaults.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Delays and fails the call with {@link IOException} when it is drawn to fail.
+     */
+    public void inject(String operation) throws IOException {
+        delay();
+        if (shouldFail()) {
+            throw new IOException("Injected fault in " + operation);
+        }
+    }
+
+    public long getInjectedFaults() {
+        return injectedFaults.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "latency " + latencyMillis + "+" + jitterMillis + " ms, stalls " + stallRate + " x " + stallMillis
+                + " ms, faults " + faultRate;
+    }
+}
@@ -0,0 +1,258 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.load;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.DeleteObjectRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+import com.google.common.io.ByteStreams;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * In-process stand-in for a single S3 bucket, covering calls made by
+ * {@link org.trustedanalytics.store.s3.S3ObjectStore} and the transfer manager: simple and
+ * multipart uploads, ranged gets, deletes and paged listing. Every call goes through
+ * the fault injector, injected faults are reported as S3 throttling.
+ */
+public class InMemoryS3 implements InvocationHandler {
+
+    private static final int DEFAULT_MAX_KEYS = 1000;
+
+    private final String bucket;
+    private final FaultInjector faults;
+    private final NavigableMap<String, byte[]> objects = new ConcurrentSkipListMap<>();
+    private final Map<String, NavigableMap<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+
+    private InMemoryS3(String bucket, FaultInjector faults) {
+        this.bucket = bucket;
+        this.faults = faults;
+    }
+
+    public static AmazonS3 create(String bucket, FaultInjector faults) {
+        return (AmazonS3) Proxy.newProxyInstance(InMemoryS3.class.getClassLoader(),
+                new Class<?>[] {AmazonS3.class}, new InMemoryS3(bucket, faults));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            try {
+                return method.invoke(this, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+        faults.delay();
+        if (faults.shouldFail()) {
+            throw error(503, "SlowDown", "Injected throttling of " + method.getName());
+        }
+        Object first = args == null || args.length == 0 ? null : args[0];
+        switch (method.getName()) {
+            case "doesBucketExist":
+                return bucket.equals(first);
+            case "putObject":
+                return put((PutObjectRequest) first);
+            case "getObject":
+                return first instanceof GetObjectRequest
+                        ? get((GetObjectRequest) first) : get(new GetObjectRequest((String) first, (String) args[1]));
+            case "deleteObject":
+                objects.remove(first instanceof DeleteObjectRequest
+                        ? ((DeleteObjectRequest) first).getKey() : (String) args[1]);
+                return null;
+            case "listObjects":
+                return list(first instanceof ListObjectsRequest
+                        ? (ListObjectsRequest) first : new ListObjectsRequest((String) first, (String) args[1],
+                        null, null, null));
+            case "listNextBatchOfObjects":
+                ObjectListing previous = (ObjectListing) first;
+                return list(new ListObjectsRequest(previous.getBucketName(), previous.getPrefix(),
+                        previous.getNextMarker(), previous.getDelimiter(), previous.getMaxKeys()));
+            case "initiateMultipartUpload":
+                return initiate((InitiateMultipartUploadRequest) first);
+            case "uploadPart":
+                return uploadPart((UploadPartRequest) first);
+            case "completeMultipartUpload":
+                return complete((CompleteMultipartUploadRequest) first);
+            case "abortMultipartUpload":
+                uploads.remove(((AbortMultipartUploadRequest) first).getUploadId());
+                return null;
+            case "getBucketLifecycleConfiguration":
+                return null;
+            case "setBucketLifecycleConfiguration":
+            case "deleteBucketLifecycleConfiguration":
+            case "shutdown":
+                return null;
+            default:
+                throw new UnsupportedOperationException("In-memory S3 does not support " + method.getName());
+        }
+    }
+
+    private PutObjectResult put(PutObjectRequest request) throws IOException {
+        byte[] content;
+        if (request.getFile() != null) {
+            try (InputStream input = new FileInputStream(request.getFile())) {
+                content = ByteStreams.toByteArray(input);
+            }
+        } else {
+            content = ByteStreams.toByteArray(request.getInputStream());
+        }
+        objects.put(request.getKey(), content);
+        PutObjectResult result = new PutObjectResult();
+        result.setETag(etag(content));
+        return result;
+    }
+
+    private S3Object get(GetObjectRequest request) {
+        byte[] content = objects.get(request.getKey());
+        if (content == null) {
+            throw error(404, "NoSuchKey", "The specified key does not exist: " + request.getKey());
+        }
+        int from = 0;
+        int to = content.length;
+        long[] range = request.getRange();
+        if (range != null) {
+            from = (int) Math.min(range[0], content.length);
+            to = (int) Math.min(range[1] + 1, content.length);
+        }
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(to - from);
+        S3Object object = new S3Object();
+        object.setBucketName(request.getBucketName());
+        object.setKey(request.getKey());
+        object.setObjectMetadata(metadata);
+        object.setObjectContent(new ByteArrayInputStream(content, from, to - from));
+        return object;
+    }
+
+    private ObjectListing list(ListObjectsRequest request) {
+        String prefix = request.getPrefix() == null ? "" : request.getPrefix();
+        int maxKeys = request.getMaxKeys() == null ? DEFAULT_MAX_KEYS : request.getMaxKeys();
+        ObjectListing listing = new ObjectListing();
+        listing.setBucketName(request.getBucketName());
+        listing.setPrefix(request.getPrefix());
+        listing.setMarker(request.getMarker());
+        listing.setDelimiter(request.getDelimiter());
+        listing.setMaxKeys(maxKeys);
+        NavigableMap<String, byte[]> after = request.getMarker() == null
+                ? objects.tailMap(prefix, true) : objects.tailMap(request.getMarker(), false);
+        for (Map.Entry<String, byte[]> entry : after.entrySet()) {
+            if (!entry.getKey().startsWith(prefix)) {
+                break;
+            }
+            if (listing.getObjectSummaries().size() == maxKeys) {
+                listing.setTruncated(true);
+                break;
+            }
+            S3ObjectSummary summary = new S3ObjectSummary();
+            summary.setBucketName(request.getBucketName());
+            summary.setKey(entry.getKey());
+            summary.setSize(entry.getValue().length);
+            listing.getObjectSummaries().add(summary);
+            listing.setNextMarker(entry.getKey());
+        }
+        return listing;
+    }
+
+    private InitiateMultipartUploadResult initiate(InitiateMultipartUploadRequest request) {
+        String uploadId = UUID.randomUUID().toString();
+        uploads.put(uploadId, new ConcurrentSkipListMap<>());
+        InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+        result.setBucketName(request.getBucketName());
+        result.setKey(request.getKey());
+        result.setUploadId(uploadId);
+        return result;
+    }
+
+    private UploadPartResult uploadPart(UploadPartRequest request) throws IOException {
+        NavigableMap<Integer, byte[]> parts = uploads.get(request.getUploadId());
+        if (parts == null) {
+            throw error(404, "NoSuchUpload", "No upload " + request.getUploadId());
+        }
+        byte[] content;
+        if (request.getFile() != null) {
+            try (InputStream input = new FileInputStream(request.getFile())) {
+                ByteStreams.skipFully(input, request.getFileOffset());
+                content = ByteStreams.toByteArray(ByteStreams.limit(input, request.getPartSize()));
+            }
+        } else {
+            content = ByteStreams.toByteArray(ByteStreams.limit(request.getInputStream(), request.getPartSize()));
+        }
+        parts.put(request.getPartNumber(), content);
+        UploadPartResult result = new UploadPartResult();
+        result.setPartNumber(request.getPartNumber());
+        result.setETag(etag(content));
+        return result;
+    }
+
+    private CompleteMultipartUploadResult complete(CompleteMultipartUploadRequest request) throws IOException {
+        NavigableMap<Integer, byte[]> parts = uploads.remove(request.getUploadId());
+        if (parts == null) {
+            throw error(404, "NoSuchUpload", "No upload " + request.getUploadId());
+        }
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        for (PartETag part : request.getPartETags()) {
+            content.write(parts.get(part.getPartNumber()));
+        }
+        objects.put(request.getKey(), content.toByteArray());
+        CompleteMultipartUploadResult result = new CompleteMultipartUploadResult();
+        result.setBucketName(request.getBucketName());
+        result.setKey(request.getKey());
+        result.setETag(request.getUploadId());
+        return result;
+    }
+
+    private static String etag(byte[] content) {
+        return Integer.toHexString(content.length) + "-" + Integer.toHexString(Arrays.hashCode(content));
+    }
+
+    private static AmazonS3Exception error(int status, String code, String message) {
+        AmazonS3Exception exception = new AmazonS3Exception(message);
+        exception.setStatusCode(status);
+        exception.setErrorCode(code);
+        return exception;
+    }
+}
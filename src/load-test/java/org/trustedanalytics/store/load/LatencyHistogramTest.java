@@ -0,0 +1,68 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.load;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void getPercentileMicros_uniformValues_withinRelativeError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 100_000; micros++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(micros));
+        }
+
+        assertEquals(100_000, histogram.getCount());
+        assertEquals(100_000, histogram.getMaxMicros());
+        assertWithin(50_000, histogram.getPercentileMicros(50));
+        assertWithin(99_000, histogram.getPercentileMicros(99));
+        assertWithin(99_900, histogram.getPercentileMicros(99.9));
+    }
+
+    @Test
+    public void drain_recordedValues_movedToReturnedHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(5));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(7));
+
+        LatencyHistogram drained = histogram.drain();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMaxMicros());
+        assertEquals(2, drained.getCount());
+        assertEquals(6000, drained.getMeanMicros());
+    }
+
+    @Test
+    public void index_bucketBoundaries_consistent() {
+        for (int index = 0; index < 1000; index++) {
+            long low = LatencyHistogram.lowerBound(index);
+            assertEquals(index, LatencyHistogram.index(low));
+            assertEquals(index, LatencyHistogram.index(LatencyHistogram.lowerBound(index + 1) - 1));
+        }
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("expected ~" + expected + " but was " + actual,
+                Math.abs(actual - expected) <= expected * 0.03);
+    }
+}
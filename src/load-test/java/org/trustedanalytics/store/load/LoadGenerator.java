@@ -0,0 +1,210 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.load;
+
+import org.trustedanalytics.store.ObjectStore;
+import org.trustedanalytics.store.WriteOptions;
+import org.trustedanalytics.store.trace.PhaseMetrics;
+import org.trustedanalytics.store.trace.PhaseTracing;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives a backend with many organizations, mixed object sizes and mixed reads, writes and
+ * removes, reporting throughput and latency percentiles over time. Run with
+ * {@code mvn -Pload-test test-compile exec:java -Dload.backend=hdfs}, parameters are
+ * described in {@link LoadProfile} and README.
+ */
+public final class LoadGenerator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoadGenerator.class);
+
+    private static final int RING_CAPACITY = 256;
+    private static final int MAX_LOGGED_ERRORS = 10;
+
+    private final LoadProfile profile;
+    private final Backend backend;
+    private final LoadReporter reporter;
+    private final byte[] payload;
+    private final String[] orgs;
+    private final ObjectRing[] rings;
+    private final RateLimiter rateLimiter;
+    private final AtomicLong loggedErrors = new AtomicLong();
+    private volatile boolean stopped;
+
+    LoadGenerator(LoadProfile profile, Backend backend, LoadReporter reporter) {
+        this.profile = profile;
+        this.backend = backend;
+        this.reporter = reporter;
+        long maxSize = profile.getMaxSize();
+        if (maxSize > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Object size " + maxSize + " does not fit in memory buffer");
+        }
+        this.payload = new byte[(int) maxSize];
+        new Random(0).nextBytes(payload);
+        this.orgs = new String[profile.getOrgs()];
+        this.rings = new ObjectRing[profile.getOrgs()];
+        for (int i = 0; i < orgs.length; i++) {
+            orgs[i] = String.format("load-org-%03d", i);
+            rings[i] = new ObjectRing(RING_CAPACITY);
+        }
+        this.rateLimiter = profile.getOpsPerSecond() > 0 ? RateLimiter.create(profile.getOpsPerSecond()) : null;
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadProfile profile = LoadProfile.fromSystemProperties();
+        System.out.println("Load profile: " + profile);
+        PhaseMetrics phases = new PhaseMetrics();
+        PhaseTracing.setListener(phases);
+        try (Backend backend = Backend.create(profile);
+                LoadReporter reporter = new LoadReporter(System.out, profile.getCsv())) {
+            new LoadGenerator(profile, backend, reporter).run();
+            System.out.println();
+            phases.metrics().forEach(metric -> System.out.println(metric.getName() + " = " + metric.getValue()));
+            System.out.println("injected backend faults = " + profile.getBackendFaults().getInjectedFaults());
+            System.out.println("injected login faults = " + profile.getLoginFaults().getInjectedFaults());
+        } finally {
+            PhaseTracing.setListener(null);
+        }
+    }
+
+    void run() throws InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(profile.getThreads(),
+                new ThreadFactoryBuilder().setNameFormat("load-worker-%d").build());
+        ScheduledExecutorService reporting = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("load-reporter").build());
+        try {
+            for (int i = 0; i < profile.getThreads(); i++) {
+                workers.execute(this::work);
+            }
+            if (profile.getWarmUpSeconds() > 0) {
+                ScheduledFuture<?> warmUpReports = reportEvery(reporting, true);
+                TimeUnit.SECONDS.sleep(profile.getWarmUpSeconds());
+                warmUpReports.cancel(false);
+                reporter.report(true);
+            }
+            reportEvery(reporting, false);
+            TimeUnit.SECONDS.sleep(profile.getDurationSeconds());
+        } finally {
+            stopped = true;
+            reporting.shutdownNow();
+            workers.shutdown();
+            if (!workers.awaitTermination(1, TimeUnit.MINUTES)) {
+                workers.shutdownNow();
+            }
+        }
+        reporter.summarize();
+    }
+
+    private ScheduledFuture<?> reportEvery(ScheduledExecutorService reporting, boolean warmUp) {
+        return reporting.scheduleAtFixedRate(() -> reporter.report(warmUp), profile.getReportSeconds(),
+                profile.getReportSeconds(), TimeUnit.SECONDS);
+    }
+
+    private void work() {
+        byte[] readBuffer = new byte[WriteOptions.DEFAULT_BUFFER_SIZE];
+        while (!stopped) {
+            if (rateLimiter != null) {
+                rateLimiter.acquire();
+            }
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int org = random.nextInt(orgs.length);
+            Operation operation = draw(random);
+            String id = null;
+            if (operation == Operation.READ) {
+                id = rings[org].pick(random);
+            } else if (operation == Operation.REMOVE) {
+                id = rings[org].take(random);
+            }
+            if (id == null) {
+                //nothing to read or remove yet
+                operation = Operation.WRITE;
+            }
+
+            ObjectStore store;
+            long started = System.nanoTime();
+            try {
+                store = backend.open(orgs[org]);
+                reporter.get(Operation.OPEN).record(System.nanoTime() - started, 0);
+            } catch (Exception e) {
+                failed(Operation.OPEN, e);
+                continue;
+            }
+
+            started = System.nanoTime();
+            try {
+                long bytes = execute(store, operation, org, id, random, readBuffer);
+                reporter.get(operation).record(System.nanoTime() - started, bytes);
+            } catch (Exception e) {
+                failed(operation, e);
+            }
+        }
+    }
+
+    private Operation draw(Random random) {
+        double draw = random.nextDouble();
+        if (draw < profile.getReadRatio()) {
+            return Operation.READ;
+        }
+        return draw < profile.getReadRatio() + profile.getRemoveRatio() ? Operation.REMOVE : Operation.WRITE;
+    }
+
+    private long execute(ObjectStore store, Operation operation, int org, String id, Random random,
+            byte[] readBuffer) throws Exception {
+        switch (operation) {
+            case WRITE:
+                int size = (int) profile.pickSize(random);
+                String saved = store.save(new ByteArrayInputStream(payload, 0, size), orgs[org],
+                        WriteOptions.DEFAULT.withExpectedLength(size));
+                rings[org].add(saved);
+                return size;
+            case READ:
+                long read = 0;
+                try (InputStream input = store.getContent(id)) {
+                    for (int n = input.read(readBuffer); n >= 0; n = input.read(readBuffer)) {
+                        read += n;
+                    }
+                }
+                return read;
+            case REMOVE:
+                store.remove(id);
+                return 0;
+            default:
+                throw new IllegalArgumentException(operation.name());
+        }
+    }
+
+    private void failed(Operation operation, Exception e) {
+        reporter.get(operation).recordError();
+        if (loggedErrors.incrementAndGet() <= MAX_LOGGED_ERRORS) {
+            LOGGER.warn(operation + " failed", e);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.load;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Parameters of a load run, read from {@code load.*} system properties.
+ */
+public class LoadProfile {
+
+    private final String backend;
+    private final int orgs;
+    private final int threads;
+    private final int durationSeconds;
+    private final int warmUpSeconds;
+    private final int reportSeconds;
+    private final double readRatio;
+    private final double removeRatio;
+    private final double opsPerSecond;
+    private final List<Long> sizes = new ArrayList<>();
+    private final List<Integer> cumulativeWeights = new ArrayList<>();
+    private final FaultInjector backendFaults;
+    private final FaultInjector loginFaults;
+    private final int dataNodes;
+    private final String csv;
+
+    private LoadProfile() {
+        backend = property("backend", "memory");
+        orgs = Integer.parseInt(property("orgs", "20"));
+        threads = Integer.parseInt(property("threads", "16"));
+        durationSeconds = Integer.parseInt(property("durationSeconds", "60"));
+        warmUpSeconds = Integer.parseInt(property("warmUpSeconds", "10"));
+        reportSeconds = Integer.parseInt(property("reportSeconds", "5"));
+        readRatio = Double.parseDouble(property("readRatio", "0.7"));
+        removeRatio = Double.parseDouble(property("removeRatio", "0.05"));
+        opsPerSecond = Double.parseDouble(property("opsPerSecond", "0"));
+        parseSizes(property("sizes", "4k:60,256k:30,8m:10"));
+        backendFaults = new FaultInjector(
+                Long.parseLong(property("latencyMillis", "0")),
+                Long.parseLong(property("jitterMillis", "0")),
+                Double.parseDouble(property("stallRate", "0")),
+                Long.parseLong(property("stallMillis", "0")),
+                Double.parseDouble(property("faultRate", "0")));
+        loginFaults = new FaultInjector(
+                Long.parseLong(property("kerberosLoginMillis", "0")), 0, 0, 0,
+                Double.parseDouble(property("kerberosFaultRate", "0")));
+        dataNodes = Integer.parseInt(property("dataNodes", "1"));
+        csv = System.getProperty("load.csv");
+        if (readRatio + removeRatio > 1) {
+            throw new IllegalArgumentException("load.readRatio + load.removeRatio must not exceed 1");
+        }
+    }
+
+    public static LoadProfile fromSystemProperties() {
+        return new LoadProfile();
+    }
+
+    private static String property(String name, String defaultValue) {
+        return System.getProperty("load." + name, defaultValue);
+    }
+
+    /**
+     * Parses comma separated {@code size:weight} pairs, size may end with k or m.
+     */
+    private void parseSizes(String mix) {
+        int total = 0;
+        for (String entry : mix.split(",")) {
+            String[] sizeAndWeight = entry.trim().split(":");
+            sizes.add(parseSize(sizeAndWeight[0]));
+            total += sizeAndWeight.length > 1 ? Integer.parseInt(sizeAndWeight[1]) : 1;
+            cumulativeWeights.add(total);
+        }
+    }
+
+    static long parseSize(String size) {
+        String value = size.trim().toLowerCase(Locale.ROOT);
+        long unit = 1;
+        if (value.endsWith("k")) {
+            unit = 1024;
+        } else if (value.endsWith("m")) {
+            unit = 1024 * 1024;
+        }
+        if (unit > 1) {
+            value = value.substring(0, value.length() - 1);
+        }
+        return Long.parseLong(value) * unit;
+    }
+
+    public long pickSize(Random random) {
+        int draw = random.nextInt(cumulativeWeights.get(cumulativeWeights.size() - 1));
+        for (int i = 0; i < sizes.size(); i++) {
+            if (draw < cumulativeWeights.get(i)) {
+                return sizes.get(i);
+            }
+        }
+        return sizes.get(sizes.size() - 1);
+    }
+
+    public long getMaxSize() {
+        return sizes.stream().mapToLong(Long::longValue).max().getAsLong();
+    }
+
+    public String getBackend() {
+        return backend;
+    }
+
+    public int getOrgs() {
+        return orgs;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public int getWarmUpSeconds() {
+        return warmUpSeconds;
+    }
+
+    public int getReportSeconds() {
+        return reportSeconds;
+    }
+
+    public double getReadRatio() {
+        return readRatio;
+    }
+
+    public double getRemoveRatio() {
+        return removeRatio;
+    }
+
+    /**
+     * @return target rate of all threads together, 0 for as fast as possible
+     */
+    public double getOpsPerSecond() {
+        return opsPerSecond;
+    }
+
+    public FaultInjector getBackendFaults() {
+        return backendFaults;
+    }
+
+    public FaultInjector getLoginFaults() {
+        return loginFaults;
+    }
+
+    public int getDataNodes() {
+        return dataNodes;
+    }
+
+    /**
+     * @return path of file intervals are written to as CSV, null when not set
+     */
+    public String getCsv() {
+        return csv;
+    }
+
+    @Override
+    public String toString() {
+        return backend + ": " + orgs + " orgs, " + threads + " threads, " + durationSeconds + " s after "
+                + warmUpSeconds + " s warm-up, reads " + readRatio + ", removes " + removeRatio
+                + ", sizes " + sizes + " weighted " + cumulativeWeights + ", rate "
+                + (opsPerSecond > 0 ? opsPerSecond + " ops/s" : "unlimited") + ", backend " + backendFaults
+                + ", login " + loginFaults;
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.load;
+
+import java.io.Closeable;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Prints throughput and latency percentiles of every interval, optionally also as CSV
+ * to be plotted over time, and a summary of the measured part of the run.
+ */
+class LoadReporter implements Closeable {
+
+    private static final String CSV_HEADER = "seconds,operation,warmUp,ops,opsPerSecond,mbPerSecond,errors,"
+            + "p50Micros,p90Micros,p99Micros,p999Micros,maxMicros";
+    private static final double MB = 1024 * 1024;
+
+    private final Map<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+    private final PrintStream out;
+    private final PrintWriter csv;
+    private final long started = System.nanoTime();
+    private long lastReport = started;
+    private long measuredNanos;
+
+    LoadReporter(PrintStream out, String csvPath) throws IOException {
+        for (Operation operation : Operation.values()) {
+            stats.put(operation, new OperationStats());
+        }
+        this.out = out;
+        this.csv = csvPath == null ? null : new PrintWriter(new FileWriter(csvPath));
+        if (csv != null) {
+            csv.println(CSV_HEADER);
+        }
+    }
+
+    OperationStats get(Operation operation) {
+        return stats.get(operation);
+    }
+
+    void report(boolean warmUp) {
+        drain(warmUp, true);
+    }
+
+    /**
+     * Adds operations finished since last report to the totals and prints them.
+     */
+    synchronized void summarize() {
+        drain(false, false);
+        double seconds = measuredNanos / 1e9;
+        out.println();
+        out.printf(Locale.ROOT, "Summary of %.0f s after warm-up:%n", seconds);
+        for (Map.Entry<Operation, OperationStats> entry : stats.entrySet()) {
+            OperationStats.Interval total = entry.getValue().getTotal();
+            if (total.latencies.getCount() > 0 || total.errors > 0) {
+                out.println(format("[total]", entry.getKey(), total, seconds));
+            }
+        }
+    }
+
+    private synchronized void drain(boolean warmUp, boolean print) {
+        long now = System.nanoTime();
+        double seconds = (now - lastReport) / 1e9;
+        long elapsed = Math.round((now - started) / 1e9);
+        lastReport = now;
+        if (!warmUp) {
+            measuredNanos += (long) (seconds * 1e9);
+        }
+        for (Map.Entry<Operation, OperationStats> entry : stats.entrySet()) {
+            OperationStats.Interval interval = entry.getValue().drain(!warmUp);
+            if (!print || interval.latencies.getCount() == 0 && interval.errors == 0) {
+                continue;
+            }
+            String label = String.format(Locale.ROOT, "[%5ds%s]", elapsed, warmUp ? " warm-up" : "");
+            out.println(format(label, entry.getKey(), interval, seconds));
+            if (csv != null) {
+                LatencyHistogram latencies = interval.latencies;
+                csv.printf(Locale.ROOT, "%d,%s,%b,%d,%.1f,%.2f,%d,%d,%d,%d,%d,%d%n", elapsed, entry.getKey(), warmUp,
+                        latencies.getCount(), latencies.getCount() / seconds, interval.bytes / MB / seconds,
+                        interval.errors, latencies.getPercentileMicros(50), latencies.getPercentileMicros(90),
+                        latencies.getPercentileMicros(99), latencies.getPercentileMicros(99.9),
+                        latencies.getMaxMicros());
+                csv.flush();
+            }
+        }
+    }
+
+    private static String format(String label, Operation operation, OperationStats.Interval interval,
+            double seconds) {
+        LatencyHistogram latencies = interval.latencies;
+        return String.format(Locale.ROOT,
+                "%s %-6s %8.1f ops/s %8.2f MB/s %5d err   p50 %s  p90 %s  p99 %s  p99.9 %s  max %s",
+                label, operation.name().toLowerCase(Locale.ROOT), latencies.getCount() / seconds,
+                interval.bytes / MB / seconds, interval.errors,
+                millis(latencies.getPercentileMicros(50)), millis(latencies.getPercentileMicros(90)),
+                millis(latencies.getPercentileMicros(99)), millis(latencies.getPercentileMicros(99.9)),
+                millis(latencies.getMaxMicros()));
+    }
+
+    private static String millis(long micros) {
+        return String.format(Locale.ROOT, "%8.2f ms", micros / 1000.0);
+    }
+
+    @Override
+    public void close() {
+        if (csv != null) {
+            csv.close();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.load;
+
+import org.trustedanalytics.store.InFolderObjectStore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Compares throughput and CPU time of reading objects of {@link InFolderObjectStore} with read
+ * calls and through memory mappings, both as streams and as buffers passed to a consumer. Objects
+ * are read before measuring, so all modes read from page cache. Consumers touch every cache line
+ * of the content. Parameters ({@code bench.} system properties):
+ * <ul>
+ *     <li>{@code sizes} - comma separated object sizes, may end with k or m (default {@code 64k,1m,16m,256m})</li>
+ *     <li>{@code readMb} - megabytes read per size and mode (default {@code 4096})</li>
+ *     <li>{@code dir} - directory of the store, temporary one by default</li>
+ * </ul>
+ */
+public class MappedReadBenchmark {
+
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+    private static final int CACHE_LINE = 64;
+    private static final double MB = 1024 * 1024;
+
+    private enum Mode {
+        STREAM_READ, STREAM_MMAP, BUFFERS_READ, BUFFERS_MMAP
+    }
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final byte[] streamBuffer = new byte[STREAM_BUFFER_SIZE];
+    private long checksum;
+
+    public static void main(String[] args) throws IOException {
+        String dir = System.getProperty("bench.dir");
+        Path folder = dir == null
+                ? Files.createTempDirectory("mapped-read-benchmark") : Files.createDirectories(Paths.get(dir));
+        long readBytes = Long.parseLong(System.getProperty("bench.readMb", "4096")) * 1024 * 1024;
+        new MappedReadBenchmark().run(folder, System.getProperty("bench.sizes", "64k,1m,16m,256m").split(","),
+                readBytes);
+    }
+
+    private void run(Path folder, String[] sizes, long readBytes) throws IOException {
+        InFolderObjectStore store = new InFolderObjectStore(folder.toString());
+        System.out.println("size      mode            MB/s   CPU ms/GB");
+        for (String size : sizes) {
+            byte[] content = new byte[(int) parseSize(size.trim())];
+            new Random(content.length).nextBytes(content);
+            String objectId = store.save(content, "benchmark-" + size.trim());
+            int iterations = (int) Math.max(1, readBytes / content.length);
+            for (Mode mode : Mode.values()) {
+                store.setMemoryMapThreshold(mode == Mode.STREAM_MMAP || mode == Mode.BUFFERS_MMAP ? 0 : Long.MAX_VALUE);
+                read(store, objectId, mode);
+                long cpuStart = threads.getCurrentThreadCpuTime();
+                long start = System.nanoTime();
+                for (int i = 0; i < iterations; i++) {
+                    read(store, objectId, mode);
+                }
+                double seconds = (System.nanoTime() - start) / 1e9;
+                double cpuMillis = (threads.getCurrentThreadCpuTime() - cpuStart) / 1e6;
+                double megabytes = (double) content.length * iterations / MB;
+                System.out.println(String.format(Locale.ROOT, "%-9s %-13s %8.0f %11.1f", size.trim(), mode,
+                        megabytes / seconds, cpuMillis / (megabytes / 1024)));
+            }
+            Files.delete(folder.resolve(objectId));
+        }
+        //keeps consumers from being optimized away
+        System.out.println("checksum " + checksum);
+    }
+
+    private void read(InFolderObjectStore store, String objectId, Mode mode) throws IOException {
+        if (mode == Mode.BUFFERS_READ || mode == Mode.BUFFERS_MMAP) {
+            store.readBuffers(objectId, this::touch);
+            return;
+        }
+        try (InputStream input = store.getContent(objectId)) {
+            int read;
+            while ((read = input.read(streamBuffer, 0, streamBuffer.length)) != -1) {
+                for (int i = 0; i < read; i += CACHE_LINE) {
+                    checksum += streamBuffer[i];
+                }
+            }
+        }
+    }
+
+    private void touch(ByteBuffer buffer) {
+        for (int i = buffer.position(); i < buffer.limit(); i += CACHE_LINE) {
+            checksum += buffer.get(i);
+        }
+    }
+
+    private static long parseSize(String size) {
+        String lower = size.toLowerCase(Locale.ROOT);
+        if (lower.endsWith("k")) {
+            return Long.parseLong(lower.substring(0, lower.length() - 1)) * 1024;
+        }
+        if (lower.endsWith("m")) {
+            return Long.parseLong(lower.substring(0, lower.length() - 1)) * 1024 * 1024;
+        }
+        return Long.parseLong(lower);
+    }
+}
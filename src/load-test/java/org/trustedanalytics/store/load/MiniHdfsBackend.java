@@ -0,0 +1,115 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.load;
+
+import org.trustedanalytics.hadoop.config.client.Property;
+import org.trustedanalytics.store.ObjectStore;
+import org.trustedanalytics.store.config.SimpleInstanceConfiguration;
+import org.trustedanalytics.store.hdfs.OrgSpecificHdfsObjectStoreFactory;
+import org.trustedanalytics.store.hdfs.fs.ApacheFileSystemFactory;
+import org.trustedanalytics.store.hdfs.fs.MultiTenantFileSystemFactory;
+
+import com.google.common.collect.ImmutableMap;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Multitenant HDFS on an in-process mini cluster with ACLs enabled. Each organization has its
+ * own user, stores are created through {@link OrgSpecificHdfsObjectStoreFactory} with tokens
+ * of that user and Kerberos login replaced by {@link StubOAuthKerberosClient}.
+ */
+public class MiniHdfsBackend implements Backend {
+
+    private static final String ORG_DIR = "/org";
+    private static final String ORG_URI_TEMPLATE = ORG_DIR + "/%{organization}/brooklyn";
+
+    private final java.nio.file.Path baseDir;
+    private final MiniDFSCluster cluster;
+    private final StubOAuthKerberosClient kerberosClient;
+    private final OrgSpecificHdfsObjectStoreFactory factory;
+    private final FaultInjector faults;
+    private final Map<String, String> tokens = new ConcurrentHashMap<>();
+
+    public MiniHdfsBackend(LoadProfile profile) throws IOException {
+        baseDir = Files.createTempDirectory("load-minidfs");
+        Configuration conf = new HdfsConfiguration();
+        conf.set(MiniDFSCluster.HDFS_MINIDFS_BASEDIR, baseDir.toString());
+        conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_ACLS_ENABLED_KEY, true);
+        cluster = new MiniDFSCluster.Builder(conf).numDataNodes(profile.getDataNodes()).build();
+        cluster.waitActive();
+
+        FileSystem superuser = cluster.getFileSystem();
+        superuser.mkdirs(new Path(ORG_DIR));
+        superuser.setPermission(new Path(ORG_DIR), new FsPermission((short) 0777));
+
+        Configuration clientConf = new Configuration(cluster.getConfiguration(0));
+        SimpleInstanceConfiguration hdfsConf = new SimpleInstanceConfiguration("hdfs", clientConf,
+                ImmutableMap.of(Property.HDFS_URI, cluster.getURI() + ORG_URI_TEMPLATE));
+        SimpleInstanceConfiguration krbConf = new SimpleInstanceConfiguration("kerberos", clientConf,
+                ImmutableMap.of(Property.USER, "cf"));
+        kerberosClient = new StubOAuthKerberosClient(profile.getLoginFaults());
+        factory = new OrgSpecificHdfsObjectStoreFactory(
+                new MultiTenantFileSystemFactory(hdfsConf, krbConf, kerberosClient, new ApacheFileSystemFactory()),
+                krbConf);
+        faults = profile.getBackendFaults();
+    }
+
+    @Override
+    public ObjectStore open(String org) throws Exception {
+        ObjectStore store = factory.createObjectStore(org, tokens.computeIfAbsent(org, MiniHdfsBackend::token));
+        return new FaultInjectingObjectStore(store, faults);
+    }
+
+    public long getLogins() {
+        return kerberosClient.getLogins();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            factory.close();
+            cluster.shutdown();
+        } finally {
+            LoadFiles.deleteRecursively(baseDir);
+        }
+    }
+
+    /**
+     * Unsigned JWT naming user of the organization, mini cluster uses simple authentication
+     * so the user is trusted as it is.
+     */
+    private static String token(String org) {
+        String user = "user-" + org;
+        String claims = "{\"user_id\":\"" + user + "\",\"user_name\":\"" + user + "\",\"sub\":\"" + user + "\"}";
+        return encode("{\"alg\":\"none\"}") + "." + encode(claims) + "." + encode("none");
+    }
+
+    private static String encode(String json) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
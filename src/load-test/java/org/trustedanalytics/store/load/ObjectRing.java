@@ -0,0 +1,63 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.load;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Recently written ids of an organization, read and removed by workers. Older ids are
+ * overwritten and their objects stay in the store, like data nobody reads anymore.
+ */
+class ObjectRing {
+
+    private final AtomicReferenceArray<String> ids;
+    private final AtomicInteger next = new AtomicInteger();
+
+    ObjectRing(int capacity) {
+        ids = new AtomicReferenceArray<>(capacity);
+    }
+
+    void add(String id) {
+        ids.set(Math.floorMod(next.getAndIncrement(), ids.length()), id);
+    }
+
+    /**
+     * @return random id, null when the drawn slot is empty
+     */
+    String pick(Random random) {
+        int filled = filled();
+        return filled == 0 ? null : ids.get(random.nextInt(filled));
+    }
+
+    /**
+     * Like {@link #pick}, but the id is taken out, so it is not read after it is removed.
+     */
+    String take(Random random) {
+        int filled = filled();
+        if (filled == 0) {
+            return null;
+        }
+        int slot = random.nextInt(filled);
+        String id = ids.get(slot);
+        return id != null && ids.compareAndSet(slot, id, null) ? id : null;
+    }
+
+    private int filled() {
+        return (int) Math.min(next.get() & 0xffffffffL, ids.length());
+    }
+}
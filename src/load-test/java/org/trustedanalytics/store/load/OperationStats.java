@@ -0,0 +1,67 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.load;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies, transferred bytes and errors of one operation. Workers record into current
+ * interval, reporter drains it and, after warm-up, adds it to the totals.
+ */
+class OperationStats {
+
+    private final LatencyHistogram interval = new LatencyHistogram();
+    private final LatencyHistogram total = new LatencyHistogram();
+    private final LongAdder intervalBytes = new LongAdder();
+    private final LongAdder intervalErrors = new LongAdder();
+    private final LongAdder totalBytes = new LongAdder();
+    private final LongAdder totalErrors = new LongAdder();
+
+    void record(long nanos, long bytes) {
+        interval.record(nanos);
+        intervalBytes.add(bytes);
+    }
+
+    void recordError() {
+        intervalErrors.increment();
+    }
+
+    Interval drain(boolean measured) {
+        Interval drained = new Interval(interval.drain(), intervalBytes.sumThenReset(), intervalErrors.sumThenReset());
+        if (measured) {
+            total.add(drained.latencies);
+            totalBytes.add(drained.bytes);
+            totalErrors.add(drained.errors);
+        }
+        return drained;
+    }
+
+    Interval getTotal() {
+        return new Interval(total, totalBytes.sum(), totalErrors.sum());
+    }
+
+    static final class Interval {
+        final LatencyHistogram latencies;
+        final long bytes;
+        final long errors;
+
+        private Interval(LatencyHistogram latencies, long bytes, long errors) {
+            this.latencies = latencies;
+            this.bytes = bytes;
+            this.errors = errors;
+        }
+    }
+}
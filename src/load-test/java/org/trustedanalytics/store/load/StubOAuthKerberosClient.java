@@ -0,0 +1,54 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.load;
+
+import org.trustedanalytics.hadoop.config.client.ServiceInstanceConfiguration;
+import org.trustedanalytics.hadoop.config.client.oauth.TapOauthToken;
+import org.trustedanalytics.kerberos.OAuthKerberosClient;
+
+import org.apache.hadoop.conf.Configuration;
+
+import javax.security.auth.login.LoginException;
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stands in for login to KDC, which mini cluster does not have. Login latency and failures
+ * are injected, so their share in store creation can be measured.
+ */
+public class StubOAuthKerberosClient implements OAuthKerberosClient {
+
+    private final FaultInjector faults;
+    private final LongAdder logins = new LongAdder();
+
+    public StubOAuthKerberosClient(FaultInjector faults) {
+        this.faults = faults;
+    }
+
+    @Override
+    public void loginIfKerberosEnabled(Configuration hdfsConf, ServiceInstanceConfiguration krbConf,
+            TapOauthToken jwtToken) throws LoginException, IOException {
+        logins.increment();
+        faults.delay();
+        if (faults.shouldFail()) {
+            throw new LoginException("Injected login failure of " + jwtToken.getUserId());
+        }
+    }
+
+    public long getLogins() {
+        return logins.sum();
+    }
+}
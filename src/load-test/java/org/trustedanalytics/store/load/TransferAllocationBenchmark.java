@@ -0,0 +1,73 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.load;
+
+import org.trustedanalytics.store.io.TransferEngine;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Measures bytes allocated per copy of {@link TransferEngine} in steady state, copies should
+ * not allocate once buffer pools are warmed up. Relies on allocation counters of HotSpot
+ * ({@code com.sun.management.ThreadMXBean}). Parameters ({@code bench.} system properties):
+ * <ul>
+ *     <li>{@code bufferSizes} - comma separated buffer sizes in bytes (default {@code 4096,131072,1000000})</li>
+ *     <li>{@code iterations} - copies measured per buffer size, same number is run as warm-up (default {@code 100000})</li>
+ * </ul>
+ */
+public class TransferAllocationBenchmark {
+
+    private static final OutputStream SINK = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    public static void main(String[] args) throws IOException {
+        int iterations = Integer.parseInt(System.getProperty("bench.iterations", "100000"));
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        System.out.println("buffer     bytes/copy");
+        for (String size : System.getProperty("bench.bufferSizes", "4096,131072,1000000").split(",")) {
+            int bufferSize = Integer.parseInt(size.trim());
+            byte[] content = new byte[bufferSize * 2];
+            new Random(bufferSize).nextBytes(content);
+            ByteArrayInputStream input = new ByteArrayInputStream(content);
+            copy(input, bufferSize, iterations);
+            long before = threads.getThreadAllocatedBytes(threadId);
+            copy(input, bufferSize, iterations);
+            long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+            System.out.println(String.format(Locale.ROOT, "%-10d %10.1f", bufferSize, (double) allocated / iterations));
+        }
+    }
+
+    private static void copy(ByteArrayInputStream input, int bufferSize, int iterations) throws IOException {
+        for (int i = 0; i < iterations; i++) {
+            input.reset();
+            TransferEngine.DEFAULT.copy(input, SINK, bufferSize);
+        }
+    }
+}
@@ -15,42 +15,121 @@
  */
 package org.trustedanalytics.clients.utils;
 
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Storage with map-like interface. Here keys are generated uniquely.
  *
- * It is thread safe
+ * It is thread safe. Threads take ids from blocks reserved for them, so concurrent puts
+ * do not contend on a single counter. Generated ids are numeric but not consecutive.
+ *
+ * With value index enabled {@link #has} is a lookup instead of a scan, at the cost of
+ * maintaining the index on every put and remove.
  */
 public class MemoryUniqGeneratedKeysStore<V> {
 
-    private AtomicInteger count = new AtomicInteger(0);
-    private ConcurrentMap<String, V> data = new ConcurrentHashMap<>();
+    static final int ID_BLOCK_SIZE = 1024;
+
+    private final AtomicLong blocks = new AtomicLong(0);
+    private final ThreadLocal<IdBlock> idBlock = ThreadLocal.withInitial(IdBlock::new);
+    private final ConcurrentMap<Long, V> data = new ConcurrentHashMap<>();
+    private final ConcurrentMap<V, Set<Long>> valueIndex;
+
+    public MemoryUniqGeneratedKeysStore() {
+        this(false);
+    }
+
+    /**
+     * @param indexValues whether to keep value to keys index, useful only for values with
+     * meaningful equals and hashCode
+     */
+    public MemoryUniqGeneratedKeysStore(boolean indexValues) {
+        this.valueIndex = indexValues ? new ConcurrentHashMap<>() : null;
+    }
 
     public V get(String id) {
-        return data.get(id);
+        Long key = parseKey(id);
+        return key == null ? null : data.get(key);
     }
 
     /**
      * Returns id generated for new value
      */
     public String put(V value) {
-        String id = "" + count.incrementAndGet();
-        data.put(id, value);
-        return id;
+        long key = nextKey();
+        data.put(key, value);
+        if (valueIndex != null) {
+            valueIndex.compute(value, (v, keys) -> {
+                Set<Long> updated = keys == null ? ConcurrentHashMap.newKeySet() : keys;
+                updated.add(key);
+                return updated;
+            });
+        }
+        return Long.toString(key);
     }
 
     public V remove(String id) {
-        return data.remove(id);
+        Long key = parseKey(id);
+        if (key == null) {
+            return null;
+        }
+        V value = data.remove(key);
+        if (value != null && valueIndex != null) {
+            valueIndex.computeIfPresent(value, (v, keys) -> {
+                keys.remove(key);
+                return keys.isEmpty() ? null : keys;
+            });
+        }
+        return value;
     }
 
-    public boolean has(String value) {
+    public boolean has(Object value) {
+        if (valueIndex != null) {
+            return valueIndex.containsKey(value);
+        }
         return data.containsValue(value);
     }
 
     public boolean containsKey(String id) {
-        return data.containsKey(id);
+        Long key = parseKey(id);
+        return key != null && data.containsKey(key);
+    }
+
+    private long nextKey() {
+        IdBlock block = idBlock.get();
+        if (block.next == block.end) {
+            long start = blocks.getAndIncrement() * ID_BLOCK_SIZE;
+            block.next = start + 1;
+            block.end = start + ID_BLOCK_SIZE + 1;
+        }
+        return block.next++;
+    }
+
+    /**
+     * @return key of id in canonical form as generated by the store, null for any other string
+     */
+    private static Long parseKey(String id) {
+        if (id == null || id.isEmpty() || id.charAt(0) == '0') {
+            return null;
+        }
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9') {
+                return null;
+            }
+        }
+        try {
+            return Long.valueOf(id);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static class IdBlock {
+        private long next;
+        private long end;
     }
 }
@@ -17,25 +17,65 @@ package org.trustedanalytics.id;
 
 import lombok.Getter;
 import java.text.DateFormat;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class IdWithTimestamp {
 
+    private static final String TIMESTAMP_FORMAT = "yyMMdd-HHmmss";
+
+    /**
+     * Matches ids generated by this class as embedded in object ids of the stores: optionally
+     * preceded by folder, followed by random postfixes and file name.
+     */
+    private static final Pattern OBJECT_ID_PATTERN =
+            Pattern.compile("^(?:.*/)?([^/]+)-(\\d{6}-\\d{6})(?:-[0-9a-zA-Z]+)*(?:/[^/]+)?$");
+
     @Getter
     private String id;
 
+    @Getter
+    private String dataSetName;
+
+    @Getter
+    private Date timestamp;
+
     public static IdWithTimestamp generate(String name) {
-        return new IdWithTimestamp(name);
+        return new IdWithTimestamp(name.replaceAll(" ","_"), new Date());
+    }
+
+    /**
+     * Recovers data set name and creation time from object id, without asking the store
+     * for metadata. Timestamps are interpreted in default time zone, as they are generated.
+     *
+     * @return empty if object id does not contain generated id
+     */
+    public static Optional<IdWithTimestamp> parse(String objectId) {
+        Matcher matcher = OBJECT_ID_PATTERN.matcher(objectId);
+        if (!matcher.matches()) {
+            return Optional.empty();
+        }
+        try {
+            Date timestamp = getDateFormat().parse(matcher.group(2));
+            return Optional.of(new IdWithTimestamp(matcher.group(1), timestamp));
+        } catch (ParseException e) {
+            return Optional.empty();
+        }
     }
 
-    private IdWithTimestamp(String name) {
-        String normalized_name = name.replaceAll(" ","_");
-        id = normalized_name + "-" + getTimestamp();
+    private IdWithTimestamp(String normalizedName, Date timestamp) {
+        this.dataSetName = normalizedName;
+        this.timestamp = timestamp;
+        this.id = normalizedName + "-" + getDateFormat().format(timestamp);
     }
 
-    private String getTimestamp() {
-        DateFormat dateFormat = new SimpleDateFormat("yyMMdd-HHmmss");
-        return dateFormat.format(new Date());
+    private static DateFormat getDateFormat() {
+        DateFormat dateFormat = new SimpleDateFormat(TIMESTAMP_FORMAT);
+        dateFormat.setLenient(false);
+        return dateFormat;
     }
 }
@@ -0,0 +1,28 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Receives consecutive chunks of object content. Buffer is valid only during the call
+ * and is reused afterwards, so it must not be retained.
+ */
+@FunctionalInterface
+public interface ByteBufferConsumer {
+    void accept(ByteBuffer buffer) throws IOException;
+}
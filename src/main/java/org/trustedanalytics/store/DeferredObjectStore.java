@@ -0,0 +1,227 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Store created and warmed up in background, so that application startup does not wait for
+ * backend connections. Calls made before initialization completes wait for it.
+ *
+ * Lazy store is not initialized until first used or {@link #start() started} explicitly.
+ */
+public class DeferredObjectStore implements ObjectStore, Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DeferredObjectStore.class);
+
+    public enum State {
+        NOT_STARTED, INITIALIZING, READY, FAILED
+    }
+
+    private final String name;
+    private final Callable<ObjectStore> factory;
+    private final Executor executor;
+    private final boolean warmUp;
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final CompletableFuture<ObjectStore> store = new CompletableFuture<>();
+
+    /**
+     * @param name used in logs and health details
+     * @param factory creates the store, it is called once
+     * @param executor runs factory and warm up
+     * @param lazy postpones initialization until first use
+     * @param warmUp whether to call {@link ObjectStore#warmUp()} before store is ready
+     */
+    public DeferredObjectStore(String name, Callable<ObjectStore> factory, Executor executor, boolean lazy,
+            boolean warmUp) {
+        this.name = name;
+        this.factory = factory;
+        this.executor = executor;
+        this.warmUp = warmUp;
+        if (!lazy) {
+            start();
+        }
+    }
+
+    /**
+     * Starts initialization unless already started.
+     *
+     * @return future completed with initialized store
+     */
+    public CompletableFuture<ObjectStore> start() {
+        if (started.compareAndSet(false, true)) {
+            executor.execute(this::initialize);
+        }
+        return store;
+    }
+
+    public State getState() {
+        if (!started.get()) {
+            return State.NOT_STARTED;
+        }
+        if (!store.isDone()) {
+            return State.INITIALIZING;
+        }
+        return store.isCompletedExceptionally() ? State.FAILED : State.READY;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return underlying store if it is already initialized, without waiting for it
+     */
+    public Optional<ObjectStore> getIfReady() {
+        return getState() == State.READY ? Optional.of(store.join()) : Optional.empty();
+    }
+
+    @Override
+    public String save(InputStream input, String dataSetName) throws IOException {
+        return await().save(input, dataSetName);
+    }
+
+    @Override
+    public String save(InputStream input, String dataSetName, WriteOptions options) throws IOException {
+        return await().save(input, dataSetName, options);
+    }
+
+    @Override
+    public String save(byte[] bytes, String dataSetName) throws IOException {
+        return await().save(bytes, dataSetName);
+    }
+
+    @Override
+    public ObjectStoreOutputStream openForWrite(String dataSetName, WriteOptions options) throws IOException {
+        return await().openForWrite(dataSetName, options);
+    }
+
+    @Override
+    public InputStream getContent(String objectId) throws IOException {
+        return await().getContent(objectId);
+    }
+
+    @Override
+    public InputStream getContent(String objectId, long offset) throws IOException {
+        return await().getContent(objectId, offset);
+    }
+
+    @Override
+    public long readBuffers(String objectId, ByteBufferConsumer consumer) throws IOException {
+        return await().readBuffers(objectId, consumer);
+    }
+
+    @Override
+    public String copy(String objectId, ObjectStore target, String dataSetName) throws IOException {
+        return await().copy(objectId, target, dataSetName);
+    }
+
+    @Override
+    public ObjectStore getBackingStore() throws IOException {
+        return await().getBackingStore();
+    }
+
+    @Override
+    public void remove(String objectId) throws IOException {
+        await().remove(objectId);
+    }
+
+    @Override
+    public Stream<String> listObjectIds() throws IOException {
+        return await().listObjectIds();
+    }
+
+    @Override
+    public void warmUp() throws IOException {
+        await();
+    }
+
+    @Override
+    public String getId() {
+        try {
+            return await().getId();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Closes underlying store if it was initialized and is closeable. Store which is still
+     * being initialized is closed as soon as it is ready.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!started.compareAndSet(false, true)) {
+            store.thenAccept(DeferredObjectStore::closeQuietly);
+        }
+        store.completeExceptionally(new IOException("Object store " + name + " is closed"));
+    }
+
+    private static void closeQuietly(ObjectStore objectStore) {
+        if (objectStore instanceof Closeable) {
+            try {
+                ((Closeable) objectStore).close();
+            } catch (IOException e) {
+                LOGGER.warn("Could not close object store " + objectStore.getId(), e);
+            }
+        }
+    }
+
+    private void initialize() {
+        long start = System.currentTimeMillis();
+        try {
+            ObjectStore created = factory.call();
+            if (warmUp) {
+                created.warmUp();
+            }
+            LOGGER.info("Object store {} ready in {} ms", name, System.currentTimeMillis() - start);
+            if (!store.complete(created)) {
+                //closed meanwhile
+                closeQuietly(created);
+            }
+        } catch (Exception e) {
+            LOGGER.error("Object store " + name + " initialization failed", e);
+            store.completeExceptionally(e);
+        }
+    }
+
+    private ObjectStore await() throws IOException {
+        try {
+            return start().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for object store " + name);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Object store " + name + " initialization failed", e.getCause());
+        }
+    }
+}
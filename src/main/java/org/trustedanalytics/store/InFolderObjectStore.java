@@ -15,32 +15,347 @@
  */
 package org.trustedanalytics.store;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.trustedanalytics.id.IdWithTimestamp;
+import org.trustedanalytics.store.io.MappedFileInputStream;
+import org.trustedanalytics.store.io.TransferEngine;
+
+import com.google.common.collect.ImmutableSet;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
+/**
+ * Objects are written to files in {@link #TEMPORARY_DIR} subdirectory and published under
+ * their ids only when complete, so readers never see partially written objects.
+ */
 public class InFolderObjectStore implements ObjectStore {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(InFolderObjectStore.class);
+
+    static final String TEMPORARY_DIR = "_tmp";
+
+    private static final Set<String> LINK_UNSUPPORTED_REASONS =
+            ImmutableSet.of("Invalid cross-device link", "Operation not permitted", "Too many links");
+
     private File folder;
 
+    private volatile long memoryMapThreshold = Long.MAX_VALUE;
+
     public InFolderObjectStore(String folder) {
         this.folder = new File(folder);
     }
 
+    /**
+     * Objects of at least given size are read through memory mappings instead of read calls.
+     * Published files are never modified, so mappings stay valid even when the object is
+     * removed while it is read. Memory mapping is disabled by default.
+     */
+    public void setMemoryMapThreshold(long memoryMapThreshold) {
+        this.memoryMapThreshold = memoryMapThreshold;
+    }
+
     @Override
     public String save(InputStream input, String dataSetName) throws IOException {
+        return save(input, dataSetName, WriteOptions.DEFAULT);
+    }
+
+    @Override
+    public String save(InputStream input, String dataSetName, WriteOptions options) throws IOException {
         File file = new File(folder, IdWithTimestamp.generate(dataSetName).getId());
-        Files.copy(input, file.toPath());
+        Path temporary = createTemporaryFile();
+        try {
+            try (FileChannel output = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                TransferEngine.DEFAULT.copy(input, output, options.getBufferSize());
+            }
+            publish(temporary, file.toPath());
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
         return file.getName();
     }
 
+    @Override
+    public ObjectStoreOutputStream openForWrite(String dataSetName, WriteOptions options) throws IOException {
+        File file = new File(folder, IdWithTimestamp.generate(dataSetName).getId());
+        Path temporary = createTemporaryFile();
+        FileChannel output;
+        try {
+            output = FileChannel.open(temporary, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        return new ObjectStoreOutputStream() {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                write(ByteBuffer.wrap(b, off, len));
+            }
+
+            @Override
+            public int write(ByteBuffer src) throws IOException {
+                ensureOpen();
+                int length = src.remaining();
+                while (src.hasRemaining()) {
+                    output.write(src);
+                }
+                return length;
+            }
+
+            @Override
+            protected String commit() throws IOException {
+                try {
+                    output.close();
+                    publish(temporary, file.toPath());
+                } finally {
+                    Files.deleteIfExists(temporary);
+                }
+                return file.getName();
+            }
+
+            @Override
+            protected void discard() throws IOException {
+                try {
+                    output.close();
+                } finally {
+                    Files.deleteIfExists(temporary);
+                }
+            }
+        };
+    }
+
+    @Override
+    public String copy(String objectId, ObjectStore target, String dataSetName) throws IOException {
+        ObjectStore backingStore = target.getBackingStore();
+        if (!(backingStore instanceof InFolderObjectStore)) {
+            return ObjectStore.super.copy(objectId, target, dataSetName);
+        }
+        return ((InFolderObjectStore) backingStore).copyFrom(new File(folder, objectId).toPath(), dataSetName);
+    }
+
+    /**
+     * Objects are never modified once published, so the copy is a hard link sharing content
+     * with its source. Folders on different file systems, or on ones without hard links, get
+     * a full copy published as usual. Other failures of linking are thrown.
+     */
+    private String copyFrom(Path source, String dataSetName) throws IOException {
+        if (!Files.isRegularFile(source)) {
+            throw new FileNotFoundException(source.toString());
+        }
+        File file = new File(folder, IdWithTimestamp.generate(dataSetName).getId());
+        Path target = Files.createDirectories(folder.toPath());
+        if (Files.getFileStore(source).equals(Files.getFileStore(target))) {
+            try {
+                Files.createLink(file.toPath(), source);
+                return file.getName();
+            } catch (UnsupportedOperationException e) {
+                LOGGER.debug("links not supported, copying '{}'", source, e);
+            } catch (FileSystemException e) {
+                if (!isLinkUnsupported(e)) {
+                    throw e;
+                }
+                LOGGER.debug("could not link '{}', copying it", source, e);
+            }
+        }
+        Path temporary = createTemporaryFile();
+        try {
+            Files.copy(source, temporary, StandardCopyOption.REPLACE_EXISTING);
+            publish(temporary, file.toPath());
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        return file.getName();
+    }
+
+    /**
+     * Failures of link(2) are told apart only by their reason: EXDEV for different mounts of
+     * the same file system, EPERM where hard links are not supported, EMLINK when source has
+     * too many links already.
+     */
+    static boolean isLinkUnsupported(FileSystemException e) {
+        return !(e instanceof AccessDeniedException || e instanceof FileAlreadyExistsException
+                || e instanceof NoSuchFileException) && LINK_UNSUPPORTED_REASONS.contains(e.getReason());
+    }
+
+    @Override
+    public void remove(String objectId) throws IOException {
+        Path path = new File(folder, objectId).toPath();
+        if (!folder.toPath().equals(path.getParent())) {
+            throw new IllegalArgumentException("objectId");
+        }
+        if (!Files.isRegularFile(path)) {
+            throw new NoSuchElementException();
+        }
+        try {
+            Files.delete(path);
+        } catch (NoSuchFileException e) {
+            //removed concurrently
+            throw new NoSuchElementException();
+        }
+    }
+
+    @Override
+    public Stream<String> listObjectIds() throws IOException {
+        return Files.list(folder.toPath())
+                .filter(Files::isRegularFile)
+                .map(path -> path.getFileName().toString());
+    }
+
+    /**
+     * Deletes temporary files of saves which were interrupted, e.g. by process crash.
+     *
+     * @return number of deleted files
+     */
+    public int sweepTemporaries(long maxAgeMillis) throws IOException {
+        Path temporaryDir = getTemporaryDir();
+        if (!Files.isDirectory(temporaryDir)) {
+            return 0;
+        }
+        long deadline = System.currentTimeMillis() - maxAgeMillis;
+        int deleted = 0;
+        try (DirectoryStream<Path> temporaries = Files.newDirectoryStream(temporaryDir)) {
+            for (Path temporary : temporaries) {
+                if (Files.getLastModifiedTime(temporary).toMillis() < deadline
+                        && Files.deleteIfExists(temporary)) {
+                    LOGGER.info("deleted stale temporary object '{}'", temporary);
+                    deleted++;
+                }
+            }
+        }
+        return deleted;
+    }
+
+    public ScheduledFuture<?> scheduleSweeping(ScheduledExecutorService executor, long maxAgeMillis,
+            long period, TimeUnit unit) {
+        return executor.scheduleWithFixedDelay(() -> {
+            try {
+                sweepTemporaries(maxAgeMillis);
+            } catch (IOException e) {
+                LOGGER.warn("sweeping of '" + getTemporaryDir() + "' failed", e);
+            }
+        }, period, period, unit);
+    }
+
+    private Path getTemporaryDir() {
+        return new File(folder, TEMPORARY_DIR).toPath();
+    }
+
+    private Path createTemporaryFile() throws IOException {
+        Path temporaryDir = Files.createDirectories(getTemporaryDir());
+        return Files.createFile(temporaryDir.resolve(UUID.randomUUID().toString()));
+    }
+
+    /**
+     * Hard link appears under the target name at once and, unlike rename, fails when
+     * the target exists. File systems without links fall back to atomic rename.
+     */
+    private static void publish(Path temporary, Path target) throws IOException {
+        try {
+            Files.createLink(target, temporary);
+        } catch (UnsupportedOperationException e) {
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
     @Override
     public InputStream getContent(String objectId) throws IOException {
-        return new FileInputStream(new File(folder, objectId));
+        return getContent(objectId, 0);
+    }
+
+    @Override
+    public InputStream getContent(String objectId, long offset) throws IOException {
+        FileInputStream input = new FileInputStream(new File(folder, objectId));
+        try {
+            FileChannel channel = input.getChannel();
+            if (channel.size() >= memoryMapThreshold) {
+                return new MappedFileInputStream(channel, offset, MappedFileInputStream.DEFAULT_WINDOW_SIZE);
+            }
+            if (offset > 0) {
+                channel.position(offset);
+            }
+            return input;
+        } catch (IOException e) {
+            input.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Objects above memory map threshold are passed to consumer as slices of their mappings,
+     * without copying.
+     */
+    @Override
+    public long readBuffers(String objectId, ByteBufferConsumer consumer) throws IOException {
+        try (FileInputStream input = new FileInputStream(new File(folder, objectId))) {
+            FileChannel channel = input.getChannel();
+            long size = channel.size();
+            if (size < memoryMapThreshold) {
+                return TransferEngine.DEFAULT.read(input, consumer, TransferEngine.DEFAULT_BUFFER_SIZE);
+            }
+            for (long position = 0; position < size; position += MappedFileInputStream.DEFAULT_WINDOW_SIZE) {
+                MappedByteBuffer window = MappedFileInputStream.map(channel, position,
+                        Math.min(MappedFileInputStream.DEFAULT_WINDOW_SIZE, size - position));
+                while (window.hasRemaining()) {
+                    ByteBuffer chunk = window.slice();
+                    chunk.limit(Math.min(chunk.remaining(), TransferEngine.DEFAULT_BUFFER_SIZE));
+                    window.position(window.position() + chunk.limit());
+                    consumer.accept(chunk);
+                }
+            }
+            return size;
+        }
+    }
+
+    /**
+     * Maps range of the object for random access, regardless of memory map threshold.
+     */
+    public ByteBuffer map(String objectId, long offset, int length) throws IOException {
+        try (FileChannel channel = FileChannel.open(new File(folder, objectId).toPath(), StandardOpenOption.READ)) {
+            return MappedFileInputStream.map(channel, offset, length);
+        }
+    }
+
+    /**
+     * Reads hot object into page cache ahead of requests for it.
+     */
+    public void loadIntoPageCache(String objectId) throws IOException {
+        try (FileChannel channel = FileChannel.open(new File(folder, objectId).toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long position = 0; position < size; position += MappedFileInputStream.DEFAULT_WINDOW_SIZE) {
+                MappedFileInputStream.map(channel, position,
+                        Math.min(MappedFileInputStream.DEFAULT_WINDOW_SIZE, size - position)).load();
+            }
+        }
+    }
+
+    @Override
+    public void warmUp() throws IOException {
+        if (!folder.isDirectory()) {
+            throw new FileNotFoundException("No directory: " + folder.getAbsolutePath());
+        }
     }
 
     @Override
@@ -15,12 +15,13 @@
  */
 package org.trustedanalytics.store;
 
-import com.google.common.io.ByteStreams;
 import org.trustedanalytics.clients.utils.MemoryUniqGeneratedKeysStore;
+import org.trustedanalytics.store.io.TransferEngine;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -34,7 +35,16 @@ public class MemoryObjectStore implements ObjectStore {
 
     @Override
     public String save(InputStream input, String dataSetName) throws IOException {
-        return save(ByteStreams.toByteArray(input), dataSetName);
+        return save(input, dataSetName, WriteOptions.DEFAULT);
+    }
+
+    @Override
+    public String save(InputStream input, String dataSetName, WriteOptions options) throws IOException {
+        ByteArrayOutputStream output = options.getExpectedLength()
+                .map(length -> new ByteArrayOutputStream(Math.toIntExact(length)))
+                .orElseGet(ByteArrayOutputStream::new);
+        TransferEngine.DEFAULT.copy(input, output, options.getBufferSize());
+        return save(output.toByteArray(), dataSetName);
     }
 
     @Override
@@ -42,6 +52,30 @@ public class MemoryObjectStore implements ObjectStore {
         return data.put(bytes);
     }
 
+    @Override
+    public ObjectStoreOutputStream openForWrite(String dataSetName, WriteOptions options) {
+        ByteArrayOutputStream output = options.getExpectedLength()
+                .map(length -> new ByteArrayOutputStream(Math.toIntExact(length)))
+                .orElseGet(ByteArrayOutputStream::new);
+        return new ObjectStoreOutputStream() {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                ensureOpen();
+                output.write(b, off, len);
+            }
+
+            @Override
+            protected String commit() {
+                return save(output.toByteArray(), dataSetName);
+            }
+
+            @Override
+            protected void discard() {
+                output.reset();
+            }
+        };
+    }
+
     @Override
     public InputStream getContent(String objectId) throws IOException {
         byte[] bytes = data.get(objectId);
@@ -50,6 +84,21 @@ public class MemoryObjectStore implements ObjectStore {
         return new ByteArrayInputStream(bytes);
     }
 
+    /**
+     * Content is never modified once saved, so copy within memory stores shares the array.
+     */
+    @Override
+    public String copy(String objectId, ObjectStore target, String dataSetName) throws IOException {
+        ObjectStore backingStore = target.getBackingStore();
+        if (!(backingStore instanceof MemoryObjectStore)) {
+            return ObjectStore.super.copy(objectId, target, dataSetName);
+        }
+        byte[] bytes = data.get(objectId);
+        if (bytes == null)
+            throw new FileNotFoundException("No object with id: " + objectId);
+        return ((MemoryObjectStore) backingStore).save(bytes, dataSetName);
+    }
+
     @Override
     public void remove(String objectId) throws IOException {
         if (!data.containsKey(objectId)) {
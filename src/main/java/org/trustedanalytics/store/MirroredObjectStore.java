@@ -0,0 +1,472 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trustedanalytics.store.io.TransferEngine;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Keeps every object in several replica stores. Input is read once and written to all replicas
+ * concurrently, save succeeds when at least write quorum of replicas stored the object.
+ *
+ * Reads go to the replica with the lowest recent latency and fall back to other replicas
+ * on failure. Object id lists ids of the object in all replicas, empty for replicas in which
+ * write failed.
+ */
+public class MirroredObjectStore implements ObjectStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MirroredObjectStore.class);
+
+    private static final String ID_SEPARATOR = ",";
+    private static final String ENCODING = "UTF-8";
+    private static final int QUEUE_CAPACITY = 4;
+
+    private static final Chunk END = new Chunk(null, 0);
+    private static final Chunk ABORT = new Chunk(null, 0);
+
+    private final List<ObjectStore> replicas;
+    private final List<ReplicaLatency> latencies;
+    private final int writeQuorum;
+    private final Executor executor;
+
+    public MirroredObjectStore(List<ObjectStore> replicas, int writeQuorum) {
+        this(replicas, writeQuorum, Executors.newCachedThreadPool(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("mirror-writer-%d").build()));
+    }
+
+    /**
+     * @param executor runs one writer per replica for every object being saved, it has to be able
+     * to run all of them concurrently
+     */
+    public MirroredObjectStore(List<ObjectStore> replicas, int writeQuorum, Executor executor) {
+        if (replicas.isEmpty()) {
+            throw new IllegalArgumentException("replicas");
+        }
+        if (writeQuorum < 1 || writeQuorum > replicas.size()) {
+            throw new IllegalArgumentException("writeQuorum");
+        }
+        this.replicas = new ArrayList<>(replicas);
+        this.latencies = replicas.stream().map(replica -> new ReplicaLatency()).collect(Collectors.toList());
+        this.writeQuorum = writeQuorum;
+        this.executor = executor;
+    }
+
+    @Override
+    public String save(InputStream input, String dataSetName) throws IOException {
+        return save(input, dataSetName, WriteOptions.DEFAULT);
+    }
+
+    @Override
+    public String save(InputStream input, String dataSetName, WriteOptions options) throws IOException {
+        ObjectStoreOutputStream output = openForWrite(dataSetName, options);
+        try {
+            TransferEngine.DEFAULT.copy(input, (WritableByteChannel) output, options.getBufferSize());
+        } catch (IOException | RuntimeException e) {
+            output.abort();
+            throw e;
+        }
+        output.close();
+        return output.getObjectId();
+    }
+
+    @Override
+    public ObjectStoreOutputStream openForWrite(String dataSetName, WriteOptions options) throws IOException {
+        return new MirroredOutputStream(dataSetName, options);
+    }
+
+    @Override
+    public InputStream getContent(String objectId) throws IOException {
+        String[] ids = decodeId(objectId);
+        if (ids == null) {
+            throw new FileNotFoundException("No object with id: " + objectId);
+        }
+        List<Integer> order = IntStream.range(0, replicas.size())
+                .filter(replica -> !ids[replica].isEmpty())
+                .boxed()
+                .sorted(Comparator.comparingLong(replica -> latencies.get(replica).getAverageNanos()))
+                .collect(Collectors.toList());
+        Failures failures = new Failures();
+        for (int replica : order) {
+            long start = System.nanoTime();
+            try {
+                InputStream content = replicas.get(replica).getContent(ids[replica]);
+                latencies.get(replica).recordSuccess(System.nanoTime() - start);
+                return content;
+            } catch (IOException | RuntimeException e) {
+                latencies.get(replica).recordFailure();
+                LOGGER.warn("Reading " + ids[replica] + " from " + replicas.get(replica).getId() + " failed", e);
+                failures.add(e);
+            }
+        }
+        throw failures.toIOException("No replica could read " + objectId);
+    }
+
+    @Override
+    public void remove(String objectId) throws IOException {
+        String[] ids = decodeId(objectId);
+        if (ids == null) {
+            throw new NoSuchElementException();
+        }
+        Failures failures = new Failures();
+        for (int replica = 0; replica < replicas.size(); replica++) {
+            if (ids[replica].isEmpty()) {
+                continue;
+            }
+            try {
+                replicas.get(replica).remove(ids[replica]);
+            } catch (IOException | RuntimeException e) {
+                failures.add(e);
+            }
+        }
+        failures.rethrow();
+    }
+
+    /**
+     * Warms up all replicas, fails only when less than write quorum of them is reachable.
+     */
+    @Override
+    public void warmUp() throws IOException {
+        Failures failures = new Failures();
+        for (ObjectStore replica : replicas) {
+            try {
+                replica.warmUp();
+            } catch (IOException | RuntimeException e) {
+                LOGGER.warn("Warming up " + replica.getId() + " failed", e);
+                failures.add(e);
+            }
+        }
+        if (replicas.size() - failures.causes.size() < writeQuorum) {
+            throw failures.toIOException("Write quorum of " + writeQuorum + " replicas not reachable");
+        }
+    }
+
+    @Override
+    public String getId() {
+        return replicas.stream().map(ObjectStore::getId).collect(Collectors.joining(ID_SEPARATOR, "mirror:", ""));
+    }
+
+    /**
+     * @return recent average read latency of every replica, in order of replicas
+     */
+    public List<Long> getReplicaLatencyNanos() {
+        return latencies.stream().map(ReplicaLatency::getAverageNanos).collect(Collectors.toList());
+    }
+
+    private static String encodeId(String[] ids) {
+        return Arrays.stream(ids)
+                .map(id -> id == null ? "" : encode(id))
+                .collect(Collectors.joining(ID_SEPARATOR));
+    }
+
+    private static String encode(String id) {
+        try {
+            return URLEncoder.encode(id, ENCODING);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private String[] decodeId(String objectId) {
+        String[] ids = objectId.split(ID_SEPARATOR, -1);
+        if (ids.length != replicas.size()) {
+            return null;
+        }
+        try {
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = URLDecoder.decode(ids[i], ENCODING);
+            }
+            return ids;
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private final class MirroredOutputStream extends ObjectStoreOutputStream {
+
+        private final List<ReplicaWriter> writers = new ArrayList<>();
+        private final int chunkSize;
+        private Chunk chunk;
+
+        private MirroredOutputStream(String dataSetName, WriteOptions options) throws IOException {
+            this.chunkSize = options.getBufferSize();
+            Failures failures = new Failures();
+            for (int replica = 0; replica < replicas.size(); replica++) {
+                try {
+                    writers.add(new ReplicaWriter(replica, replicas.get(replica).openForWrite(dataSetName, options)));
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.warn("Opening object in " + replicas.get(replica).getId() + " failed", e);
+                    latencies.get(replica).recordFailure();
+                    failures.add(e);
+                }
+            }
+            if (writers.size() < writeQuorum) {
+                writers.forEach(writer -> writer.fail(new IOException("Write quorum not available")));
+                throw failures.toIOException("Write quorum of " + writeQuorum + " replicas not available");
+            }
+            writers.forEach(executor::execute);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ensureOpen();
+            while (len > 0) {
+                if (chunk == null) {
+                    chunk = new Chunk(TransferEngine.DEFAULT.acquireHeapBuffer(chunkSize), writers.size() + 1);
+                }
+                int length = Math.min(len, chunk.buffer.remaining());
+                chunk.buffer.put(b, off, length);
+                off += length;
+                len -= length;
+                if (!chunk.buffer.hasRemaining()) {
+                    dispatch();
+                }
+            }
+        }
+
+        @Override
+        protected String commit() throws IOException {
+            if (chunk != null) {
+                dispatch();
+            }
+            send(END);
+            Failures failures = new Failures();
+            String[] ids = new String[replicas.size()];
+            for (ReplicaWriter writer : writers) {
+                ids[writer.replica] = await(writer, failures);
+            }
+            long stored = Arrays.stream(ids).filter(id -> id != null).count();
+            if (stored < writeQuorum) {
+                removeStored(ids);
+                throw failures.toIOException("Object stored in " + stored + " replicas, quorum is " + writeQuorum);
+            }
+            return encodeId(ids);
+        }
+
+        @Override
+        protected void discard() throws IOException {
+            if (chunk != null) {
+                TransferEngine.DEFAULT.release(chunk.buffer);
+                chunk = null;
+            }
+            send(ABORT);
+            for (ReplicaWriter writer : writers) {
+                await(writer, new Failures());
+            }
+        }
+
+        private void dispatch() throws IOException {
+            chunk.buffer.flip();
+            send(chunk);
+            chunk.release();
+            chunk = null;
+            long failed = writers.stream().filter(writer -> writer.failed).count();
+            if (writers.size() - failed < writeQuorum) {
+                throw new IOException("Write quorum of " + writeQuorum + " replicas lost");
+            }
+        }
+
+        private void send(Chunk signal) throws IOException {
+            try {
+                for (ReplicaWriter writer : writers) {
+                    writer.queue.put(signal);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+
+        private String await(ReplicaWriter writer, Failures failures) throws IOException {
+            try {
+                return writer.result.get();
+            } catch (ExecutionException e) {
+                failures.add(e.getCause());
+                return null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+
+        private void removeStored(String[] ids) {
+            for (int replica = 0; replica < ids.length; replica++) {
+                if (ids[replica] == null) {
+                    continue;
+                }
+                try {
+                    replicas.get(replica).remove(ids[replica]);
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.warn("Could not remove " + ids[replica] + " from " + replicas.get(replica).getId(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes chunks taken from its queue to one replica. After failure it keeps taking chunks
+     * without writing them until end of object, so that producer is never blocked by failed replica.
+     */
+    private final class ReplicaWriter implements Runnable {
+
+        private final int replica;
+        private final ObjectStoreOutputStream output;
+        private final BlockingQueue<Chunk> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+        private volatile boolean failed;
+
+        private ReplicaWriter(int replica, ObjectStoreOutputStream output) {
+            this.replica = replica;
+            this.output = output;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    Chunk chunk = queue.take();
+                    if (chunk == END) {
+                        complete();
+                        return;
+                    }
+                    if (chunk == ABORT) {
+                        fail(new IOException("Write aborted"));
+                        return;
+                    }
+                    try {
+                        if (!failed) {
+                            output.write(chunk.buffer.duplicate());
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        writeFailed(e);
+                    } finally {
+                        chunk.release();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(new InterruptedIOException());
+            }
+        }
+
+        private void complete() {
+            if (failed) {
+                return;
+            }
+            try {
+                output.close();
+                result.complete(output.getObjectId());
+            } catch (IOException | RuntimeException e) {
+                writeFailed(e);
+            }
+        }
+
+        private void writeFailed(Exception cause) {
+            LOGGER.warn("Writing to " + replicas.get(replica).getId() + " failed", cause);
+            latencies.get(replica).recordFailure();
+            fail(cause);
+        }
+
+        private void fail(Throwable cause) {
+            failed = true;
+            result.completeExceptionally(cause);
+            try {
+                output.abort();
+            } catch (IOException | RuntimeException e) {
+                LOGGER.warn("Could not discard object in " + replicas.get(replica).getId(), e);
+            }
+        }
+    }
+
+    /**
+     * Pooled buffer shared by replica writers, returned to pool by the last one.
+     */
+    private static final class Chunk {
+
+        private final ByteBuffer buffer;
+        private final AtomicInteger references;
+
+        private Chunk(ByteBuffer buffer, int references) {
+            this.buffer = buffer;
+            this.references = new AtomicInteger(references);
+        }
+
+        private void release() {
+            if (references.decrementAndGet() == 0) {
+                TransferEngine.DEFAULT.release(buffer);
+            }
+        }
+    }
+
+    /**
+     * Collects failures of individual replicas.
+     */
+    private static final class Failures {
+
+        private final List<Throwable> causes = new ArrayList<>();
+
+        private void add(Throwable cause) {
+            causes.add(cause);
+        }
+
+        private void rethrow() throws IOException {
+            if (causes.isEmpty()) {
+                return;
+            }
+            Throwable first = causes.get(0);
+            causes.stream().skip(1).forEach(first::addSuppressed);
+            if (first instanceof IOException) {
+                throw (IOException) first;
+            }
+            if (first instanceof RuntimeException) {
+                throw (RuntimeException) first;
+            }
+            throw new IOException(first);
+        }
+
+        private IOException toIOException(String message) {
+            IOException exception = !causes.isEmpty() && causes.get(0) instanceof IOException
+                    ? (IOException) causes.get(0) : new IOException(message);
+            causes.stream().filter(cause -> cause != exception).forEach(exception::addSuppressed);
+            return exception;
+        }
+    }
+}
@@ -15,29 +15,143 @@
  */
 package org.trustedanalytics.store;
 
+import org.trustedanalytics.store.io.TransferEngine;
+
 import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.stream.Stream;
 
 // Simplified for now - skipping URIs
 
 public interface ObjectStore {
 
+    int COPY_READ_AHEAD_CHUNKS = 4;
+
     /**
      * @return unique id which allows to find given Object
      */
     String save(InputStream input, String dataSetName) throws IOException;
 
+    /**
+     * Saves object applying those of options which are supported by the store.
+     *
+     * @return unique id which allows to find given Object
+     */
+    default String save(InputStream input, String dataSetName, WriteOptions options) throws IOException {
+        return save(input, dataSetName);
+    }
+
     default String save(byte[] bytes, String dataSetName) throws IOException {
         return save(new ByteArrayInputStream(bytes), dataSetName);
     }
 
+    /**
+     * Opens stream to which producer writes content of a new object. Object id is available
+     * from the stream after it is closed.
+     */
+    default ObjectStoreOutputStream openForWrite(String dataSetName) throws IOException {
+        return openForWrite(dataSetName, WriteOptions.DEFAULT);
+    }
+
+    /**
+     * Opens stream to which producer writes content of a new object, applying those of options
+     * which are supported by the store. Default implementation spools content to a local
+     * temporary file, stores supporting push-style writes override it.
+     */
+    default ObjectStoreOutputStream openForWrite(String dataSetName, WriteOptions options) throws IOException {
+        return new SpoolingObjectStoreOutputStream(this, dataSetName, options);
+    }
+
     InputStream getContent(String objectId) throws IOException;
 
+    /**
+     * Reads object from given offset. Default implementation skips preceding content,
+     * stores able to seek or fetch ranges override it.
+     */
+    default InputStream getContent(String objectId, long offset) throws IOException {
+        InputStream input = getContent(objectId);
+        try {
+            long remaining = offset;
+            while (remaining > 0) {
+                long skipped = input.skip(remaining);
+                if (skipped <= 0) {
+                    if (input.read() < 0) {
+                        throw new EOFException("Offset " + offset + " is beyond end of " + objectId);
+                    }
+                    skipped = 1;
+                }
+                remaining -= skipped;
+            }
+            return input;
+        } catch (IOException | RuntimeException e) {
+            input.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads whole object in chunks passed to consumer, which lets stores hand over their
+     * internal buffers instead of copying content into caller's arrays.
+     *
+     * @return number of bytes read
+     */
+    default long readBuffers(String objectId, ByteBufferConsumer consumer) throws IOException {
+        try (InputStream input = getContent(objectId)) {
+            return TransferEngine.DEFAULT.read(input, consumer, TransferEngine.DEFAULT_BUFFER_SIZE);
+        }
+    }
+
+    /**
+     * Copies object into target store as a new object of given data set. Stores override it to
+     * copy inside their backend when target shares it, default implementation streams content
+     * reading ahead of writes to the target.
+     *
+     * @return id of the copy in target store
+     */
+    default String copy(String objectId, ObjectStore target, String dataSetName) throws IOException {
+        try (InputStream input = getContent(objectId)) {
+            ObjectStoreOutputStream output = target.openForWrite(dataSetName);
+            try {
+                TransferEngine.DEFAULT.copyPipelined(input, output, TransferEngine.DEFAULT_BUFFER_SIZE,
+                        COPY_READ_AHEAD_CHUNKS);
+                output.close();
+            } catch (IOException | RuntimeException e) {
+                output.abort();
+                throw e;
+            }
+            return output.getObjectId();
+        }
+    }
+
+    /**
+     * Store which actually holds objects written through this one, used to recognize stores
+     * sharing a backend. Stores transforming content must not expose the store they wrap.
+     */
+    default ObjectStore getBackingStore() throws IOException {
+        return this;
+    }
+
     default void remove(String objectId) throws IOException {
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * Lists ids of all objects in the store. Stream is lazy where backend pages its listings,
+     * failures while it is consumed are thrown as {@link java.io.UncheckedIOException}.
+     */
+    default Stream<String> listObjectIds() throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Establishes connections and fills pools used by the store, so that first requests do not
+     * pay for it. Fails if backend is not reachable.
+     */
+    default void warmUp() throws IOException {
+    }
+
     /**
      * @return id of the store so that it can be later on accessed
      */
@@ -22,22 +22,43 @@ import org.trustedanalytics.hadoop.config.client.ServiceInstanceConfiguration;
 import org.trustedanalytics.hadoop.config.client.ServiceType;
 import org.trustedanalytics.id.JobIdSupplier;
 import org.trustedanalytics.kerberos.TapOAuthKerberosClient;
+import org.trustedanalytics.store.config.EncryptionProperties;
+import org.trustedanalytics.store.config.ExistenceFilterProperties;
+import org.trustedanalytics.store.config.ExpiryProperties;
 import org.trustedanalytics.store.config.HdfsProperties;
+import org.trustedanalytics.store.config.InFolderProperties;
+import org.trustedanalytics.store.config.ObjectStoreProperties;
+import org.trustedanalytics.store.config.TracingProperties;
+import org.trustedanalytics.store.config.S3TransferProperties;
 import org.trustedanalytics.store.config.SimpleInstanceConfiguration;
+import org.trustedanalytics.store.crypto.KeyStoreEncryptionKeyProvider;
+import org.trustedanalytics.store.expiry.ExpirySweeper;
+import org.trustedanalytics.store.expiry.TtlPolicy;
+import org.trustedanalytics.store.filter.ExistenceFilter;
+import org.trustedanalytics.store.filter.ExistenceFilterMetrics;
 import org.trustedanalytics.store.hdfs.HdfsObjectStore;
+import org.trustedanalytics.store.hdfs.HdfsTrashReaper;
 import org.trustedanalytics.store.hdfs.KerberosClientConfiguration;
+import org.trustedanalytics.store.hdfs.ObjectLayout;
 import org.trustedanalytics.store.hdfs.OrgSpecificHdfsObjectStoreFactory;
+import org.trustedanalytics.store.hdfs.TimeBucketedLayout;
 import org.trustedanalytics.store.hdfs.fs.ApacheFileSystemFactory;
+import org.trustedanalytics.store.hdfs.fs.FileSystemPool;
 import org.trustedanalytics.store.hdfs.fs.MultiTenantFileSystemFactory;
 import org.trustedanalytics.store.hdfs.fs.OAuthSecuredFileSystemFactory;
 import org.trustedanalytics.store.hdfs.fs.SingleTenantFileSystemFactory;
 import org.trustedanalytics.store.s3.S3ObjectStore;
 import org.trustedanalytics.store.s3.S3ServiceInfo;
+import org.trustedanalytics.store.s3.S3TransferEngine;
+import org.trustedanalytics.store.s3.S3TransferMetrics;
+import org.trustedanalytics.store.trace.PhaseListener;
+import org.trustedanalytics.store.trace.PhaseMetrics;
+import org.trustedanalytics.store.trace.PhaseTracing;
+import org.trustedanalytics.store.trace.SlowPhaseLogger;
 
 import com.amazonaws.auth.AWSCredentials;
 import com.amazonaws.auth.BasicAWSCredentials;
-import com.amazonaws.services.s3.AmazonS3;
-import com.amazonaws.services.s3.AmazonS3Client;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
@@ -49,15 +70,26 @@ import org.springframework.cloud.CloudFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Profile;
 
-import javax.security.auth.login.LoginException;
+import javax.annotation.PreDestroy;
 import java.io.IOException;
-import java.net.URISyntaxException;
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 @org.springframework.context.annotation.Configuration
-@EnableConfigurationProperties({HdfsProperties.class, KerberosClientConfiguration.class})
+@EnableConfigurationProperties({HdfsProperties.class, KerberosClientConfiguration.class,
+        ObjectStoreProperties.class, S3TransferProperties.class, ExpiryProperties.class,
+        EncryptionProperties.class, TracingProperties.class, InFolderProperties.class,
+        ExistenceFilterProperties.class})
 public class ObjectStoreConfiguration {
 
     private static final String KERBEROS_SERVICE_NAME = "kerberos-service";
@@ -68,39 +100,143 @@ public class ObjectStoreConfiguration {
     @Autowired
     private KerberosClientConfiguration krbProps;
 
+    @Autowired
+    private ObjectStoreProperties objectStoreProps;
+
+    @Autowired
+    private S3TransferProperties s3TransferProps;
+
+    @Autowired
+    private ExpiryProperties expiryProps;
+
+    @Autowired
+    private EncryptionProperties encryptionProps;
+
+    @Autowired
+    private TracingProperties tracingProps;
+
+    @Autowired
+    private InFolderProperties inFolderProps;
+
+    @Autowired
+    private ExistenceFilterProperties existenceFilterProps;
+
+    //backends are created concurrently with each other and with the rest of application context
+    private final ExecutorService initExecutor = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("objectstore-init-%d").build());
+
+    private final ScheduledExecutorService expiryExecutor;
+
+    private final List<ExpirySweeper> expirySweepers = new CopyOnWriteArrayList<>();
+
+    private final List<ExistenceFilter> existenceFilters = new CopyOnWriteArrayList<>();
+
+    private final List<HdfsTrashReaper> trashReapers = new CopyOnWriteArrayList<>();
+
+    public ObjectStoreConfiguration() {
+        this(Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("objectstore-expiry-scheduler").build()));
+    }
+
+    ObjectStoreConfiguration(ScheduledExecutorService expiryExecutor) {
+        this.expiryExecutor = expiryExecutor;
+    }
+
     @Bean
     @Profile("default")
     public ObjectStore objectStore() {
-        return new InFolderObjectStore(System.getenv("DOWNLOADS_DIR"));
+        return deferred("in-folder", () -> {
+            InFolderObjectStore store = new InFolderObjectStore(System.getenv("DOWNLOADS_DIR"));
+            if (inFolderProps.isMemoryMapped()) {
+                store.setMemoryMapThreshold(inFolderProps.getMemoryMapThresholdBytes());
+            }
+            scheduleTemporarySweeping(store);
+            return scheduleExpiry(store, expiryProps.getPolicies("in-folder"));
+        });
     }
 
     @Bean
     @Profile("s3")
     public ObjectStore s3ObjectStore(JobIdSupplier jobIdSupplier) {
-        CloudFactory cloudFactory = new CloudFactory();
-        Cloud cloud = cloudFactory.getCloud();
-        S3ServiceInfo s3ServiceInfo = (S3ServiceInfo) cloud.getServiceInfo("S3-serv-instance");
-        AWSCredentials awsCredentials =
-                new BasicAWSCredentials(s3ServiceInfo.getAccessKey(), s3ServiceInfo.getSecretKey());
-        AmazonS3 amazonS3 = new AmazonS3Client(awsCredentials);
-        return new S3ObjectStore(amazonS3, s3ServiceInfo.getBucket(), jobIdSupplier);
+        return deferred("s3", () -> {
+            CloudFactory cloudFactory = new CloudFactory();
+            Cloud cloud = cloudFactory.getCloud();
+            S3ServiceInfo s3ServiceInfo = (S3ServiceInfo) cloud.getServiceInfo("S3-serv-instance");
+            AWSCredentials awsCredentials =
+                    new BasicAWSCredentials(s3ServiceInfo.getAccessKey(), s3ServiceInfo.getSecretKey());
+            S3TransferEngine transferEngine = new S3TransferEngine("s3", awsCredentials, s3TransferProps);
+            S3ObjectStore store = new S3ObjectStore(transferEngine, s3ServiceInfo.getBucket(), jobIdSupplier, true);
+            List<TtlPolicy> policies = expiryProps.getPolicies("s3");
+            if (expiryProps.isS3LifecycleRules() && store.applyLifecycleRules(policies).isEmpty()) {
+                //all policies expressed as rules, no need to list the bucket
+                return store;
+            }
+            return scheduleExpiry(store, policies);
+        });
+    }
+
+    @Bean
+    @Profile("s3")
+    public S3TransferMetrics s3TransferMetrics() {
+        return new S3TransferMetrics();
     }
 
     @Bean
     @Profile("hdfs")
-    public ObjectStore hdfsObjectStore() throws IOException, InterruptedException, URISyntaxException, LoginException {
-        SingleTenantFileSystemFactory fsFactory =
-                new SingleTenantFileSystemFactory(Configurations.newInstanceFromEnv());
-        FileSystem fs = fsFactory.getFileSystem();
-        Path path = fsFactory.getChrootedPath();
-        return new HdfsObjectStore(fs, path);
+    public ObjectStore hdfsObjectStore() {
+        return deferred("hdfs", () -> {
+            SingleTenantFileSystemFactory fsFactory =
+                    new SingleTenantFileSystemFactory(Configurations.newInstanceFromEnv());
+            FileSystem fs = fsFactory.getFileSystem();
+            Path path = fsFactory.getChrootedPath();
+            HdfsObjectStore store = new HdfsObjectStore(fs, path);
+            store.setLayout(objectLayout());
+            scheduleTemporarySweeping(store);
+            if (hdfsProps.isFastRemove()) {
+                store.setFastRemove(true);
+                HdfsTrashReaper reaper = trashReaper(store);
+                trashReapers.add(reaper);
+                reaper.scheduleReaping(expiryExecutor, hdfsProps.getTrashReapingMinutes(), TimeUnit.MINUTES);
+            }
+            if (existenceFilterProps.isEnabled()) {
+                store.setExistenceFilter(existenceFilter("hdfs"));
+                store.scheduleExistenceFilterRebuild(expiryExecutor, existenceFilterProps.getRebuildMinutes(),
+                        TimeUnit.MINUTES);
+            }
+            return scheduleExpiry(store, expiryProps.getPolicies("hdfs"));
+        });
+    }
+
+    @Bean
+    public PhaseMetrics phaseMetrics() {
+        PhaseMetrics metrics = new PhaseMetrics();
+        if (tracingProps.isEnabled()) {
+            PhaseListener slowPhaseLogger =
+                    new SlowPhaseLogger(tracingProps.getSlowPhaseMillis(), TimeUnit.MILLISECONDS);
+            Optional<PhaseListener> flightRecorder = tracingProps.isFlightRecorder()
+                    ? PhaseTracing.flightRecorderListener() : Optional.empty();
+            PhaseTracing.setListener(flightRecorder
+                    .map(jfr -> PhaseListener.compose(metrics, slowPhaseLogger, jfr))
+                    .orElseGet(() -> PhaseListener.compose(metrics, slowPhaseLogger)));
+        }
+        return metrics;
+    }
+
+    @Bean
+    public ExistenceFilterMetrics existenceFilterMetrics() {
+        return new ExistenceFilterMetrics(existenceFilters);
+    }
+
+    @Bean
+    public ObjectStoreHealthIndicator objectStoreHealthIndicator() {
+        return new ObjectStoreHealthIndicator();
     }
 
     //autowire this, if you want token to be automatically acquired from web context
     @Bean
     @Profile("multitenant-hdfs")
     public ObjectStoreFactory<String> multitenantHdfsObjectStoreSupplier(OrgSpecificHdfsObjectStoreFactory osFactory) throws IOException {
-        return osFactory::create;
+        return osFactory::createObjectStore;
     }
 
     //autowire this, if you want to provide token with your own logic
@@ -108,7 +244,7 @@ public class ObjectStoreConfiguration {
     @Profile("multitenant-hdfs")
     public TokenizedObjectStoreFactory<String, String> multitenantHdfsObjectStoreFactory(OrgSpecificHdfsObjectStoreFactory osFactory)
             throws IOException {
-        return osFactory::create;
+        return osFactory::createObjectStore;
     }
 
     @Bean
@@ -119,8 +255,9 @@ public class ObjectStoreConfiguration {
       ServiceInstanceConfiguration krbConf = appConfiguration.getServiceConfig(KERBEROS_SERVICE_NAME);
       OAuthSecuredFileSystemFactory fileSystemFactory =
               new MultiTenantFileSystemFactory(hdfsConf, krbConf, new TapOAuthKerberosClient(),
-                      new ApacheFileSystemFactory());
-      return new OrgSpecificHdfsObjectStoreFactory(fileSystemFactory, krbConf);
+                      new ApacheFileSystemFactory(), fileSystemPool());
+      return withEncryption(withFastRemove(withLayout(
+              new OrgSpecificHdfsObjectStoreFactory(fileSystemFactory, krbConf))));
     }
 
     @Bean
@@ -128,8 +265,9 @@ public class ObjectStoreConfiguration {
     public OrgSpecificHdfsObjectStoreFactory getOSFactory(ServiceInstanceConfiguration hdfsConfig) throws IOException {
         OAuthSecuredFileSystemFactory fileSystemFactory =
                 new MultiTenantFileSystemFactory(hdfsConfig, hdfsConfig, new TapOAuthKerberosClient(),
-                        new ApacheFileSystemFactory());
-        return new OrgSpecificHdfsObjectStoreFactory(fileSystemFactory, hdfsConfig);
+                        new ApacheFileSystemFactory(), fileSystemPool());
+        return withEncryption(withFastRemove(withLayout(
+                new OrgSpecificHdfsObjectStoreFactory(fileSystemFactory, hdfsConfig))));
     }
 
     @Bean
@@ -144,6 +282,107 @@ public class ObjectStoreConfiguration {
       return new SimpleInstanceConfiguration("config", getHadoopConfiguration(hdfsProps.getConfigDir()), properties);
     }
     
+    @PreDestroy
+    public void shutdownInitExecutor() {
+        initExecutor.shutdownNow();
+    }
+
+    @PreDestroy
+    public void shutdownExpiry() {
+        expiryExecutor.shutdownNow();
+        expirySweepers.forEach(ExpirySweeper::close);
+        trashReapers.forEach(HdfsTrashReaper::close);
+    }
+
+    @PreDestroy
+    public void persistExistenceFilters() throws IOException {
+        for (ExistenceFilter filter : existenceFilters) {
+            filter.close();
+        }
+    }
+
+    private ObjectStore deferred(String name, Callable<ObjectStore> factory) {
+        return new DeferredObjectStore(name, factory, initExecutor, objectStoreProps.isLazy(),
+                objectStoreProps.isWarmUp());
+    }
+
+    private ObjectStore scheduleExpiry(ObjectStore store, List<TtlPolicy> policies) {
+        if (!policies.isEmpty()) {
+            ExpirySweeper sweeper = new ExpirySweeper(store, policies, expiryProps.getParallelism(),
+                    expiryProps.getRemovalsPerSecond());
+            expirySweepers.add(sweeper);
+            sweeper.scheduleSweeping(expiryExecutor, expiryProps.getPeriodMinutes(), TimeUnit.MINUTES);
+        }
+        return store;
+    }
+
+    /**
+     * Deletes temporary files left behind by saves interrupted e.g. by a crash.
+     */
+    void scheduleTemporarySweeping(InFolderObjectStore store) {
+        store.scheduleSweeping(expiryExecutor, temporaryMaxAgeMillis(), objectStoreProps.getTemporarySweepMinutes(),
+                TimeUnit.MINUTES);
+    }
+
+    void scheduleTemporarySweeping(HdfsObjectStore store) {
+        store.scheduleSweeping(expiryExecutor, temporaryMaxAgeMillis(), objectStoreProps.getTemporarySweepMinutes(),
+                TimeUnit.MINUTES);
+    }
+
+    private long temporaryMaxAgeMillis() {
+        return TimeUnit.MINUTES.toMillis(objectStoreProps.getTemporaryMaxAgeMinutes());
+    }
+
+    /**
+     * Creates filter seeded from the file it was persisted to, if there is one, otherwise it is
+     * seeded by its first rebuild.
+     */
+    private ExistenceFilter existenceFilter(String name) throws IOException {
+        java.nio.file.Path file = existenceFilterProps.getDirectory() == null
+                ? null : Paths.get(existenceFilterProps.getDirectory(), name + ".bloom");
+        ExistenceFilter filter = new ExistenceFilter(name, existenceFilterProps.getExpectedObjects(),
+                existenceFilterProps.getFalsePositiveRate(), file);
+        filter.load();
+        existenceFilters.add(filter);
+        return filter;
+    }
+
+    private FileSystemPool fileSystemPool() {
+        long idleMillis = TimeUnit.MINUTES.toMillis(hdfsProps.getFileSystemIdleMinutes());
+        return new FileSystemPool(hdfsProps.getMaxFileSystems(), idleMillis, idleMillis);
+    }
+
+    private OrgSpecificHdfsObjectStoreFactory withEncryption(OrgSpecificHdfsObjectStoreFactory factory)
+            throws IOException {
+        if (encryptionProps.getKeyStore() != null) {
+            factory.setKeyProvider(KeyStoreEncryptionKeyProvider.load(encryptionProps.getKeyStore(),
+                    encryptionProps.getKeyStoreType(), encryptionProps.getKeyStorePassword().toCharArray()));
+        }
+        return factory;
+    }
+
+    private OrgSpecificHdfsObjectStoreFactory withLayout(OrgSpecificHdfsObjectStoreFactory factory) {
+        factory.setLayout(objectLayout());
+        return factory;
+    }
+
+    private OrgSpecificHdfsObjectStoreFactory withFastRemove(OrgSpecificHdfsObjectStoreFactory factory) {
+        if (hdfsProps.isFastRemove()) {
+            factory.enableFastRemove(this::trashReaper, expiryExecutor, hdfsProps.getTrashReapingMinutes(),
+                    TimeUnit.MINUTES);
+        }
+        return factory;
+    }
+
+    private HdfsTrashReaper trashReaper(HdfsObjectStore store) {
+        return new HdfsTrashReaper(store, hdfsProps.getTrashReaperThreads(), hdfsProps.getTrashDeletesPerSecond(),
+                TimeUnit.MINUTES.toMillis(hdfsProps.getTrashGraceMinutes()));
+    }
+
+    private ObjectLayout objectLayout() {
+        return hdfsProps.isTimeBuckets() ? new TimeBucketedLayout(hdfsProps.isFlatFallback()) : ObjectLayout.FLAT;
+    }
+
     private static Configuration getHadoopConfiguration(String confDir) throws IOException {
       return Arrays.asList("core-site.xml", "hdfs-site.xml").stream()
         .collect(Configuration::new, (c, f) -> c.addResource(new Path(confDir, f)), (c, d) -> {});
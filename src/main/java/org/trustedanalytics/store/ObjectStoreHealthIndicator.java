@@ -0,0 +1,63 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reports readiness of object stores initialized in background. Application is out of service
+ * until all eagerly initialized stores are created and warmed up.
+ */
+public class ObjectStoreHealthIndicator extends AbstractHealthIndicator {
+
+    @Autowired(required = false)
+    private List<ObjectStore> objectStores = Collections.emptyList();
+
+    public ObjectStoreHealthIndicator() {
+    }
+
+    public ObjectStoreHealthIndicator(List<ObjectStore> objectStores) {
+        this.objectStores = objectStores;
+    }
+
+    @Override
+    protected void doHealthCheck(Health.Builder builder) {
+        boolean initializing = false;
+        boolean failed = false;
+        for (ObjectStore objectStore : objectStores) {
+            if (!(objectStore instanceof DeferredObjectStore)) {
+                continue;
+            }
+            DeferredObjectStore deferred = (DeferredObjectStore) objectStore;
+            DeferredObjectStore.State state = deferred.getState();
+            builder.withDetail(deferred.getName(), state);
+            initializing |= state == DeferredObjectStore.State.INITIALIZING;
+            failed |= state == DeferredObjectStore.State.FAILED;
+        }
+        if (failed) {
+            builder.down();
+        } else if (initializing) {
+            builder.outOfService();
+        } else {
+            builder.up();
+        }
+    }
+}
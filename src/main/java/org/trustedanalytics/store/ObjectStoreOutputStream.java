@@ -0,0 +1,122 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store;
+
+import org.trustedanalytics.store.io.TransferEngine;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Stream written by producer of object content. Object becomes visible in the store when stream
+ * is closed and its id is available from {@link #getObjectId()} afterwards. Producer which fails
+ * in the middle of writing should call {@link #abort()} instead, so that partial object is discarded.
+ */
+public abstract class ObjectStoreOutputStream extends OutputStream implements WritableByteChannel {
+
+    private boolean closed;
+    private String objectId;
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public abstract void write(byte[] b, int off, int len) throws IOException;
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        ensureOpen();
+        int length = src.remaining();
+        if (src.hasArray()) {
+            write(src.array(), src.arrayOffset() + src.position(), length);
+            src.position(src.limit());
+            return length;
+        }
+        ByteBuffer buffer = TransferEngine.DEFAULT.acquireHeapBuffer(TransferEngine.DEFAULT_BUFFER_SIZE);
+        try {
+            while (src.hasRemaining()) {
+                int chunk = Math.min(src.remaining(), buffer.capacity());
+                src.get(buffer.array(), 0, chunk);
+                write(buffer.array(), 0, chunk);
+            }
+        } finally {
+            TransferEngine.DEFAULT.release(buffer);
+        }
+        return length;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    /**
+     * Completes writing and stores the object.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        objectId = commit();
+    }
+
+    /**
+     * Discards everything written so far. Does nothing if stream is already closed.
+     */
+    public void abort() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        discard();
+    }
+
+    /**
+     * @return unique id which allows to find written Object
+     * @throws IllegalStateException if stream was not closed successfully
+     */
+    public String getObjectId() {
+        if (objectId == null) {
+            throw new IllegalStateException("Object is not stored until stream is closed");
+        }
+        return objectId;
+    }
+
+    protected void ensureOpen() throws IOException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    /**
+     * Makes written content visible in the store.
+     *
+     * @return unique id of stored object
+     */
+    protected abstract String commit() throws IOException;
+
+    /**
+     * Releases resources and removes partially written content.
+     */
+    protected abstract void discard() throws IOException;
+}
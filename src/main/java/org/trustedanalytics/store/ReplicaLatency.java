@@ -0,0 +1,69 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Exponentially weighted moving average of replica response times, with a penalty for failures.
+ * Penalty halves every {@link #PENALTY_HALF_LIFE_NANOS}, so a replica which failed transiently
+ * is tried again after a while even if it is never read in the meantime. Success clears it.
+ */
+class ReplicaLatency {
+
+    private static final double WEIGHT = 0.2;
+    private static final long FAILURE_PENALTY_NANOS = TimeUnit.SECONDS.toNanos(10);
+    static final long PENALTY_HALF_LIFE_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final LongSupplier nanoClock;
+    private double average;
+    private double penalty;
+    private long penalizedAt;
+
+    ReplicaLatency() {
+        this(System::nanoTime);
+    }
+
+    ReplicaLatency(LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+    }
+
+    synchronized void recordSuccess(long nanos) {
+        average = average == 0 ? nanos : average + WEIGHT * (nanos - average);
+        penalty = 0;
+    }
+
+    /**
+     * Failures add up, replica failing repeatedly stays behind healthy ones.
+     */
+    synchronized void recordFailure() {
+        long now = nanoClock.getAsLong();
+        penalty = decayedPenalty(now) + Math.max(average, FAILURE_PENALTY_NANOS);
+        penalizedAt = now;
+    }
+
+    synchronized long getAverageNanos() {
+        return (long) (average + decayedPenalty(nanoClock.getAsLong()));
+    }
+
+    private double decayedPenalty(long now) {
+        if (penalty == 0) {
+            return 0;
+        }
+        return penalty * Math.pow(0.5, (double) (now - penalizedAt) / PENALTY_HALF_LIFE_NANOS);
+    }
+}
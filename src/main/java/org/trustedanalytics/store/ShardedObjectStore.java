@@ -0,0 +1,333 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store;
+
+import org.trustedanalytics.id.IdWithTimestamp;
+
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Spreads objects over named shards by consistent hashing. Every object gets random routing key
+ * which is placed on a hash ring with many virtual nodes per shard. Object id consists of
+ * shard name, routing key and id of the object in the shard.
+ *
+ * Adding a shard takes over only the part of the ring next to its virtual nodes, so only objects
+ * whose routing keys fall in that part have to be moved by {@link #rebalance}. Moved object gets
+ * a new id, the old one stays readable until the new one is reported to relocation listener.
+ */
+public class ShardedObjectStore implements ObjectStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShardedObjectStore.class);
+
+    public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    private static final String ID_SEPARATOR = "/";
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private final Map<String, ObjectStore> shards = new ConcurrentHashMap<>();
+    private final int virtualNodes;
+    private volatile NavigableMap<Long, String> ring = ImmutableSortedMap.of();
+
+    public ShardedObjectStore(Map<String, ObjectStore> shards) {
+        this(shards, DEFAULT_VIRTUAL_NODES);
+    }
+
+    public ShardedObjectStore(Map<String, ObjectStore> shards, int virtualNodes) {
+        if (virtualNodes <= 0) {
+            throw new IllegalArgumentException("virtualNodes");
+        }
+        this.virtualNodes = virtualNodes;
+        shards.forEach(this::addShard);
+    }
+
+    /**
+     * Adds shard to the ring. Objects which should be moved to it stay where they are until
+     * rebalanced and are readable meanwhile.
+     */
+    public synchronized void addShard(String name, ObjectStore shard) {
+        if (name.isEmpty() || name.contains(ID_SEPARATOR)) {
+            throw new IllegalArgumentException("Invalid shard name: " + name);
+        }
+        if (shards.containsKey(name)) {
+            throw new IllegalArgumentException("Shard already exists: " + name);
+        }
+        NavigableMap<Long, String> updated = new TreeMap<>(ring);
+        for (int node = 0; node < virtualNodes; node++) {
+            updated.putIfAbsent(hash(name + "#" + node), name);
+        }
+        shards.put(name, shard);
+        ring = ImmutableSortedMap.copyOfSorted(updated);
+    }
+
+    @Override
+    public String save(InputStream input, String dataSetName) throws IOException {
+        return save(input, dataSetName, WriteOptions.DEFAULT);
+    }
+
+    @Override
+    public String save(InputStream input, String dataSetName, WriteOptions options) throws IOException {
+        String routingKey = newRoutingKey();
+        String shard = ownerOf(routingKey);
+        return toId(shard, routingKey, shards.get(shard).save(input, dataSetName, options));
+    }
+
+    @Override
+    public ObjectStoreOutputStream openForWrite(String dataSetName, WriteOptions options) throws IOException {
+        String routingKey = newRoutingKey();
+        String shard = ownerOf(routingKey);
+        ObjectStoreOutputStream output = shards.get(shard).openForWrite(dataSetName, options);
+        return new ObjectStoreOutputStream() {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                output.write(b, off, len);
+            }
+
+            @Override
+            public int write(ByteBuffer src) throws IOException {
+                return output.write(src);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                output.flush();
+            }
+
+            @Override
+            protected String commit() throws IOException {
+                output.close();
+                return toId(shard, routingKey, output.getObjectId());
+            }
+
+            @Override
+            protected void discard() throws IOException {
+                output.abort();
+            }
+        };
+    }
+
+    @Override
+    public InputStream getContent(String objectId) throws IOException {
+        ShardedId id = parseId(objectId);
+        if (id == null) {
+            throw new FileNotFoundException("No object with id: " + objectId);
+        }
+        return shards.get(id.shard).getContent(id.shardObjectId);
+    }
+
+    @Override
+    public long readBuffers(String objectId, ByteBufferConsumer consumer) throws IOException {
+        ShardedId id = parseId(objectId);
+        if (id == null) {
+            throw new FileNotFoundException("No object with id: " + objectId);
+        }
+        return shards.get(id.shard).readBuffers(id.shardObjectId, consumer);
+    }
+
+    @Override
+    public void remove(String objectId) throws IOException {
+        ShardedId id = parseId(objectId);
+        if (id == null) {
+            throw new NoSuchElementException();
+        }
+        shards.get(id.shard).remove(id.shardObjectId);
+    }
+
+    @Override
+    public void warmUp() throws IOException {
+        for (ObjectStore shard : shards.values()) {
+            shard.warmUp();
+        }
+    }
+
+    @Override
+    public String getId() {
+        return shards.keySet().stream()
+                .sorted()
+                .map(name -> name + "=" + shards.get(name).getId())
+                .collect(Collectors.joining(",", "sharded:", ""));
+    }
+
+    /**
+     * Moves object to the shard which owns its routing key, if it is stored elsewhere. Moved
+     * object is saved under data set name recovered from its id in the shard, so that name
+     * based ttl policies still match it. Objects whose shard ids do not contain generated ids
+     * are saved under their routing keys.
+     *
+     * @return new id of moved object
+     */
+    public Optional<String> relocate(String objectId) throws IOException {
+        return relocate(objectId, (oldId, newId) -> { });
+    }
+
+    /**
+     * Moves object like {@link #relocate(String)}, reporting the new id to listener before the
+     * original is removed. When listener throws, the copy is removed instead and the object stays
+     * under its old id, so ids held elsewhere never point to removed objects.
+     *
+     * @return new id of moved object
+     */
+    public Optional<String> relocate(String objectId, BiConsumer<String, String> relocated) throws IOException {
+        ShardedId id = parseId(objectId);
+        if (id == null) {
+            throw new NoSuchElementException();
+        }
+        String owner = ownerOf(id.routingKey);
+        if (owner.equals(id.shard)) {
+            return Optional.empty();
+        }
+        String movedId;
+        try (InputStream content = shards.get(id.shard).getContent(id.shardObjectId)) {
+            movedId = shards.get(owner).save(content, getDataSetName(id));
+        }
+        String newId = toId(owner, id.routingKey, movedId);
+        try {
+            relocated.accept(objectId, newId);
+        } catch (RuntimeException e) {
+            removeQuietly(owner, movedId);
+            throw e;
+        }
+        try {
+            shards.get(id.shard).remove(id.shardObjectId);
+        } catch (IOException | RuntimeException e) {
+            //new id is already reported, original is only left behind
+            LOGGER.warn("Could not remove relocated " + objectId, e);
+        }
+        return Optional.of(newId);
+    }
+
+    /**
+     * Moves given objects which are not stored in shards owning their routing keys. Objects which
+     * could not be moved are skipped and stay readable under their ids.
+     *
+     * @return new ids of moved objects keyed by old ones
+     */
+    public Map<String, String> rebalance(Iterable<String> objectIds) {
+        return rebalance(objectIds, (oldId, newId) -> { });
+    }
+
+    /**
+     * Moves objects like {@link #rebalance(Iterable)}, reporting every move to listener before
+     * the original is removed, see {@link #relocate(String, BiConsumer)}.
+     *
+     * @return new ids of moved objects keyed by old ones
+     */
+    public Map<String, String> rebalance(Iterable<String> objectIds, BiConsumer<String, String> relocated) {
+        Map<String, String> moved = new LinkedHashMap<>();
+        for (String objectId : objectIds) {
+            try {
+                relocate(objectId, relocated).ifPresent(newId -> moved.put(objectId, newId));
+            } catch (IOException | RuntimeException e) {
+                LOGGER.warn("Could not relocate " + objectId, e);
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * Periodically rebalances objects listed by supplier, reporting every move to listener.
+     * Objects whose move listener fails to accept stay under their old ids.
+     */
+    public ScheduledFuture<?> scheduleRebalance(ScheduledExecutorService executor,
+            Supplier<? extends Iterable<String>> objectIds, BiConsumer<String, String> relocated,
+            long period, TimeUnit unit) {
+        return executor.scheduleWithFixedDelay(() -> {
+            try {
+                rebalance(objectIds.get(), relocated);
+            } catch (RuntimeException e) {
+                LOGGER.error("Rebalancing failed", e);
+            }
+        }, period, period, unit);
+    }
+
+    private void removeQuietly(String shard, String shardObjectId) {
+        try {
+            shards.get(shard).remove(shardObjectId);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Could not remove copy " + shardObjectId + " in shard " + shard, e);
+        }
+    }
+
+    String ownerOf(String routingKey) {
+        NavigableMap<Long, String> current = ring;
+        if (current.isEmpty()) {
+            throw new IllegalStateException("No shards");
+        }
+        Map.Entry<Long, String> node = current.ceilingEntry(hash(routingKey));
+        return node != null ? node.getValue() : current.firstEntry().getValue();
+    }
+
+    private static String newRoutingKey() {
+        return String.format("%016x", ThreadLocalRandom.current().nextLong());
+    }
+
+    private static long hash(String key) {
+        return HASH.hashString(key, StandardCharsets.UTF_8).asLong();
+    }
+
+    private static String getDataSetName(ShardedId id) {
+        return IdWithTimestamp.parse(id.shardObjectId)
+                .map(IdWithTimestamp::getDataSetName)
+                .orElse(id.routingKey);
+    }
+
+    private static String toId(String shard, String routingKey, String shardObjectId) {
+        return shard + ID_SEPARATOR + routingKey + ID_SEPARATOR + shardObjectId;
+    }
+
+    private ShardedId parseId(String objectId) {
+        String[] parts = objectId.split(ID_SEPARATOR, 3);
+        if (parts.length != 3 || !shards.containsKey(parts[0])) {
+            return null;
+        }
+        return new ShardedId(parts[0], parts[1], parts[2]);
+    }
+
+    private static final class ShardedId {
+        private final String shard;
+        private final String routingKey;
+        private final String shardObjectId;
+
+        private ShardedId(String shard, String routingKey, String shardObjectId) {
+            this.shard = shard;
+            this.routingKey = routingKey;
+            this.shardObjectId = shardObjectId;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Fallback for stores which can only save from {@link InputStream}. Content is spooled
+ * to a local temporary file and saved from there when stream is closed.
+ */
+class SpoolingObjectStoreOutputStream extends ObjectStoreOutputStream {
+
+    private final ObjectStore store;
+    private final String dataSetName;
+    private final WriteOptions options;
+    private final Path spoolFile;
+    private final FileChannel spool;
+
+    SpoolingObjectStoreOutputStream(ObjectStore store, String dataSetName, WriteOptions options)
+            throws IOException {
+        this.store = store;
+        this.dataSetName = dataSetName;
+        this.options = options;
+        this.spoolFile = Files.createTempFile("objectstore", ".spool");
+        this.spool = FileChannel.open(spoolFile, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        write(ByteBuffer.wrap(b, off, len));
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        ensureOpen();
+        int length = src.remaining();
+        while (src.hasRemaining()) {
+            spool.write(src);
+        }
+        return length;
+    }
+
+    @Override
+    protected String commit() throws IOException {
+        try {
+            spool.position(0);
+            InputStream input = Channels.newInputStream(spool);
+            return store.save(input, dataSetName, options.withExpectedLength(spool.size()));
+        } finally {
+            spool.close();
+        }
+    }
+
+    @Override
+    protected void discard() throws IOException {
+        spool.close();
+    }
+}
@@ -0,0 +1,562 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store;
+
+import static org.apache.commons.lang.RandomStringUtils.randomAlphanumeric;
+
+import org.trustedanalytics.id.IdWithTimestamp;
+import org.trustedanalytics.store.io.TransferEngine;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Acknowledges saves as soon as object is durably staged on local disk and uploads it to
+ * remote store in background. Objects are read from staging area until upload completes.
+ *
+ * Staged objects and their remote ids are tracked in fsynced journal, so uploads interrupted
+ * by restart are resumed when store is created again on the same staging directory.
+ *
+ * Ids returned by this store are local to it and stay valid until objects are removed. Uploaded
+ * objects are kept in journal, and in memory, as compact mapping of local ids to remote ones.
+ * Remote id of every uploaded object is also passed to flush listener, so that references can be
+ * switched to ids resolved by remote store from any host.
+ */
+public class WriteBehindObjectStore implements ObjectStore, Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WriteBehindObjectStore.class);
+    private static final int RANDOM_ELEMENTS_COUNT = 2;
+
+    private static final String JOURNAL_FILENAME = "journal";
+    private static final String COMPACTED_JOURNAL_FILENAME = "journal.compacted";
+    private static final String STAGED_SUFFIX = ".staged";
+
+    private static final byte STAGED = 'S';
+    private static final byte FLUSHED = 'F';
+    private static final byte REMOVED = 'R';
+    private static final byte MAPPED = 'M';
+
+    private static final long RETRY_DELAY_SECONDS = 10;
+    private static final long COMPACTION_PERIOD_SECONDS = 60;
+
+    private final ObjectStore remote;
+    private final Path stagingDir;
+    private final ScheduledExecutorService uploader;
+    private final Map<String, StagedObject> objects = new ConcurrentHashMap<>();
+    //remote ids of uploaded objects by local ones, staged objects are moved here by compaction
+    private final Map<String, String> flushedIds = new ConcurrentHashMap<>();
+
+    private final Object journalLock = new Object();
+    private FileChannel journal;
+    private long journalRecords;
+
+    private volatile BiConsumer<String, String> flushListener = (id, remoteId) -> { };
+
+    private final Object pendingLock = new Object();
+    private int pending;
+
+    public WriteBehindObjectStore(ObjectStore remote, String stagingDir, int parallelism) throws IOException {
+        this.remote = remote;
+        this.stagingDir = Paths.get(stagingDir);
+        this.uploader = Executors.newScheduledThreadPool(parallelism,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("objectstore-write-behind-%d").build());
+
+        Files.createDirectories(this.stagingDir);
+        replayJournal();
+        removeUnacknowledgedFiles();
+        objects.values().stream()
+                .filter(object -> object.remoteId == null)
+                .forEach(this::scheduleUpload);
+        uploader.scheduleWithFixedDelay(this::compactJournalQuietly, COMPACTION_PERIOD_SECONDS,
+                COMPACTION_PERIOD_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public String save(InputStream input, String dataSetName) throws IOException {
+        ObjectStoreOutputStream output = openForWrite(dataSetName);
+        try {
+            TransferEngine.DEFAULT.copy(input, (WritableByteChannel) output);
+        } catch (IOException | RuntimeException e) {
+            output.abort();
+            throw e;
+        }
+        output.close();
+        return output.getObjectId();
+    }
+
+    /**
+     * Opens stream writing directly to staged file. Object is journaled and scheduled
+     * for upload when stream is closed.
+     */
+    @Override
+    public ObjectStoreOutputStream openForWrite(String dataSetName, WriteOptions options) throws IOException {
+        StagedObject object = reserveId(dataSetName, UUID.randomUUID().toString() + STAGED_SUFFIX);
+        Path file = stagingDir.resolve(object.fileName);
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        } catch (IOException | RuntimeException e) {
+            objects.remove(object.id);
+            throw e;
+        }
+        return new StagedObjectOutputStream(object, file, channel);
+    }
+
+    @Override
+    public InputStream getContent(String objectId) throws IOException {
+        StagedObject object = objects.get(objectId);
+        if (object == null) {
+            String remoteId = flushedIds.get(objectId);
+            if (remoteId == null) {
+                throw new FileNotFoundException("No object with id: " + objectId);
+            }
+            return remote.getContent(remoteId);
+        }
+        if (object.remoteId == null) {
+            try {
+                return new FileInputStream(stagingDir.resolve(object.fileName).toFile());
+            } catch (FileNotFoundException e) {
+                //upload completed meanwhile and staged copy is already deleted
+                if (object.remoteId == null) {
+                    throw e;
+                }
+            }
+        }
+        return remote.getContent(object.remoteId);
+    }
+
+    @Override
+    public void remove(String objectId) throws IOException {
+        StagedObject object = objects.get(objectId);
+        if (object == null) {
+            removeFlushed(objectId);
+            return;
+        }
+        synchronized (object) {
+            if (object.remoteId != null) {
+                try {
+                    remote.remove(object.remoteId);
+                } catch (NoSuchElementException e) {
+                    //removed before a crash prevented journaling it
+                }
+            }
+            //not yet uploaded object is removed from remote store by its upload
+            object.removed = true;
+            synchronized (journalLock) {
+                appendToJournal(REMOVED, objectId);
+                flushedIds.remove(objectId);
+            }
+            objects.remove(objectId);
+        }
+        Files.deleteIfExists(stagingDir.resolve(object.fileName));
+    }
+
+    private void removeFlushed(String objectId) throws IOException {
+        String remoteId = flushedIds.get(objectId);
+        if (remoteId == null) {
+            throw new NoSuchElementException();
+        }
+        try {
+            remote.remove(remoteId);
+        } catch (NoSuchElementException e) {
+            //removed concurrently or before a crash prevented journaling it
+        }
+        synchronized (journalLock) {
+            if (!flushedIds.containsKey(objectId)) {
+                throw new NoSuchElementException();
+            }
+            appendToJournal(REMOVED, objectId);
+            flushedIds.remove(objectId);
+        }
+    }
+
+    @Override
+    public void warmUp() throws IOException {
+        remote.warmUp();
+    }
+
+    @Override
+    public String getId() {
+        return remote.getId();
+    }
+
+    /**
+     * Listener is called with local and remote id of every uploaded object, so that references
+     * to the object can be switched to the id resolved by remote store from any host. Listener is
+     * called once journal records the upload, it is not called again after restart.
+     */
+    public void setFlushListener(BiConsumer<String, String> flushListener) {
+        this.flushListener = flushListener;
+    }
+
+    /**
+     * Replaces records of uploaded objects with compact mapping of their ids and rewrites journal
+     * without records of removed objects. It is done periodically once most records are obsolete.
+     */
+    public void compactJournal() throws IOException {
+        mapFlushedIds();
+        synchronized (journalLock) {
+            rewriteJournal();
+        }
+    }
+
+    private void compactJournalQuietly() {
+        try {
+            mapFlushedIds();
+            synchronized (journalLock) {
+                if (journalRecords > 2 * (flushedIds.size() + 2L * objects.size())) {
+                    rewriteJournal();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("compaction of journal in '" + stagingDir + "' failed", e);
+        }
+    }
+
+    /**
+     * Moves uploaded objects from staged ones to id mapping, they are journaled the same way
+     * by next rewrite.
+     */
+    private void mapFlushedIds() {
+        for (StagedObject object : objects.values()) {
+            synchronized (object) {
+                if (object.remoteId != null && !object.removed) {
+                    flushedIds.put(object.id, object.remoteId);
+                    objects.remove(object.id, object);
+                }
+            }
+        }
+    }
+
+    /**
+     * Blocks until all objects staged so far are uploaded to remote store.
+     *
+     * @return false if timeout elapsed first
+     */
+    public boolean awaitFlushed(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (pendingLock) {
+            while (pending > 0) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(pendingLock, left);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Stops uploader. Objects not uploaded yet stay staged and are uploaded after restart.
+     */
+    @Override
+    public void close() throws IOException {
+        uploader.shutdownNow();
+        try {
+            uploader.awaitTermination(RETRY_DELAY_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (journalLock) {
+            journal.close();
+        }
+    }
+
+    private StagedObject reserveId(String dataSetName, String fileName) {
+        String id = IdWithTimestamp.generate(dataSetName).getId();
+        while (true) {
+            id += "-" + randomAlphanumeric(RANDOM_ELEMENTS_COUNT);
+            StagedObject object = new StagedObject(id, dataSetName, fileName);
+            if (objects.putIfAbsent(id, object) == null) {
+                return object;
+            }
+        }
+    }
+
+    private void scheduleUpload(StagedObject object) {
+        changePending(1);
+        uploader.execute(() -> upload(object));
+    }
+
+    private void upload(StagedObject object) {
+        Path file = stagingDir.resolve(object.fileName);
+        try {
+            if (!object.removed) {
+                String remoteId;
+                try (InputStream input = new FileInputStream(file.toFile())) {
+                    remoteId = remote.save(input, object.dataSetName);
+                }
+                boolean flushed = false;
+                synchronized (object) {
+                    if (object.removed) {
+                        remote.remove(remoteId);
+                    } else {
+                        synchronized (journalLock) {
+                            appendToJournal(FLUSHED, object.id, remoteId);
+                            object.remoteId = remoteId;
+                        }
+                        flushed = true;
+                    }
+                }
+                if (flushed) {
+                    notifyFlushed(object.id, remoteId);
+                }
+            }
+            Files.deleteIfExists(file);
+            changePending(-1);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("upload of '" + object.id + "' failed, retrying in " + RETRY_DELAY_SECONDS + "s", e);
+            try {
+                uploader.schedule(() -> upload(object), RETRY_DELAY_SECONDS, TimeUnit.SECONDS);
+            } catch (RejectedExecutionException rejected) {
+                LOGGER.info("store closed, '{}' will be uploaded after restart", object.id);
+            }
+        }
+    }
+
+    private void notifyFlushed(String id, String remoteId) {
+        try {
+            flushListener.accept(id, remoteId);
+        } catch (RuntimeException e) {
+            LOGGER.warn("flush listener failed for '" + id + "' uploaded as '" + remoteId + "'", e);
+        }
+    }
+
+    private void changePending(int delta) {
+        synchronized (pendingLock) {
+            pending += delta;
+            pendingLock.notifyAll();
+        }
+    }
+
+    private void appendToJournal(byte type, String... values) throws IOException {
+        synchronized (journalLock) {
+            writeRecord(journal, type, values);
+            journal.force(false);
+            journalRecords++;
+        }
+    }
+
+    private static void writeRecord(FileChannel channel, byte type, String... values) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream record = new DataOutputStream(bytes);
+        record.writeByte(type);
+        for (String value : values) {
+            record.writeUTF(value);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Replaces journal with records of mapped ids and of committed staged objects which are not
+     * removed, written aside and moved over it. Has to be called with journal lock held.
+     */
+    private void rewriteJournal() throws IOException {
+        Path journalPath = stagingDir.resolve(JOURNAL_FILENAME);
+        Path compacted = stagingDir.resolve(COMPACTED_JOURNAL_FILENAME);
+        Files.deleteIfExists(compacted);
+        try (FileChannel output = FileChannel.open(compacted, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE)) {
+            long records = 0;
+            for (Map.Entry<String, String> mapped : flushedIds.entrySet()) {
+                writeRecord(output, MAPPED, mapped.getKey(), mapped.getValue());
+                records++;
+            }
+            for (StagedObject object : objects.values()) {
+                if (!object.committed || object.removed) {
+                    continue;
+                }
+                writeRecord(output, STAGED, object.id, object.dataSetName, object.fileName);
+                records++;
+                if (object.remoteId != null) {
+                    writeRecord(output, FLUSHED, object.id, object.remoteId);
+                    records++;
+                }
+            }
+            output.force(true);
+            journalRecords = records;
+        }
+        if (journal != null) {
+            journal.close();
+        }
+        Files.move(compacted, journalPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        journal = FileChannel.open(journalPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Loads state from journal and rewrites it compacted, without records of removed and torn entries.
+     */
+    private void replayJournal() throws IOException {
+        Path journalPath = stagingDir.resolve(JOURNAL_FILENAME);
+        Map<String, StagedObject> replayed = new LinkedHashMap<>();
+        Map<String, String> mapped = new LinkedHashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(journalPath)))) {
+            while (true) {
+                byte type = in.readByte();
+                String id = in.readUTF();
+                if (type == STAGED) {
+                    replayed.put(id, new StagedObject(id, in.readUTF(), in.readUTF()));
+                } else if (type == FLUSHED) {
+                    String remoteId = in.readUTF();
+                    if (replayed.containsKey(id)) {
+                        replayed.get(id).remoteId = remoteId;
+                    }
+                } else if (type == MAPPED) {
+                    mapped.put(id, in.readUTF());
+                } else if (type == REMOVED) {
+                    replayed.remove(id);
+                    mapped.remove(id);
+                } else {
+                    throw new IOException("Corrupted journal " + journalPath);
+                }
+            }
+        } catch (NoSuchFileException | EOFException e) {
+            //no journal yet or last record torn by crash before it was acknowledged
+        }
+
+        flushedIds.putAll(mapped);
+        for (StagedObject object : replayed.values()) {
+            if (object.remoteId != null) {
+                flushedIds.put(object.id, object.remoteId);
+            } else if (Files.exists(stagingDir.resolve(object.fileName))) {
+                object.committed = true;
+                objects.put(object.id, object);
+            } else {
+                LOGGER.error("staged copy of '{}' is lost, object dropped", object.id);
+            }
+        }
+        synchronized (journalLock) {
+            rewriteJournal();
+        }
+    }
+
+    private void removeUnacknowledgedFiles() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(stagingDir, "*" + STAGED_SUFFIX)) {
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                boolean pendingUpload = objects.values().stream()
+                        .anyMatch(object -> object.remoteId == null && fileName.equals(object.fileName));
+                if (!pendingUpload) {
+                    LOGGER.info("removing unacknowledged or already uploaded file '{}'", file);
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    private final class StagedObjectOutputStream extends ObjectStoreOutputStream {
+
+        private final StagedObject object;
+        private final Path file;
+        private final FileChannel channel;
+
+        private StagedObjectOutputStream(StagedObject object, Path file, FileChannel channel) {
+            this.object = object;
+            this.file = file;
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            write(ByteBuffer.wrap(b, off, len));
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            ensureOpen();
+            int length = src.remaining();
+            while (src.hasRemaining()) {
+                channel.write(src);
+            }
+            return length;
+        }
+
+        @Override
+        protected String commit() throws IOException {
+            try {
+                channel.force(true);
+                channel.close();
+                synchronized (journalLock) {
+                    appendToJournal(STAGED, object.id, object.dataSetName, object.fileName);
+                    object.committed = true;
+                }
+            } catch (IOException | RuntimeException e) {
+                discard();
+                throw e;
+            }
+            scheduleUpload(object);
+            return object.id;
+        }
+
+        @Override
+        protected void discard() throws IOException {
+            objects.remove(object.id);
+            channel.close();
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static class StagedObject {
+        private final String id;
+        private final String dataSetName;
+        private final String fileName;
+        private volatile String remoteId;
+        private volatile boolean removed;
+        private volatile boolean committed;
+
+        StagedObject(String id, String dataSetName, String fileName) {
+            this.id = id;
+            this.dataSetName = dataSetName;
+            this.fileName = fileName;
+        }
+    }
+}
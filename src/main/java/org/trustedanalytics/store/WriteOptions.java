@@ -0,0 +1,134 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store;
+
+import java.util.Optional;
+
+/**
+ * Hints for writing single object. Every store applies the ones it understands and ignores the rest.
+ */
+public final class WriteOptions {
+
+    public static final int DEFAULT_BUFFER_SIZE = 128 * 1024;
+
+    public static final WriteOptions DEFAULT = new WriteOptions(DEFAULT_BUFFER_SIZE, null, null, null, null, null);
+
+    private final int bufferSize;
+    private final Long expectedLength;
+    private final Long blockSize;
+    private final Short replication;
+    private final String storageClass;
+    private final String contentType;
+
+    private WriteOptions(int bufferSize, Long expectedLength, Long blockSize, Short replication,
+            String storageClass, String contentType) {
+        this.bufferSize = bufferSize;
+        this.expectedLength = expectedLength;
+        this.blockSize = blockSize;
+        this.replication = replication;
+        this.storageClass = storageClass;
+        this.contentType = contentType;
+    }
+
+    public WriteOptions withBufferSize(int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize");
+        }
+        return new WriteOptions(bufferSize, expectedLength, blockSize, replication, storageClass, contentType);
+    }
+
+    /**
+     * @param expectedLength exact length of the stream, lets stores skip buffering to find it out
+     */
+    public WriteOptions withExpectedLength(long expectedLength) {
+        if (expectedLength < 0) {
+            throw new IllegalArgumentException("expectedLength");
+        }
+        return new WriteOptions(bufferSize, expectedLength, blockSize, replication, storageClass, contentType);
+    }
+
+    /**
+     * HDFS only
+     */
+    public WriteOptions withBlockSize(long blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("blockSize");
+        }
+        return new WriteOptions(bufferSize, expectedLength, blockSize, replication, storageClass, contentType);
+    }
+
+    /**
+     * HDFS only
+     */
+    public WriteOptions withReplication(short replication) {
+        if (replication < 1) {
+            throw new IllegalArgumentException("replication");
+        }
+        return new WriteOptions(bufferSize, expectedLength, blockSize, replication, storageClass, contentType);
+    }
+
+    /**
+     * S3 only
+     *
+     * @param storageClass S3 storage class name, e.g. STANDARD_IA or GLACIER
+     */
+    public WriteOptions withStorageClass(String storageClass) {
+        return new WriteOptions(bufferSize, expectedLength, blockSize, replication, storageClass, contentType);
+    }
+
+    /**
+     * S3 only
+     */
+    public WriteOptions withContentType(String contentType) {
+        return new WriteOptions(bufferSize, expectedLength, blockSize, replication, storageClass, contentType);
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public Optional<Long> getExpectedLength() {
+        return Optional.ofNullable(expectedLength);
+    }
+
+    public Optional<Long> getBlockSize() {
+        return Optional.ofNullable(blockSize);
+    }
+
+    public Optional<Short> getReplication() {
+        return Optional.ofNullable(replication);
+    }
+
+    public Optional<String> getStorageClass() {
+        return Optional.ofNullable(storageClass);
+    }
+
+    public Optional<String> getContentType() {
+        return Optional.ofNullable(contentType);
+    }
+
+    @Override
+    public String toString() {
+        return "WriteOptions{" +
+                "bufferSize=" + bufferSize +
+                ", expectedLength=" + expectedLength +
+                ", blockSize=" + blockSize +
+                ", replication=" + replication +
+                ", storageClass='" + storageClass + '\'' +
+                ", contentType='" + contentType + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,32 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+@Data
+@ConfigurationProperties(prefix = "objectstore.encryption")
+public class EncryptionProperties {
+  /**
+   * Key store with secret keys of organizations aliased by their ids, objects of organizations
+   * without a key are not encrypted. Encryption is disabled when not set.
+   */
+  private String keyStore;
+  private String keyStoreType = "JCEKS";
+  private String keyStorePassword = "";
+}
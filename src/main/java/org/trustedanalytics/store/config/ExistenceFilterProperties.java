@@ -0,0 +1,47 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+@Data
+@ConfigurationProperties(prefix = "objectstore.existence-filter")
+public class ExistenceFilterProperties {
+  /**
+   * Probe unique ids of new hdfs objects against a filter of existing ones instead of NameNode.
+   */
+  private boolean enabled = false;
+
+  /**
+   * Objects the filter is sized for, false positive rate grows when there are more.
+   */
+  private long expectedObjects = 1_000_000;
+
+  private double falsePositiveRate = 0.01;
+
+  /**
+   * Period of rebuilding the filter from listing, which drops removed objects.
+   */
+  private long rebuildMinutes = 60;
+
+  /**
+   * Directory the filter is persisted to on shutdown and loaded from on start, instead of
+   * listing the store. Not persisted when not set.
+   */
+  private String directory;
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.trustedanalytics.store.expiry.TtlPolicy;
+
+import lombok.Data;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+@Data
+@ConfigurationProperties(prefix = "objectstore.expiry")
+public class ExpiryProperties {
+  /**
+   * Ttl policies, first one matching data set name of an object applies.
+   */
+  private List<Policy> policies = new ArrayList<>();
+
+  /**
+   * Removals running in parallel.
+   */
+  private int parallelism = 4;
+
+  private double removalsPerSecond = 50;
+
+  private long periodMinutes = 60;
+
+  /**
+   * Expire objects in S3 with bucket lifecycle rules, where policy can be expressed with them.
+   */
+  private boolean s3LifecycleRules = false;
+
+  /**
+   * @return policies applying to store with given name, in configured order
+   */
+  public List<TtlPolicy> getPolicies(String storeName) {
+    return policies.stream()
+        .filter(policy -> policy.getStore() == null || policy.getStore().equals(storeName))
+        .map(policy -> new TtlPolicy(policy.getDataSet(), Duration.ofHours(policy.getTtlHours())))
+        .collect(Collectors.toList());
+  }
+
+  @Data
+  public static class Policy {
+    /**
+     * Name of the store (in-folder, s3, hdfs), all stores when not set.
+     */
+    private String store;
+
+    /**
+     * Data set name pattern, '*' matches any characters.
+     */
+    private String dataSet = "*";
+
+    private long ttlHours;
+  }
+}
@@ -24,4 +24,50 @@ import lombok.Data;
 public class HdfsProperties {
   private String configDir;
   private String uri;
+
+  /**
+   * File systems of multitenant HDFS users kept open, least recently used are closed above it.
+   */
+  private int maxFileSystems = 200;
+
+  /**
+   * File system of a user is closed after this many minutes without requests.
+   */
+  private int fileSystemIdleMinutes = 10;
+
+  /**
+   * Nest object directories in day and hour buckets taken from their ids, so that chroot
+   * does not reach NameNode limit of directory items.
+   */
+  private boolean timeBuckets = false;
+
+  /**
+   * With time buckets, look up objects saved before they were enabled directly under chroot.
+   */
+  private boolean flatFallback = true;
+
+  /**
+   * Remove objects by moving them to trash, which is emptied in background by a reaper of each chroot.
+   */
+  private boolean fastRemove = false;
+
+  /**
+   * Minutes between reaper runs in fast remove mode.
+   */
+  private int trashReapingMinutes = 5;
+
+  /**
+   * Removed objects stay in trash at least this many minutes, so that readers which opened them can finish.
+   */
+  private int trashGraceMinutes = 5;
+
+  /**
+   * Threads deleting files from trash of a chroot.
+   */
+  private int trashReaperThreads = 2;
+
+  /**
+   * Rate of deletes issued by reaper of a chroot, keeps NameNode from being overloaded by removal of large objects.
+   */
+  private double trashDeletesPerSecond = 100;
 }
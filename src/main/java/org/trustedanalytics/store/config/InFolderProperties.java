@@ -0,0 +1,35 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+@Data
+@ConfigurationProperties(prefix = "objectstore.in-folder")
+public class InFolderProperties {
+  /**
+   * Read objects through memory mappings instead of read calls.
+   */
+  private boolean memoryMapped = false;
+
+  /**
+   * Smaller objects are read with regular reads even when memory mapping is enabled,
+   * mapping costs more than it saves for them.
+   */
+  private long memoryMapThresholdBytes = 1024 * 1024;
+}
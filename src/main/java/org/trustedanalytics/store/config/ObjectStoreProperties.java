@@ -0,0 +1,45 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+@Data
+@ConfigurationProperties(prefix = "objectstore")
+public class ObjectStoreProperties {
+  /**
+   * Create store on first use instead of at startup.
+   */
+  private boolean lazy = false;
+
+  /**
+   * Open backend connections before store is reported ready.
+   */
+  private boolean warmUp = true;
+
+  /**
+   * Temporary files of saves interrupted e.g. by a crash are deleted once they are older than this.
+   * Has to exceed the longest upload.
+   */
+  private long temporaryMaxAgeMinutes = 24 * 60;
+
+  /**
+   * Minutes between sweeps of temporary files of in-folder and HDFS stores.
+   */
+  private long temporarySweepMinutes = 60;
+}
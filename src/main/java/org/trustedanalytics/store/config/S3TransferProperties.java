@@ -0,0 +1,55 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+@Data
+@ConfigurationProperties(prefix = "objectstore.s3")
+public class S3TransferProperties {
+  /**
+   * Custom S3 endpoint, AWS default is used when not set.
+   */
+  private String endpoint;
+
+  private int maxConnections = 50;
+  private int connectionTimeoutMillis = 10 * 1000;
+  private int socketTimeoutMillis = 50 * 1000;
+  private boolean tcpKeepAlive = true;
+
+  /**
+   * Threads uploading objects and their parts.
+   */
+  private int threads = 10;
+
+  /**
+   * Transfers waiting for a thread, callers upload by themselves when it is exceeded.
+   */
+  private int queueCapacity = 100;
+
+  private long multipartUploadThreshold = 16L * 1024 * 1024;
+  private long minimumUploadPartSize = 5L * 1024 * 1024;
+
+  /**
+   * Server-side copies of larger objects are split into parts copied in parallel.
+   */
+  private long multipartCopyThreshold = 256L * 1024 * 1024;
+  private long multipartCopyPartSize = 64L * 1024 * 1024;
+
+  private int shutdownTimeoutSeconds = 30;
+}
@@ -0,0 +1,40 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+@Data
+@ConfigurationProperties(prefix = "objectstore.tracing")
+public class TracingProperties {
+  /**
+   * Time phases of creating stores and saving objects and expose them as metrics.
+   */
+  private boolean enabled = false;
+
+  /**
+   * Log phases taking longer than this, when tracing is enabled.
+   */
+  private long slowPhaseMillis = 1000;
+
+  /**
+   * Also emit phases as Java Flight Recorder events when tracing is enabled and the JVM
+   * has flight recorder API (8u262 or later).
+   */
+  private boolean flightRecorder = true;
+}
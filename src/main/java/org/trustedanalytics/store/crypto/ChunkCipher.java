@@ -0,0 +1,176 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.crypto;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+/**
+ * AES-GCM applied to fixed size chunks of an object, so that any chunk can be decrypted
+ * without the ones before it. Each object gets its own key derived from the master key and
+ * a random salt kept in the object header, chunk index is used as nonce. The last chunk is
+ * always shorter than the others (empty if needed) and authenticated as last, which makes
+ * truncation detectable.
+ *
+ * <pre>
+ * header: magic (4) | chunk size (4) | salt (16)
+ * chunk:  ciphertext (chunk size, shorter for the last one) | tag (16)
+ * </pre>
+ */
+final class ChunkCipher {
+
+    static final int MAGIC = 0x54414531;
+    static final int TAG_LENGTH = 16;
+    static final int SALT_LENGTH = 16;
+    static final int HEADER_LENGTH = 4 + 4 + SALT_LENGTH;
+    static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    static final int MAX_CHUNK_SIZE = 16 * 1024 * 1024;
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final String KEY_DERIVATION = "HmacSHA256";
+    private static final int NONCE_LENGTH = 12;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final int chunkSize;
+    private final byte[] salt;
+    private final SecretKey key;
+    private final Cipher cipher;
+    private final byte[] nonce = new byte[NONCE_LENGTH];
+    private final byte[] lastFlag = new byte[1];
+
+    private ChunkCipher(SecretKey masterKey, int chunkSize, byte[] salt) throws IOException {
+        this.chunkSize = chunkSize;
+        this.salt = salt;
+        try {
+            this.key = deriveKey(masterKey, salt);
+            this.cipher = Cipher.getInstance(TRANSFORMATION);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Cannot initialize " + TRANSFORMATION, e);
+        }
+    }
+
+    static ChunkCipher forWriting(SecretKey masterKey, int chunkSize) throws IOException {
+        if (chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE) {
+            throw new IllegalArgumentException("chunkSize: " + chunkSize);
+        }
+        byte[] salt = new byte[SALT_LENGTH];
+        RANDOM.nextBytes(salt);
+        return new ChunkCipher(masterKey, chunkSize, salt);
+    }
+
+    /**
+     * Reads header of encrypted object from its beginning.
+     */
+    static ChunkCipher forReading(SecretKey masterKey, InputStream input) throws IOException {
+        DataInputStream header = new DataInputStream(input);
+        int magic;
+        int chunkSize;
+        byte[] salt = new byte[SALT_LENGTH];
+        try {
+            magic = header.readInt();
+            chunkSize = header.readInt();
+            header.readFully(salt);
+        } catch (EOFException e) {
+            throw new IOException("Object is not encrypted, header is missing", e);
+        }
+        if (magic != MAGIC) {
+            throw new IOException("Object is not encrypted or has unknown format");
+        }
+        if (chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE) {
+            throw new IOException("Corrupted header, chunk size: " + chunkSize);
+        }
+        return new ChunkCipher(masterKey, chunkSize, salt);
+    }
+
+    byte[] header() {
+        return ByteBuffer.allocate(HEADER_LENGTH).putInt(MAGIC).putInt(chunkSize).put(salt).array();
+    }
+
+    int getChunkSize() {
+        return chunkSize;
+    }
+
+    int getEncryptedChunkSize() {
+        return chunkSize + TAG_LENGTH;
+    }
+
+    long encryptedOffset(long chunkIndex) {
+        return HEADER_LENGTH + chunkIndex * getEncryptedChunkSize();
+    }
+
+    static long encryptedLength(long length, int chunkSize) {
+        return HEADER_LENGTH + length + (length / chunkSize + 1) * TAG_LENGTH;
+    }
+
+    /**
+     * @return length of encrypted chunk written to output
+     */
+    int encrypt(long chunkIndex, boolean last, byte[] input, int length, byte[] output) throws IOException {
+        try {
+            init(Cipher.ENCRYPT_MODE, chunkIndex, last);
+            return cipher.doFinal(input, 0, length, output, 0);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Cannot encrypt chunk " + chunkIndex, e);
+        }
+    }
+
+    /**
+     * @return length of decrypted chunk written to output
+     */
+    int decrypt(long chunkIndex, boolean last, byte[] input, int length, byte[] output) throws IOException {
+        try {
+            init(Cipher.DECRYPT_MODE, chunkIndex, last);
+            return cipher.doFinal(input, 0, length, output, 0);
+        } catch (AEADBadTagException e) {
+            throw new IOException("Chunk " + chunkIndex + " is corrupted, truncated or encrypted with other key", e);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Cannot decrypt chunk " + chunkIndex, e);
+        }
+    }
+
+    private void init(int mode, long chunkIndex, boolean last) throws GeneralSecurityException {
+        ByteBuffer.wrap(nonce, NONCE_LENGTH - 8, 8).putLong(chunkIndex);
+        cipher.init(mode, key, new GCMParameterSpec(TAG_LENGTH * 8, nonce));
+        lastFlag[0] = (byte) (last ? 1 : 0);
+        cipher.updateAAD(lastFlag);
+    }
+
+    /**
+     * Derived key has the length of the master key, so 256 bit keys are used only when
+     * they are configured (and allowed by JCE policy).
+     */
+    private static SecretKey deriveKey(SecretKey masterKey, byte[] salt) throws GeneralSecurityException {
+        byte[] encoded = masterKey.getEncoded();
+        if (encoded == null || (encoded.length != 16 && encoded.length != 24 && encoded.length != 32)) {
+            throw new IllegalArgumentException("AES master key of 128, 192 or 256 bits is required");
+        }
+        Mac mac = Mac.getInstance(KEY_DERIVATION);
+        mac.init(new SecretKeySpec(encoded, KEY_DERIVATION));
+        byte[] derived = mac.doFinal(salt);
+        return new SecretKeySpec(derived, 0, encoded.length, "AES");
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.crypto;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads encrypted chunks starting from given one and decrypts them one at a time.
+ */
+final class DecryptingInputStream extends InputStream {
+
+    private final InputStream source;
+    private final ChunkCipher cipher;
+    private final byte[] encrypted;
+    private final byte[] plain;
+    private long chunkIndex;
+    private int skip;
+    private int position;
+    private int limit;
+    private boolean last;
+
+    /**
+     * @param source stream positioned at the beginning of first chunk
+     * @param skip number of bytes of first chunk which are not returned
+     */
+    DecryptingInputStream(InputStream source, ChunkCipher cipher, long firstChunk, int skip) {
+        this.source = source;
+        this.cipher = cipher;
+        this.encrypted = new byte[cipher.getEncryptedChunkSize()];
+        this.plain = new byte[cipher.getChunkSize()];
+        this.chunkIndex = firstChunk;
+        this.skip = skip;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (position == limit) {
+            if (last) {
+                return -1;
+            }
+            readChunk();
+        }
+        int length = Math.min(len, limit - position);
+        System.arraycopy(plain, position, b, off, length);
+        position += length;
+        return length;
+    }
+
+    @Override
+    public int available() {
+        return limit - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+
+    private void readChunk() throws IOException {
+        int length = readFully();
+        if (length < ChunkCipher.TAG_LENGTH) {
+            throw new IOException("Encrypted object is truncated at chunk " + chunkIndex);
+        }
+        last = length < encrypted.length;
+        limit = cipher.decrypt(chunkIndex++, last, encrypted, length, plain);
+        position = Math.min(skip, limit);
+        skip = 0;
+    }
+
+    private int readFully() throws IOException {
+        int length = 0;
+        while (length < encrypted.length) {
+            int read = source.read(encrypted, length, encrypted.length - length);
+            if (read < 0) {
+                break;
+            }
+            length += read;
+        }
+        return length;
+    }
+}
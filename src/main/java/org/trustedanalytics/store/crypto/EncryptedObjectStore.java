@@ -0,0 +1,134 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.crypto;
+
+import org.trustedanalytics.store.ObjectStore;
+import org.trustedanalytics.store.ObjectStoreOutputStream;
+import org.trustedanalytics.store.WriteOptions;
+import org.trustedanalytics.store.io.TransferEngine;
+
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.stream.Stream;
+
+/**
+ * Encrypts objects of the underlying store with AES-GCM in chunks (see {@link ChunkCipher}).
+ * Reads from an offset fetch and decrypt only the chunks from the one containing it. Ids are
+ * the ids of the underlying store.
+ */
+public class EncryptedObjectStore implements ObjectStore {
+
+    private final ObjectStore store;
+    private final SecretKey key;
+    private final int chunkSize;
+
+    public EncryptedObjectStore(ObjectStore store, SecretKey key) {
+        this(store, key, ChunkCipher.DEFAULT_CHUNK_SIZE);
+    }
+
+    public EncryptedObjectStore(ObjectStore store, SecretKey key, int chunkSize) {
+        if (chunkSize <= 0 || chunkSize > ChunkCipher.MAX_CHUNK_SIZE) {
+            throw new IllegalArgumentException("chunkSize: " + chunkSize);
+        }
+        this.store = store;
+        this.key = key;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public String save(InputStream input, String dataSetName) throws IOException {
+        return save(input, dataSetName, WriteOptions.DEFAULT);
+    }
+
+    @Override
+    public String save(InputStream input, String dataSetName, WriteOptions options) throws IOException {
+        ObjectStoreOutputStream output = openForWrite(dataSetName, options);
+        try {
+            TransferEngine.DEFAULT.copy(input, (OutputStream) output, options.getBufferSize());
+        } catch (IOException | RuntimeException e) {
+            output.abort();
+            throw e;
+        }
+        output.close();
+        return output.getObjectId();
+    }
+
+    @Override
+    public ObjectStoreOutputStream openForWrite(String dataSetName, WriteOptions options) throws IOException {
+        WriteOptions encryptedOptions = options.getExpectedLength()
+                .map(length -> options.withExpectedLength(ChunkCipher.encryptedLength(length, chunkSize)))
+                .orElse(options);
+        ChunkCipher cipher = ChunkCipher.forWriting(key, chunkSize);
+        ObjectStoreOutputStream output = store.openForWrite(dataSetName, encryptedOptions);
+        try {
+            return new EncryptingOutputStream(output, cipher);
+        } catch (IOException | RuntimeException e) {
+            output.abort();
+            throw e;
+        }
+    }
+
+    @Override
+    public InputStream getContent(String objectId) throws IOException {
+        InputStream input = store.getContent(objectId);
+        try {
+            return new DecryptingInputStream(input, ChunkCipher.forReading(key, input), 0, 0);
+        } catch (IOException | RuntimeException e) {
+            input.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads header of the object first, then content from the chunk containing offset.
+     */
+    @Override
+    public InputStream getContent(String objectId, long offset) throws IOException {
+        if (offset == 0) {
+            return getContent(objectId);
+        }
+        ChunkCipher cipher;
+        try (InputStream header = store.getContent(objectId)) {
+            cipher = ChunkCipher.forReading(key, header);
+        }
+        long chunk = offset / cipher.getChunkSize();
+        int skip = (int) (offset % cipher.getChunkSize());
+        InputStream input = store.getContent(objectId, cipher.encryptedOffset(chunk));
+        return new DecryptingInputStream(input, cipher, chunk, skip);
+    }
+
+    @Override
+    public void remove(String objectId) throws IOException {
+        store.remove(objectId);
+    }
+
+    @Override
+    public Stream<String> listObjectIds() throws IOException {
+        return store.listObjectIds();
+    }
+
+    @Override
+    public void warmUp() throws IOException {
+        store.warmUp();
+    }
+
+    @Override
+    public String getId() {
+        return store.getId();
+    }
+}
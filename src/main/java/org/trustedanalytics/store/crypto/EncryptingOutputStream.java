@@ -0,0 +1,75 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.crypto;
+
+import org.trustedanalytics.store.ObjectStoreOutputStream;
+
+import java.io.IOException;
+
+/**
+ * Encrypts content chunk by chunk into stream of the underlying store. Full chunks are
+ * written as soon as they are complete, the remainder is written as the last chunk on close.
+ */
+final class EncryptingOutputStream extends ObjectStoreOutputStream {
+
+    private final ObjectStoreOutputStream target;
+    private final ChunkCipher cipher;
+    private final byte[] plain;
+    private final byte[] encrypted;
+    private int buffered;
+    private long chunkIndex;
+
+    EncryptingOutputStream(ObjectStoreOutputStream target, ChunkCipher cipher) throws IOException {
+        this.target = target;
+        this.cipher = cipher;
+        this.plain = new byte[cipher.getChunkSize()];
+        this.encrypted = new byte[cipher.getEncryptedChunkSize()];
+        target.write(cipher.header());
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            int length = Math.min(len, plain.length - buffered);
+            System.arraycopy(b, off, plain, buffered, length);
+            buffered += length;
+            off += length;
+            len -= length;
+            if (buffered == plain.length) {
+                writeChunk(false);
+            }
+        }
+    }
+
+    @Override
+    protected String commit() throws IOException {
+        writeChunk(true);
+        target.close();
+        return target.getObjectId();
+    }
+
+    @Override
+    protected void discard() throws IOException {
+        target.abort();
+    }
+
+    private void writeChunk(boolean last) throws IOException {
+        int length = cipher.encrypt(chunkIndex++, last, plain, buffered, encrypted);
+        target.write(encrypted, 0, length);
+        buffered = 0;
+    }
+}
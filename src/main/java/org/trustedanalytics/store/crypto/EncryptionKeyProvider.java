@@ -0,0 +1,32 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.crypto;
+
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.util.Optional;
+
+@FunctionalInterface
+public interface EncryptionKeyProvider {
+
+    EncryptionKeyProvider NONE = tenant -> Optional.empty();
+
+    /**
+     * @return master key for objects of given tenant (organization), empty if its objects
+     * are not encrypted
+     */
+    Optional<SecretKey> getKey(String tenant) throws IOException;
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.crypto;
+
+import javax.crypto.SecretKey;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStore;
+import java.util.Optional;
+
+/**
+ * Takes keys of tenants from a key store (e.g. JCEKS), in which tenant id is the alias
+ * of its secret key entry.
+ */
+public class KeyStoreEncryptionKeyProvider implements EncryptionKeyProvider {
+
+    private final KeyStore keyStore;
+    private final char[] password;
+
+    public KeyStoreEncryptionKeyProvider(KeyStore keyStore, char[] password) {
+        this.keyStore = keyStore;
+        this.password = password.clone();
+    }
+
+    public static KeyStoreEncryptionKeyProvider load(String path, String type, char[] password) throws IOException {
+        try (InputStream input = new FileInputStream(path)) {
+            KeyStore keyStore = KeyStore.getInstance(type);
+            keyStore.load(input, password);
+            return new KeyStoreEncryptionKeyProvider(keyStore, password);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Cannot load key store " + path, e);
+        }
+    }
+
+    @Override
+    public Optional<SecretKey> getKey(String tenant) throws IOException {
+        Key key;
+        try {
+            key = keyStore.getKey(tenant, password);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Cannot read key of " + tenant, e);
+        }
+        if (key != null && !(key instanceof SecretKey)) {
+            throw new IOException("Key of " + tenant + " is not a secret key");
+        }
+        return Optional.ofNullable((SecretKey) key);
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.expiry;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trustedanalytics.id.IdWithTimestamp;
+import org.trustedanalytics.store.ObjectStore;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Removes objects older than time to live of the first policy matching their data set name.
+ * Creation time and data set name are taken from object ids, so the only calls made to
+ * the store are listing and removals. Objects not matched by any policy never expire.
+ */
+public class ExpirySweeper implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExpirySweeper.class);
+
+    static final int BATCH_SIZE = 1000;
+
+    private final ObjectStore store;
+    private final ImmutableList<TtlPolicy> policies;
+    private final ExecutorService removers;
+    private final RateLimiter rateLimiter;
+
+    public ExpirySweeper(ObjectStore store, List<TtlPolicy> policies, int parallelism, double removalsPerSecond) {
+        this.store = store;
+        this.policies = ImmutableList.copyOf(policies);
+        this.removers = Executors.newFixedThreadPool(parallelism,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("objectstore-expiry-%d").build());
+        this.rateLimiter = RateLimiter.create(removalsPerSecond);
+    }
+
+    /**
+     * Removes expired objects in batches, waiting for a batch to complete before listing further.
+     * Failed removals are logged and retried on next sweep.
+     *
+     * @return number of removed objects
+     */
+    public long sweep() throws IOException {
+        long now = System.currentTimeMillis();
+        AtomicLong removed = new AtomicLong();
+        List<Future<?>> batch = new ArrayList<>(BATCH_SIZE);
+        try (Stream<String> objectIds = store.listObjectIds()) {
+            Iterator<String> iterator = objectIds.iterator();
+            while (iterator.hasNext()) {
+                String objectId = iterator.next();
+                if (isExpired(objectId, now)) {
+                    batch.add(removers.submit(() -> remove(objectId, removed)));
+                }
+                if (batch.size() == BATCH_SIZE) {
+                    awaitAll(batch);
+                    batch.clear();
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        awaitAll(batch);
+        return removed.get();
+    }
+
+    public ScheduledFuture<?> scheduleSweeping(ScheduledExecutorService executor, long period, TimeUnit unit) {
+        return executor.scheduleWithFixedDelay(() -> {
+            try {
+                long removed = sweep();
+                if (removed > 0) {
+                    LOGGER.info("removed {} expired objects from '{}'", removed, store.getId());
+                }
+            } catch (IOException | RuntimeException e) {
+                LOGGER.warn("expiry sweep failed", e);
+            }
+        }, period, period, unit);
+    }
+
+    @Override
+    public void close() {
+        removers.shutdownNow();
+    }
+
+    boolean isExpired(String objectId, long nowMillis) {
+        Optional<IdWithTimestamp> id = IdWithTimestamp.parse(objectId);
+        if (!id.isPresent()) {
+            return false;
+        }
+        return policies.stream()
+                .filter(policy -> policy.matches(id.get().getDataSetName()))
+                .findFirst()
+                .map(policy -> policy.isExpired(id.get(), nowMillis))
+                .orElse(false);
+    }
+
+    private Void remove(String objectId, AtomicLong removed) throws IOException {
+        rateLimiter.acquire();
+        try {
+            store.remove(objectId);
+            removed.incrementAndGet();
+        } catch (NoSuchElementException e) {
+            //removed by someone else in the meantime
+        }
+        return null;
+    }
+
+    private static void awaitAll(List<Future<?>> removals) throws IOException {
+        for (Future<?> removal : removals) {
+            try {
+                removal.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while removing expired objects");
+            } catch (ExecutionException e) {
+                LOGGER.warn("removal of expired object failed", e.getCause());
+            }
+        }
+    }
+}
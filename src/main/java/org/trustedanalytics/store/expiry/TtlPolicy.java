@@ -0,0 +1,111 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.expiry;
+
+import org.trustedanalytics.id.IdWithTimestamp;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Time to live of objects whose data set name matches a pattern, in which '*' stands
+ * for any sequence of characters. Names are matched as normalized in object ids,
+ * with spaces replaced by underscores.
+ */
+public final class TtlPolicy {
+
+    private static final String WILDCARD = "*";
+
+    private final String dataSetPattern;
+    private final Pattern regex;
+    private final Duration ttl;
+
+    public TtlPolicy(String dataSetPattern, Duration ttl) {
+        if (ttl.isNegative()) {
+            throw new IllegalArgumentException("ttl: " + ttl);
+        }
+        this.dataSetPattern = dataSetPattern;
+        this.regex = toRegex(dataSetPattern);
+        this.ttl = ttl;
+    }
+
+    public String getDataSetPattern() {
+        return dataSetPattern;
+    }
+
+    public Duration getTtl() {
+        return ttl;
+    }
+
+    public boolean matches(String dataSetName) {
+        return regex.matcher(dataSetName).matches();
+    }
+
+    public boolean isExpired(IdWithTimestamp id, long nowMillis) {
+        return id.getTimestamp().getTime() + ttl.toMillis() <= nowMillis;
+    }
+
+    /**
+     * @return prefix of data set names matched by pattern which has a single wildcard at the end,
+     * empty for other patterns as they cannot be expressed with name prefix
+     */
+    public Optional<String> getLiteralPrefix() {
+        int wildcard = dataSetPattern.indexOf(WILDCARD);
+        if (wildcard != dataSetPattern.length() - 1) {
+            return Optional.empty();
+        }
+        return Optional.of(dataSetPattern.substring(0, wildcard));
+    }
+
+    /**
+     * Tells conservatively whether some data set name could match both policies, comparing
+     * patterns up to their first wildcard.
+     */
+    public boolean mayOverlap(TtlPolicy other) {
+        String head = literalHead(dataSetPattern);
+        String otherHead = literalHead(other.dataSetPattern);
+        if (!dataSetPattern.contains(WILDCARD)) {
+            return other.matches(dataSetPattern);
+        }
+        if (!other.dataSetPattern.contains(WILDCARD)) {
+            return matches(other.dataSetPattern);
+        }
+        return head.startsWith(otherHead) || otherHead.startsWith(head);
+    }
+
+    private static String literalHead(String pattern) {
+        int wildcard = pattern.indexOf(WILDCARD);
+        return wildcard < 0 ? pattern : pattern.substring(0, wildcard);
+    }
+
+    @Override
+    public String toString() {
+        return dataSetPattern + " -> " + ttl;
+    }
+
+    private static Pattern toRegex(String pattern) {
+        StringBuilder regex = new StringBuilder();
+        int start = 0;
+        for (int wildcard = pattern.indexOf(WILDCARD); wildcard >= 0;
+                wildcard = pattern.indexOf(WILDCARD, start)) {
+            regex.append(Pattern.quote(pattern.substring(start, wildcard))).append(".*");
+            start = wildcard + 1;
+        }
+        regex.append(Pattern.quote(pattern.substring(start)));
+        return Pattern.compile(regex.toString());
+    }
+}
@@ -0,0 +1,224 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.filter;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnel;
+import com.google.common.hash.Funnels;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Bloom filter of keys of objects in a store, which lets the store skip asking its backend
+ * whether an object exists. Keys are added when objects are saved, removed objects stay in the
+ * filter until it is rebuilt from a listing of the store. Until the filter is seeded every key
+ * may exist.
+ *
+ * Filter knows only keys listed at its last rebuild and keys added by this process since, so
+ * objects written elsewhere can be answered as absent. It can be used only where such wrong
+ * answer is harmless, e.g. when probing for a free id which is claimed atomically anyway.
+ * Filter persisted on close is loaded once, a process which crashed seeds it from listing again.
+ */
+public class ExistenceFilter implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExistenceFilter.class);
+
+    private static final Funnel<CharSequence> FUNNEL = Funnels.stringFunnel(StandardCharsets.UTF_8);
+
+    /**
+     * Filter which is never seeded, so it does not skip any call.
+     */
+    public static final ExistenceFilter DISABLED = new ExistenceFilter("disabled", 1, 0.5, null);
+
+    private final String name;
+    private final long expectedKeys;
+    private final double falsePositiveRate;
+    private final Path file;
+
+    private BloomFilter<CharSequence> filter;
+    private BloomFilter<CharSequence> rebuilt;
+    private long checks;
+    private long negatives;
+
+    /**
+     * @param file where filter is persisted on close and loaded from, null to seed it from listing
+     *             on every start
+     */
+    public ExistenceFilter(String name, long expectedKeys, double falsePositiveRate, Path file) {
+        this.name = name;
+        this.expectedKeys = expectedKeys;
+        this.falsePositiveRate = falsePositiveRate;
+        this.file = file;
+    }
+
+    public synchronized boolean mightContain(String key) {
+        checks++;
+        if (filter == null || filter.mightContain(key)) {
+            return true;
+        }
+        negatives++;
+        return false;
+    }
+
+    /**
+     * Adds key of an object being saved. Key can be added before the object exists.
+     */
+    public synchronized void add(String key) {
+        if (filter != null) {
+            filter.put(key);
+        }
+        if (rebuilt != null) {
+            rebuilt.put(key);
+        }
+    }
+
+    /**
+     * Replaces filter with a new one of listed keys, which drops keys of removed objects.
+     * Keys added from the start of listing are kept, even if listing misses them.
+     */
+    public void rebuild(KeyListing listing) throws IOException {
+        BloomFilter<CharSequence> next = BloomFilter.create(FUNNEL, expectedKeys, falsePositiveRate);
+        synchronized (this) {
+            rebuilt = next;
+        }
+        try (Stream<String> keys = listing.list()) {
+            keys.forEach(key -> {
+                synchronized (this) {
+                    next.put(key);
+                }
+            });
+            synchronized (this) {
+                filter = next;
+            }
+            LOGGER.info("existence filter {} rebuilt, expected false positive rate {}", name, expectedFpp());
+        } catch (UncheckedIOException e) {
+            //listing failed on a further page
+            throw e.getCause();
+        } finally {
+            synchronized (this) {
+                rebuilt = null;
+            }
+        }
+    }
+
+    /**
+     * Seeds filter from the file it was persisted to and deletes the file, so that the filter
+     * is not reused after a crash, when keys added since would be missing.
+     *
+     * @return false if there is no persisted filter
+     */
+    public boolean load() throws IOException {
+        if (file == null || !Files.exists(file)) {
+            return false;
+        }
+        try (InputStream input = new BufferedInputStream(Files.newInputStream(file))) {
+            BloomFilter<CharSequence> loaded = BloomFilter.readFrom(input, FUNNEL);
+            synchronized (this) {
+                filter = loaded;
+            }
+        } finally {
+            Files.delete(file);
+        }
+        LOGGER.info("existence filter {} loaded from {}", name, file);
+        return true;
+    }
+
+    /**
+     * Rebuilds filter periodically, starting right away unless it is seeded already.
+     */
+    public ScheduledFuture<?> scheduleRebuild(ScheduledExecutorService executor, KeyListing listing,
+            long period, TimeUnit unit) {
+        long initialDelay = isSeeded() ? period : 0;
+        return executor.scheduleWithFixedDelay(() -> {
+            try {
+                rebuild(listing);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.warn("rebuild of existence filter " + name + " failed", e);
+            }
+        }, initialDelay, period, unit);
+    }
+
+    public synchronized boolean isSeeded() {
+        return filter != null;
+    }
+
+    /**
+     * @return probability that key of an object which does not exist is answered as existing,
+     * 1 until filter is seeded
+     */
+    public synchronized double expectedFpp() {
+        return filter == null ? 1 : filter.expectedFpp();
+    }
+
+    public synchronized long getChecks() {
+        return checks;
+    }
+
+    /**
+     * @return checks answered as not existing, each of them saved a call to backend
+     */
+    public synchronized long getNegatives() {
+        return negatives;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Persists filter, if it is seeded and has a file.
+     */
+    @Override
+    public void close() throws IOException {
+        if (file == null) {
+            return;
+        }
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        synchronized (this) {
+            if (filter == null) {
+                return;
+            }
+            try (OutputStream output = new BufferedOutputStream(Files.newOutputStream(temporary))) {
+                filter.writeTo(output);
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Lists keys of all objects of a store.
+     */
+    @FunctionalInterface
+    public interface KeyListing {
+        Stream<String> list() throws IOException;
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.filter;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Exposes expected false positive rate of existence filters, with the number of checks and of
+ * checks answered without calling backend.
+ */
+public class ExistenceFilterMetrics implements PublicMetrics {
+
+    private static final String PREFIX = "objectstore.existence-filter.";
+
+    private final List<ExistenceFilter> filters;
+
+    public ExistenceFilterMetrics(List<ExistenceFilter> filters) {
+        this.filters = filters;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        Collection<Metric<?>> metrics = new ArrayList<>();
+        for (ExistenceFilter filter : filters) {
+            String prefix = PREFIX + filter.getName() + ".";
+            metrics.add(new Metric<>(prefix + "fpp", filter.expectedFpp()));
+            metrics.add(new Metric<>(prefix + "checks", filter.getChecks()));
+            metrics.add(new Metric<>(prefix + "negatives", filter.getNegatives()));
+        }
+        return metrics;
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.hdfs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Object written concurrently by several producers, each of them into its own part file
+ * ({@code 000000_1}, {@code 000001_1}, ...) of the object directory. Parts are published
+ * together by {@link #commit()}, readers of the object get them concatenated in part order.
+ * Closing writer which was not committed discards all parts.
+ */
+public interface DatasetWriter extends Closeable {
+
+    /**
+     * Opens next part. Can be called from producer threads concurrently, but not after
+     * the writer is committed or aborted.
+     */
+    OutputStream openPart() throws IOException;
+
+    /**
+     * Publishes all parts as one object.
+     *
+     * @return unique id which allows to find the object
+     * @throws IllegalStateException if some parts are not closed yet
+     */
+    String commit() throws IOException;
+
+    /**
+     * Discards all parts. Does nothing if writer is already committed or aborted.
+     */
+    void abort() throws IOException;
+
+    @Override
+    default void close() throws IOException {
+        abort();
+    }
+}
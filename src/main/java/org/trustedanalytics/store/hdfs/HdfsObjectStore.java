@@ -18,34 +18,90 @@ package org.trustedanalytics.store.hdfs;
 import static org.apache.commons.lang.RandomStringUtils.randomAlphanumeric;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.lang.StringUtils;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileAlreadyExistsException;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Options;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.ReadOption;
 import org.apache.hadoop.fs.permission.AclEntry;
 import org.apache.hadoop.fs.permission.FsAction;
-import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.io.ByteBufferPool;
 import org.apache.hadoop.util.Progressable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.trustedanalytics.store.ByteBufferConsumer;
 import org.trustedanalytics.store.ObjectStore;
+import org.trustedanalytics.store.ObjectStoreOutputStream;
+import org.trustedanalytics.store.WriteOptions;
+import org.trustedanalytics.store.filter.ExistenceFilter;
 import org.trustedanalytics.store.hdfs.fs.FsPermissionHelper;
+import org.trustedanalytics.store.hdfs.fs.FsPlacementHelper;
+import org.trustedanalytics.store.io.PooledByteBufferPool;
+import org.trustedanalytics.store.io.TransferEngine;
+import org.trustedanalytics.store.trace.Phase;
+import org.trustedanalytics.store.trace.PhaseSpan;
+import org.trustedanalytics.store.trace.PhaseTracing;
 import org.trustedanalytics.id.IdWithTimestamp;
 
+import java.io.FileNotFoundException;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class HdfsObjectStore implements ObjectStore {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(HdfsObjectStore.class);
     private final static int RANDOM_ELEMENTS_COUNT = 2;
+    private static final int TEMPORARY_SUFFIX_LENGTH = 8;
+    private static final ByteBufferPool BUFFER_POOL = new PooledByteBufferPool(TransferEngine.DEFAULT);
 
-    public static final int BUF_SIZE = 4096;
+    public static final int BUF_SIZE = WriteOptions.DEFAULT_BUFFER_SIZE;
 
     static final String SAVED_DATASET_FILENAME = "/000000_1";
+    private static final String PART_FILENAME_FORMAT = "/%06d_1";
+    private static final Pattern PART_FILENAME = Pattern.compile("[0-9]{6}_1");
+
+    static final String HIDDEN_PREFIX = "_";
+
+    static final String TRASH_DIR = "_trash";
+    static final String TRASH_TIMESTAMP_SEPARATOR = ".";
+
+    static final String TEMPORARY_DIR = "_tmp";
+    static final int MAX_PUBLISH_ATTEMPTS = 5;
+
+    static final int COPY_THREADS = 4;
+    static final int COPY_RANGE_BLOCKS = 4;
+    private static final ExecutorService COPY_EXECUTOR = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("hdfs-copy-%d").build());
 
     private FileSystem hdfs;
 
@@ -53,16 +109,32 @@ public class HdfsObjectStore implements ObjectStore {
 
     private final ImmutableList<String> technicalUsers;
 
-    public HdfsObjectStore(ImmutableList<String> technicalUsers, FileSystem hdfs, Path chrootPath) {
+    private final HdfsPlacementResolver placementResolver;
+
+    private volatile boolean fastRemove;
+
+    private volatile boolean trashCreated;
+
+    private volatile ObjectLayout layout = ObjectLayout.FLAT;
+
+    private volatile Path lastBucket;
+
+    private volatile ExistenceFilter existenceFilter = ExistenceFilter.DISABLED;
+
+    public HdfsObjectStore(ImmutableList<String> technicalUsers, FileSystem hdfs, Path chrootPath,
+            HdfsPlacementResolver placementResolver) {
         this.hdfs = hdfs;
         this.chrootPath = chrootPath;
         this.technicalUsers = technicalUsers;
+        this.placementResolver = placementResolver;
+    }
+
+    public HdfsObjectStore(ImmutableList<String> technicalUsers, FileSystem hdfs, Path chrootPath) {
+        this(technicalUsers, hdfs, chrootPath, HdfsPlacementResolver.DEFAULT);
     }
 
     public HdfsObjectStore(FileSystem hdfs, Path chrootPath) {
-        this.hdfs = hdfs;
-        this.chrootPath = chrootPath;
-        this.technicalUsers = ImmutableList.of();
+        this(ImmutableList.of(), hdfs, chrootPath);
     }
 
     @Override
@@ -70,47 +142,389 @@ public class HdfsObjectStore implements ObjectStore {
         return saveObject(input, dataSetName).toString();
     }
 
+    @Override
+    public String save(InputStream input, String dataSetName, WriteOptions options) throws IOException {
+        return saveObject(input, dataSetName, placementResolver.resolve(dataSetName), options).toString();
+    }
+
+    /**
+     * Saves object with placement given explicitly instead of the one resolved for data set.
+     */
+    public String save(InputStream input, String dataSetName, HdfsPlacement placement) throws IOException {
+        return saveObject(input, dataSetName, placement).toString();
+    }
+
     private ObjectId getIdWithTimestamp(String dataSetName) {
         return new ObjectId(IdWithTimestamp.generate(dataSetName).getId(), SAVED_DATASET_FILENAME);
     }
 
     ObjectId saveObject(InputStream input, String dataSetName) throws IOException {
-        ObjectId objectId = createNewObjectDir(dataSetName);
-        setAClsForTechnicalUsers(objectId);
+        return saveObject(input, dataSetName, placementResolver.resolve(dataSetName));
+    }
+
+    ObjectId saveObject(InputStream input, String dataSetName, HdfsPlacement placement) throws IOException {
+        return saveObject(input, dataSetName, placement, WriteOptions.DEFAULT);
+    }
+
+    /**
+     * Object is written to a directory under {@link #TEMPORARY_DIR} and published under its id
+     * by a single rename, so it is either not visible at all or complete.
+     */
+    ObjectId saveObject(InputStream input, String dataSetName, HdfsPlacement placement, WriteOptions options)
+            throws IOException {
+        ObjectId objectId = getUniqueId(dataSetName);
+        Path temporary = createTemporaryObjectDir(objectId, placement);
+        try {
+            try (PhaseSpan span = PhaseTracing.start(Phase.WRITE, temporary);
+                    OutputStream os = getOutputStream(temporaryFile(temporary), placement, options)) {
+                TransferEngine.DEFAULT.copy(input, os, options.getBufferSize());
+            }
+            return publish(temporary, objectId);
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(temporary);
+            throw e;
+        }
+    }
 
-        Path path = idToPath(objectId.toString());
-        try (OutputStream os = getOutputStream(path)) {
-            IOUtils.copyBytes(input, os, BUF_SIZE);
+    @Override
+    public ObjectStoreOutputStream openForWrite(String dataSetName, WriteOptions options) throws IOException {
+        return openForWrite(dataSetName, placementResolver.resolve(dataSetName), options);
+    }
+
+    /**
+     * Opens stream writing directly to HDFS file of a new object.
+     */
+    public ObjectStoreOutputStream openForWrite(String dataSetName, HdfsPlacement placement, WriteOptions options)
+            throws IOException {
+        ObjectId objectId = getUniqueId(dataSetName);
+        Path temporary = createTemporaryObjectDir(objectId, placement);
+        try {
+            OutputStream output = getOutputStream(temporaryFile(temporary), placement, options);
+            return new HdfsObjectOutputStream(objectId, temporary, output);
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(temporary);
+            throw e;
+        }
+    }
+
+    public DatasetWriter openDataset(String dataSetName) throws IOException {
+        return openDataset(dataSetName, WriteOptions.DEFAULT);
+    }
+
+    /**
+     * Opens object written by several producers concurrently, each into its own part file
+     * streamed through its own DataNode pipeline. Id of the object is its directory.
+     */
+    public DatasetWriter openDataset(String dataSetName, WriteOptions options) throws IOException {
+        HdfsPlacement placement = placementResolver.resolve(dataSetName);
+        ObjectId objectId = new ObjectId(getUniqueId(dataSetName).getDirectoryName(), "");
+        Path temporary = createTemporaryObjectDir(objectId, placement);
+        return new HdfsDatasetWriter(objectId, temporary, placement, options);
+    }
+
+    /**
+     * Copies within the cluster when target store uses the same file system. HDFS has no
+     * server-side copy, so content still passes through this process, but objects spanning
+     * several ranges of {@link #COPY_RANGE_BLOCKS} blocks are copied range by range in parallel
+     * and joined by {@link DistributedFileSystem#concat}, which only relinks blocks on NameNode.
+     */
+    @Override
+    public String copy(String objectId, ObjectStore target, String dataSetName) throws IOException {
+        ObjectStore backingStore = target.getBackingStore();
+        if (!(backingStore instanceof HdfsObjectStore)
+                || !((HdfsObjectStore) backingStore).hdfs.getUri().equals(hdfs.getUri())) {
+            return ObjectStore.super.copy(objectId, target, dataSetName);
+        }
+        HdfsObjectStore other = (HdfsObjectStore) backingStore;
+        return onObjectPath(objectId, path -> other.copyFrom(hdfs, path, dataSetName)).toString();
+    }
+
+    /**
+     * Dataset is copied part by part into a dataset with the same parts.
+     */
+    private ObjectId copyFrom(FileSystem sourceFs, Path source, String dataSetName) throws IOException {
+        FileStatus status = sourceFs.getFileStatus(source);
+        HdfsPlacement placement = placementResolver.resolve(dataSetName);
+        ObjectId objectId = getUniqueId(dataSetName);
+        FileStatus[] files = {status};
+        if (status.isDirectory()) {
+            files = listParts(sourceFs, source);
+            objectId = new ObjectId(objectId.getDirectoryName(), "");
+        }
+        Path temporary = createTemporaryObjectDir(objectId, placement);
+        try {
+            try (PhaseSpan span = PhaseTracing.start(Phase.WRITE, temporary)) {
+                for (int i = 0; i < files.length; i++) {
+                    copyRanges(sourceFs, files[i], new Path(temporary + partFileName(i)), placement);
+                }
+            }
+            return publish(temporary, objectId);
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(temporary);
+            throw e;
+        }
+    }
+
+    /**
+     * Ranges keep block size of the source, so each of them but the last one consists of full
+     * blocks as concat requires.
+     */
+    private void copyRanges(FileSystem sourceFs, FileStatus source, Path target, HdfsPlacement placement)
+            throws IOException {
+        long blockSize = source.getBlockSize();
+        short replication = placement.getReplication().orElse(source.getReplication());
+        long rangeLength = blockSize * COPY_RANGE_BLOCKS;
+        int ranges = (int) ((source.getLen() + rangeLength - 1) / rangeLength);
+        if (ranges < 2 || !(hdfs instanceof DistributedFileSystem)
+                || placement.getErasureCodingPolicy().isPresent()) {
+            copyRange(sourceFs, source.getPath(), 0, source.getLen(), target, replication, blockSize);
+            return;
+        }
+        Path[] parts = new Path[ranges];
+        parts[0] = target;
+        for (int i = 1; i < ranges; i++) {
+            parts[i] = new Path(target + "." + i);
+        }
+        AtomicInteger nextRange = new AtomicInteger();
+        List<Future<Void>> workers = new ArrayList<>();
+        for (int i = 0; i < Math.min(COPY_THREADS, ranges); i++) {
+            workers.add(COPY_EXECUTOR.submit(() -> {
+                int range;
+                while ((range = nextRange.getAndIncrement()) < ranges) {
+                    long offset = range * rangeLength;
+                    copyRange(sourceFs, source.getPath(), offset, Math.min(rangeLength, source.getLen() - offset),
+                            parts[range], replication, blockSize);
+                }
+                return null;
+            }));
+        }
+        awaitAll(workers);
+        ((DistributedFileSystem) hdfs).concat(target, Arrays.copyOfRange(parts, 1, ranges));
+    }
+
+    private void copyRange(FileSystem sourceFs, Path source, long offset, long length, Path target,
+            short replication, long blockSize) throws IOException {
+        try (FSDataInputStream input = sourceFs.open(source);
+                OutputStream output = hdfs.create(target, true, BUF_SIZE, replication, blockSize)) {
+            input.seek(offset);
+            long copied = TransferEngine.DEFAULT.copy(ByteStreams.limit(input, length), output, BUF_SIZE);
+            if (copied != length) {
+                throw new IOException("Copied " + copied + " of " + length + " bytes from " + source
+                        + " at offset " + offset);
+            }
+        }
+    }
+
+    private static void awaitAll(List<Future<Void>> workers) throws IOException {
+        try {
+            for (Future<Void> worker : workers) {
+                worker.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Copy interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            workers.forEach(worker -> worker.cancel(true));
         }
-        return objectId;
     }
 
     @Override
     public void remove(String objectId) throws IOException {
-        Path path = idToDirectoryPath(objectId);
+        onObjectPath(StringUtils.removeEnd(objectId, SAVED_DATASET_FILENAME), path -> {
+            removeDirectory(path);
+            return null;
+        });
+    }
+
+    private void removeDirectory(Path path) throws IOException {
         if (path.equals(chrootPath)) {
             throw new IllegalArgumentException("objectId");
         }
-        if (hdfs.exists(path)) {
+        if (fastRemove) {
+            moveToTrash(path);
+        } else if (hdfs.exists(path)) {
             hdfs.delete(path, true);
         } else {
             throw new NoSuchElementException();
         }
     }
 
+    /**
+     * Lists object directories of the chroot and of its buckets, skipping hidden ones like trash
+     * and temporaries. Buckets are listed as the stream reaches them.
+     */
+    @Override
+    public Stream<String> listObjectIds() throws IOException {
+        return listObjectDirectories(chrootPath, 0).map(name -> name + SAVED_DATASET_FILENAME);
+    }
+
+    private Stream<String> listObjectDirectories(Path directory, int level) throws IOException {
+        ObjectLayout currentLayout = layout;
+        return Arrays.stream(hdfs.listStatus(directory))
+                .filter(FileStatus::isDirectory)
+                .map(status -> status.getPath().getName())
+                .filter(name -> !name.startsWith(HIDDEN_PREFIX))
+                .flatMap(name -> level < currentLayout.getDepth() && currentLayout.isBucket(level, name)
+                        ? listBucket(new Path(directory + "/" + name), level + 1)
+                        : Stream.of(name));
+    }
+
+    private Stream<String> listBucket(Path bucket, int level) {
+        try {
+            return listObjectDirectories(bucket, level);
+        } catch (FileNotFoundException e) {
+            //removed by expiry in the meantime
+            return Stream.empty();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Keys of the filter are object directory names, the filter is rebuilt from
+     * {@link #listObjectIds()}.
+     */
+    public ScheduledFuture<?> scheduleExistenceFilterRebuild(ScheduledExecutorService executor, long period,
+            TimeUnit unit) {
+        return existenceFilter.scheduleRebuild(executor, () -> listObjectIds().map(HdfsObjectStore::filterKey),
+                period, unit);
+    }
+
+    /**
+     * Candidate ids of new objects are checked against given filter first, ids it does not contain
+     * are not probed on NameNode. Objects published by this store are added to it. Filter misses
+     * objects written by other processes, but such collision only makes publishing add a postfix,
+     * so the filter is not used to answer reads or removals.
+     */
+    public void setExistenceFilter(ExistenceFilter existenceFilter) {
+        this.existenceFilter = existenceFilter;
+    }
+
+    public ExistenceFilter getExistenceFilter() {
+        return existenceFilter;
+    }
+
+    private static String filterKey(String objectId) {
+        return StringUtils.substringBefore(objectId, "/");
+    }
+
+    /**
+     * Nests object directories of objects saved from now on in buckets of given layout. Objects
+     * are found in the directories of current layout only, unless it knows their legacy path.
+     */
+    public void setLayout(ObjectLayout layout) {
+        this.layout = layout;
+    }
+
+    /**
+     * In fast remove mode object directory is only renamed into trash directory of the store,
+     * which is a single NameNode operation regardless of object size. Data is deleted later
+     * by {@link HdfsTrashReaper}.
+     */
+    public void setFastRemove(boolean fastRemove) {
+        this.fastRemove = fastRemove;
+    }
+
+    private void moveToTrash(Path path) throws IOException {
+        Path trash = getTrashPath();
+        if (!trashCreated) {
+            hdfs.mkdirs(trash);
+            trashCreated = true;
+        }
+        Path tombstone = new Path(trash + "/" + path.getName() + TRASH_TIMESTAMP_SEPARATOR
+                + System.currentTimeMillis());
+        if (!hdfs.rename(path, tombstone)) {
+            throw new NoSuchElementException();
+        }
+        LOGGER.debug("moved '{}' to trash as '{}'", path, tombstone);
+    }
+
+    /**
+     * Deletes directories of saves which were neither published nor discarded, e.g. because
+     * the process writing them died. Age is taken from the newest modification time of
+     * the directory and its file, so max age has to exceed the longest expected write.
+     *
+     * @return number of deleted directories
+     */
+    public int sweepTemporaries(long maxAgeMillis) throws IOException {
+        FileStatus[] temporaries;
+        try {
+            temporaries = hdfs.listStatus(getTemporaryPath());
+        } catch (FileNotFoundException e) {
+            return 0;
+        }
+        long deadline = System.currentTimeMillis() - maxAgeMillis;
+        int deleted = 0;
+        for (FileStatus temporary : temporaries) {
+            if (temporary.getModificationTime() < deadline
+                    && lastModified(temporary.getPath()) < deadline
+                    && hdfs.delete(temporary.getPath(), true)) {
+                LOGGER.info("deleted stale temporary object '{}'", temporary.getPath());
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    public ScheduledFuture<?> scheduleSweeping(ScheduledExecutorService executor, long maxAgeMillis,
+            long period, TimeUnit unit) {
+        return executor.scheduleWithFixedDelay(() -> {
+            try {
+                sweepTemporaries(maxAgeMillis);
+            } catch (IOException e) {
+                LOGGER.warn("sweeping of '" + getTemporaryPath() + "' failed", e);
+            }
+        }, period, period, unit);
+    }
+
+    private long lastModified(Path directory) throws IOException {
+        long lastModified = 0;
+        try {
+            for (FileStatus file : hdfs.listStatus(directory)) {
+                lastModified = Math.max(lastModified, file.getModificationTime());
+            }
+        } catch (FileNotFoundException e) {
+            //published or discarded in the meantime
+            return Long.MAX_VALUE;
+        }
+        return lastModified;
+    }
+
     ObjectId getUniqueId(String dataSetName) throws IOException {
+        try (PhaseSpan span = PhaseTracing.start(Phase.UNIQUE_ID, dataSetName)) {
+            return probeUniqueId(dataSetName);
+        }
+    }
+
+    private ObjectId probeUniqueId(String dataSetName) throws IOException {
         ObjectId id = getIdWithTimestamp(dataSetName);
         Path path = new Path(idToPath(id.toString()).toString());
         String postfix = "";
-        while(hdfs.exists(path)) {
+        while(existenceFilter.mightContain(id.getDirectoryName() + postfix) && hdfs.exists(path)) {
             postfix += "-" + randomAlphanumeric(RANDOM_ELEMENTS_COUNT);
             path = new Path(path.toString() + postfix);
         }
         return new ObjectId(id.getDirectoryName() + postfix, id.getFileName());
     }
 
-    private OutputStream getOutputStream(Path path) throws IOException {
-        return hdfs.create(path, new Progressable() {
+    private OutputStream getOutputStream(Path path, HdfsPlacement placement, WriteOptions options)
+            throws IOException {
+        short replication = options.getReplication()
+                .orElseGet(() -> placement.getReplication()
+                        .orElseGet(() -> hdfs.getDefaultReplication(path)));
+        long blockSize = options.getBlockSize()
+                .orElseGet(() -> placement.getBlockSize()
+                        .orElseGet(() -> hdfs.getDefaultBlockSize(path)));
+        return hdfs.create(path, true, options.getBufferSize(), replication, blockSize, new Progressable() {
             @Override
             public void progress() {
                 //intentionally left empty
@@ -118,32 +532,276 @@ public class HdfsObjectStore implements ObjectStore {
         });
     }
 
+    /**
+     * Object written by {@link DatasetWriter} is read as concatenation of its parts.
+     */
     public InputStream getContent(String objectId) throws IOException {
-        return hdfs.open(idToPath(objectId));
+        return getContent(objectId, 0);
+    }
+
+    @Override
+    public InputStream getContent(String objectId, long offset) throws IOException {
+        return onObjectPath(objectId, path -> open(path, offset));
+    }
+
+    private InputStream open(Path path, long offset) throws IOException {
+        FSDataInputStream input;
+        try {
+            input = hdfs.open(path);
+        } catch (FileNotFoundException e) {
+            return new PartsInputStream(hdfs, listDatasetParts(path, e), offset);
+        }
+        if (offset == 0) {
+            return input;
+        }
+        try {
+            input.seek(offset);
+            return input;
+        } catch (IOException | RuntimeException e) {
+            input.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public long readBuffers(String objectId, ByteBufferConsumer consumer) throws IOException {
+        return readBuffers(objectId, consumer, false);
+    }
+
+    /**
+     * Reads object with enhanced byte buffer reads, so blocks cached by DataNode or available
+     * through short-circuit local reads are passed to consumer as memory mapped buffers without
+     * copying. Other blocks are read into pooled buffers.
+     *
+     * @param skipChecksums allows mapping blocks which are not cached (verified) by DataNode
+     */
+    public long readBuffers(String objectId, ByteBufferConsumer consumer, boolean skipChecksums)
+            throws IOException {
+        EnumSet<ReadOption> readOptions = skipChecksums
+                ? EnumSet.of(ReadOption.SKIP_CHECKSUMS) : EnumSet.noneOf(ReadOption.class);
+        return onObjectPath(objectId, path -> readBuffers(path, objectId, consumer, readOptions));
+    }
+
+    private long readBuffers(Path path, String objectId, ByteBufferConsumer consumer, EnumSet<ReadOption> readOptions)
+            throws IOException {
+        FSDataInputStream opened;
+        try {
+            opened = hdfs.open(path);
+        } catch (FileNotFoundException e) {
+            long read = 0;
+            for (FileStatus part : listDatasetParts(path, e)) {
+                read += readBuffers(hdfs.open(part.getPath()), objectId, consumer, readOptions);
+            }
+            return read;
+        }
+        return readBuffers(opened, objectId, consumer, readOptions);
+    }
+
+    private long readBuffers(FSDataInputStream opened, String objectId, ByteBufferConsumer consumer,
+            EnumSet<ReadOption> readOptions) throws IOException {
+        try (FSDataInputStream input = opened) {
+            long read = 0;
+            while (true) {
+                ByteBuffer buffer;
+                try {
+                    buffer = input.read(BUFFER_POOL, TransferEngine.DEFAULT_BUFFER_SIZE, readOptions);
+                } catch (UnsupportedOperationException e) {
+                    if (read > 0) {
+                        throw new IOException("Enhanced byte buffer read of " + objectId + " failed", e);
+                    }
+                    LOGGER.debug("enhanced byte buffer read not supported by {}", hdfs.getUri());
+                    return TransferEngine.DEFAULT.read(input, consumer, TransferEngine.DEFAULT_BUFFER_SIZE);
+                }
+                if (buffer == null) {
+                    return read;
+                }
+                try {
+                    read += buffer.remaining();
+                    consumer.accept(buffer);
+                } finally {
+                    input.releaseBuffer(buffer);
+                }
+            }
+        }
+    }
+
+    /**
+     * Opens connection to NameNode and checks that chroot directory is accessible.
+     */
+    @Override
+    public void warmUp() throws IOException {
+        hdfs.getFileStatus(chrootPath);
     }
 
     public String getId() {
         return chrootPath.toString();
     }
 
+    FileSystem getFileSystem() {
+        return hdfs;
+    }
+
+    Path getChrootPath() {
+        return chrootPath;
+    }
+
+    Path getTrashPath() {
+        return new Path(chrootPath + "/" + TRASH_DIR);
+    }
+
+    Path getTemporaryPath() {
+        return new Path(chrootPath + "/" + TEMPORARY_DIR);
+    }
+
     private Path idToPath(String id) {
-        return new Path(chrootPath + "/" + id);
+        return new Path(chrootPath + "/" + layout.locate(id));
     }
 
     private Path idToDirectoryPath(String id) {
-        String directoryPath = StringUtils.removeEnd(id, SAVED_DATASET_FILENAME);
-        return new Path(chrootPath + "/" + directoryPath);
+        return idToPath(StringUtils.removeEnd(id, SAVED_DATASET_FILENAME));
+    }
+
+    /**
+     * Applies operation to the path of the object, or to its legacy path when the object is not
+     * found and layout knows where previous layout stored it.
+     */
+    private <T> T onObjectPath(String objectId, PathOperation<T> operation) throws IOException {
+        try {
+            return operation.apply(idToPath(objectId));
+        } catch (FileNotFoundException | NoSuchElementException e) {
+            Optional<String> legacy = layout.locateLegacy(objectId);
+            if (!legacy.isPresent()) {
+                throw e;
+            }
+            return operation.apply(new Path(chrootPath + "/" + legacy.get()));
+        }
+    }
+
+    @FunctionalInterface
+    private interface PathOperation<T> {
+        T apply(Path path) throws IOException;
+    }
+
+    /**
+     * Creates bucket directories of the object, with the same ACLs as object directories.
+     * The last bucket is remembered, as objects mostly go to the current one.
+     */
+    private void ensureBucket(Path objectDirectory) throws IOException {
+        Path bucket = objectDirectory.getParent();
+        if (bucket.equals(chrootPath) || bucket.equals(lastBucket)) {
+            return;
+        }
+        if (!hdfs.exists(bucket)) {
+            try (PhaseSpan span = PhaseTracing.start(Phase.MKDIRS, bucket)) {
+                hdfs.mkdirs(bucket);
+            }
+            Path level = bucket;
+            for (int i = 0; i < layout.getDepth() && !level.equals(chrootPath); i++) {
+                setAClsForTechnicalUsers(level);
+                level = level.getParent();
+            }
+        }
+        lastBucket = bucket;
+    }
+
+    /**
+     * Placement and ACLs are set on the temporary directory, they stay with it after rename.
+     */
+    private Path createTemporaryObjectDir(ObjectId objectId, HdfsPlacement placement) throws IOException {
+        Path directory = new Path(getTemporaryPath() + "/" + objectId.getDirectoryName()
+                + "." + randomAlphanumeric(TEMPORARY_SUFFIX_LENGTH));
+        try (PhaseSpan span = PhaseTracing.start(Phase.MKDIRS, directory)) {
+            hdfs.mkdirs(directory);
+            applyPlacement(directory, placement);
+        }
+        try (PhaseSpan span = PhaseTracing.start(Phase.SET_ACLS, directory)) {
+            setAClsForTechnicalUsers(directory);
+        }
+        return directory;
+    }
+
+    private Path temporaryFile(Path temporaryDirectory) {
+        return new Path(temporaryDirectory + SAVED_DATASET_FILENAME);
+    }
+
+    static String partFileName(int index) {
+        return String.format(PART_FILENAME_FORMAT, index);
+    }
+
+    /**
+     * Lists parts when path which could not be opened is a dataset directory, otherwise
+     * rethrows the original failure.
+     */
+    private FileStatus[] listDatasetParts(Path path, FileNotFoundException notFile) throws IOException {
+        if (!hdfs.isDirectory(path)) {
+            throw notFile;
+        }
+        return listParts(hdfs, path);
+    }
+
+    private static FileStatus[] listParts(FileSystem fs, Path directory) throws IOException {
+        FileStatus[] parts = fs.listStatus(directory, path -> PART_FILENAME.matcher(path.getName()).matches());
+        Arrays.sort(parts, Comparator.comparing(status -> status.getPath().getName()));
+        return parts;
+    }
+
+    /**
+     * Moves temporary directory under the object id, adding random postfix to the id
+     * when other object was published with the same one in the meantime.
+     */
+    private ObjectId publish(Path temporary, ObjectId objectId) throws IOException {
+        try (PhaseSpan span = PhaseTracing.start(Phase.PUBLISH, objectId)) {
+            return publishAs(temporary, objectId);
+        }
+    }
+
+    private ObjectId publishAs(Path temporary, ObjectId objectId) throws IOException {
+        ensureBucket(idToDirectoryPath(objectId.toString()));
+        ObjectId candidate = objectId;
+        for (int attempt = 0; attempt < MAX_PUBLISH_ATTEMPTS; attempt++) {
+            if (rename(temporary, idToDirectoryPath(candidate.toString()))) {
+                existenceFilter.add(candidate.getDirectoryName());
+                return candidate;
+            }
+            candidate = new ObjectId(objectId.getDirectoryName() + "-" + randomAlphanumeric(RANDOM_ELEMENTS_COUNT),
+                    objectId.getFileName());
+        }
+        throw new IOException("Cannot publish " + temporary + " as " + objectId
+                + ", target exists after " + MAX_PUBLISH_ATTEMPTS + " attempts");
     }
 
-    ObjectId createNewObjectDir(String dataSetName) throws IOException {
-        ObjectId uniqueId = getUniqueId(dataSetName);
-        hdfs.mkdirs(idToDirectoryPath(uniqueId.toString()));
-        return uniqueId;
+    private boolean rename(Path source, Path target) throws IOException {
+        if (hdfs instanceof DistributedFileSystem) {
+            try {
+                ((DistributedFileSystem) hdfs).rename(source, target, Options.Rename.NONE);
+                return true;
+            } catch (FileAlreadyExistsException e) {
+                return false;
+            }
+        }
+        //plain rename would move source into existing target directory
+        return !hdfs.exists(target) && hdfs.rename(source, target);
+    }
+
+    private void deleteQuietly(Path path) {
+        try {
+            hdfs.delete(path, true);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("cannot delete temporary object '" + path + "', it is left to sweeper", e);
+        }
+    }
+
+    private void applyPlacement(Path directory, HdfsPlacement placement) throws IOException {
+        if (placement.getStoragePolicy().isPresent()) {
+            FsPlacementHelper.setStoragePolicy(hdfs, directory, placement.getStoragePolicy().get());
+        }
+        if (placement.getErasureCodingPolicy().isPresent()) {
+            FsPlacementHelper.setErasureCodingPolicy(hdfs, directory, placement.getErasureCodingPolicy().get());
+        }
     }
 
-    private void setAClsForTechnicalUsers(ObjectId objectId) throws IOException {
-        LOGGER.debug("setAClsForTechnicalUsers objectId = [" + objectId + "]");
-        Path path = getPath(chrootPath, objectId.getDirectoryName());
+    void setAClsForTechnicalUsers(Path path) throws IOException {
+        LOGGER.debug("setAClsForTechnicalUsers path = [" + path + "]");
 
         hdfs.modifyAclEntries(path,
                 FsPermissionHelper.getAclsForTechnicalUsers(technicalUsers, FsAction.READ_EXECUTE));
@@ -151,14 +809,157 @@ public class HdfsObjectStore implements ObjectStore {
                 FsPermissionHelper.getDefaultAclsForTechnicalUsers(technicalUsers, FsAction.READ_EXECUTE));
 
         List<AclEntry> actualAcls = hdfs.getAclStatus(path).getEntries();
-        LOGGER.info("ACLs for '" + objectId + "': " + aclsToString(actualAcls));
+        LOGGER.info("ACLs for '" + path + "': " + aclsToString(actualAcls));
     }
 
-    private Path getPath(Path basicPath, String objectDirName) {
-        return new Path(basicPath + "/" + objectDirName);
+    /**
+     * Files cannot carry default ACLs, so only access entries are set on them.
+     */
+    void setFileAClsForTechnicalUsers(Path file) throws IOException {
+        LOGGER.debug("setFileAClsForTechnicalUsers file = [" + file + "]");
+
+        hdfs.modifyAclEntries(file,
+                FsPermissionHelper.getAclsForTechnicalUsers(technicalUsers, FsAction.READ_EXECUTE));
     }
 
     private String aclsToString(List<AclEntry> requiredAcls) {
         return requiredAcls.stream().map(AclEntry::toString).collect(Collectors.joining(", "));
     }
+
+    private final class HdfsDatasetWriter implements DatasetWriter {
+
+        private final ObjectId objectId;
+        private final Path temporary;
+        private final HdfsPlacement placement;
+        private final WriteOptions options;
+        private final AtomicInteger nextPart = new AtomicInteger();
+        private final AtomicInteger openParts = new AtomicInteger();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private final AtomicBoolean partFailed = new AtomicBoolean();
+
+        private HdfsDatasetWriter(ObjectId objectId, Path temporary, HdfsPlacement placement, WriteOptions options) {
+            this.objectId = objectId;
+            this.temporary = temporary;
+            this.placement = placement;
+            this.options = options;
+        }
+
+        @Override
+        public OutputStream openPart() throws IOException {
+            if (closed.get()) {
+                throw new IllegalStateException("Dataset " + objectId + " is already committed or aborted");
+            }
+            Path part = new Path(temporary + partFileName(nextPart.getAndIncrement()));
+            OutputStream output = getOutputStream(part, placement, options);
+            openParts.incrementAndGet();
+            return new PartOutputStream(output);
+        }
+
+        @Override
+        public String commit() throws IOException {
+            int open = openParts.get();
+            if (open > 0) {
+                throw new IllegalStateException(open + " parts of dataset " + objectId + " are not closed");
+            }
+            if (partFailed.get()) {
+                abort();
+                throw new IOException("Writing of some parts of dataset " + objectId + " failed");
+            }
+            if (!closed.compareAndSet(false, true)) {
+                throw new IllegalStateException("Dataset " + objectId + " is already committed or aborted");
+            }
+            try {
+                return publish(temporary, objectId).toString();
+            } catch (IOException | RuntimeException e) {
+                deleteQuietly(temporary);
+                throw e;
+            }
+        }
+
+        @Override
+        public void abort() throws IOException {
+            if (closed.compareAndSet(false, true)) {
+                hdfs.delete(temporary, true);
+            }
+        }
+
+        private final class PartOutputStream extends FilterOutputStream {
+
+            private boolean partClosed;
+
+            private PartOutputStream(OutputStream output) {
+                super(output);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                try {
+                    out.write(b, off, len);
+                } catch (IOException | RuntimeException e) {
+                    partFailed.set(true);
+                    throw e;
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (partClosed) {
+                    return;
+                }
+                partClosed = true;
+                try {
+                    out.close();
+                } catch (IOException | RuntimeException e) {
+                    partFailed.set(true);
+                    throw e;
+                } finally {
+                    openParts.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    private final class HdfsObjectOutputStream extends ObjectStoreOutputStream {
+
+        private final ObjectId objectId;
+        private final Path temporary;
+        private final OutputStream output;
+
+        private HdfsObjectOutputStream(ObjectId objectId, Path temporary, OutputStream output) {
+            this.objectId = objectId;
+            this.temporary = temporary;
+            this.output = output;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ensureOpen();
+            output.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            output.flush();
+        }
+
+        @Override
+        protected String commit() throws IOException {
+            try {
+                output.close();
+                return publish(temporary, objectId).toString();
+            } catch (IOException | RuntimeException e) {
+                deleteQuietly(temporary);
+                throw e;
+            }
+        }
+
+        @Override
+        protected void discard() throws IOException {
+            try {
+                output.close();
+            } finally {
+                hdfs.delete(temporary, true);
+            }
+        }
+    }
 }
@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.hdfs;
+
+import java.util.Optional;
+
+/**
+ * Describes where and how object data is physically kept in HDFS.
+ * Unset values fall back to cluster defaults.
+ */
+public final class HdfsPlacement {
+
+    public static final HdfsPlacement DEFAULT = new HdfsPlacement(null, null, null, null);
+
+    private final HdfsStoragePolicy storagePolicy;
+    private final String erasureCodingPolicy;
+    private final Short replication;
+    private final Long blockSize;
+
+    private HdfsPlacement(HdfsStoragePolicy storagePolicy, String erasureCodingPolicy, Short replication,
+            Long blockSize) {
+        this.storagePolicy = storagePolicy;
+        this.erasureCodingPolicy = erasureCodingPolicy;
+        this.replication = replication;
+        this.blockSize = blockSize;
+    }
+
+    public HdfsPlacement withStoragePolicy(HdfsStoragePolicy storagePolicy) {
+        return new HdfsPlacement(storagePolicy, erasureCodingPolicy, replication, blockSize);
+    }
+
+    /**
+     * @param erasureCodingPolicy name of policy enabled on the cluster, e.g. RS-6-3-1024k;
+     *                            ignored on clusters without erasure coding support
+     */
+    public HdfsPlacement withErasureCodingPolicy(String erasureCodingPolicy) {
+        return new HdfsPlacement(storagePolicy, erasureCodingPolicy, replication, blockSize);
+    }
+
+    public HdfsPlacement withReplication(short replication) {
+        if (replication < 1) {
+            throw new IllegalArgumentException("replication");
+        }
+        return new HdfsPlacement(storagePolicy, erasureCodingPolicy, replication, blockSize);
+    }
+
+    public HdfsPlacement withBlockSize(long blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("blockSize");
+        }
+        return new HdfsPlacement(storagePolicy, erasureCodingPolicy, replication, blockSize);
+    }
+
+    public Optional<HdfsStoragePolicy> getStoragePolicy() {
+        return Optional.ofNullable(storagePolicy);
+    }
+
+    public Optional<String> getErasureCodingPolicy() {
+        return Optional.ofNullable(erasureCodingPolicy);
+    }
+
+    public Optional<Short> getReplication() {
+        return Optional.ofNullable(replication);
+    }
+
+    public Optional<Long> getBlockSize() {
+        return Optional.ofNullable(blockSize);
+    }
+
+    @Override
+    public String toString() {
+        return "HdfsPlacement{" +
+                "storagePolicy=" + storagePolicy +
+                ", erasureCodingPolicy='" + erasureCodingPolicy + '\'' +
+                ", replication=" + replication +
+                ", blockSize=" + blockSize +
+                '}';
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.hdfs;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deletes objects moved to trash by {@link HdfsObjectStore} in fast remove mode. Files of removed
+ * objects are deleted one by one, by limited number of threads and at limited rate, so that
+ * deleting large objects does not overload NameNode.
+ *
+ * Objects stay in trash at least for grace period, which lets readers that opened them before
+ * removal finish.
+ */
+public class HdfsTrashReaper implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HdfsTrashReaper.class);
+
+    public static final long DEFAULT_GRACE_PERIOD_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private volatile HdfsObjectStore store;
+    private final ExecutorService deleters;
+    private final RateLimiter rateLimiter;
+    private final long gracePeriodMillis;
+
+    public HdfsTrashReaper(HdfsObjectStore store, int parallelism, double deletesPerSecond) {
+        this(store, parallelism, deletesPerSecond, DEFAULT_GRACE_PERIOD_MILLIS);
+    }
+
+    public HdfsTrashReaper(HdfsObjectStore store, int parallelism, double deletesPerSecond, long gracePeriodMillis) {
+        this.store = store;
+        this.deleters = Executors.newFixedThreadPool(parallelism,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("hdfs-trash-reaper-%d").build());
+        this.rateLimiter = RateLimiter.create(deletesPerSecond);
+        this.gracePeriodMillis = gracePeriodMillis;
+    }
+
+    /**
+     * Deletes objects which are in trash longer than grace period.
+     *
+     * @return number of deleted files and directories
+     */
+    public long reap() throws IOException {
+        FileSystem hdfs = store.getFileSystem();
+        Path trashPath = store.getTrashPath();
+        FileStatus[] removed;
+        try {
+            removed = hdfs.listStatus(trashPath);
+        } catch (FileNotFoundException e) {
+            return 0;
+        }
+        long deadline = System.currentTimeMillis() - gracePeriodMillis;
+        AtomicLong deleted = new AtomicLong();
+        List<Path> expired = new ArrayList<>();
+        List<Future<?>> fileDeletions = new ArrayList<>();
+        for (FileStatus object : removed) {
+            if (getRemovalTime(object.getPath()) > deadline) {
+                continue;
+            }
+            expired.add(object.getPath());
+            if (object.isDirectory()) {
+                for (FileStatus file : hdfs.listStatus(object.getPath())) {
+                    fileDeletions.add(deleters.submit(() -> delete(hdfs, file.getPath(), deleted)));
+                }
+            }
+        }
+        awaitAll(fileDeletions);
+
+        //directories are already emptied, so these are cheap
+        List<Future<?>> objectDeletions = new ArrayList<>();
+        for (Path object : expired) {
+            objectDeletions.add(deleters.submit(() -> delete(hdfs, object, deleted)));
+        }
+        awaitAll(objectDeletions);
+        return deleted.get();
+    }
+
+    public ScheduledFuture<?> scheduleReaping(ScheduledExecutorService executor, long period, TimeUnit unit) {
+        return executor.scheduleWithFixedDelay(() -> {
+            Path trashPath = store.getTrashPath();
+            try {
+                long deleted = reap();
+                if (deleted > 0) {
+                    LOGGER.info("deleted {} paths from '{}'", deleted, trashPath);
+                }
+            } catch (IOException | RuntimeException e) {
+                LOGGER.warn("reaping of '" + trashPath + "' failed", e);
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * Makes following runs reap trash of the same chroot through another store, e.g. one using
+     * file system of a user with fresher credentials.
+     */
+    public void setStore(HdfsObjectStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public void close() {
+        deleters.shutdownNow();
+    }
+
+    private Void delete(FileSystem hdfs, Path path, AtomicLong deleted) throws IOException {
+        rateLimiter.acquire();
+        if (hdfs.delete(path, true)) {
+            deleted.incrementAndGet();
+        }
+        return null;
+    }
+
+    private static void awaitAll(List<Future<?>> deletions) throws IOException {
+        IOException failure = null;
+        for (Future<?> deletion : deletions) {
+            try {
+                deletion.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while reaping trash", e);
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = new IOException("Deleting from trash failed", e.getCause());
+                } else {
+                    failure.addSuppressed(e.getCause());
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * @return time when object was moved to trash, encoded in its name
+     */
+    static long getRemovalTime(Path tombstone) {
+        String name = tombstone.getName();
+        int separator = name.lastIndexOf(HdfsObjectStore.TRASH_TIMESTAMP_SEPARATOR);
+        try {
+            return Long.parseLong(name.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
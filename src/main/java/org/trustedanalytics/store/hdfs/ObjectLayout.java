@@ -0,0 +1,70 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.hdfs;
+
+import java.util.Optional;
+
+/**
+ * Maps object ids of {@link HdfsObjectStore} to paths relative to its chroot. Ids do not depend
+ * on layout, so objects are found by the same ids whatever directories they are nested in.
+ */
+public interface ObjectLayout {
+
+    /**
+     * All object directories directly under chroot.
+     */
+    ObjectLayout FLAT = new ObjectLayout() {
+        @Override
+        public String locate(String objectId) {
+            return objectId;
+        }
+
+        @Override
+        public int getDepth() {
+            return 0;
+        }
+
+        @Override
+        public boolean isBucket(int level, String name) {
+            return false;
+        }
+    };
+
+    /**
+     * @param objectId object id or name of object directory
+     * @return path of the object relative to chroot
+     */
+    String locate(String objectId);
+
+    /**
+     * Path at which object could have been stored by previous layout, it is tried when object
+     * is not found at its path.
+     */
+    default Optional<String> locateLegacy(String objectId) {
+        return Optional.empty();
+    }
+
+    /**
+     * @return number of bucket directory levels between chroot and object directories
+     */
+    int getDepth();
+
+    /**
+     * @param level level of the directory, 0 for directories directly under chroot
+     * @return true if directory holds other directories rather than content of an object
+     */
+    boolean isBucket(int level, String name);
+}
@@ -15,8 +15,14 @@
  */
 package org.trustedanalytics.store.hdfs;
 
+import org.trustedanalytics.store.ByteBufferConsumer;
 import org.trustedanalytics.store.ObjectStore;
+import org.trustedanalytics.store.ObjectStoreOutputStream;
+import org.trustedanalytics.store.WriteOptions;
 import org.trustedanalytics.store.hdfs.fs.FsPermissionHelper;
+import org.trustedanalytics.store.trace.Phase;
+import org.trustedanalytics.store.trace.PhaseSpan;
+import org.trustedanalytics.store.trace.PhaseTracing;
 
 import com.google.common.collect.ImmutableList;
 import org.apache.hadoop.fs.FileSystem;
@@ -31,6 +37,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class OrgSpecificHdfsObjectStore implements ObjectStore {
 
@@ -43,12 +50,19 @@ public class OrgSpecificHdfsObjectStore implements ObjectStore {
 
     public OrgSpecificHdfsObjectStore(ImmutableList<String> technicalUsers, FileSystem hdfs, String orgSpecificChrootUrl)
             throws IOException {
+        this(technicalUsers, hdfs, orgSpecificChrootUrl, HdfsPlacementResolver.DEFAULT);
+    }
+
+    public OrgSpecificHdfsObjectStore(ImmutableList<String> technicalUsers, FileSystem hdfs, String orgSpecificChrootUrl,
+            HdfsPlacementResolver placementResolver) throws IOException {
 
         this.technicalUsers = technicalUsers;
         this.hdfs = hdfs;
         this.chrootPath = new Path(orgSpecificChrootUrl);
-        ensureDirExistsWithProperPermissions();
-        this.hdfsObjectStore = new HdfsObjectStore(technicalUsers, hdfs, chrootPath);
+        try (PhaseSpan span = PhaseTracing.start(Phase.ENSURE_ORG_DIRECTORY, chrootPath)) {
+            ensureDirExistsWithProperPermissions();
+        }
+        this.hdfsObjectStore = new HdfsObjectStore(technicalUsers, hdfs, chrootPath, placementResolver);
     }
 
     @Override
@@ -56,16 +70,78 @@ public class OrgSpecificHdfsObjectStore implements ObjectStore {
         return hdfsObjectStore.saveObject(input, dataSetName).toString();
     }
 
+    @Override
+    public String save(InputStream input, String dataSetName, WriteOptions options) throws IOException {
+        return hdfsObjectStore.save(input, dataSetName, options);
+    }
+
+    public String save(InputStream input, String dataSetName, HdfsPlacement placement) throws IOException {
+        return hdfsObjectStore.saveObject(input, dataSetName, placement).toString();
+    }
+
+    @Override
+    public ObjectStoreOutputStream openForWrite(String dataSetName, WriteOptions options) throws IOException {
+        return hdfsObjectStore.openForWrite(dataSetName, options);
+    }
+
     @Override
     public InputStream getContent(String objectId) throws IOException {
         return hdfsObjectStore.getContent(objectId);
     }
 
+    @Override
+    public InputStream getContent(String objectId, long offset) throws IOException {
+        return hdfsObjectStore.getContent(objectId, offset);
+    }
+
+    @Override
+    public long readBuffers(String objectId, ByteBufferConsumer consumer) throws IOException {
+        return hdfsObjectStore.readBuffers(objectId, consumer);
+    }
+
+    public DatasetWriter openDataset(String dataSetName, WriteOptions options) throws IOException {
+        return hdfsObjectStore.openDataset(dataSetName, options);
+    }
+
+    @Override
+    public String copy(String objectId, ObjectStore target, String dataSetName) throws IOException {
+        return hdfsObjectStore.copy(objectId, target, dataSetName);
+    }
+
+    @Override
+    public ObjectStore getBackingStore() {
+        return hdfsObjectStore;
+    }
+
     @Override
     public void remove(String objectId) throws IOException {
         hdfsObjectStore.remove(objectId);
     }
 
+    @Override
+    public Stream<String> listObjectIds() throws IOException {
+        return hdfsObjectStore.listObjectIds();
+    }
+
+    /**
+     * @see HdfsObjectStore#setFastRemove(boolean)
+     */
+    public void setFastRemove(boolean fastRemove) {
+        hdfsObjectStore.setFastRemove(fastRemove);
+    }
+
+    /**
+     * @see HdfsObjectStore#setLayout(ObjectLayout)
+     */
+    public void setLayout(ObjectLayout layout) {
+        hdfsObjectStore.setLayout(layout);
+    }
+
+    @Override
+    public void warmUp() throws IOException {
+        hdfsObjectStore.warmUp();
+    }
+
     @Override
     public String getId() {
         return hdfsObjectStore.getId();
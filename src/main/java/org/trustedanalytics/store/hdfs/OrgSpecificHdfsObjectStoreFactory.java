@@ -18,6 +18,9 @@ package org.trustedanalytics.store.hdfs;
 
 import org.trustedanalytics.hadoop.config.client.Property;
 import org.trustedanalytics.hadoop.config.client.ServiceInstanceConfiguration;
+import org.trustedanalytics.store.ObjectStore;
+import org.trustedanalytics.store.crypto.EncryptedObjectStore;
+import org.trustedanalytics.store.crypto.EncryptionKeyProvider;
 import org.trustedanalytics.store.hdfs.fs.OAuthSecuredFileSystemFactory;
 
 import com.google.common.collect.ImmutableList;
@@ -27,11 +30,21 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.security.oauth2.provider.authentication.OAuth2AuthenticationDetails;
 
+import javax.crypto.SecretKey;
 import javax.security.auth.login.LoginException;
+import java.io.Closeable;
 import java.io.IOException;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
-public class OrgSpecificHdfsObjectStoreFactory {
+public class OrgSpecificHdfsObjectStoreFactory implements Closeable {
 
     private static final String CF_DEFAULT_USER = "cf";
     private static final String HIVE_USER_ENV_VARIABLE_NAME = "HIVE_TECHNICAL_USER";
@@ -43,12 +56,26 @@ public class OrgSpecificHdfsObjectStoreFactory {
 
     private final OAuthSecuredFileSystemFactory fileSystemFactory;
     private final ImmutableList<String> technicalUsers;
+    private final HdfsPlacementResolver placementResolver;
+    private final ConcurrentMap<String, HdfsTrashReaper> trashReapers = new ConcurrentHashMap<>();
+    private final List<ScheduledFuture<?>> reapings = new CopyOnWriteArrayList<>();
+    private volatile Function<HdfsObjectStore, HdfsTrashReaper> reaperFactory;
+    private ScheduledExecutorService reapingExecutor;
+    private long reapingPeriodMillis;
+    private volatile ObjectLayout layout = ObjectLayout.FLAT;
+    private volatile EncryptionKeyProvider keyProvider = EncryptionKeyProvider.NONE;
 
     public OrgSpecificHdfsObjectStoreFactory(OAuthSecuredFileSystemFactory fileSystemFactory,
             ServiceInstanceConfiguration krbConf) throws IOException {
+        this(fileSystemFactory, krbConf, HdfsPlacementResolver.DEFAULT);
+    }
+
+    public OrgSpecificHdfsObjectStoreFactory(OAuthSecuredFileSystemFactory fileSystemFactory,
+            ServiceInstanceConfiguration krbConf, HdfsPlacementResolver placementResolver) throws IOException {
 
         this.fileSystemFactory = fileSystemFactory;
         this.technicalUsers = getTechnicalUsers(krbConf);
+        this.placementResolver = placementResolver;
     }
 
     private ImmutableList<String> getTechnicalUsers(ServiceInstanceConfiguration krbConf) {
@@ -71,7 +98,69 @@ public class OrgSpecificHdfsObjectStoreFactory {
             throws IOException, InterruptedException, LoginException {
         FileSystem fs = fileSystemFactory.getFileSystem(oAuthToken);
         String uri = fileSystemFactory.getHdfsUri(org);
-        return new OrgSpecificHdfsObjectStore(technicalUsers, fs, uri);
+        OrgSpecificHdfsObjectStore store = new OrgSpecificHdfsObjectStore(technicalUsers, fs, uri, placementResolver);
+        store.setLayout(layout);
+        if (reaperFactory != null) {
+            store.setFastRemove(true);
+            HdfsObjectStore chroot = (HdfsObjectStore) store.getBackingStore();
+            trashReapers.computeIfAbsent(uri, chrootUri -> scheduleReaper(chroot)).setStore(chroot);
+        }
+        return store;
+    }
+
+    /**
+     * Creates store of the organization, encrypting its objects when key provider has a key for it.
+     */
+    public ObjectStore createObjectStore(String org) throws IOException, InterruptedException, LoginException {
+        return createObjectStore(org, getOAuthToken());
+    }
+
+    public ObjectStore createObjectStore(String org, String oAuthToken)
+            throws IOException, InterruptedException, LoginException {
+        OrgSpecificHdfsObjectStore store = create(org, oAuthToken);
+        Optional<SecretKey> key = keyProvider.getKey(org);
+        return key.isPresent() ? new EncryptedObjectStore(store, key.get()) : store;
+    }
+
+    public void setKeyProvider(EncryptionKeyProvider keyProvider) {
+        this.keyProvider = keyProvider;
+    }
+
+    /**
+     * Makes created stores remove objects by moving them to trash, see {@link HdfsObjectStore#setFastRemove}.
+     * Trash of each organization chroot is emptied periodically by its own reaper, which uses file
+     * system of the last store created for the organization.
+     */
+    public void enableFastRemove(Function<HdfsObjectStore, HdfsTrashReaper> reaperFactory,
+            ScheduledExecutorService executor, long period, TimeUnit unit) {
+        this.reapingExecutor = executor;
+        this.reapingPeriodMillis = unit.toMillis(period);
+        this.reaperFactory = reaperFactory;
+    }
+
+    /**
+     * Sets layout of object directories in created stores, see {@link HdfsObjectStore#setLayout}.
+     */
+    public void setLayout(ObjectLayout layout) {
+        this.layout = layout;
+    }
+
+    /**
+     * Closes file systems opened for stores, when file system factory keeps them open.
+     */
+    @Override
+    public void close() throws IOException {
+        reapings.forEach(reaping -> reaping.cancel(false));
+        trashReapers.values().forEach(HdfsTrashReaper::close);
+        if (fileSystemFactory instanceof Closeable) {
+            ((Closeable) fileSystemFactory).close();
+        }
+    }
+
+    private HdfsTrashReaper scheduleReaper(HdfsObjectStore store) {
+        HdfsTrashReaper reaper = reaperFactory.apply(store);
+        reapings.add(reaper.scheduleReaping(reapingExecutor, reapingPeriodMillis, TimeUnit.MILLISECONDS));
+        return reaper;
     }
 
     private String getOAuthToken() {
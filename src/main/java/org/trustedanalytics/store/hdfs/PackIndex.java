@@ -0,0 +1,171 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.hdfs;
+
+import com.google.common.io.CountingInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory view of all container index journals.
+ *
+ * Each container has its own journal with PUT records (object stored at offset of that container)
+ * and DELETE records (tombstones, which may refer to objects kept in any container).
+ * Tombstone always wins over PUT, object ids are never reused.
+ */
+class PackIndex {
+
+    private static final byte PUT = 'P';
+    private static final byte DELETE = 'D';
+
+    private final Map<String, PackEntry> locations = new HashMap<>();
+    private final Map<String, String> tombstones = new HashMap<>();
+    private final Map<String, Long> liveBytes = new HashMap<>();
+
+    synchronized void put(String id, PackEntry entry) {
+        PackEntry previous = locations.put(id, entry);
+        if (!tombstones.containsKey(id)) {
+            if (previous != null) {
+                addLiveBytes(previous.getContainer(), -previous.getLength());
+            }
+            addLiveBytes(entry.getContainer(), entry.getLength());
+        }
+    }
+
+    synchronized void delete(String id, String journalContainer) {
+        if (tombstones.put(id, journalContainer) == null) {
+            PackEntry entry = locations.get(id);
+            if (entry != null) {
+                addLiveBytes(entry.getContainer(), -entry.getLength());
+            }
+        }
+    }
+
+    private void addLiveBytes(String container, long delta) {
+        liveBytes.merge(container, delta, Long::sum);
+    }
+
+    synchronized Optional<PackEntry> find(String id) {
+        if (tombstones.containsKey(id)) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(locations.get(id));
+    }
+
+    synchronized boolean isKnown(String id) {
+        return locations.containsKey(id) || tombstones.containsKey(id);
+    }
+
+    synchronized boolean isDeleted(String id) {
+        return tombstones.containsKey(id);
+    }
+
+    synchronized List<Map.Entry<String, PackEntry>> liveEntriesIn(String container) {
+        return locations.entrySet().stream()
+                .filter(e -> e.getValue().getContainer().equals(container))
+                .filter(e -> !tombstones.containsKey(e.getKey()))
+                .map(e -> new HashMap.SimpleImmutableEntry<>(e.getKey(), e.getValue()))
+                .collect(Collectors.toList());
+    }
+
+    synchronized long liveBytes(String container) {
+        return liveBytes.getOrDefault(container, 0L);
+    }
+
+    /**
+     * @return tombstones recorded in given container journal which still protect objects
+     * kept in other containers, so they have to outlive the journal
+     */
+    synchronized List<String> tombstonesToCarry(String container) {
+        List<String> ids = new ArrayList<>();
+        tombstones.forEach((id, journal) -> {
+            PackEntry entry = locations.get(id);
+            if (journal.equals(container) && (entry == null || !entry.getContainer().equals(container))) {
+                ids.add(id);
+            }
+        });
+        return ids;
+    }
+
+    /**
+     * Forgets everything stored in removed container. Live objects has to be relocated
+     * and tombstones carried over before.
+     */
+    synchronized void dropContainer(String container) {
+        List<String> dropped = locations.entrySet().stream()
+                .filter(e -> e.getValue().getContainer().equals(container))
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+        dropped.forEach(id -> {
+            locations.remove(id);
+            tombstones.remove(id);
+        });
+        liveBytes.remove(container);
+    }
+
+    /**
+     * Applies records of container journal read from its current position.
+     *
+     * @return length of complete records read, journal is replayed from there next time
+     */
+    long replay(InputStream journal, String container) throws IOException {
+        CountingInputStream counting = new CountingInputStream(new BufferedInputStream(journal));
+        DataInputStream input = new DataInputStream(counting);
+        long complete = 0;
+        while (true) {
+            try {
+                byte type = input.readByte();
+                String id = input.readUTF();
+                if (type == PUT) {
+                    long offset = input.readLong();
+                    int length = input.readInt();
+                    put(id, new PackEntry(container, offset, length));
+                } else if (type == DELETE) {
+                    delete(id, container);
+                } else {
+                    throw new IOException("Corrupted index of container " + container);
+                }
+                complete = counting.getCount();
+            } catch (EOFException e) {
+                //end of journal, or record not completely flushed yet or torn by writer crash
+                return complete;
+            }
+        }
+    }
+
+    static void writePut(DataOutput journal, String id, long offset, int length) throws IOException {
+        journal.writeByte(PUT);
+        journal.writeUTF(id);
+        journal.writeLong(offset);
+        journal.writeInt(length);
+    }
+
+    static void writeDelete(DataOutput journal, String id) throws IOException {
+        journal.writeByte(DELETE);
+        journal.writeUTF(id);
+    }
+}
@@ -0,0 +1,551 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.hdfs;
+
+import static org.apache.commons.lang.RandomStringUtils.randomAlphanumeric;
+
+import org.trustedanalytics.id.IdWithTimestamp;
+import org.trustedanalytics.store.ObjectStore;
+import org.trustedanalytics.store.ObjectStoreOutputStream;
+import org.trustedanalytics.store.WriteOptions;
+import org.trustedanalytics.store.io.TransferEngine;
+
+import com.google.common.io.ByteStreams;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps objects smaller than packing threshold appended to shared container files instead of
+ * separate directories, so they cost NameNode a few inodes per container, not per object.
+ * Bigger objects are passed to regular {@link HdfsObjectStore}.
+ *
+ * Every store instance writing to the same chroot has to use its own writer id. Removed objects
+ * are only marked with tombstones, space is reclaimed by {@link #compact()}.
+ */
+public class PackedHdfsObjectStore implements ObjectStore, Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PackedHdfsObjectStore.class);
+    private static final int RANDOM_ELEMENTS_COUNT = 2;
+
+    public static final int DEFAULT_PACKING_THRESHOLD = 1024 * 1024;
+    public static final long DEFAULT_CONTAINER_SIZE = 128L * 1024 * 1024;
+    public static final double DEFAULT_COMPACTION_RATIO = 0.5;
+
+    static final String PACKED_DIR = "_packed";
+    private static final String ID_PREFIX = PACKED_DIR + "/";
+    private static final String CONTAINER_SUFFIX = ".pack";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final String SEQUENCE_FORMAT = "%010d";
+
+    private final HdfsObjectStore largeObjects;
+    private final FileSystem hdfs;
+    private final Path packedPath;
+    private final String writerId;
+    private final int packingThreshold;
+    private final long maxContainerSize;
+    private final double compactionRatio;
+
+    private final PackIndex index = new PackIndex();
+    private final Map<String, FSDataInputStream> readers = new ConcurrentHashMap<>();
+
+    private final Object refreshLock = new Object();
+    private final Map<String, Long> replayedLengths = new HashMap<>();
+
+    private final Object writeLock = new Object();
+    private long sequence;
+    private String currentContainer;
+    private FSDataOutputStream currentData;
+    private FSDataOutputStream currentIndex;
+
+    public PackedHdfsObjectStore(HdfsObjectStore largeObjects, String writerId) throws IOException {
+        this(largeObjects, writerId, DEFAULT_PACKING_THRESHOLD, DEFAULT_CONTAINER_SIZE, DEFAULT_COMPACTION_RATIO);
+    }
+
+    public PackedHdfsObjectStore(HdfsObjectStore largeObjects, String writerId, int packingThreshold,
+            long maxContainerSize, double compactionRatio) throws IOException {
+        if (writerId.contains("/")) {
+            throw new IllegalArgumentException("writerId");
+        }
+        this.largeObjects = largeObjects;
+        this.hdfs = largeObjects.getFileSystem();
+        this.packedPath = new Path(largeObjects.getChrootPath() + "/" + PACKED_DIR);
+        this.writerId = writerId;
+        this.packingThreshold = packingThreshold;
+        this.maxContainerSize = maxContainerSize;
+        this.compactionRatio = compactionRatio;
+
+        hdfs.mkdirs(packedPath);
+        largeObjects.setAClsForTechnicalUsers(packedPath);
+        refresh();
+        this.sequence = ownContainers().stream()
+                .mapToLong(this::getSequence)
+                .max().orElse(0L);
+    }
+
+    @Override
+    public String save(InputStream input, String dataSetName) throws IOException {
+        return save(input, dataSetName, WriteOptions.DEFAULT);
+    }
+
+    @Override
+    public String save(InputStream input, String dataSetName, WriteOptions options) throws IOException {
+        if (options.getExpectedLength().isPresent() && options.getExpectedLength().get() > packingThreshold) {
+            return largeObjects.save(input, dataSetName, options);
+        }
+        ByteBuffer buffer = TransferEngine.DEFAULT.acquireHeapBuffer(packingThreshold + 1);
+        try {
+            byte[] head = buffer.array();
+            int read = ByteStreams.read(input, head, 0, buffer.limit());
+            if (read > packingThreshold) {
+                InputStream whole = new SequenceInputStream(new ByteArrayInputStream(head, 0, read), input);
+                return largeObjects.save(whole, dataSetName, options);
+            }
+            return savePacked(head, read, dataSetName);
+        } finally {
+            TransferEngine.DEFAULT.release(buffer);
+        }
+    }
+
+    @Override
+    public String save(byte[] bytes, String dataSetName) throws IOException {
+        if (bytes.length > packingThreshold) {
+            return largeObjects.save(bytes, dataSetName);
+        }
+        return savePacked(bytes, bytes.length, dataSetName);
+    }
+
+    /**
+     * Opens stream which collects content in memory until it exceeds packing threshold
+     * and continues writing it as a large object afterwards.
+     */
+    @Override
+    public ObjectStoreOutputStream openForWrite(String dataSetName, WriteOptions options) throws IOException {
+        if (options.getExpectedLength().isPresent() && options.getExpectedLength().get() > packingThreshold) {
+            return largeObjects.openForWrite(dataSetName, options);
+        }
+        return new PackingOutputStream(dataSetName, options);
+    }
+
+    @Override
+    public InputStream getContent(String objectId) throws IOException {
+        if (!isPacked(objectId)) {
+            return largeObjects.getContent(objectId);
+        }
+        return new ByteArrayInputStream(readPacked(objectId));
+    }
+
+    @Override
+    public void remove(String objectId) throws IOException {
+        if (!isPacked(objectId)) {
+            largeObjects.remove(objectId);
+            return;
+        }
+        if (!index.find(objectId).isPresent()) {
+            refresh();
+        }
+        synchronized (writeLock) {
+            if (!index.find(objectId).isPresent()) {
+                throw new NoSuchElementException();
+            }
+            appendTombstone(objectId);
+        }
+    }
+
+    @Override
+    public void warmUp() throws IOException {
+        largeObjects.warmUp();
+    }
+
+    @Override
+    public String getId() {
+        return largeObjects.getId();
+    }
+
+    /**
+     * Rewrites live objects from sealed containers of this writer in which at least
+     * compaction ratio of bytes belongs to removed objects, then deletes those containers.
+     */
+    public void compact() throws IOException {
+        for (String container : sealedContainers()) {
+            long total = hdfs.getFileStatus(containerPath(container)).getLen();
+            long live = index.liveBytes(container);
+            if (total > 0 && total - live >= total * compactionRatio) {
+                LOGGER.info("compacting container '{}', {} of {} bytes are live", container, live, total);
+                relocate(container);
+            }
+        }
+    }
+
+    public ScheduledFuture<?> scheduleCompaction(ScheduledExecutorService executor, long period, TimeUnit unit) {
+        return executor.scheduleWithFixedDelay(() -> {
+            try {
+                compact();
+            } catch (IOException e) {
+                LOGGER.warn("compaction of '" + packedPath + "' failed", e);
+            }
+        }, period, period, unit);
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (writeLock) {
+            closeCurrentContainer();
+        }
+        readers.values().forEach(reader -> IOUtils.closeStream(reader));
+        readers.clear();
+    }
+
+    private boolean isPacked(String objectId) {
+        return objectId.startsWith(ID_PREFIX);
+    }
+
+    private String savePacked(byte[] bytes, int length, String dataSetName) throws IOException {
+        synchronized (writeLock) {
+            String id = getUniqueId(dataSetName);
+            append(id, bytes, length);
+            return id;
+        }
+    }
+
+    private String getUniqueId(String dataSetName) {
+        String id = ID_PREFIX + writerId + "/" + IdWithTimestamp.generate(dataSetName).getId();
+        String postfix = "";
+        while (index.isKnown(id + postfix)) {
+            postfix += "-" + randomAlphanumeric(RANDOM_ELEMENTS_COUNT);
+        }
+        return id + postfix;
+    }
+
+    private void append(String id, byte[] bytes, int length) throws IOException {
+        ensureCapacity(length);
+        try {
+            long offset = currentData.getPos();
+            currentData.write(bytes, 0, length);
+            currentData.hflush();
+            PackIndex.writePut(currentIndex, id, offset, length);
+            currentIndex.hflush();
+            index.put(id, new PackEntry(currentContainer, offset, length));
+        } catch (IOException e) {
+            //streams are unusable after failed flush, next write starts new container
+            closeCurrentContainer();
+            throw e;
+        }
+    }
+
+    private void appendTombstone(String id) throws IOException {
+        ensureCapacity(0);
+        try {
+            PackIndex.writeDelete(currentIndex, id);
+            currentIndex.hflush();
+            index.delete(id, currentContainer);
+        } catch (IOException e) {
+            closeCurrentContainer();
+            throw e;
+        }
+    }
+
+    private void ensureCapacity(int length) throws IOException {
+        if (currentData != null && currentData.getPos() > 0 && currentData.getPos() + length > maxContainerSize) {
+            closeCurrentContainer();
+        }
+        if (currentData == null) {
+            String container = writerId + "-" + String.format(SEQUENCE_FORMAT, ++sequence);
+            currentData = hdfs.create(containerPath(container), false);
+            currentIndex = hdfs.create(indexPath(container), false);
+            currentContainer = container;
+            try {
+                largeObjects.setFileAClsForTechnicalUsers(containerPath(container));
+                largeObjects.setFileAClsForTechnicalUsers(indexPath(container));
+            } catch (IOException | RuntimeException e) {
+                closeCurrentContainer();
+                deleteQuietly(containerPath(container));
+                deleteQuietly(indexPath(container));
+                throw e;
+            }
+            LOGGER.info("container '{}' opened", container);
+        }
+    }
+
+    private void deleteQuietly(Path path) {
+        try {
+            hdfs.delete(path, false);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("cannot delete container file '" + path + "'", e);
+        }
+    }
+
+    private void closeCurrentContainer() {
+        IOUtils.cleanup(null, currentData, currentIndex);
+        currentData = null;
+        currentIndex = null;
+        currentContainer = null;
+    }
+
+    /**
+     * Cached reader may be opened before object was appended, or container may be compacted by
+     * other instance meanwhile, leaving known location stale. Then index is refreshed and object
+     * is read from its current location through a fresh stream.
+     */
+    private byte[] readPacked(String objectId) throws IOException {
+        PackEntry entry = findOrRefresh(objectId);
+        byte[] bytes = new byte[entry.getLength()];
+        try {
+            reader(entry.getContainer()).readFully(entry.getOffset(), bytes);
+            return bytes;
+        } catch (IOException e) {
+            closeReader(entry.getContainer());
+        }
+        refresh();
+        PackEntry current = index.find(objectId)
+                .orElseThrow(() -> new FileNotFoundException("No object with id: " + objectId));
+        bytes = new byte[current.getLength()];
+        try (FSDataInputStream input = hdfs.open(containerPath(current.getContainer()))) {
+            input.readFully(current.getOffset(), bytes);
+        }
+        return bytes;
+    }
+
+    private PackEntry findOrRefresh(String objectId) throws IOException {
+        Optional<PackEntry> entry = index.find(objectId);
+        if (!entry.isPresent() && !index.isDeleted(objectId)) {
+            //object may be saved by other writer after index was loaded
+            refresh();
+            entry = index.find(objectId);
+        }
+        return entry.orElseThrow(() -> new FileNotFoundException("No object with id: " + objectId));
+    }
+
+    private FSDataInputStream reader(String container) throws IOException {
+        FSDataInputStream reader = readers.get(container);
+        if (reader == null) {
+            reader = hdfs.open(containerPath(container));
+            FSDataInputStream previous = readers.putIfAbsent(container, reader);
+            if (previous != null) {
+                reader.close();
+                reader = previous;
+            }
+        }
+        return reader;
+    }
+
+    private void closeReader(String container) {
+        IOUtils.closeStream(readers.remove(container));
+    }
+
+    /**
+     * Container is read through its own stream, as cached reader may be opened while
+     * the container was written and see only part of it.
+     */
+    private void relocate(String container) throws IOException {
+        try (FSDataInputStream input = hdfs.open(containerPath(container))) {
+            for (Map.Entry<String, PackEntry> entry : index.liveEntriesIn(container)) {
+                byte[] bytes = new byte[entry.getValue().getLength()];
+                input.readFully(entry.getValue().getOffset(), bytes);
+                synchronized (writeLock) {
+                    if (index.find(entry.getKey()).isPresent()) {
+                        append(entry.getKey(), bytes, bytes.length);
+                    }
+                }
+            }
+        }
+        synchronized (writeLock) {
+            for (String id : index.tombstonesToCarry(container)) {
+                appendTombstone(id);
+            }
+        }
+        closeReader(container);
+        hdfs.delete(containerPath(container), false);
+        hdfs.delete(indexPath(container), false);
+        index.dropContainer(container);
+        synchronized (refreshLock) {
+            replayedLengths.remove(container);
+        }
+    }
+
+    /**
+     * Replays journals from where previous refresh stopped and forgets containers which were
+     * removed by compaction. Length listed by NameNode is not updated while a file is written,
+     * so only journals which grew and the last container of each writer, which may still be
+     * written, are read.
+     */
+    private void refresh() throws IOException {
+        synchronized (refreshLock) {
+            Map<String, Long> journals = listJournals();
+            Set<String> lastOfWriters = journals.keySet().stream()
+                    .collect(Collectors.toMap(this::getWriter, name -> name, (a, b) -> a.compareTo(b) > 0 ? a : b))
+                    .values().stream()
+                    .collect(Collectors.toSet());
+            for (Map.Entry<String, Long> journal : journals.entrySet()) {
+                String container = journal.getKey();
+                long replayed = replayedLengths.getOrDefault(container, 0L);
+                if (journal.getValue() > replayed || lastOfWriters.contains(container)) {
+                    replay(container, replayed);
+                }
+            }
+            for (String container : new ArrayList<>(replayedLengths.keySet())) {
+                if (!journals.containsKey(container)) {
+                    LOGGER.debug("container '{}' removed by compaction, dropping it from index", container);
+                    index.dropContainer(container);
+                    replayedLengths.remove(container);
+                    closeReader(container);
+                }
+            }
+        }
+    }
+
+    private void replay(String container, long replayed) throws IOException {
+        try (FSDataInputStream journal = hdfs.open(indexPath(container))) {
+            journal.seek(replayed);
+            replayedLengths.put(container, replayed + index.replay(journal, container));
+        } catch (FileNotFoundException e) {
+            LOGGER.debug("container '{}' removed during refresh", container);
+        }
+    }
+
+    /**
+     * @return lengths of container journals, by container name in order of names
+     */
+    private Map<String, Long> listJournals() throws IOException {
+        Map<String, Long> journals = new TreeMap<>();
+        for (FileStatus status : hdfs.listStatus(packedPath)) {
+            String name = status.getPath().getName();
+            if (name.endsWith(INDEX_SUFFIX)) {
+                journals.put(name.substring(0, name.length() - INDEX_SUFFIX.length()), status.getLen());
+            }
+        }
+        return journals;
+    }
+
+    private List<String> allContainers() throws IOException {
+        return new ArrayList<>(listJournals().keySet());
+    }
+
+    private String getWriter(String container) {
+        return container.substring(0, container.lastIndexOf('-'));
+    }
+
+    private List<String> ownContainers() throws IOException {
+        String prefix = writerId + "-";
+        int nameLength = prefix.length() + String.format(SEQUENCE_FORMAT, 0).length();
+        return allContainers().stream()
+                .filter(name -> name.startsWith(prefix) && name.length() == nameLength)
+                .collect(Collectors.toList());
+    }
+
+    private List<String> sealedContainers() throws IOException {
+        String current;
+        synchronized (writeLock) {
+            current = currentContainer;
+        }
+        return ownContainers().stream()
+                .filter(name -> !name.equals(current))
+                .collect(Collectors.toList());
+    }
+
+    private long getSequence(String container) {
+        return Long.parseLong(container.substring(writerId.length() + 1));
+    }
+
+    private Path containerPath(String container) {
+        return new Path(packedPath + "/" + container + CONTAINER_SUFFIX);
+    }
+
+    private Path indexPath(String container) {
+        return new Path(packedPath + "/" + container + INDEX_SUFFIX);
+    }
+
+    private final class PackingOutputStream extends ObjectStoreOutputStream {
+
+        private final String dataSetName;
+        private final WriteOptions options;
+        private ByteBuffer head = TransferEngine.DEFAULT.acquireHeapBuffer(packingThreshold);
+        private ObjectStoreOutputStream large;
+
+        private PackingOutputStream(String dataSetName, WriteOptions options) {
+            this.dataSetName = dataSetName;
+            this.options = options;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ensureOpen();
+            if (large == null && head.position() + len > packingThreshold) {
+                large = largeObjects.openForWrite(dataSetName, options);
+                large.write(head.array(), 0, head.position());
+                releaseHead();
+            }
+            if (large != null) {
+                large.write(b, off, len);
+            } else {
+                head.put(b, off, len);
+            }
+        }
+
+        @Override
+        protected String commit() throws IOException {
+            if (large != null) {
+                large.close();
+                return large.getObjectId();
+            }
+            try {
+                return savePacked(head.array(), head.position(), dataSetName);
+            } finally {
+                releaseHead();
+            }
+        }
+
+        @Override
+        protected void discard() throws IOException {
+            if (large != null) {
+                large.abort();
+            } else {
+                releaseHead();
+            }
+        }
+
+        private void releaseHead() {
+            TransferEngine.DEFAULT.release(head);
+            head = null;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.hdfs;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads part files of a dataset one after another, each of them is opened only when
+ * the previous one is exhausted.
+ */
+class PartsInputStream extends InputStream {
+
+    private final FileSystem hdfs;
+    private final FileStatus[] parts;
+    private int next;
+    private long offset;
+    private FSDataInputStream current;
+
+    /**
+     * @param offset position to start reading from, parts before it are not opened at all
+     */
+    PartsInputStream(FileSystem hdfs, FileStatus[] parts, long offset) throws EOFException {
+        this.hdfs = hdfs;
+        this.parts = parts;
+        long remaining = offset;
+        while (next < parts.length && remaining >= parts[next].getLen()) {
+            remaining -= parts[next].getLen();
+            next++;
+        }
+        if (next == parts.length && remaining > 0) {
+            throw new EOFException("Offset " + offset + " is beyond end of " + parts.length + " parts");
+        }
+        this.offset = remaining;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (true) {
+            if (current == null) {
+                if (next == parts.length) {
+                    return -1;
+                }
+                openNext();
+            }
+            int read = current.read(b, off, len);
+            if (read != -1) {
+                return read;
+            }
+            current.close();
+            current = null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        next = parts.length;
+        if (current != null) {
+            current.close();
+            current = null;
+        }
+    }
+
+    private void openNext() throws IOException {
+        FSDataInputStream input = hdfs.open(parts[next++].getPath());
+        if (offset > 0) {
+            try {
+                input.seek(offset);
+            } catch (IOException | RuntimeException e) {
+                input.close();
+                throw e;
+            }
+            offset = 0;
+        }
+        current = input;
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.hdfs;
+
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Nests object directories in day and hour buckets ({@code yyMMdd/HH}) taken from the timestamp
+ * in their ids, so that no directory grows beyond NameNode limit of directory items and listings
+ * stay small. Ids without timestamp stay directly under chroot.
+ *
+ * In migration mode objects not found in their bucket are looked up directly under chroot,
+ * where they were stored by {@link ObjectLayout#FLAT} layout.
+ */
+public class TimeBucketedLayout implements ObjectLayout {
+
+    /**
+     * Timestamp of {@link org.trustedanalytics.id.IdWithTimestamp} in the object directory name,
+     * followed by optional random postfixes and file name.
+     */
+    private static final Pattern TIMESTAMP =
+            Pattern.compile("^[^/]*-(\\d{6})-(\\d{2})\\d{4}(?:-[0-9a-zA-Z]+)*(?:/.*)?$");
+    private static final Pattern DAY_BUCKET = Pattern.compile("\\d{6}");
+    private static final Pattern HOUR_BUCKET = Pattern.compile("\\d{2}");
+
+    private final boolean migrating;
+
+    /**
+     * @param migrating look up objects missing in buckets at their flat path
+     */
+    public TimeBucketedLayout(boolean migrating) {
+        this.migrating = migrating;
+    }
+
+    @Override
+    public String locate(String objectId) {
+        Matcher matcher = TIMESTAMP.matcher(objectId);
+        if (!matcher.matches()) {
+            return objectId;
+        }
+        return matcher.group(1) + "/" + matcher.group(2) + "/" + objectId;
+    }
+
+    @Override
+    public Optional<String> locateLegacy(String objectId) {
+        return migrating && TIMESTAMP.matcher(objectId).matches() ? Optional.of(objectId) : Optional.empty();
+    }
+
+    @Override
+    public int getDepth() {
+        return 2;
+    }
+
+    @Override
+    public boolean isBucket(int level, String name) {
+        return (level == 0 ? DAY_BUCKET : HOUR_BUCKET).matcher(name).matches();
+    }
+}
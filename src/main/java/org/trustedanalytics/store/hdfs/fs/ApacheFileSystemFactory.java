@@ -28,4 +28,12 @@ public class ApacheFileSystemFactory {
             throws IOException, InterruptedException {
         return FileSystem.get(FileSystem.getDefaultUri(hadoopConf), hadoopConf, jwtToken.getUserId());
     }
+
+    /**
+     * Opens file system bypassing Hadoop's cache, caller is responsible for closing it.
+     */
+    public FileSystem newInstance(Configuration hadoopConf, JwtToken jwtToken)
+            throws IOException, InterruptedException {
+        return FileSystem.newInstance(FileSystem.getDefaultUri(hadoopConf), hadoopConf, jwtToken.getUserId());
+    }
 }
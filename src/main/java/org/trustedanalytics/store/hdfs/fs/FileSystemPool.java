@@ -0,0 +1,140 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.hdfs.fs;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.apache.hadoop.fs.FileSystem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * File systems of users, opened once and shared by their requests. Hadoop's own cache keys
+ * instances by UGI, which is created anew for every request, so each request opened
+ * a file system with its DFSClient threads and none of them was ever closed.
+ *
+ * <p>File systems not used for idle time or least recently used above max size are closed,
+ * after a delay, because stores created from them just before may still be writing.
+ */
+public class FileSystemPool implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileSystemPool.class);
+
+    public static final int DEFAULT_MAX_SIZE = 200;
+    public static final long DEFAULT_IDLE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private static final long MAX_CLEAN_UP_PERIOD_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final Cache<String, FileSystem> fileSystems;
+    private final ScheduledExecutorService closer;
+    private final long closeDelayMillis;
+    private final Map<FileSystem, String> closing = new ConcurrentHashMap<>();
+
+    public FileSystemPool() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_IDLE_MILLIS, DEFAULT_IDLE_MILLIS);
+    }
+
+    public FileSystemPool(int maxSize, long idleMillis, long closeDelayMillis) {
+        this.closeDelayMillis = closeDelayMillis;
+        this.closer = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("filesystem-pool-closer").build());
+        this.fileSystems = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterAccess(idleMillis, TimeUnit.MILLISECONDS)
+                .removalListener(this::scheduleClose)
+                .build();
+        //cache evicts only when accessed, idle file systems have to be cleaned up without traffic too
+        long cleanUpPeriod = Math.max(1, Math.min(idleMillis, MAX_CLEAN_UP_PERIOD_MILLIS));
+        closer.scheduleWithFixedDelay(fileSystems::cleanUp, cleanUpPeriod, cleanUpPeriod, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param opener creates file system of the user when pool has none, it must not come
+     *               from Hadoop's cache (use {@link FileSystem#newInstance}), because pool closes it
+     */
+    public FileSystem get(String user, Callable<FileSystem> opener) throws IOException, InterruptedException {
+        try {
+            return fileSystems.get(user, opener);
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Cannot open file system of " + user, cause);
+        }
+    }
+
+    public long size() {
+        return fileSystems.size();
+    }
+
+    /**
+     * Closes all file systems, including those already evicted and waiting for the delay.
+     */
+    @Override
+    public void close() {
+        closer.shutdownNow();
+        fileSystems.invalidateAll();
+        for (Map.Entry<FileSystem, String> pending : closing.entrySet()) {
+            closeQuietly(pending.getValue(), pending.getKey());
+        }
+    }
+
+    private void scheduleClose(RemovalNotification<String, FileSystem> removal) {
+        FileSystem fileSystem = removal.getValue();
+        LOGGER.debug("closing file system of '{}' ({}) in {} ms", removal.getKey(), removal.getCause(),
+                closeDelayMillis);
+        closing.put(fileSystem, removal.getKey());
+        try {
+            closer.schedule(() -> closeQuietly(removal.getKey(), fileSystem), closeDelayMillis,
+                    TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            //pool is closed
+            closeQuietly(removal.getKey(), fileSystem);
+        }
+    }
+
+    private void closeQuietly(String user, FileSystem fileSystem) {
+        if (closing.remove(fileSystem) == null) {
+            return;
+        }
+        try {
+            fileSystem.close();
+        } catch (IOException e) {
+            LOGGER.warn("cannot close file system of '" + user + "'", e);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.hdfs.fs;
+
+import org.trustedanalytics.store.hdfs.HdfsStoragePolicy;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+public class FsPlacementHelper {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FsPlacementHelper.class);
+    private static final String SET_EC_POLICY_METHOD = "setErasureCodingPolicy";
+
+    private FsPlacementHelper() {
+    }
+
+    public static void setStoragePolicy(FileSystem fs, Path path, HdfsStoragePolicy policy) throws IOException {
+        if (fs instanceof DistributedFileSystem) {
+            ((DistributedFileSystem) fs).setStoragePolicy(path, policy.name());
+        } else {
+            LOGGER.warn("storage policy {} not applied to '{}', {} does not support it",
+                    policy, path, fs.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * Erasure coding is available since Hadoop 3, so it is looked up at runtime
+     * to keep working with older client libraries.
+     */
+    public static void setErasureCodingPolicy(FileSystem fs, Path path, String policy) throws IOException {
+        Method method;
+        try {
+            method = fs.getClass().getMethod(SET_EC_POLICY_METHOD, Path.class, String.class);
+        } catch (NoSuchMethodException e) {
+            LOGGER.warn("erasure coding policy {} not applied to '{}', {} does not support it",
+                    policy, path, fs.getClass().getSimpleName());
+            return;
+        }
+        try {
+            method.invoke(fs, path, policy);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Cannot set erasure coding policy for " + path, e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new IOException("Cannot set erasure coding policy for " + path, e);
+        }
+    }
+}
@@ -19,26 +19,47 @@ import org.trustedanalytics.hadoop.config.client.Property;
 import org.trustedanalytics.hadoop.config.client.ServiceInstanceConfiguration;
 import org.trustedanalytics.hadoop.config.client.oauth.TapOauthToken;
 import org.trustedanalytics.kerberos.OAuthKerberosClient;
+import org.trustedanalytics.store.trace.Phase;
+import org.trustedanalytics.store.trace.PhaseSpan;
+import org.trustedanalytics.store.trace.PhaseTracing;
 
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 
 import javax.security.auth.login.LoginException;
+import java.io.Closeable;
 import java.io.IOException;
 
-public class MultiTenantFileSystemFactory implements OAuthSecuredFileSystemFactory {
+/**
+ * File systems are taken from a pool of users' file systems, which are opened from copies of
+ * Hadoop configuration parsed once.
+ */
+public class MultiTenantFileSystemFactory implements OAuthSecuredFileSystemFactory, Closeable {
 
     private final ServiceInstanceConfiguration hdfsConf;
     private final ServiceInstanceConfiguration krbConf;
     private final OAuthKerberosClient oAuthKerberosClient;
     private final ApacheFileSystemFactory apacheFileSystemFactory;
+    private final FileSystemPool fileSystemPool;
+    //never modified, everything using configuration gets its copy
+    private final Supplier<Configuration> hadoopConfTemplate;
 
     public MultiTenantFileSystemFactory(ServiceInstanceConfiguration hdfsConf, ServiceInstanceConfiguration krbConf,
             OAuthKerberosClient oAuthKerberosClient, ApacheFileSystemFactory apacheFileSystemFactory) {
+        this(hdfsConf, krbConf, oAuthKerberosClient, apacheFileSystemFactory, new FileSystemPool());
+    }
+
+    public MultiTenantFileSystemFactory(ServiceInstanceConfiguration hdfsConf, ServiceInstanceConfiguration krbConf,
+            OAuthKerberosClient oAuthKerberosClient, ApacheFileSystemFactory apacheFileSystemFactory,
+            FileSystemPool fileSystemPool) {
         this.hdfsConf = hdfsConf;
         this.krbConf = krbConf;
         this.oAuthKerberosClient = oAuthKerberosClient;
         this.apacheFileSystemFactory = apacheFileSystemFactory;
+        this.fileSystemPool = fileSystemPool;
+        this.hadoopConfTemplate = Suppliers.memoize(hdfsConf::asHadoopConfiguration);
     }
 
     @Override
@@ -49,13 +70,26 @@ public class MultiTenantFileSystemFactory implements OAuthSecuredFileSystemFacto
         // we need to change hadoop-utils to enable using uri with templates like hdfs://name/org/%{organization}/catalog
         // after that, delete also OAuthKerberosClient and TapOAuthKerberosClient
         TapOauthToken jwtToken = new TapOauthToken(oAuthToken);
-        Configuration hadoopConf = hdfsConf.asHadoopConfiguration();
-        oAuthKerberosClient.loginIfKerberosEnabled(hadoopConf, krbConf, jwtToken);
-        return apacheFileSystemFactory.get(hadoopConf, jwtToken);
+        Configuration template = hadoopConfTemplate.get();
+        try (PhaseSpan span = PhaseTracing.start(Phase.KERBEROS_LOGIN, krbConf.getName())) {
+            oAuthKerberosClient.loginIfKerberosEnabled(new Configuration(template), krbConf, jwtToken);
+        }
+        try (PhaseSpan span = PhaseTracing.start(Phase.FILE_SYSTEM_GET, hdfsConf.getName())) {
+            return fileSystemPool.get(jwtToken.getUserId(),
+                    () -> apacheFileSystemFactory.newInstance(new Configuration(template), jwtToken));
+        }
     }
 
     @Override
     public String getHdfsUri(String org) {
       return MultiTenantPathTemplate.resolveOrg(hdfsConf.getProperty(Property.HDFS_URI).get(), org);
     }
+
+    /**
+     * Closes file systems of all users.
+     */
+    @Override
+    public void close() {
+        fileSystemPool.close();
+    }
 }
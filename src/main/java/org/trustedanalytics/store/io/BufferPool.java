@@ -0,0 +1,76 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.io;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded pool of equally sized buffers. Acquiring and releasing pooled buffer does not allocate,
+ * when pool is exhausted new buffer is allocated and dropped on release if there is no free slot.
+ */
+public class BufferPool {
+
+    private final int bufferSize;
+    private final boolean direct;
+    private final AtomicReferenceArray<ByteBuffer> slots;
+
+    public BufferPool(int bufferSize, boolean direct, int capacity) {
+        if (bufferSize <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("bufferSize and capacity must be positive");
+        }
+        this.bufferSize = bufferSize;
+        this.direct = direct;
+        this.slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    public ByteBuffer acquire() {
+        int start = startSlot();
+        for (int i = 0; i < slots.length(); i++) {
+            ByteBuffer buffer = slots.getAndSet((start + i) % slots.length(), null);
+            if (buffer != null) {
+                return buffer;
+            }
+        }
+        return direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+    }
+
+    public void release(ByteBuffer buffer) {
+        if (buffer.capacity() != bufferSize || buffer.isDirect() != direct) {
+            throw new IllegalArgumentException("buffer does not belong to the pool");
+        }
+        buffer.clear();
+        int start = startSlot();
+        for (int i = 0; i < slots.length(); i++) {
+            if (slots.compareAndSet((start + i) % slots.length(), null, buffer)) {
+                return;
+            }
+        }
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public boolean isDirect() {
+        return direct;
+    }
+
+    private int startSlot() {
+        // spreads threads over slots to limit contention on the first ones
+        return (int) (((Thread.currentThread().getId() * 0x9E3779B9L) >>> 1) % slots.length());
+    }
+}
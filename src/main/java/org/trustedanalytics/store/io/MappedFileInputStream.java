@@ -0,0 +1,107 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads file through memory mapped windows, so reads copy content straight from page cache
+ * without a system call per buffer. Windows are mapped as the stream advances and their mappings
+ * are released by garbage collector, file must not be truncated while it is mapped.
+ * Channel is closed with the stream.
+ */
+public class MappedFileInputStream extends InputStream {
+
+    public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final long size;
+    private final int windowSize;
+    private long position;
+    private MappedByteBuffer window;
+    private long windowStart;
+
+    public MappedFileInputStream(FileChannel channel, long offset, int windowSize) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+        this.windowSize = windowSize;
+        this.position = offset;
+    }
+
+    /**
+     * Maps read-only region of the file.
+     */
+    public static MappedByteBuffer map(FileChannel channel, long offset, long length) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureWindow()) {
+            return -1;
+        }
+        position++;
+        return window.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureWindow()) {
+            return -1;
+        }
+        int chunk = Math.min(len, window.remaining());
+        window.get(b, off, chunk);
+        position += chunk;
+        return chunk;
+    }
+
+    @Override
+    public long skip(long n) {
+        long skipped = Math.max(0, Math.min(n, size - position));
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0, size - position));
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    private boolean ensureWindow() throws IOException {
+        if (position >= size) {
+            return false;
+        }
+        if (window == null || position < windowStart || position >= windowStart + window.limit()) {
+            windowStart = position;
+            window = map(channel, position, Math.min(windowSize, size - position));
+        } else {
+            window.position((int) (position - windowStart));
+        }
+        return true;
+    }
+}
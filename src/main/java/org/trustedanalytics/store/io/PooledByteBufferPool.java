@@ -0,0 +1,42 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.io;
+
+import org.apache.hadoop.io.ByteBufferPool;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Exposes {@link TransferEngine} buffers to HDFS enhanced byte buffer reads.
+ */
+public class PooledByteBufferPool implements ByteBufferPool {
+
+    private final TransferEngine engine;
+
+    public PooledByteBufferPool(TransferEngine engine) {
+        this.engine = engine;
+    }
+
+    @Override
+    public ByteBuffer getBuffer(boolean direct, int length) {
+        return engine.acquire(length, direct);
+    }
+
+    @Override
+    public void putBuffer(ByteBuffer buffer) {
+        engine.release(buffer);
+    }
+}
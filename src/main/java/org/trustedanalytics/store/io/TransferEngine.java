@@ -0,0 +1,435 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.io;
+
+import org.trustedanalytics.store.ByteBufferConsumer;
+import org.trustedanalytics.store.WriteOptions;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.hadoop.fs.ByteBufferReadable;
+import org.apache.hadoop.fs.FSDataInputStream;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Copies data between streams and channels through pooled buffers.
+ *
+ * Files are copied with {@link FileChannel#transferTo}, channel capable ends (including HDFS
+ * streams implementing {@link ByteBufferReadable}) are copied through direct buffers,
+ * everything else through pooled heap arrays.
+ */
+public class TransferEngine {
+
+    public static final int DEFAULT_BUFFER_SIZE = WriteOptions.DEFAULT_BUFFER_SIZE;
+    private static final int DEFAULT_POOL_CAPACITY = 64;
+    private static final int MIN_POOLED_BUFFER_SIZE = 4 * 1024;
+    private static final int MAX_POOLED_BUFFER_SIZE = 8 * 1024 * 1024;
+    private static final ByteBuffer END_OF_INPUT = ByteBuffer.allocate(0);
+    private static final long READ_AHEAD_POLL_MILLIS = 100;
+
+    public static final TransferEngine DEFAULT = new TransferEngine(DEFAULT_BUFFER_SIZE, DEFAULT_POOL_CAPACITY);
+
+    private final int defaultBufferSize;
+    private final int poolCapacity;
+    private final BufferPool defaultHeapPool;
+    private final BufferPool defaultDirectPool;
+    private final ConcurrentMap<Integer, BufferPool> heapPools = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, BufferPool> directPools = new ConcurrentHashMap<>();
+    private final ExecutorService readAheadExecutor = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("transfer-read-ahead-%d").build());
+
+    public TransferEngine(int defaultBufferSize, int poolCapacity) {
+        this.defaultBufferSize = defaultBufferSize;
+        this.poolCapacity = poolCapacity;
+        this.defaultHeapPool = new BufferPool(defaultBufferSize, false, poolCapacity);
+        this.defaultDirectPool = new BufferPool(defaultBufferSize, true, poolCapacity);
+    }
+
+    public long copy(InputStream in, OutputStream out) throws IOException {
+        return copy(in, out, defaultBufferSize);
+    }
+
+    /**
+     * Copies until end of input. Neither stream is closed.
+     *
+     * @return number of bytes copied
+     */
+    public long copy(InputStream in, OutputStream out, int bufferSize) throws IOException {
+        WritableByteChannel target = writableChannel(out);
+        if (target != null) {
+            return copy(in, target, bufferSize);
+        }
+        return copyThroughArray(in, out, bufferSize);
+    }
+
+    public long copy(InputStream in, WritableByteChannel target) throws IOException {
+        return copy(in, target, defaultBufferSize);
+    }
+
+    /**
+     * Copies until end of input. Neither input nor channel is closed.
+     *
+     * @return number of bytes copied
+     */
+    public long copy(InputStream in, WritableByteChannel target, int bufferSize) throws IOException {
+        if (in instanceof FileInputStream) {
+            return transfer(((FileInputStream) in).getChannel(), target);
+        }
+        if (in instanceof ReadableByteChannel) {
+            return copy((ReadableByteChannel) in, target, bufferSize);
+        }
+        if (supportsByteBufferRead(in)) {
+            return copyByteBuffers((ByteBufferReadable) in, target, bufferSize);
+        }
+        ByteBuffer buffer = acquireHeapBuffer(bufferSize);
+        try {
+            byte[] array = buffer.array();
+            long copied = 0;
+            int read;
+            while ((read = in.read(array, 0, array.length)) != -1) {
+                buffer.limit(read);
+                while (buffer.hasRemaining()) {
+                    target.write(buffer);
+                }
+                buffer.clear();
+                copied += read;
+            }
+            return copied;
+        } finally {
+            release(buffer);
+        }
+    }
+
+    public long copy(ReadableByteChannel source, WritableByteChannel target) throws IOException {
+        return copy(source, target, defaultBufferSize);
+    }
+
+    public long copy(ReadableByteChannel source, WritableByteChannel target, int bufferSize) throws IOException {
+        if (source instanceof FileChannel) {
+            return transfer((FileChannel) source, target);
+        }
+        ByteBuffer buffer = acquire(bufferSize, true);
+        try {
+            long copied = 0;
+            while (source.read(buffer) != -1) {
+                copied += drain(buffer, target);
+            }
+            return copied + drain(buffer, target);
+        } finally {
+            release(buffer);
+        }
+    }
+
+    /**
+     * Copies until end of input, reading ahead on another thread while chunks read so far are
+     * written, so that latencies of two different backends overlap. At most {@code depth} chunks
+     * wait for the writer. Neither stream is closed, input is not used after method returns.
+     *
+     * @return number of bytes copied
+     */
+    public long copyPipelined(InputStream in, OutputStream out, int bufferSize, int depth) throws IOException {
+        BlockingQueue<ByteBuffer> chunks = new ArrayBlockingQueue<>(depth);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Future<Void> reader = readAheadExecutor.submit(() -> readAhead(in, chunks, bufferSize, cancelled));
+        boolean completed = false;
+        try {
+            long copied = 0;
+            ByteBuffer chunk;
+            while ((chunk = chunks.take()) != END_OF_INPUT) {
+                try {
+                    out.write(chunk.array(), 0, chunk.limit());
+                    copied += chunk.limit();
+                } finally {
+                    release(chunk);
+                }
+            }
+            reader.get();
+            completed = true;
+            return copied;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Copy interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            if (!completed) {
+                cancelled.set(true);
+                awaitCancelled(reader, chunks);
+            }
+        }
+    }
+
+    private Void readAhead(InputStream in, BlockingQueue<ByteBuffer> chunks, int bufferSize, AtomicBoolean cancelled)
+            throws IOException, InterruptedException {
+        try {
+            while (!cancelled.get()) {
+                ByteBuffer buffer = acquireHeapBuffer(bufferSize);
+                int read;
+                try {
+                    read = fill(in, buffer.array());
+                } catch (IOException | RuntimeException e) {
+                    release(buffer);
+                    throw e;
+                }
+                if (read == 0) {
+                    release(buffer);
+                    break;
+                }
+                buffer.limit(read);
+                if (!offer(chunks, buffer, cancelled)) {
+                    release(buffer);
+                }
+            }
+        } finally {
+            offer(chunks, END_OF_INPUT, cancelled);
+        }
+        return null;
+    }
+
+    private static int fill(InputStream in, byte[] array) throws IOException {
+        int filled = 0;
+        int read;
+        while (filled < array.length && (read = in.read(array, filled, array.length - filled)) != -1) {
+            filled += read;
+        }
+        return filled;
+    }
+
+    private static boolean offer(BlockingQueue<ByteBuffer> chunks, ByteBuffer chunk, AtomicBoolean cancelled)
+            throws InterruptedException {
+        while (!cancelled.get()) {
+            if (chunks.offer(chunk, READ_AHEAD_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Waits until reader stops using input and gives back buffers it left in the queue.
+     */
+    private void awaitCancelled(Future<Void> reader, BlockingQueue<ByteBuffer> chunks) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                reader.get();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            } catch (ExecutionException e) {
+                break;
+            }
+        }
+        ByteBuffer chunk;
+        while ((chunk = chunks.poll()) != null) {
+            if (chunk != END_OF_INPUT) {
+                release(chunk);
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reads input in chunks passed to consumer, input is not closed.
+     *
+     * @return number of bytes read
+     */
+    public long read(InputStream in, ByteBufferConsumer consumer, int bufferSize) throws IOException {
+        boolean direct = supportsByteBufferRead(in);
+        ByteBuffer buffer = acquire(bufferSize, direct);
+        try {
+            long read = 0;
+            while (true) {
+                int chunk = direct ? ((ByteBufferReadable) in).read(buffer)
+                        : in.read(buffer.array(), 0, buffer.capacity());
+                if (chunk == -1) {
+                    return read;
+                }
+                if (!direct) {
+                    buffer.position(chunk);
+                }
+                buffer.flip();
+                consumer.accept(buffer);
+                buffer.clear();
+                read += chunk;
+            }
+        } finally {
+            release(buffer);
+        }
+    }
+
+    /**
+     * Borrows heap buffer with accessible array, it has to be given back with {@link #release}.
+     * Capacity may exceed requested size, limit is set to it.
+     */
+    public ByteBuffer acquireHeapBuffer(int bufferSize) {
+        return acquire(bufferSize, false);
+    }
+
+    /**
+     * Borrows buffer, it has to be given back with {@link #release}. Capacity may exceed
+     * requested size, limit is set to it.
+     */
+    public ByteBuffer acquire(int bufferSize, boolean direct) {
+        BufferPool pool = pool(bufferSize, direct);
+        ByteBuffer buffer;
+        if (pool != null) {
+            buffer = pool.acquire();
+        } else {
+            buffer = direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+        }
+        buffer.limit(bufferSize);
+        return buffer;
+    }
+
+    /**
+     * Gives buffer back to its pool, buffers too large to be pooled are dropped.
+     */
+    public void release(ByteBuffer buffer) {
+        BufferPool pool = pool(buffer.capacity(), buffer.isDirect());
+        if (pool != null && pool.getBufferSize() == buffer.capacity()) {
+            pool.release(buffer);
+        }
+    }
+
+    private long copyByteBuffers(ByteBufferReadable source, WritableByteChannel target, int bufferSize) throws IOException {
+        ByteBuffer buffer = acquire(bufferSize, true);
+        try {
+            long copied = 0;
+            while (source.read(buffer) != -1) {
+                copied += drain(buffer, target);
+            }
+            return copied + drain(buffer, target);
+        } finally {
+            release(buffer);
+        }
+    }
+
+    private long copyThroughArray(InputStream in, OutputStream out, int bufferSize) throws IOException {
+        ByteBuffer buffer = acquireHeapBuffer(bufferSize);
+        try {
+            byte[] array = buffer.array();
+            long copied = 0;
+            int read;
+            while ((read = in.read(array, 0, array.length)) != -1) {
+                out.write(array, 0, read);
+                copied += read;
+            }
+            return copied;
+        } finally {
+            release(buffer);
+        }
+    }
+
+    private long transfer(FileChannel source, WritableByteChannel target) throws IOException {
+        long start = source.position();
+        long position = start;
+        long size = source.size();
+        while (position < size) {
+            long transferred = source.transferTo(position, size - position, target);
+            if (transferred <= 0) {
+                break;
+            }
+            position += transferred;
+        }
+        source.position(position);
+        return position - start;
+    }
+
+    private long drain(ByteBuffer buffer, WritableByteChannel target) throws IOException {
+        buffer.flip();
+        int written = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+        buffer.clear();
+        return written;
+    }
+
+    private WritableByteChannel writableChannel(OutputStream out) {
+        if (out instanceof FileOutputStream) {
+            return ((FileOutputStream) out).getChannel();
+        }
+        if (out instanceof WritableByteChannel) {
+            return (WritableByteChannel) out;
+        }
+        return null;
+    }
+
+    private boolean supportsByteBufferRead(InputStream in) {
+        if (in instanceof FSDataInputStream) {
+            // FSDataInputStream always implements the interface, but throws if wrapped stream does not
+            return ((FSDataInputStream) in).getWrappedStream() instanceof ByteBufferReadable;
+        }
+        return in instanceof ByteBufferReadable;
+    }
+
+    /**
+     * Finds pool for buffer size rounded up to a size class. Classes are the default size and
+     * powers of two up to {@link #MAX_POOLED_BUFFER_SIZE}, each retaining at most as many bytes
+     * as the default pool, so sizes chosen by callers do not make retained memory grow without
+     * bound. Larger sizes are not pooled.
+     *
+     * @return pool or null if size is not pooled
+     */
+    private BufferPool pool(int bufferSize, boolean direct) {
+        int sizeClass = sizeClass(bufferSize);
+        if (sizeClass == defaultBufferSize) {
+            return direct ? defaultDirectPool : defaultHeapPool;
+        }
+        if (sizeClass > MAX_POOLED_BUFFER_SIZE) {
+            return null;
+        }
+        ConcurrentMap<Integer, BufferPool> pools = direct ? directPools : heapPools;
+        return pools.computeIfAbsent(sizeClass, size -> new BufferPool(size, direct,
+                (int) Math.max(1, Math.min(poolCapacity, (long) poolCapacity * defaultBufferSize / size))));
+    }
+
+    private int sizeClass(int bufferSize) {
+        if (bufferSize == defaultBufferSize || bufferSize > MAX_POOLED_BUFFER_SIZE) {
+            return bufferSize;
+        }
+        return Math.max(MIN_POOLED_BUFFER_SIZE, Integer.highestOneBit(bufferSize - 1) << 1);
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.reactive;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trustedanalytics.store.ObjectStore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes content of a single object. Every subscriber gets its own stream, opened on
+ * first request. Chunks are read only when requested, so slow subscriber leaves remote
+ * read stalled instead of buffering it.
+ */
+class ContentPublisher implements Publisher<ByteBuffer> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ContentPublisher.class);
+
+    private final ObjectStore store;
+    private final String objectId;
+    private final Executor executor;
+    private final int chunkSize;
+
+    ContentPublisher(ObjectStore store, String objectId, Executor executor, int chunkSize) {
+        this.store = store;
+        this.objectId = objectId;
+        this.executor = executor;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super ByteBuffer> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber");
+        }
+        subscriber.onSubscribe(new ContentSubscription(subscriber));
+    }
+
+    private final class ContentSubscription implements Subscription {
+
+        private final Subscriber<? super ByteBuffer> subscriber;
+        private final SerialExecutor serial = new SerialExecutor(executor);
+        private final AtomicLong demand = new AtomicLong();
+
+        private volatile boolean cancelled;
+        private InputStream input;
+        private boolean done;
+
+        private ContentSubscription(Subscriber<? super ByteBuffer> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancelled = true;
+                serial.execute(() -> fail(new IllegalArgumentException("Requested " + n + " chunks")));
+                return;
+            }
+            demand.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            serial.execute(this::emit);
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            serial.execute(this::closeInput);
+        }
+
+        private void emit() {
+            try {
+                if (done) {
+                    return;
+                }
+                if (input == null && !cancelled) {
+                    input = store.getContent(objectId);
+                }
+                while (!cancelled && demand.get() > 0) {
+                    ByteBuffer chunk = ByteBuffer.allocate(chunkSize);
+                    int read = input.read(chunk.array());
+                    if (read < 0) {
+                        closeInput();
+                        subscriber.onComplete();
+                        return;
+                    }
+                    chunk.limit(read);
+                    demand.decrementAndGet();
+                    subscriber.onNext(chunk);
+                }
+                if (cancelled) {
+                    closeInput();
+                }
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        private void fail(Throwable error) {
+            if (done) {
+                return;
+            }
+            closeInput();
+            subscriber.onError(error);
+        }
+
+        private void closeInput() {
+            done = true;
+            if (input == null) {
+                return;
+            }
+            try {
+                input.close();
+            } catch (IOException e) {
+                LOGGER.warn("Could not close content of " + objectId, e);
+            }
+            input = null;
+        }
+    }
+}
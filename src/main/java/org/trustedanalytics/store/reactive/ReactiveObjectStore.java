@@ -0,0 +1,89 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.reactive;
+
+import org.reactivestreams.Publisher;
+import org.trustedanalytics.store.ObjectStore;
+import org.trustedanalytics.store.WriteOptions;
+import org.trustedanalytics.store.io.TransferEngine;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Non-blocking facade of {@link ObjectStore} based on Reactive Streams. Blocking calls of
+ * underlying store are made on given executor only when subscriber signals demand, so
+ * no thread is held by slow client between chunks.
+ */
+public class ReactiveObjectStore {
+
+    private static final int DEFAULT_PREFETCH = 4;
+
+    private final ObjectStore store;
+    private final Executor executor;
+    private final int chunkSize;
+    private final int prefetch;
+
+    public ReactiveObjectStore(ObjectStore store, Executor executor) {
+        this(store, executor, TransferEngine.DEFAULT_BUFFER_SIZE, DEFAULT_PREFETCH);
+    }
+
+    /**
+     * @param chunkSize maximal size of published chunks
+     * @param prefetch number of chunks requested ahead when saving
+     */
+    public ReactiveObjectStore(ObjectStore store, Executor executor, int chunkSize, int prefetch) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize");
+        }
+        if (prefetch <= 0) {
+            throw new IllegalArgumentException("prefetch");
+        }
+        this.store = store;
+        this.executor = executor;
+        this.chunkSize = chunkSize;
+        this.prefetch = prefetch;
+    }
+
+    /**
+     * @return publisher of object content, every subscription reads object anew. Published
+     * buffers are owned by subscriber.
+     */
+    public Publisher<ByteBuffer> getContent(String objectId) {
+        return new ContentPublisher(store, objectId, executor, chunkSize);
+    }
+
+    /**
+     * Subscribes to given content and saves it as a new object.
+     *
+     * @return future completed with id of saved object, cancelling it stops the subscription
+     * and discards the object
+     */
+    public CompletableFuture<String> save(Publisher<ByteBuffer> content, String dataSetName) {
+        return save(content, dataSetName, WriteOptions.DEFAULT);
+    }
+
+    public CompletableFuture<String> save(Publisher<ByteBuffer> content, String dataSetName, WriteOptions options) {
+        SaveSubscriber subscriber = new SaveSubscriber(store, dataSetName, options, executor, prefetch);
+        content.subscribe(subscriber);
+        return subscriber.getResult();
+    }
+
+    public ObjectStore getObjectStore() {
+        return store;
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.reactive;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trustedanalytics.store.ObjectStore;
+import org.trustedanalytics.store.ObjectStoreOutputStream;
+import org.trustedanalytics.store.WriteOptions;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Writes received chunks to {@link ObjectStore#openForWrite} stream. Next chunks are requested
+ * only after previous ones are written, so fast publisher is throttled to pace of the store.
+ */
+class SaveSubscriber implements Subscriber<ByteBuffer> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SaveSubscriber.class);
+
+    private final ObjectStore store;
+    private final String dataSetName;
+    private final WriteOptions options;
+    private final SerialExecutor serial;
+    private final int prefetch;
+    private final CompletableFuture<String> result = new CompletableFuture<>();
+
+    private Subscription subscription;
+    private ObjectStoreOutputStream output;
+
+    SaveSubscriber(ObjectStore store, String dataSetName, WriteOptions options, Executor executor, int prefetch) {
+        this.store = store;
+        this.dataSetName = dataSetName;
+        this.options = options;
+        this.serial = new SerialExecutor(executor);
+        this.prefetch = prefetch;
+    }
+
+    CompletableFuture<String> getResult() {
+        return result;
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+        if (this.subscription != null) {
+            subscription.cancel();
+            return;
+        }
+        this.subscription = subscription;
+        serial.execute(() -> {
+            try {
+                output = store.openForWrite(dataSetName, options);
+                subscription.request(prefetch);
+            } catch (IOException e) {
+                subscription.cancel();
+                result.completeExceptionally(e);
+            }
+        });
+    }
+
+    @Override
+    public void onNext(ByteBuffer chunk) {
+        serial.execute(() -> {
+            if (result.isDone()) {
+                abort();
+                return;
+            }
+            try {
+                output.write(chunk);
+                subscription.request(1);
+            } catch (IOException e) {
+                abort();
+                result.completeExceptionally(e);
+            }
+        });
+    }
+
+    @Override
+    public void onError(Throwable error) {
+        serial.execute(() -> {
+            abort();
+            result.completeExceptionally(error);
+        });
+    }
+
+    @Override
+    public void onComplete() {
+        serial.execute(() -> {
+            if (result.isDone()) {
+                abort();
+                return;
+            }
+            try {
+                output.close();
+                result.complete(output.getObjectId());
+            } catch (IOException e) {
+                result.completeExceptionally(e);
+            }
+        });
+    }
+
+    /**
+     * Stops subscription and discards written content. Called also when caller cancelled result.
+     */
+    private void abort() {
+        subscription.cancel();
+        if (output == null) {
+            return;
+        }
+        try {
+            output.abort();
+        } catch (IOException e) {
+            LOGGER.warn("Could not discard object of " + dataSetName, e);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.s3;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.StorageClass;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trustedanalytics.store.ObjectStoreOutputStream;
+import org.trustedanalytics.store.WriteOptions;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Streams object to S3 as multipart upload, so at most one part is held in memory. Objects
+ * smaller than a part are stored with single put request.
+ *
+ * S3 accepts at most {@link #MAX_PARTS} parts, so the part size limits object size. Parts are
+ * {@link #MIN_PART_SIZE} when length is not known up front, which limits such objects to about
+ * 50 GB, and at most {@link #MAX_PART_SIZE}, which limits any object to about 1.3 TB. Writing
+ * more fails the upload.
+ */
+class S3ObjectOutputStream extends ObjectStoreOutputStream {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(S3ObjectOutputStream.class);
+
+    /**
+     * Minimal size of all but last part accepted by S3.
+     */
+    static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+    /**
+     * Largest part held in memory, bigger objects are uploaded in more parts.
+     */
+    static final int MAX_PART_SIZE = 128 * 1024 * 1024;
+
+    /**
+     * Limit of parts of single upload in S3.
+     */
+    static final int MAX_PARTS = 10000;
+
+    private final AmazonS3 amazonS3;
+    private final String bucket;
+    private final String key;
+    private final WriteOptions options;
+    private final byte[] part;
+    private final List<PartETag> partETags = new ArrayList<>();
+
+    private int partLength;
+    private String uploadId;
+    private boolean failed;
+
+    S3ObjectOutputStream(AmazonS3 amazonS3, String bucket, String key, WriteOptions options, int partSize) {
+        this.amazonS3 = amazonS3;
+        this.bucket = bucket;
+        this.key = key;
+        this.options = options;
+        this.part = new byte[Math.min(Math.max(partSize, MIN_PART_SIZE), MAX_PART_SIZE)];
+    }
+
+    /**
+     * @return smallest part size which fits expected length in the limit of parts
+     */
+    static int partSize(Optional<Long> expectedLength) {
+        return expectedLength
+                .map(length -> (int) Math.max(MIN_PART_SIZE, Math.min(MAX_PART_SIZE, length / MAX_PARTS + 1)))
+                .orElse(MIN_PART_SIZE);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        ensureNotFailed();
+        while (len > 0) {
+            int chunk = Math.min(len, part.length - partLength);
+            System.arraycopy(b, off, part, partLength, chunk);
+            partLength += chunk;
+            off += chunk;
+            len -= chunk;
+            if (partLength == part.length) {
+                uploadPart();
+            }
+        }
+    }
+
+    @Override
+    protected String commit() throws IOException {
+        ensureNotFailed();
+        try {
+            if (uploadId == null) {
+                ObjectMetadata metadata = createMetadata();
+                metadata.setContentLength(partLength);
+                PutObjectRequest request =
+                        new PutObjectRequest(bucket, key, new ByteArrayInputStream(part, 0, partLength), metadata);
+                options.getStorageClass().ifPresent(request::setStorageClass);
+                amazonS3.putObject(request);
+            } else {
+                if (partLength > 0) {
+                    uploadPart();
+                }
+                amazonS3.completeMultipartUpload(
+                        new CompleteMultipartUploadRequest(bucket, key, uploadId, partETags));
+            }
+            return key;
+        } catch (AmazonClientException e) {
+            abortUpload();
+            throw new IOException("Upload of " + key + " failed", e);
+        }
+    }
+
+    @Override
+    protected void discard() {
+        abortUpload();
+    }
+
+    private void uploadPart() throws IOException {
+        if (partETags.size() == MAX_PARTS) {
+            failed = true;
+            abortUpload();
+            throw new IOException("Object " + key + " exceeds " + MAX_PARTS + " parts of " + part.length + " bytes");
+        }
+        try {
+            if (uploadId == null) {
+                InitiateMultipartUploadRequest request =
+                        new InitiateMultipartUploadRequest(bucket, key, createMetadata());
+                options.getStorageClass().ifPresent(
+                        storageClass -> request.setStorageClass(StorageClass.fromValue(storageClass)));
+                uploadId = amazonS3.initiateMultipartUpload(request).getUploadId();
+            }
+            UploadPartRequest request = new UploadPartRequest()
+                    .withBucketName(bucket)
+                    .withKey(key)
+                    .withUploadId(uploadId)
+                    .withPartNumber(partETags.size() + 1)
+                    .withInputStream(new ByteArrayInputStream(part, 0, partLength))
+                    .withPartSize(partLength);
+            partETags.add(amazonS3.uploadPart(request).getPartETag());
+            partLength = 0;
+        } catch (AmazonClientException e) {
+            failed = true;
+            abortUpload();
+            throw new IOException("Upload of part " + (partETags.size() + 1) + " of " + key + " failed", e);
+        }
+    }
+
+    private void ensureNotFailed() throws IOException {
+        if (failed) {
+            throw new IOException("Upload of " + key + " already failed");
+        }
+    }
+
+    private ObjectMetadata createMetadata() {
+        ObjectMetadata metadata = new ObjectMetadata();
+        options.getContentType().ifPresent(metadata::setContentType);
+        return metadata;
+    }
+
+    private void abortUpload() {
+        if (uploadId == null) {
+            return;
+        }
+        try {
+            amazonS3.abortMultipartUpload(new AbortMultipartUploadRequest(bucket, key, uploadId));
+        } catch (AmazonClientException e) {
+            LOGGER.warn("Could not abort multipart upload of " + key, e);
+        }
+        uploadId = null;
+    }
+}
@@ -15,17 +15,37 @@
  */
 package org.trustedanalytics.store.s3;
 
+import java.io.Closeable;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.channels.InterruptedByTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.trustedanalytics.store.ObjectStore;
+import org.trustedanalytics.store.ObjectStoreOutputStream;
+import org.trustedanalytics.store.WriteOptions;
+import org.trustedanalytics.store.config.S3TransferProperties;
+import org.trustedanalytics.store.expiry.TtlPolicy;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import com.amazonaws.AmazonClientException;
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.iterable.S3Objects;
+import com.amazonaws.services.s3.model.BucketLifecycleConfiguration;
+import com.amazonaws.services.s3.model.GetObjectRequest;
 import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.PutObjectRequest;
 import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
 import com.amazonaws.services.s3.transfer.TransferManager;
 import org.trustedanalytics.id.JobIdSupplier;
 
@@ -33,27 +53,62 @@ import org.trustedanalytics.id.JobIdSupplier;
 // * use multipart uploads to obey 5 GB limit and loading all into memory
 // * provide timeouts (there is risk that it will hung somewhere)
 // * provide progress updates
-public class S3ObjectStore implements ObjectStore {
+public class S3ObjectStore implements ObjectStore, Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(S3ObjectStore.class);
 
     private static final String S3_FOLDER = "downloader/";
+    static final String LIFECYCLE_RULE_PREFIX = "objectstore-ttl-";
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
 
     private final AmazonS3 amazonS3;
     private final String bucket;
     private final TransferManager transferManager;
     private final JobIdSupplier jobIdSupplier;
+    private final S3TransferEngine transferEngine;
+    private final boolean ownsTransferEngine;
 
+    /**
+     * Creates store with its own transfer engine with default settings, which is shut down
+     * when the store is closed.
+     */
     @Autowired
     public S3ObjectStore(AmazonS3 amazonS3, String bucket, JobIdSupplier jobIdSupplier) {
-        this.amazonS3 = amazonS3;
+        this(new S3TransferEngine("s3-" + bucket, amazonS3, new S3TransferProperties()), bucket, jobIdSupplier,
+                true);
+    }
+
+    /**
+     * Creates store using shared transfer engine, which is not shut down with the store.
+     */
+    public S3ObjectStore(S3TransferEngine transferEngine, String bucket, JobIdSupplier jobIdSupplier) {
+        this(transferEngine, bucket, jobIdSupplier, false);
+    }
+
+    public S3ObjectStore(S3TransferEngine transferEngine, String bucket, JobIdSupplier jobIdSupplier,
+            boolean ownsTransferEngine) {
+        this.amazonS3 = transferEngine.getAmazonS3();
         this.bucket = bucket;
-        this.transferManager = new TransferManager(amazonS3);
+        this.transferManager = transferEngine.getTransferManager();
         this.jobIdSupplier = jobIdSupplier;
+        this.transferEngine = transferEngine;
+        this.ownsTransferEngine = ownsTransferEngine;
     }
 
     @Override
     public String save(InputStream input, String dataSetName) throws IOException {
-        String name = S3_FOLDER + jobIdSupplier.get(dataSetName);
-        PutObjectRequest request = new PutObjectRequest(bucket, name, input, new ObjectMetadata());
+        return save(input, dataSetName, WriteOptions.DEFAULT);
+    }
+
+    @Override
+    public String save(InputStream input, String dataSetName, WriteOptions options) throws IOException {
+        String name = newObjectName(dataSetName);
+        ObjectMetadata metadata = new ObjectMetadata();
+        // without content length SDK buffers whole stream in memory to compute it
+        options.getExpectedLength().ifPresent(metadata::setContentLength);
+        options.getContentType().ifPresent(metadata::setContentType);
+        PutObjectRequest request = new PutObjectRequest(bucket, name, input, metadata);
+        options.getStorageClass().ifPresent(request::setStorageClass);
         try {
             transferManager.upload(request).waitForUploadResult();
             return name;
@@ -62,19 +117,151 @@ public class S3ObjectStore implements ObjectStore {
         }
     }
 
+    /**
+     * Opens stream uploading object in parts while it is written. Part size is grown above
+     * the minimum, up to a cap, when expected length would not fit in the limit of parts.
+     * Objects of unknown length are limited to about 50 GB, see {@link S3ObjectOutputStream}.
+     */
+    @Override
+    public ObjectStoreOutputStream openForWrite(String dataSetName, WriteOptions options) {
+        String name = newObjectName(dataSetName);
+        int partSize = S3ObjectOutputStream.partSize(options.getExpectedLength());
+        return new S3ObjectOutputStream(amazonS3, bucket, name, options, partSize);
+    }
+
     @Override
     public InputStream getContent(String objectId) throws IOException {
         S3Object s3Object = amazonS3.getObject(bucket, objectId);
         return s3Object.getObjectContent();
     }
 
+    /**
+     * Fetches only requested range of the object.
+     */
+    @Override
+    public InputStream getContent(String objectId, long offset) throws IOException {
+        if (offset == 0) {
+            return getContent(objectId);
+        }
+        GetObjectRequest request = new GetObjectRequest(bucket, objectId).withRange(offset, Long.MAX_VALUE - 1);
+        return amazonS3.getObject(request).getObjectContent();
+    }
+
+    /**
+     * Copies inside S3 when target store uses the same client, objects above multipart copy
+     * threshold of the transfer engine are copied in parts, in parallel.
+     */
+    @Override
+    public String copy(String objectId, ObjectStore target, String dataSetName) throws IOException {
+        ObjectStore backingStore = target.getBackingStore();
+        if (!(backingStore instanceof S3ObjectStore) || ((S3ObjectStore) backingStore).amazonS3 != amazonS3) {
+            return ObjectStore.super.copy(objectId, target, dataSetName);
+        }
+        S3ObjectStore other = (S3ObjectStore) backingStore;
+        String name = other.newObjectName(dataSetName);
+        try {
+            transferManager.copy(bucket, objectId, other.bucket, name).waitForCopyResult();
+            return name;
+        } catch (InterruptedException e) {
+            throw new InterruptedByTimeoutException();
+        } catch (AmazonClientException e) {
+            throw new IOException("Could not copy " + objectId + " to bucket " + other.bucket, e);
+        }
+    }
+
     @Override
     public void remove(String objectId) throws IOException {
         amazonS3.deleteObject(bucket, objectId);
     }
 
+    /**
+     * Lists keys of the store folder, fetching further pages as the stream is consumed.
+     */
+    @Override
+    public Stream<String> listObjectIds() {
+        return StreamSupport.stream(S3Objects.withPrefix(amazonS3, bucket, S3_FOLDER).spliterator(), false)
+                .map(S3ObjectSummary::getKey);
+    }
+
+    /**
+     * Replaces lifecycle rules previously generated by this method with expiration rules for
+     * given policies, leaving other rules of the bucket intact. S3 expires objects by key prefix
+     * with a granularity of days, so only policies with a single trailing wildcard are converted
+     * and their ttl is rounded up to full days. Where rules overlap S3 applies the shortest
+     * expiration, while the first matching policy applies in the sweeper, so a policy is not
+     * converted when an earlier one may match the same names. Other policies are left to
+     * {@link org.trustedanalytics.store.expiry.ExpirySweeper}, which has to be given all policies
+     * for the first matching one to apply.
+     *
+     * @return policies which could not be converted to rules
+     */
+    public List<TtlPolicy> applyLifecycleRules(List<TtlPolicy> policies) throws IOException {
+        List<TtlPolicy> notConverted = new ArrayList<>();
+        try {
+            List<BucketLifecycleConfiguration.Rule> rules =
+                    Optional.ofNullable(amazonS3.getBucketLifecycleConfiguration(bucket))
+                            .map(BucketLifecycleConfiguration::getRules)
+                            .map(existing -> existing.stream()
+                                    .filter(rule -> !StringUtils.startsWith(rule.getId(), LIFECYCLE_RULE_PREFIX))
+                                    .collect(Collectors.toList()))
+                            .orElseGet(ArrayList::new);
+            for (int i = 0; i < policies.size(); i++) {
+                TtlPolicy policy = policies.get(i);
+                Optional<String> prefix = policy.getLiteralPrefix();
+                if (!prefix.isPresent() || policies.subList(0, i).stream().anyMatch(policy::mayOverlap)) {
+                    notConverted.add(policy);
+                    continue;
+                }
+                int days = (int) Math.max(1, (policy.getTtl().toMillis() + MILLIS_PER_DAY - 1) / MILLIS_PER_DAY);
+                rules.add(new BucketLifecycleConfiguration.Rule()
+                        .withId(LIFECYCLE_RULE_PREFIX + prefix.get())
+                        .withPrefix(S3_FOLDER + prefix.get())
+                        .withExpirationInDays(days)
+                        .withStatus(BucketLifecycleConfiguration.ENABLED));
+                LOGGER.info("lifecycle rule for '{}' in bucket {}: expire after {} days", policy, bucket, days);
+            }
+            if (rules.isEmpty()) {
+                amazonS3.deleteBucketLifecycleConfiguration(bucket);
+            } else {
+                amazonS3.setBucketLifecycleConfiguration(bucket, new BucketLifecycleConfiguration(rules));
+            }
+        } catch (AmazonClientException e) {
+            throw new IOException("Could not set lifecycle rules of bucket " + bucket, e);
+        }
+        return notConverted;
+    }
+
+    /**
+     * Opens pooled connection to S3 and checks that bucket exists.
+     */
+    @Override
+    public void warmUp() throws IOException {
+        try {
+            if (!amazonS3.doesBucketExist(bucket)) {
+                throw new FileNotFoundException("No bucket: " + bucket);
+            }
+        } catch (AmazonClientException e) {
+            throw new IOException("Could not reach bucket " + bucket, e);
+        }
+    }
+
+    private String newObjectName(String dataSetName) {
+        return S3_FOLDER + jobIdSupplier.get(dataSetName);
+    }
+
     @Override
     public String getId() {
         return "s3://" + bucket;
     }
+
+    public S3TransferEngine getTransferEngine() {
+        return transferEngine;
+    }
+
+    @Override
+    public void close() {
+        if (ownsTransferEngine) {
+            transferEngine.close();
+        }
+    }
 }
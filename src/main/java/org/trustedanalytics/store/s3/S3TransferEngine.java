@@ -0,0 +1,146 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.s3;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.AWSCredentials;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.transfer.TransferManager;
+import com.amazonaws.services.s3.transfer.TransferManagerConfiguration;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trustedanalytics.store.config.S3TransferProperties;
+
+import java.io.Closeable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * S3 client and transfer manager with bounded thread pool, meant to be shared by all stores using
+ * the same endpoint. When all threads are busy and queue is full, transfers are run by calling
+ * threads, which throttles producers instead of growing the queue.
+ */
+public class S3TransferEngine implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(S3TransferEngine.class);
+
+    private final String name;
+    private final AmazonS3 amazonS3;
+    private final boolean ownsClient;
+    private final S3TransferProperties properties;
+    private final ThreadPoolExecutor executor;
+    private final TransferManager transferManager;
+
+    /**
+     * Creates engine with its own client configured according to properties.
+     */
+    public S3TransferEngine(String name, AWSCredentials credentials, S3TransferProperties properties) {
+        this(name, createClient(credentials, properties), true, properties);
+    }
+
+    /**
+     * Creates engine using given client, which is not shut down with the engine.
+     */
+    public S3TransferEngine(String name, AmazonS3 amazonS3, S3TransferProperties properties) {
+        this(name, amazonS3, false, properties);
+    }
+
+    private S3TransferEngine(String name, AmazonS3 amazonS3, boolean ownsClient, S3TransferProperties properties) {
+        this.name = name;
+        this.amazonS3 = amazonS3;
+        this.ownsClient = ownsClient;
+        this.properties = properties;
+        this.executor = new ThreadPoolExecutor(properties.getThreads(), properties.getThreads(),
+                60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(properties.getQueueCapacity()),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat(name + "-transfer-%d").build(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+
+        TransferManagerConfiguration configuration = new TransferManagerConfiguration();
+        configuration.setMultipartUploadThreshold(properties.getMultipartUploadThreshold());
+        configuration.setMinimumUploadPartSize(properties.getMinimumUploadPartSize());
+        configuration.setMultipartCopyThreshold(properties.getMultipartCopyThreshold());
+        configuration.setMultipartCopyPartSize(properties.getMultipartCopyPartSize());
+        this.transferManager = new TransferManager(amazonS3, executor, false);
+        this.transferManager.setConfiguration(configuration);
+    }
+
+    private static AmazonS3 createClient(AWSCredentials credentials, S3TransferProperties properties) {
+        ClientConfiguration configuration = new ClientConfiguration()
+                .withMaxConnections(properties.getMaxConnections())
+                .withConnectionTimeout(properties.getConnectionTimeoutMillis())
+                .withSocketTimeout(properties.getSocketTimeoutMillis())
+                .withTcpKeepAlive(properties.isTcpKeepAlive());
+        AmazonS3Client client = new AmazonS3Client(credentials, configuration);
+        if (properties.getEndpoint() != null) {
+            client.setEndpoint(properties.getEndpoint());
+        }
+        return client;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public AmazonS3 getAmazonS3() {
+        return amazonS3;
+    }
+
+    public TransferManager getTransferManager() {
+        return transferManager;
+    }
+
+    public int getMaxConnections() {
+        return properties.getMaxConnections();
+    }
+
+    public int getMaxThreads() {
+        return executor.getMaximumPoolSize();
+    }
+
+    public int getActiveThreads() {
+        return executor.getActiveCount();
+    }
+
+    public int getQueuedTransfers() {
+        return executor.getQueue().size();
+    }
+
+    public int getRemainingQueueCapacity() {
+        return executor.getQueue().remainingCapacity();
+    }
+
+    /**
+     * Waits for running transfers up to configured timeout, then aborts them.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(properties.getShutdownTimeoutSeconds(), TimeUnit.SECONDS)) {
+                LOGGER.warn("Transfers of {} not finished in {} s, aborting them", name,
+                        properties.getShutdownTimeoutSeconds());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor.shutdownNow();
+        transferManager.shutdownNow(ownsClient);
+    }
+}
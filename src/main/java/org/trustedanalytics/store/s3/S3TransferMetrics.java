@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.s3;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.trustedanalytics.store.DeferredObjectStore;
+import org.trustedanalytics.store.ObjectStore;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Exposes saturation of transfer engines used by S3 object stores. Engine is saturated when
+ * all its threads are active and its queue is full, then uploads run on calling threads.
+ */
+public class S3TransferMetrics implements PublicMetrics {
+
+    private static final String PREFIX = "objectstore.";
+
+    @Autowired(required = false)
+    private List<ObjectStore> objectStores = Collections.emptyList();
+
+    public S3TransferMetrics() {
+    }
+
+    public S3TransferMetrics(List<ObjectStore> objectStores) {
+        this.objectStores = objectStores;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        Map<S3TransferEngine, Boolean> engines = new IdentityHashMap<>();
+        objectStores.stream()
+                .map(S3TransferMetrics::unwrap)
+                .filter(store -> store instanceof S3ObjectStore)
+                .map(store -> ((S3ObjectStore) store).getTransferEngine())
+                .forEach(engine -> engines.put(engine, Boolean.TRUE));
+
+        Collection<Metric<?>> metrics = new ArrayList<>();
+        for (S3TransferEngine engine : engines.keySet()) {
+            String prefix = PREFIX + engine.getName() + ".";
+            metrics.add(new Metric<>(prefix + "connections.max", engine.getMaxConnections()));
+            metrics.add(new Metric<>(prefix + "threads.max", engine.getMaxThreads()));
+            metrics.add(new Metric<>(prefix + "threads.active", engine.getActiveThreads()));
+            metrics.add(new Metric<>(prefix + "queue.size", engine.getQueuedTransfers()));
+            metrics.add(new Metric<>(prefix + "queue.remaining", engine.getRemainingQueueCapacity()));
+        }
+        return metrics;
+    }
+
+    private static ObjectStore unwrap(ObjectStore store) {
+        if (store instanceof DeferredObjectStore) {
+            Optional<ObjectStore> initialized = ((DeferredObjectStore) store).getIfReady();
+            return initialized.orElse(null);
+        }
+        return store;
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.trace;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Emits phases as Java Flight Recorder events, so they show up on recording timelines next to
+ * GC, I/O and lock events of the same thread. While the event is not enabled in any recording,
+ * starting a phase only allocates the event. Loaded through {@link PhaseTracing#flightRecorderListener()},
+ * so that JVMs without {@code jdk.jfr} (older than 8u262) never resolve it.
+ */
+class JfrPhaseListener implements PhaseListener {
+
+    static final String EVENT_NAME = "org.trustedanalytics.store.Phase";
+
+    @Override
+    public PhaseSpan start(Phase phase, Object subject) {
+        PhaseEvent event = new PhaseEvent();
+        if (!event.isEnabled()) {
+            return PhaseSpan.NONE;
+        }
+        event.begin();
+        return () -> {
+            event.end();
+            if (event.shouldCommit()) {
+                event.phase = phase.name();
+                event.subject = String.valueOf(subject);
+                event.commit();
+            }
+        };
+    }
+
+    @Name(EVENT_NAME)
+    @Label("Object Store Phase")
+    @Category("Object Store")
+    static class PhaseEvent extends Event {
+
+        @Label("Phase")
+        String phase;
+
+        @Label("Subject")
+        String subject;
+    }
+}
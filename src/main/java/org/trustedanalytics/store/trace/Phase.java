@@ -0,0 +1,31 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.trace;
+
+/**
+ * Steps of creating a store and saving an object, timed separately so slow operations
+ * can be attributed to Kerberos, NameNode metadata calls or data transfer.
+ */
+public enum Phase {
+    KERBEROS_LOGIN,
+    FILE_SYSTEM_GET,
+    ENSURE_ORG_DIRECTORY,
+    UNIQUE_ID,
+    MKDIRS,
+    SET_ACLS,
+    WRITE,
+    PUBLISH
+}
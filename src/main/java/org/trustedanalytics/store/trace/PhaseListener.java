@@ -0,0 +1,49 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.trace;
+
+import java.util.Arrays;
+import java.util.List;
+
+@FunctionalInterface
+public interface PhaseListener {
+
+    PhaseListener NONE = (phase, subject) -> PhaseSpan.NONE;
+
+    /**
+     * Called on calling thread when phase starts.
+     *
+     * @param subject organization, path or data set the phase works on, listener should call
+     *                its toString only when it is actually needed
+     * @return span closed when the phase ends
+     */
+    PhaseSpan start(Phase phase, Object subject);
+
+    static PhaseListener compose(PhaseListener... listeners) {
+        List<PhaseListener> all = Arrays.asList(listeners.clone());
+        return (phase, subject) -> {
+            PhaseSpan[] spans = new PhaseSpan[all.size()];
+            for (int i = 0; i < spans.length; i++) {
+                spans[i] = all.get(i).start(phase, subject);
+            }
+            return () -> {
+                for (int i = spans.length - 1; i >= 0; i--) {
+                    spans[i].close();
+                }
+            };
+        };
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.trace;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts phases and their total and maximal duration. Only phases which already happened
+ * are exposed, so nothing is reported while tracing is disabled.
+ */
+public class PhaseMetrics implements PhaseListener, PublicMetrics {
+
+    private static final String PREFIX = "objectstore.phase.";
+
+    private final Map<Phase, Timer> timers = new EnumMap<>(Phase.class);
+
+    public PhaseMetrics() {
+        for (Phase phase : Phase.values()) {
+            timers.put(phase, new Timer());
+        }
+    }
+
+    @Override
+    public PhaseSpan start(Phase phase, Object subject) {
+        Timer timer = timers.get(phase);
+        long started = System.nanoTime();
+        return () -> timer.record(System.nanoTime() - started);
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        Collection<Metric<?>> metrics = new ArrayList<>();
+        timers.forEach((phase, timer) -> {
+            long count = timer.count.sum();
+            if (count > 0) {
+                String prefix = PREFIX + phase.name().toLowerCase() + ".";
+                metrics.add(new Metric<>(prefix + "count", count));
+                metrics.add(new Metric<>(prefix + "totalMillis", toMillis(timer.totalNanos.sum())));
+                metrics.add(new Metric<>(prefix + "maxMillis", toMillis(timer.maxNanos.get())));
+            }
+        });
+        return metrics;
+    }
+
+    private static long toMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    private static final class Timer {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        private void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.trace;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Optional;
+
+/**
+ * Process wide listener of phases. Until one is set, starting a phase costs a volatile read
+ * and returns shared no-op span, without reading the clock or allocating, so instrumentation
+ * can stay in production code paths.
+ */
+public final class PhaseTracing {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PhaseTracing.class);
+
+    private static volatile PhaseListener listener = PhaseListener.NONE;
+
+    private PhaseTracing() {
+    }
+
+    public static PhaseSpan start(Phase phase, Object subject) {
+        return listener.start(phase, subject);
+    }
+
+    public static void setListener(PhaseListener listener) {
+        PhaseTracing.listener = listener == null ? PhaseListener.NONE : listener;
+    }
+
+    public static PhaseListener getListener() {
+        return listener;
+    }
+
+    /**
+     * Listener emitting phases as Java Flight Recorder events, empty when this JVM has no
+     * {@code jdk.jfr} API.
+     */
+    public static Optional<PhaseListener> flightRecorderListener() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return Optional.of((PhaseListener) Class.forName("org.trustedanalytics.store.trace.JfrPhaseListener")
+                    .getDeclaredConstructor().newInstance());
+        } catch (ClassNotFoundException | LinkageError e) {
+            LOGGER.debug("Flight recorder not available", e);
+            return Optional.empty();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not create flight recorder listener", e);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.trace;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logs phases which took longer than threshold.
+ */
+public class SlowPhaseLogger implements PhaseListener {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SlowPhaseLogger.class);
+
+    private final long thresholdNanos;
+
+    public SlowPhaseLogger(long threshold, TimeUnit unit) {
+        this.thresholdNanos = unit.toNanos(threshold);
+    }
+
+    @Override
+    public PhaseSpan start(Phase phase, Object subject) {
+        long started = System.nanoTime();
+        return () -> {
+            long elapsed = System.nanoTime() - started;
+            if (elapsed >= thresholdNanos) {
+                LOGGER.warn("{} of '{}' took {} ms", phase, subject, TimeUnit.NANOSECONDS.toMillis(elapsed));
+            }
+        };
+    }
+}
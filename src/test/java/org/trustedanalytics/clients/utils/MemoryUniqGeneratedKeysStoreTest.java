@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.clients.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class MemoryUniqGeneratedKeysStoreTest {
+
+    private static final int THREADS = 8;
+    private static final int PUTS_PER_THREAD = 3 * MemoryUniqGeneratedKeysStore.ID_BLOCK_SIZE + 7;
+
+    @Test
+    public void put_concurrentThreads_idsUniqueAndValuesReadable() throws Exception {
+        MemoryUniqGeneratedKeysStore<Integer> store = new MemoryUniqGeneratedKeysStore<>();
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<Void>> results = new ArrayList<>();
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                results.add(executor.submit((Callable<Void>) () -> {
+                    for (int i = 0; i < PUTS_PER_THREAD; i++) {
+                        String id = store.put(i);
+                        assertEquals(Integer.valueOf(i), store.get(id));
+                        ids.add(id);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(THREADS * PUTS_PER_THREAD, ids.size());
+    }
+
+    @Test
+    public void has_indexedValues_trackedAcrossPutAndRemove() {
+        MemoryUniqGeneratedKeysStore<String> store = new MemoryUniqGeneratedKeysStore<>(true);
+        String first = store.put("value");
+        String second = store.put("value");
+
+        assertTrue(store.has("value"));
+        store.remove(first);
+        assertTrue(store.has("value"));
+        store.remove(second);
+        assertFalse(store.has("value"));
+    }
+
+    @Test
+    public void has_notIndexedValues_scanned() {
+        MemoryUniqGeneratedKeysStore<String> store = new MemoryUniqGeneratedKeysStore<>();
+        store.put("value");
+
+        assertTrue(store.has("value"));
+        assertFalse(store.has("other"));
+    }
+
+    @Test
+    public void get_notGeneratedId_null() {
+        MemoryUniqGeneratedKeysStore<String> store = new MemoryUniqGeneratedKeysStore<>();
+        String id = store.put("value");
+
+        assertNull(store.get("0" + id));
+        assertNull(store.get("-" + id));
+        assertNull(store.get("99999999999999999999"));
+        assertFalse(store.containsKey("not a number"));
+        assertTrue(store.containsKey(id));
+    }
+}
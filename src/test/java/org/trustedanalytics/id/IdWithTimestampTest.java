@@ -0,0 +1,60 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.id;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+
+public class IdWithTimestampTest {
+
+    private static final String TIMESTAMP = "160315-142501";
+
+    @Test
+    public void parse_generatedId_nameAndTimestampRecovered() {
+        IdWithTimestamp generated = IdWithTimestamp.generate("my data set");
+
+        IdWithTimestamp parsed = IdWithTimestamp.parse(generated.getId()).get();
+
+        assertEquals("my_data_set", parsed.getDataSetName());
+        assertEquals(generated.getId(), parsed.getId());
+        assertEquals(generated.getTimestamp().getTime() / 1000, parsed.getTimestamp().getTime() / 1000);
+    }
+
+    @Test
+    public void parse_hdfsIdWithPostfixes_nameAndTimestampRecovered() throws Exception {
+        IdWithTimestamp parsed = IdWithTimestamp.parse("data-set-" + TIMESTAMP + "-a1-Zz/000000_1").get();
+
+        assertEquals("data-set", parsed.getDataSetName());
+        assertEquals(new SimpleDateFormat("yyMMdd-HHmmss").parse(TIMESTAMP), parsed.getTimestamp());
+    }
+
+    @Test
+    public void parse_s3Key_folderSkipped() {
+        IdWithTimestamp parsed = IdWithTimestamp.parse("downloader/dataSet-" + TIMESTAMP).get();
+
+        assertEquals("dataSet", parsed.getDataSetName());
+    }
+
+    @Test
+    public void parse_idWithoutTimestamp_empty() {
+        assertFalse(IdWithTimestamp.parse("123").isPresent());
+        assertFalse(IdWithTimestamp.parse("dataSet-161399-250000").isPresent());
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.junit.Test;
+
+public class DeferredObjectStoreTest {
+
+    private final List<Runnable> tasks = new ArrayList<>();
+    private final ObjectStore backend = mock(ObjectStore.class);
+
+    @Test
+    public void getContent_eagerStore_initializedInBackgroundAndWarmedUp() throws IOException {
+        InputStream content = mock(InputStream.class);
+        when(backend.getContent("id")).thenReturn(content);
+        DeferredObjectStore store = new DeferredObjectStore("test", () -> backend, tasks::add, false, true);
+        assertEquals(DeferredObjectStore.State.INITIALIZING, store.getState());
+
+        runTasks();
+
+        assertEquals(DeferredObjectStore.State.READY, store.getState());
+        verify(backend).warmUp();
+        assertSame(content, store.getContent("id"));
+    }
+
+    @Test
+    public void start_lazyStore_initializedOnlyWhenStarted() {
+        DeferredObjectStore store = new DeferredObjectStore("test", () -> backend, tasks::add, true, false);
+        runTasks();
+        assertEquals(DeferredObjectStore.State.NOT_STARTED, store.getState());
+
+        store.start();
+        runTasks();
+
+        assertEquals(DeferredObjectStore.State.READY, store.getState());
+    }
+
+    @Test(expected = IOException.class)
+    public void getContent_initializationFailed_throwsException() throws IOException {
+        Callable<ObjectStore> failing = () -> {
+            throw new IllegalStateException("no credentials");
+        };
+        DeferredObjectStore store = new DeferredObjectStore("test", failing, Runnable::run, false, true);
+        assertEquals(DeferredObjectStore.State.FAILED, store.getState());
+
+        store.getContent("id");
+    }
+
+    private void runTasks() {
+        tasks.forEach(Runnable::run);
+        tasks.clear();
+    }
+}
@@ -0,0 +1,229 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.io.ByteStreams;
+
+public class InFolderObjectStoreTest {
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private InFolderObjectStore store;
+
+    @Before
+    public void setUp() {
+        store = new InFolderObjectStore(folder.getRoot().getAbsolutePath());
+    }
+
+    @Test
+    public void save_completed_publishedAndNoTemporaryLeft() throws IOException {
+        String id = store.save(new byte[]{1, 2, 3}, "dataSetName");
+
+        assertArrayEquals(new byte[]{1, 2, 3}, ByteStreams.toByteArray(store.getContent(id)));
+        assertEquals(0, temporaries().length);
+    }
+
+    @Test
+    public void remove_savedObject_fileDeleted() throws IOException {
+        String id = store.save(new byte[]{1, 2, 3}, "dataSetName");
+
+        store.remove(id);
+
+        assertFalse(new File(folder.getRoot(), id).exists());
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void remove_noSuchObject_throwsException() throws IOException {
+        store.remove("dataSetName-160923-141503");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void remove_pathOutsideFolder_rejected() throws IOException {
+        store.remove("../dataSetName-160923-141503");
+    }
+
+    @Test
+    public void save_inputFails_nothingPublished() throws IOException {
+        InputStream failing = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("connection reset");
+            }
+        };
+
+        try {
+            store.save(failing, "dataSetName");
+            fail("expected IOException");
+        } catch (IOException e) {
+            assertEquals(1, folder.getRoot().list().length);
+            assertEquals(0, temporaries().length);
+        }
+    }
+
+    @Test
+    public void openForWrite_notClosed_objectNotVisible() throws IOException {
+        ObjectStoreOutputStream output = store.openForWrite("dataSetName");
+        output.write(new byte[]{1, 2, 3});
+
+        assertEquals(1, temporaries().length);
+        output.close();
+
+        assertArrayEquals(new byte[]{1, 2, 3}, ByteStreams.toByteArray(store.getContent(output.getObjectId())));
+        assertEquals(0, temporaries().length);
+    }
+
+    @Test
+    public void sweepTemporaries_staleTemporary_deleted() throws IOException {
+        ObjectStoreOutputStream abandoned = store.openForWrite("abandoned");
+        ObjectStoreOutputStream active = store.openForWrite("active");
+        abandoned.write(new byte[]{1});
+        active.write(new byte[]{2});
+        Path stale = temporaries()[0].toPath();
+        Files.setLastModifiedTime(stale, FileTime.fromMillis(System.currentTimeMillis() - 60000));
+
+        assertEquals(1, store.sweepTemporaries(30000));
+
+        assertFalse(Files.exists(stale));
+        assertEquals(1, temporaries().length);
+        active.abort();
+        abandoned.abort();
+    }
+
+    @Test
+    public void sweepTemporaries_nothingSaved_nothingDeleted() throws IOException {
+        assertEquals(0, store.sweepTemporaries(0));
+        assertTrue(folder.getRoot().list().length == 0);
+    }
+
+    @Test
+    public void listObjectIds_unpublishedObject_notListed() throws IOException {
+        String id = store.save(new byte[]{1, 2, 3}, "dataSetName");
+        ObjectStoreOutputStream unpublished = store.openForWrite("unpublished");
+
+        assertEquals(Collections.singletonList(id), store.listObjectIds().collect(Collectors.toList()));
+        unpublished.abort();
+    }
+
+    @Test
+    public void copy_sameKindOfStore_fileLinked() throws IOException {
+        File targetFolder = folder.newFolder();
+        InFolderObjectStore target = new InFolderObjectStore(targetFolder.getAbsolutePath());
+        String id = store.save(new byte[]{1, 2, 3}, "dataSetName");
+
+        String copyId = store.copy(id, target, "copy");
+
+        assertArrayEquals(new byte[]{1, 2, 3}, ByteStreams.toByteArray(target.getContent(copyId)));
+        assertTrue(Files.isSameFile(new File(folder.getRoot(), id).toPath(), new File(targetFolder, copyId).toPath()));
+    }
+
+    @Test
+    public void isLinkUnsupported_failureReason_onlyUnsupportedLinksCopied() {
+        assertTrue(InFolderObjectStore.isLinkUnsupported(
+                new FileSystemException("target", "source", "Invalid cross-device link")));
+        assertTrue(InFolderObjectStore.isLinkUnsupported(
+                new FileSystemException("target", "source", "Operation not permitted")));
+        assertFalse(InFolderObjectStore.isLinkUnsupported(new AccessDeniedException("target")));
+        assertFalse(InFolderObjectStore.isLinkUnsupported(new FileAlreadyExistsException("target")));
+        assertFalse(InFolderObjectStore.isLinkUnsupported(
+                new FileSystemException("target", "source", "No space left on device")));
+    }
+
+    @Test
+    public void copy_otherKindOfStore_contentStreamed() throws IOException {
+        MemoryObjectStore target = new MemoryObjectStore();
+        byte[] bytes = new byte[100000];
+        new Random(1).nextBytes(bytes);
+        String id = store.save(bytes, "dataSetName");
+
+        String copyId = store.copy(id, target, "copy");
+
+        assertArrayEquals(bytes, ByteStreams.toByteArray(target.getContent(copyId)));
+    }
+
+    @Test
+    public void getContent_memoryMapped_contentFromOffsetRead() throws IOException {
+        byte[] bytes = new byte[100000];
+        new Random(2).nextBytes(bytes);
+        String id = store.save(bytes, "dataSetName");
+        store.setMemoryMapThreshold(0);
+
+        try (InputStream input = store.getContent(id, 1000)) {
+            assertArrayEquals(Arrays.copyOfRange(bytes, 1000, bytes.length), ByteStreams.toByteArray(input));
+        }
+    }
+
+    @Test
+    public void readBuffers_memoryMapped_allContentPassed() throws IOException {
+        byte[] bytes = new byte[100000];
+        new Random(3).nextBytes(bytes);
+        String id = store.save(bytes, "dataSetName");
+        store.setMemoryMapThreshold(0);
+        ByteArrayOutputStream consumed = new ByteArrayOutputStream();
+
+        long read = store.readBuffers(id, buffer -> {
+            byte[] chunk = new byte[buffer.remaining()];
+            buffer.get(chunk);
+            consumed.write(chunk, 0, chunk.length);
+        });
+
+        assertEquals(bytes.length, read);
+        assertArrayEquals(bytes, consumed.toByteArray());
+    }
+
+    @Test
+    public void map_range_sliceOfContent() throws IOException {
+        String id = store.save(new byte[]{1, 2, 3, 4, 5}, "dataSetName");
+
+        ByteBuffer slice = store.map(id, 1, 3);
+
+        assertEquals(3, slice.remaining());
+        assertEquals(2, slice.get(0));
+        assertEquals(4, slice.get(2));
+    }
+
+    private File[] temporaries() {
+        File[] files = new File(folder.getRoot(), InFolderObjectStore.TEMPORARY_DIR).listFiles();
+        return files == null ? new File[0] : files;
+    }
+}
@@ -15,6 +15,7 @@
  */
 package org.trustedanalytics.store;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
@@ -79,6 +80,25 @@ public class MemoryObjectStoreTest {
 
     }
 
+    @Test
+    public void openForWrite_closed_contentSaved() throws IOException {
+        ObjectStoreOutputStream output = store.openForWrite("dataSetName");
+        output.write(new byte[]{1, 2});
+        output.write(3);
+        output.close();
+
+        assertArrayEquals(new byte[]{1, 2, 3}, ByteStreams.toByteArray(store.getContent(output.getObjectId())));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void openForWrite_aborted_nothingSaved() throws IOException {
+        ObjectStoreOutputStream output = store.openForWrite("dataSetName");
+        output.write(new byte[]{1, 2});
+        output.abort();
+
+        output.getObjectId();
+    }
+
     private String addDataToStore(){
         String dataSetName1 = "dataSetName1";
         byte[] bytes1 = new byte[]{1, 2, 3, 4};
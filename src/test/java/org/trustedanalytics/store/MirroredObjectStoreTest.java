@@ -0,0 +1,147 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+
+public class MirroredObjectStoreTest {
+
+    private static final byte[] CONTENT = new byte[]{1, 2, 3, 4, 5};
+
+    private MemoryObjectStore first;
+    private MemoryObjectStore second;
+    private ObjectStore failing;
+
+    @Before
+    public void setUp() throws IOException {
+        first = new MemoryObjectStore();
+        second = new MemoryObjectStore();
+        failing = mock(ObjectStore.class);
+        when(failing.getId()).thenReturn("failing");
+        when(failing.openForWrite(anyString(), any(WriteOptions.class))).thenThrow(new IOException("unavailable"));
+        when(failing.getContent(anyString())).thenThrow(new IOException("unavailable"));
+    }
+
+    @Test
+    public void save_allReplicasAvailable_readableFromEach() throws IOException {
+        MirroredObjectStore store = new MirroredObjectStore(Arrays.asList(first, second), 2);
+
+        String id = store.save(new ByteArrayInputStream(CONTENT), "dataSetName");
+
+        String[] ids = id.split(",");
+        assertEquals(2, ids.length);
+        assertArrayEquals(CONTENT, ByteStreams.toByteArray(first.getContent(ids[0])));
+        assertArrayEquals(CONTENT, ByteStreams.toByteArray(second.getContent(ids[1])));
+        assertArrayEquals(CONTENT, ByteStreams.toByteArray(store.getContent(id)));
+    }
+
+    @Test
+    public void save_replicaFailedWithinQuorum_savedInOthers() throws IOException {
+        MirroredObjectStore store = new MirroredObjectStore(Arrays.asList(first, failing, second), 2);
+
+        String id = store.save(new ByteArrayInputStream(CONTENT), "dataSetName");
+
+        assertTrue(id.contains(",,"));
+        assertArrayEquals(CONTENT, ByteStreams.toByteArray(store.getContent(id)));
+    }
+
+    @Test(expected = IOException.class)
+    public void save_quorumNotReached_throwsException() throws IOException {
+        MirroredObjectStore store = new MirroredObjectStore(Arrays.asList(first, failing), 2);
+
+        store.save(new ByteArrayInputStream(CONTENT), "dataSetName");
+    }
+
+    @Test
+    public void save_inputFailsWithRuntimeException_replicaWritesAborted() throws IOException {
+        ObjectStoreOutputStream output = mock(ObjectStoreOutputStream.class);
+        ObjectStore replica = mock(ObjectStore.class);
+        when(replica.getId()).thenReturn("replica");
+        when(replica.openForWrite(anyString(), any(WriteOptions.class))).thenReturn(output);
+        MirroredObjectStore store = new MirroredObjectStore(Arrays.asList(replica), 1);
+        InputStream input = mock(InputStream.class);
+        when(input.read(any(byte[].class), anyInt(), anyInt())).thenThrow(new IllegalStateException("broken"));
+
+        try {
+            store.save(input, "dataSetName");
+            fail("Expected failure of input");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        verify(output, timeout(1000)).abort();
+        verify(output, never()).close();
+    }
+
+    @Test
+    public void getContent_fastestReplicaFails_fallsBackToOther() throws IOException {
+        ObjectStore flaky = mock(ObjectStore.class);
+        when(flaky.getId()).thenReturn("flaky");
+        when(flaky.openForWrite(anyString(), any(WriteOptions.class)))
+                .thenAnswer(invocation -> first.openForWrite("dataSetName"));
+        when(flaky.getContent(anyString())).thenThrow(new IOException("unavailable"));
+        MirroredObjectStore store = new MirroredObjectStore(Arrays.asList(flaky, second), 1);
+        String id = store.save(new ByteArrayInputStream(CONTENT), "dataSetName");
+
+        InputStream content = store.getContent(id);
+
+        assertArrayEquals(CONTENT, ByteStreams.toByteArray(content));
+        assertTrue(store.getReplicaLatencyNanos().get(0) > store.getReplicaLatencyNanos().get(1));
+    }
+
+    @Test
+    public void remove_storedObject_removedFromAllReplicas() throws IOException {
+        MirroredObjectStore store = new MirroredObjectStore(Arrays.asList(first, second), 2);
+        String id = store.save(new ByteArrayInputStream(CONTENT), "dataSetName");
+
+        store.remove(id);
+
+        String[] ids = id.split(",");
+        assertRemoved(first, ids[0]);
+        assertRemoved(second, ids[1]);
+    }
+
+    private void assertRemoved(ObjectStore replica, String id) throws IOException {
+        try {
+            replica.getContent(id);
+            fail("Object still exists in replica");
+        } catch (FileNotFoundException e) {
+            // expected
+        }
+    }
+}
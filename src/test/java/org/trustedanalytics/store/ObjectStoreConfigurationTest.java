@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import org.trustedanalytics.store.config.ObjectStoreProperties;
+import org.trustedanalytics.store.hdfs.HdfsObjectStore;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class ObjectStoreConfigurationTest {
+
+    private static final long MAX_AGE_MINUTES = 30;
+    private static final long SWEEP_MINUTES = 5;
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ScheduledExecutorService executor = mock(ScheduledExecutorService.class);
+    private final ObjectStoreConfiguration configuration = new ObjectStoreConfiguration(executor);
+
+    @Before
+    public void setUp() throws ReflectiveOperationException {
+        ObjectStoreProperties properties = new ObjectStoreProperties();
+        properties.setTemporaryMaxAgeMinutes(MAX_AGE_MINUTES);
+        properties.setTemporarySweepMinutes(SWEEP_MINUTES);
+        //injected by Spring otherwise
+        Field field = ObjectStoreConfiguration.class.getDeclaredField("objectStoreProps");
+        field.setAccessible(true);
+        field.set(configuration, properties);
+    }
+
+    @Test
+    public void scheduleTemporarySweeping_inFolderStore_staleTemporariesDeletedPeriodically() throws IOException {
+        File temporaries = folder.newFolder(InFolderObjectStore.TEMPORARY_DIR);
+        File stale = new File(temporaries, "stale");
+        File fresh = new File(temporaries, "fresh");
+        assertTrue(stale.createNewFile() && fresh.createNewFile());
+        assertTrue(stale.setLastModified(System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(MAX_AGE_MINUTES + 1)));
+
+        configuration.scheduleTemporarySweeping(new InFolderObjectStore(folder.getRoot().getAbsolutePath()));
+
+        ArgumentCaptor<Runnable> sweep = ArgumentCaptor.forClass(Runnable.class);
+        verify(executor).scheduleWithFixedDelay(sweep.capture(), eq(SWEEP_MINUTES), eq(SWEEP_MINUTES),
+                eq(TimeUnit.MINUTES));
+        sweep.getValue().run();
+        assertFalse(stale.exists());
+        assertTrue(fresh.exists());
+    }
+
+    @Test
+    public void scheduleTemporarySweeping_hdfsStore_sweepingScheduledWithConfiguredAge() {
+        HdfsObjectStore store = mock(HdfsObjectStore.class);
+
+        configuration.scheduleTemporarySweeping(store);
+
+        verify(store).scheduleSweeping(executor, TimeUnit.MINUTES.toMillis(MAX_AGE_MINUTES), SWEEP_MINUTES,
+                TimeUnit.MINUTES);
+    }
+}
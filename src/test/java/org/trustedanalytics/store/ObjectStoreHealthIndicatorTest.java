@@ -0,0 +1,52 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.boot.actuate.health.Status;
+
+public class ObjectStoreHealthIndicatorTest {
+
+    private final List<Runnable> tasks = new ArrayList<>();
+
+    @Test
+    public void health_storeWarmingUp_outOfServiceUntilReady() {
+        DeferredObjectStore deferred =
+                new DeferredObjectStore("test", () -> mock(ObjectStore.class), tasks::add, false, true);
+        ObjectStoreHealthIndicator indicator =
+                new ObjectStoreHealthIndicator(Arrays.asList(deferred, new MemoryObjectStore()));
+        assertEquals(Status.OUT_OF_SERVICE, indicator.health().getStatus());
+
+        tasks.forEach(Runnable::run);
+
+        assertEquals(Status.UP, indicator.health().getStatus());
+    }
+
+    @Test
+    public void health_lazyStoreNotStarted_up() {
+        DeferredObjectStore lazy =
+                new DeferredObjectStore("test", () -> mock(ObjectStore.class), tasks::add, true, true);
+
+        assertEquals(Status.UP, new ObjectStoreHealthIndicator(Arrays.asList(lazy)).health().getStatus());
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class ReplicaLatencyTest {
+
+    private static final long MILLISECOND = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final AtomicLong clock = new AtomicLong();
+    private final ReplicaLatency failed = new ReplicaLatency(clock::get);
+    private final ReplicaLatency slower = new ReplicaLatency(clock::get);
+
+    @Test
+    public void getAverageNanos_failureWithoutFurtherReads_penaltyDecays() {
+        failed.recordSuccess(MILLISECOND);
+        slower.recordSuccess(50 * MILLISECOND);
+        failed.recordFailure();
+        assertTrue(failed.getAverageNanos() > slower.getAverageNanos());
+
+        clock.addAndGet(10 * ReplicaLatency.PENALTY_HALF_LIFE_NANOS);
+
+        assertTrue(failed.getAverageNanos() < slower.getAverageNanos());
+    }
+
+    @Test
+    public void recordSuccess_afterFailure_penaltyCleared() {
+        failed.recordSuccess(MILLISECOND);
+        failed.recordFailure();
+
+        failed.recordSuccess(MILLISECOND);
+
+        assertEquals(MILLISECOND, failed.getAverageNanos());
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.trustedanalytics.id.IdWithTimestamp;
+
+import com.google.common.io.ByteStreams;
+
+public class ShardedObjectStoreTest {
+
+    private static final int OBJECTS = 300;
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private ShardedObjectStore store;
+
+    @Before
+    public void setUp() {
+        Map<String, ObjectStore> shards = new LinkedHashMap<>();
+        shards.put("a", new MemoryObjectStore());
+        shards.put("b", new MemoryObjectStore());
+        store = new ShardedObjectStore(shards);
+    }
+
+    @Test
+    public void save_manyObjects_spreadOverAllShards() throws IOException {
+        List<String> ids = saveObjects();
+
+        Set<String> usedShards = ids.stream().map(id -> id.split("/")[0]).collect(Collectors.toSet());
+        assertEquals(2, usedShards.size());
+        for (int i = 0; i < OBJECTS; i++) {
+            assertArrayEquals(content(i), ByteStreams.toByteArray(store.getContent(ids.get(i))));
+        }
+    }
+
+    @Test
+    public void rebalance_shardAdded_onlyObjectsOwnedByNewShardMoved() throws IOException {
+        List<String> ids = saveObjects();
+        store.addShard("c", new MemoryObjectStore());
+
+        Map<String, String> moved = store.rebalance(ids);
+
+        assertFalse(moved.isEmpty());
+        assertTrue(moved.size() < OBJECTS / 2);
+        assertTrue(moved.values().stream().allMatch(id -> id.startsWith("c/")));
+        for (int i = 0; i < OBJECTS; i++) {
+            String id = moved.getOrDefault(ids.get(i), ids.get(i));
+            assertArrayEquals(content(i), ByteStreams.toByteArray(store.getContent(id)));
+        }
+        assertTrue(store.rebalance(moved.values()).isEmpty());
+    }
+
+    @Test
+    public void rebalance_listenerFails_originalKeptAndCopyRemoved() throws IOException {
+        List<String> ids = saveObjects();
+        store.addShard("c", new MemoryObjectStore());
+        List<String> copies = new ArrayList<>();
+
+        Map<String, String> moved = store.rebalance(ids, (oldId, newId) -> {
+            copies.add(newId);
+            throw new IllegalStateException("catalog unavailable");
+        });
+
+        assertTrue(moved.isEmpty());
+        assertFalse(copies.isEmpty());
+        for (String copy : copies) {
+            try {
+                store.getContent(copy);
+                fail("copy not removed: " + copy);
+            } catch (FileNotFoundException e) {
+                //expected
+            }
+        }
+        for (int i = 0; i < OBJECTS; i++) {
+            assertArrayEquals(content(i), ByteStreams.toByteArray(store.getContent(ids.get(i))));
+        }
+    }
+
+    @Test
+    public void rebalance_generatedShardIds_dataSetNameKept() throws IOException {
+        Map<String, ObjectStore> shards = new LinkedHashMap<>();
+        shards.put("a", new InFolderObjectStore(folder.newFolder().getAbsolutePath()));
+        ShardedObjectStore folders = new ShardedObjectStore(shards);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < OBJECTS; i++) {
+            ids.add(folders.save(content(i), "dataSetName"));
+        }
+        folders.addShard("b", new InFolderObjectStore(folder.newFolder().getAbsolutePath()));
+
+        Map<String, String> moved = folders.rebalance(ids);
+
+        assertFalse(moved.isEmpty());
+        for (String newId : moved.values()) {
+            assertEquals("dataSetName", IdWithTimestamp.parse(newId).get().getDataSetName());
+        }
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void getContent_unknownShard_throwsException() throws IOException {
+        store.getContent("x/0123456789abcdef/1");
+    }
+
+    private List<String> saveObjects() throws IOException {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < OBJECTS; i++) {
+            ids.add(store.save(content(i), "dataSetName"));
+        }
+        return ids;
+    }
+
+    private static byte[] content(int i) {
+        return new byte[]{(byte) i, (byte) (i >> 8)};
+    }
+}
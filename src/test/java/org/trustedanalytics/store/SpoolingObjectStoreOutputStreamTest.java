@@ -0,0 +1,79 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+
+public class SpoolingObjectStoreOutputStreamTest {
+
+    private final MemoryObjectStore memory = new MemoryObjectStore();
+    private WriteOptions savedWith;
+
+    // store relying on default openForWrite implementation
+    private final ObjectStore store = new ObjectStore() {
+        @Override
+        public String save(InputStream input, String dataSetName) throws IOException {
+            return memory.save(input, dataSetName);
+        }
+
+        @Override
+        public String save(InputStream input, String dataSetName, WriteOptions options) throws IOException {
+            savedWith = options;
+            return save(input, dataSetName);
+        }
+
+        @Override
+        public InputStream getContent(String objectId) throws IOException {
+            return memory.getContent(objectId);
+        }
+
+        @Override
+        public String getId() {
+            return "spooling";
+        }
+    };
+
+    @Test
+    public void close_spooledContent_savedWithExpectedLength() throws IOException {
+        ObjectStoreOutputStream output = store.openForWrite("dataSetName");
+        output.write(new byte[]{1, 2, 3});
+        ByteBuffer direct = ByteBuffer.allocateDirect(2);
+        direct.put(new byte[]{4, 5});
+        direct.flip();
+        output.write(direct);
+        output.close();
+
+        assertArrayEquals(new byte[]{1, 2, 3, 4, 5}, ByteStreams.toByteArray(store.getContent(output.getObjectId())));
+        assertEquals(Long.valueOf(5), savedWith.getExpectedLength().get());
+    }
+
+    @Test(expected = IOException.class)
+    public void write_afterClose_throwsException() throws IOException {
+        ObjectStoreOutputStream output = store.openForWrite("dataSetName");
+        output.close();
+
+        output.write(1);
+    }
+}
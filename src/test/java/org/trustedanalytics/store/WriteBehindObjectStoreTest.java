@@ -0,0 +1,172 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+
+import com.google.common.io.ByteStreams;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+public class WriteBehindObjectStoreTest {
+
+    private static final byte[] BYTES = new byte[]{1, 2, 3, 4};
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void save_remoteAvailable_readableBeforeAndAfterFlush() throws Exception {
+        try (WriteBehindObjectStore store = newStore(new MemoryObjectStore())) {
+            String id = store.save(BYTES, "dataSetName");
+            assertArrayEquals(BYTES, ByteStreams.toByteArray(store.getContent(id)));
+
+            assertTrue(store.awaitFlushed(5, TimeUnit.SECONDS));
+
+            assertArrayEquals(BYTES, ByteStreams.toByteArray(store.getContent(id)));
+        }
+    }
+
+    @Test
+    public void save_remoteUnavailable_uploadedAfterRestart() throws Exception {
+        ObjectStore unavailable = mock(ObjectStore.class);
+        when(unavailable.save(any(InputStream.class), anyString())).thenThrow(new IOException("unavailable"));
+        String id;
+        try (WriteBehindObjectStore store = newStore(unavailable)) {
+            id = store.save(BYTES, "dataSetName");
+            assertArrayEquals(BYTES, ByteStreams.toByteArray(store.getContent(id)));
+        }
+
+        try (WriteBehindObjectStore restarted = newStore(new MemoryObjectStore())) {
+            assertTrue(restarted.awaitFlushed(5, TimeUnit.SECONDS));
+            assertArrayEquals(BYTES, ByteStreams.toByteArray(restarted.getContent(id)));
+        }
+    }
+
+    @Test
+    public void remove_flushedObject_removedAlsoAfterRestart() throws Exception {
+        MemoryObjectStore remote = new MemoryObjectStore();
+        String id;
+        try (WriteBehindObjectStore store = newStore(remote)) {
+            id = store.save(BYTES, "dataSetName");
+            assertTrue(store.awaitFlushed(5, TimeUnit.SECONDS));
+
+            store.remove(id);
+            assertNotFound(store, id);
+        }
+
+        try (WriteBehindObjectStore restarted = newStore(remote)) {
+            assertNotFound(restarted, id);
+        }
+    }
+
+    @Test
+    public void compactJournal_flushedObject_localIdResolvedAfterRestart() throws Exception {
+        MemoryObjectStore remote = new MemoryObjectStore();
+        Map<String, String> flushed = new ConcurrentHashMap<>();
+        String id;
+        try (WriteBehindObjectStore store = newStore(remote)) {
+            store.setFlushListener(flushed::put);
+            id = store.save(BYTES, "dataSetName");
+            assertTrue(store.awaitFlushed(5, TimeUnit.SECONDS));
+
+            store.compactJournal();
+            assertArrayEquals(BYTES, ByteStreams.toByteArray(store.getContent(id)));
+        }
+
+        assertArrayEquals(BYTES, ByteStreams.toByteArray(remote.getContent(flushed.get(id))));
+        try (WriteBehindObjectStore restarted = newStore(remote)) {
+            assertArrayEquals(BYTES, ByteStreams.toByteArray(restarted.getContent(id)));
+
+            restarted.remove(id);
+            assertNotFound(restarted, id);
+        }
+        assertNotFound(remote, flushed.get(id));
+        try (WriteBehindObjectStore restarted = newStore(remote)) {
+            assertNotFound(restarted, id);
+        }
+    }
+
+    @Test
+    public void save_inputFailsWithRuntimeException_nothingStaged() throws Exception {
+        InputStream failing = new InputStream() {
+            @Override
+            public int read() {
+                throw new IllegalStateException("broken source");
+            }
+        };
+        try (WriteBehindObjectStore store = newStore(new MemoryObjectStore())) {
+            try {
+                store.save(failing, "dataSetName");
+                fail("Source failure is not reported");
+            } catch (IllegalStateException expected) {
+            }
+            assertTrue(store.awaitFlushed(5, TimeUnit.SECONDS));
+        }
+
+        assertEquals(0, folder.getRoot().list((dir, name) -> name.endsWith(".staged")).length);
+    }
+
+    @Test
+    public void remove_remoteRemoveFails_objectKept() throws Exception {
+        MemoryObjectStore remote = spy(new MemoryObjectStore());
+        doThrow(new IOException("unavailable")).when(remote).remove(anyString());
+        String id;
+        try (WriteBehindObjectStore store = newStore(remote)) {
+            id = store.save(BYTES, "dataSetName");
+            assertTrue(store.awaitFlushed(5, TimeUnit.SECONDS));
+
+            try {
+                store.remove(id);
+                fail("Remote removal failure is not reported");
+            } catch (IOException expected) {
+            }
+            assertArrayEquals(BYTES, ByteStreams.toByteArray(store.getContent(id)));
+        }
+
+        try (WriteBehindObjectStore restarted = newStore(remote)) {
+            assertArrayEquals(BYTES, ByteStreams.toByteArray(restarted.getContent(id)));
+        }
+    }
+
+    private WriteBehindObjectStore newStore(ObjectStore remote) throws IOException {
+        return new WriteBehindObjectStore(remote, folder.getRoot().getAbsolutePath(), 2);
+    }
+
+    private void assertNotFound(ObjectStore store, String id) throws IOException {
+        try {
+            store.getContent(id);
+            fail("Removed object is still readable");
+        } catch (FileNotFoundException expected) {
+        }
+    }
+}
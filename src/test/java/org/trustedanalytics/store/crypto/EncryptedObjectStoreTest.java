@@ -0,0 +1,118 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import com.google.common.io.ByteStreams;
+import org.junit.Before;
+import org.junit.Test;
+import org.trustedanalytics.store.MemoryObjectStore;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+public class EncryptedObjectStoreTest {
+
+    private static final int CHUNK_SIZE = 1024;
+    private static final SecretKey KEY = new SecretKeySpec(new byte[16], "AES");
+
+    private MemoryObjectStore plainStore;
+    private EncryptedObjectStore store;
+
+    @Before
+    public void setUp() {
+        plainStore = new MemoryObjectStore();
+        store = new EncryptedObjectStore(plainStore, KEY, CHUNK_SIZE);
+    }
+
+    @Test
+    public void save_variousLengths_encryptedAndReadBack() throws IOException {
+        for (int length : new int[]{0, 1, CHUNK_SIZE - 1, CHUNK_SIZE, CHUNK_SIZE + 1, 3 * CHUNK_SIZE}) {
+            byte[] content = randomBytes(length);
+
+            String id = store.save(content, "dataSetName");
+
+            assertArrayEquals(content, ByteStreams.toByteArray(store.getContent(id)));
+            assertFalse(length > 0 && Arrays.equals(content,
+                    Arrays.copyOfRange(ByteStreams.toByteArray(plainStore.getContent(id)),
+                            ChunkCipher.HEADER_LENGTH, ChunkCipher.HEADER_LENGTH + length)));
+        }
+    }
+
+    @Test
+    public void getContent_offset_readFromOffset() throws IOException {
+        byte[] content = randomBytes(3 * CHUNK_SIZE + 100);
+        String id = store.save(content, "dataSetName");
+
+        for (int offset : new int[]{1, CHUNK_SIZE, 2 * CHUNK_SIZE + 7, content.length}) {
+            assertArrayEquals(Arrays.copyOfRange(content, offset, content.length),
+                    ByteStreams.toByteArray(store.getContent(id, offset)));
+        }
+    }
+
+    @Test
+    public void getContent_truncatedAtChunkBoundary_fails() throws IOException {
+        String id = store.save(randomBytes(2 * CHUNK_SIZE), "dataSetName");
+        byte[] encrypted = ByteStreams.toByteArray(plainStore.getContent(id));
+        String truncated = plainStore.save(Arrays.copyOf(encrypted,
+                ChunkCipher.HEADER_LENGTH + 2 * (CHUNK_SIZE + ChunkCipher.TAG_LENGTH)), "dataSetName");
+
+        assertReadFails(store, truncated);
+    }
+
+    @Test
+    public void getContent_modified_fails() throws IOException {
+        String id = store.save(randomBytes(CHUNK_SIZE), "dataSetName");
+        byte[] encrypted = ByteStreams.toByteArray(plainStore.getContent(id));
+        encrypted[ChunkCipher.HEADER_LENGTH + 10] ^= 1;
+
+        assertReadFails(store, plainStore.save(encrypted, "dataSetName"));
+    }
+
+    @Test
+    public void getContent_otherKey_fails() throws IOException {
+        String id = store.save(randomBytes(10), "dataSetName");
+        SecretKey otherKey = new SecretKeySpec(randomBytes(16), "AES");
+
+        assertReadFails(new EncryptedObjectStore(plainStore, otherKey), id);
+    }
+
+    @Test
+    public void getContent_plainObject_fails() throws IOException {
+        assertReadFails(store, plainStore.save(randomBytes(100), "dataSetName"));
+    }
+
+    private static void assertReadFails(EncryptedObjectStore store, String id) {
+        try {
+            ByteStreams.toByteArray(store.getContent(id));
+            fail("expected IOException");
+        } catch (IOException e) {
+            //expected
+        }
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.expiry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.commons.lang.StringUtils;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.trustedanalytics.store.InFolderObjectStore;
+import org.trustedanalytics.store.ObjectStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.time.Duration;
+import java.util.Date;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+public class ExpirySweeperTest {
+
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ObjectStore store = mock(ObjectStore.class);
+    private ExpirySweeper sweeper;
+
+    @After
+    public void tearDown() {
+        sweeper.close();
+    }
+
+    @Test
+    public void sweep_firstMatchingPolicyApplied() throws IOException {
+        String expiredTemporary = id("tmp-download", 2 * HOUR);
+        String freshTemporary = id("tmp-download", 0);
+        String kept = id("tmp-keep", 2 * HOUR);
+        String unmatched = id("report", 100 * HOUR);
+        when(store.listObjectIds()).thenReturn(Stream.of(expiredTemporary, freshTemporary, kept, unmatched, "123"));
+        sweeper = new ExpirySweeper(store, ImmutableList.of(
+                new TtlPolicy("tmp-keep", Duration.ofDays(1)),
+                new TtlPolicy("tmp-*", Duration.ofHours(1))), 2, 1000);
+
+        assertEquals(1, sweeper.sweep());
+
+        verify(store).remove(expiredTemporary);
+        verify(store, never()).remove(freshTemporary);
+        verify(store, never()).remove(kept);
+        verify(store, never()).remove(unmatched);
+    }
+
+    @Test
+    public void sweep_removalFails_otherObjectsRemoved() throws IOException {
+        String failing = id("tmp", 2 * HOUR);
+        String removedMeanwhile = id("tmp-other", 2 * HOUR);
+        String expired = id("tmp-last", 2 * HOUR);
+        when(store.listObjectIds()).thenReturn(Stream.of(failing, removedMeanwhile, expired));
+        doThrow(new IOException("connection reset")).when(store).remove(failing);
+        doThrow(new NoSuchElementException()).when(store).remove(removedMeanwhile);
+        sweeper = new ExpirySweeper(store, ImmutableList.of(new TtlPolicy("tmp*", Duration.ofHours(1))), 1, 1000);
+
+        assertEquals(1, sweeper.sweep());
+
+        verify(store).remove(expired);
+    }
+
+    @Test
+    public void sweep_noPolicies_nothingRemoved() throws IOException {
+        when(store.listObjectIds()).thenReturn(Stream.of(id("tmp", 2 * HOUR)));
+        sweeper = new ExpirySweeper(store, ImmutableList.of(), 1, 1000);
+
+        assertEquals(0, sweeper.sweep());
+
+        verify(store, never()).remove(anyString());
+    }
+
+    @Test
+    public void sweep_inFolderStore_expiredFilesDeleted() throws IOException {
+        File expired = folder.newFile(StringUtils.substringBefore(id("tmp", 2 * HOUR), "/"));
+        File fresh = folder.newFile(StringUtils.substringBefore(id("tmp", 0), "/"));
+        sweeper = new ExpirySweeper(new InFolderObjectStore(folder.getRoot().getPath()),
+                ImmutableList.of(new TtlPolicy("tmp*", Duration.ofHours(1))), 1, 1000);
+
+        assertEquals(1, sweeper.sweep());
+
+        assertFalse(expired.exists());
+        assertTrue(fresh.exists());
+    }
+
+    @Test
+    public void getLiteralPrefix_trailingWildcardOnly_prefixReturned() {
+        sweeper = new ExpirySweeper(store, ImmutableList.of(), 1, 1000);
+
+        assertEquals("tmp-", new TtlPolicy("tmp-*", Duration.ZERO).getLiteralPrefix().get());
+        assertFalse(new TtlPolicy("tmp-*-x", Duration.ZERO).getLiteralPrefix().isPresent());
+        assertFalse(new TtlPolicy("tmp", Duration.ZERO).getLiteralPrefix().isPresent());
+        assertTrue(new TtlPolicy("a.b*", Duration.ZERO).matches("a.bc"));
+        assertFalse(new TtlPolicy("a.b*", Duration.ZERO).matches("axbc"));
+        assertTrue(new TtlPolicy("tmp*", Duration.ZERO).mayOverlap(new TtlPolicy("tmp_keep*", Duration.ZERO)));
+        assertTrue(new TtlPolicy("tmp*", Duration.ZERO).mayOverlap(new TtlPolicy("tmp", Duration.ZERO)));
+        assertFalse(new TtlPolicy("tmp_keep*", Duration.ZERO).mayOverlap(new TtlPolicy("tmp", Duration.ZERO)));
+        assertFalse(new TtlPolicy("tmp*", Duration.ZERO).mayOverlap(new TtlPolicy("report*", Duration.ZERO)));
+    }
+
+    private static String id(String dataSetName, long ageMillis) {
+        String timestamp = new SimpleDateFormat("yyMMdd-HHmmss").format(new Date(System.currentTimeMillis() - ageMillis));
+        return dataSetName + "-" + timestamp + "/000000_1";
+    }
+}
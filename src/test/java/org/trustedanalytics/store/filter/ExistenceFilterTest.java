@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ExistenceFilterTest {
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ExistenceFilter filter = new ExistenceFilter("test", 1000, 0.01, null);
+
+    @Test
+    public void mightContain_notSeeded_anyKey() {
+        filter.add("saved");
+
+        assertTrue(filter.mightContain("other"));
+        assertEquals(1.0, filter.expectedFpp(), 0);
+    }
+
+    @Test
+    public void mightContain_rebuilt_listedAndAddedKeysOnly() throws IOException {
+        filter.rebuild(() -> Stream.of("listed"));
+        filter.add("saved");
+
+        assertTrue(filter.mightContain("listed"));
+        assertTrue(filter.mightContain("saved"));
+        assertFalse(filter.mightContain("other"));
+        assertEquals(3, filter.getChecks());
+        assertEquals(1, filter.getNegatives());
+    }
+
+    @Test
+    public void rebuild_keyAddedWhileListing_kept() throws IOException {
+        filter.rebuild(() -> {
+            filter.add("saved");
+            return Stream.of("listed");
+        });
+
+        assertTrue(filter.mightContain("saved"));
+    }
+
+    @Test
+    public void rebuild_removedKey_dropped() throws IOException {
+        filter.rebuild(() -> Stream.of("removed"));
+        filter.rebuild(Stream::empty);
+
+        assertFalse(filter.mightContain("removed"));
+    }
+
+    @Test(expected = IOException.class)
+    public void rebuild_listingFails_previousFilterKept() throws IOException {
+        filter.rebuild(() -> Stream.of("listed"));
+        try {
+            filter.rebuild(() -> {
+                throw new IOException("listing failed");
+            });
+        } finally {
+            assertTrue(filter.mightContain("listed"));
+            assertFalse(filter.mightContain("other"));
+        }
+    }
+
+    @Test
+    public void load_closedFilter_seededAndFileDeleted() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("test.bloom");
+        ExistenceFilter persisted = new ExistenceFilter("test", 1000, 0.01, file);
+        persisted.rebuild(() -> Stream.of("listed"));
+        persisted.add("saved");
+        persisted.close();
+
+        ExistenceFilter loaded = new ExistenceFilter("test", 1000, 0.01, file);
+
+        assertTrue(loaded.load());
+        assertTrue(loaded.mightContain("listed"));
+        assertTrue(loaded.mightContain("saved"));
+        assertFalse(loaded.mightContain("other"));
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    public void load_noFile_notSeeded() throws IOException {
+        ExistenceFilter loaded = new ExistenceFilter("test", 1000, 0.01, folder.getRoot().toPath().resolve("none"));
+
+        assertFalse(loaded.load());
+        assertFalse(loaded.isSeeded());
+    }
+}
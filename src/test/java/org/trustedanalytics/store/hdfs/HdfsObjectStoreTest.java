@@ -16,28 +16,59 @@
 package org.trustedanalytics.store.hdfs;
 
 import com.google.common.collect.ImmutableList;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileAlreadyExistsException;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Options;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.permission.AclEntry;
 import org.apache.hadoop.fs.permission.FsAction;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.io.ByteBufferPool;
+import org.apache.hadoop.util.Progressable;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.trustedanalytics.store.ObjectStoreOutputStream;
+import org.trustedanalytics.store.WriteOptions;
+import org.trustedanalytics.store.filter.ExistenceFilter;
 import org.trustedanalytics.store.hdfs.fs.FsPermissionHelper;
+import org.trustedanalytics.store.trace.Phase;
+import org.trustedanalytics.store.trace.PhaseTracing;
 
 import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.stream.Stream;
 
 import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.hasToString;
+import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.startsWith;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyShort;
+import static org.mockito.Matchers.argThat;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -59,9 +90,12 @@ public class HdfsObjectStoreTest {
 
     private static final String URL = "hdfs://nameservice1/some_dir/";
     private static final Path PATH = new Path(URL);
+    private static final long BLOCK_SIZE = 256L * 1024 * 1024;
+    private static final int BUFFER_SIZE = 1024 * 1024;
 
     @Before public void setUpMocks() throws IOException {
         when(fs.getAclStatus(any(Path.class)).getEntries()).thenReturn(CF_VCAP_HIVE_EXECUTE_ACLS);
+        when(fs.rename(any(Path.class), any(Path.class))).thenReturn(Boolean.TRUE);
         obStore = new HdfsObjectStore(TECHNICAL_USERS, fs, new Path("homeFolder"));
     }
 
@@ -77,12 +111,81 @@ public class HdfsObjectStoreTest {
         verify(fs, times(1)).delete(any(Path.class), any(Boolean.class));
     }
 
+    @Test public void remove_fastRemove_renamedToTrashWithoutDelete() throws IOException {
+        when(fs.rename(any(Path.class), any(Path.class))).thenReturn(Boolean.TRUE);
+        obStore.setFastRemove(true);
+
+        obStore.remove("generatedId/000000_1");
+
+        ArgumentCaptor<Path> tombstone = ArgumentCaptor.forClass(Path.class);
+        verify(fs).rename(eq(new Path("homeFolder/generatedId")), tombstone.capture());
+        Assert.assertThat(tombstone.getValue().toString(), startsWith("homeFolder/_trash/generatedId."));
+        verify(fs, never()).delete(any(Path.class), anyBoolean());
+    }
+
+    @Test
+    public void remove_notInExistenceFilter_writtenElsewhereAndRemoved() throws IOException {
+        when(fs.exists(any())).thenReturn(Boolean.TRUE);
+        ExistenceFilter filter = new ExistenceFilter("hdfs", 100, 0.01, null);
+        filter.rebuild(Stream::empty);
+        obStore.setExistenceFilter(filter);
+
+        obStore.remove("writtenElsewhere/000000_1");
+
+        verify(fs).delete(new Path("homeFolder/writtenElsewhere"), true);
+    }
+
+    @Test
+    public void getUniqueId_notInExistenceFilter_notProbed() throws IOException {
+        when(fs.exists(any())).thenReturn(Boolean.TRUE);
+        ExistenceFilter filter = new ExistenceFilter("hdfs", 100, 0.01, null);
+        filter.rebuild(Stream::empty);
+        obStore.setExistenceFilter(filter);
+
+        ObjectId objectId = obStore.getUniqueId("dataSetName");
+
+        assertTrue(objectId.getDirectoryName().matches(ID_PATTERN));
+        verify(fs, never()).exists(any(Path.class));
+    }
+
+    @Test
+    public void saveObject_existenceFilter_publishedIdAdded() throws IOException {
+        ExistenceFilter filter = new ExistenceFilter("hdfs", 100, 0.01, null);
+        filter.rebuild(Stream::empty);
+        obStore.setExistenceFilter(filter);
+
+        ObjectId objectId = obStore.saveObject(new ByteArrayInputStream(new byte[0]), "data-set");
+
+        assertTrue(filter.mightContain(objectId.getDirectoryName()));
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void remove_fastRemoveNoExistingElement_throwsException() throws IOException {
+        when(fs.rename(any(Path.class), any(Path.class))).thenReturn(Boolean.FALSE);
+        obStore.setFastRemove(true);
+
+        obStore.remove("NO_SUCH_ELEMENT");
+    }
+
     @Test public void save_element_fullpath() throws IOException {
         String dataSetName = "dataSetName";
         String id = obStore.save(new byte[0], dataSetName);
         Assert.assertThat(id, endsWith("000000_1"));
     }
 
+    @Test public void save_tracingEnabled_phasesEndedInOrder() throws IOException {
+        List<Phase> ended = new ArrayList<>();
+        PhaseTracing.setListener((phase, subject) -> () -> ended.add(phase));
+        try {
+            obStore.save(new byte[0], "dataSetName");
+        } finally {
+            PhaseTracing.setListener(null);
+        }
+
+        assertEquals(Arrays.asList(Phase.UNIQUE_ID, Phase.MKDIRS, Phase.SET_ACLS, Phase.WRITE, Phase.PUBLISH),
+                ended);
+    }
+
     @Test public void saveObject_element_fullpath() throws IOException {
         String dataSetName = "dataSetName";
         ObjectId id = obStore.saveObject(new ByteArrayInputStream(new byte[0]), dataSetName);
@@ -129,4 +232,250 @@ public class HdfsObjectStoreTest {
         assertTrue(objectId.getDirectoryName().matches(ID_PATTERN));
         assertEquals(expectedFileName, objectId.getFileName());
     }
+
+    @Test
+    public void saveObject_placementGiven_policyAppliedOnObjectDirectory() throws IOException {
+        DistributedFileSystem dfs = mock(DistributedFileSystem.class, RETURNS_DEEP_STUBS);
+        when(dfs.getAclStatus(any(Path.class)).getEntries()).thenReturn(CF_VCAP_HIVE_EXECUTE_ACLS);
+        HdfsObjectStore store = new HdfsObjectStore(TECHNICAL_USERS, dfs, new Path("homeFolder"));
+        HdfsPlacement placement = HdfsPlacement.DEFAULT
+                .withStoragePolicy(HdfsStoragePolicy.COLD)
+                .withReplication((short) 2)
+                .withBlockSize(BLOCK_SIZE);
+
+        ObjectId id = store.saveObject(new ByteArrayInputStream(new byte[0]), "dataSetName", placement);
+
+        verify(dfs).setStoragePolicy(argThat(hasToString(startsWith("homeFolder/_tmp/" + id.getDirectoryName()))),
+                eq("COLD"));
+        verify(dfs).create(any(Path.class), eq(true), anyInt(), eq((short) 2), eq(BLOCK_SIZE),
+                any(Progressable.class));
+    }
+
+    @Test
+    public void saveObject_placementResolvedForDataSet_policyApplied() throws IOException {
+        DistributedFileSystem dfs = mock(DistributedFileSystem.class, RETURNS_DEEP_STUBS);
+        when(dfs.getAclStatus(any(Path.class)).getEntries()).thenReturn(CF_VCAP_HIVE_EXECUTE_ACLS);
+        HdfsObjectStore store = new HdfsObjectStore(TECHNICAL_USERS, dfs, new Path("homeFolder"),
+                dataSetName -> HdfsPlacement.DEFAULT.withStoragePolicy(HdfsStoragePolicy.ALL_SSD));
+
+        ObjectId id = store.saveObject(new ByteArrayInputStream(new byte[0]), "dataSetName");
+
+        verify(dfs).setStoragePolicy(argThat(hasToString(startsWith("homeFolder/_tmp/" + id.getDirectoryName()))),
+                eq("ALL_SSD"));
+    }
+
+    @Test
+    public void saveObject_defaultPlacement_clusterDefaultsUsed() throws IOException {
+        DistributedFileSystem dfs = mock(DistributedFileSystem.class, RETURNS_DEEP_STUBS);
+        when(dfs.getAclStatus(any(Path.class)).getEntries()).thenReturn(CF_VCAP_HIVE_EXECUTE_ACLS);
+        HdfsObjectStore store = new HdfsObjectStore(TECHNICAL_USERS, dfs, new Path("homeFolder"));
+
+        store.saveObject(new ByteArrayInputStream(new byte[0]), "dataSetName");
+
+        verify(dfs, never()).setStoragePolicy(any(Path.class), any(String.class));
+    }
+
+    @Test
+    public void saveObject_written_publishedByRenameFromTemporaryDirectory() throws IOException {
+        ObjectId id = obStore.saveObject(new ByteArrayInputStream(new byte[]{1, 2, 3}), "dataSetName");
+
+        ArgumentCaptor<Path> written = ArgumentCaptor.forClass(Path.class);
+        verify(fs).create(written.capture(), eq(true), anyInt(), anyShort(), anyLong(), any(Progressable.class));
+        Assert.assertThat(written.getValue().toString(), startsWith("homeFolder/_tmp/" + id.getDirectoryName()));
+        verify(fs).rename(written.getValue().getParent(), new Path("homeFolder/" + id.getDirectoryName()));
+    }
+
+    @Test
+    public void saveObject_writeFails_temporaryDeletedAndNothingPublished() throws IOException {
+        when(fs.create(any(Path.class), anyBoolean(), anyInt(), anyShort(), anyLong(), any(Progressable.class)))
+                .thenThrow(new IOException("disk quota exceeded"));
+
+        try {
+            obStore.saveObject(new ByteArrayInputStream(new byte[]{1, 2, 3}), "dataSetName");
+            Assert.fail("expected IOException");
+        } catch (IOException e) {
+            verify(fs).delete(argThat(hasToString(startsWith("homeFolder/_tmp/"))), eq(true));
+            verify(fs, never()).rename(any(Path.class), any(Path.class));
+        }
+    }
+
+    @Test
+    public void saveObject_idTakenBeforePublish_postfixGenerated() throws IOException {
+        DistributedFileSystem dfs = mock(DistributedFileSystem.class, RETURNS_DEEP_STUBS);
+        when(dfs.getAclStatus(any(Path.class)).getEntries()).thenReturn(CF_VCAP_HIVE_EXECUTE_ACLS);
+        doThrow(new FileAlreadyExistsException()).doNothing()
+                .when(dfs).rename(any(Path.class), any(Path.class), eq(Options.Rename.NONE));
+        HdfsObjectStore store = new HdfsObjectStore(TECHNICAL_USERS, dfs, new Path("homeFolder"));
+
+        ObjectId id = store.saveObject(new ByteArrayInputStream(new byte[0]), "dataSetName");
+
+        assertTrue(id.getDirectoryName().matches(ID_WITH_RANDOM_PATTERN));
+        verify(dfs, times(2)).rename(any(Path.class), any(Path.class), eq(Options.Rename.NONE));
+    }
+
+    @Test
+    public void sweepTemporaries_staleAndFreshTemporaries_onlyStaleDeleted() throws IOException {
+        long now = System.currentTimeMillis();
+        Path stale = new Path("homeFolder/_tmp/stale");
+        Path fresh = new Path("homeFolder/_tmp/fresh");
+        when(fs.listStatus(new Path("homeFolder/_tmp"))).thenReturn(new FileStatus[]{
+                new FileStatus(0, true, 0, 0, now - 10000, stale),
+                new FileStatus(0, true, 0, 0, now, fresh)});
+        when(fs.listStatus(stale)).thenReturn(new FileStatus[]{
+                new FileStatus(3, false, 1, BLOCK_SIZE, now - 10000, new Path(stale, DEFAULT_FILE_NAME))});
+        when(fs.delete(stale, true)).thenReturn(true);
+
+        assertEquals(1, obStore.sweepTemporaries(5000));
+
+        verify(fs, never()).delete(eq(fresh), anyBoolean());
+    }
+
+    @Test
+    public void save_writeOptionsGiven_passedToCreate() throws IOException {
+        WriteOptions options = WriteOptions.DEFAULT
+                .withBufferSize(BUFFER_SIZE)
+                .withReplication((short) 1);
+
+        obStore.save(new ByteArrayInputStream(new byte[0]), "dataSetName", options);
+
+        verify(fs).create(any(Path.class), eq(true), eq(BUFFER_SIZE), eq((short) 1), anyLong(),
+                any(Progressable.class));
+    }
+
+    @Test
+    public void save_writeOptionsAndPlacementGiven_optionsOverridePlacement() throws IOException {
+        HdfsObjectStore store = new HdfsObjectStore(TECHNICAL_USERS, fs, new Path("homeFolder"),
+                dataSetName -> HdfsPlacement.DEFAULT.withReplication((short) 3).withBlockSize(BLOCK_SIZE));
+
+        store.save(new ByteArrayInputStream(new byte[0]), "dataSetName", WriteOptions.DEFAULT.withReplication((short) 2));
+
+        verify(fs).create(any(Path.class), eq(true), eq(WriteOptions.DEFAULT_BUFFER_SIZE), eq((short) 2),
+                eq(BLOCK_SIZE), any(Progressable.class));
+    }
+
+    @Test
+    public void save_noOptions_throughputSizedBufferUsed() throws IOException {
+        obStore.save(new byte[0], "dataSetName");
+
+        verify(fs).create(any(Path.class), eq(true), eq(WriteOptions.DEFAULT_BUFFER_SIZE), anyShort(), anyLong(),
+                any(Progressable.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void readBuffers_enhancedReadSupported_buffersPassedAndReleased() throws IOException {
+        FSDataInputStream input = mock(FSDataInputStream.class);
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[]{1, 2, 3});
+        when(fs.open(any(Path.class))).thenReturn(input);
+        when(input.read(any(ByteBufferPool.class), anyInt(), any(EnumSet.class))).thenReturn(buffer).thenReturn(null);
+        List<ByteBuffer> consumed = new ArrayList<>();
+
+        long read = obStore.readBuffers("generatedId/000000_1", consumed::add);
+
+        assertEquals(3, read);
+        assertEquals(ImmutableList.of(buffer), consumed);
+        verify(input).releaseBuffer(buffer);
+    }
+
+    @Test
+    public void openForWrite_closed_objectIdAvailable() throws IOException {
+        ObjectStoreOutputStream output = obStore.openForWrite("dataSetName");
+        output.write(new byte[]{1, 2, 3});
+        output.close();
+
+        Assert.assertThat(output.getObjectId(), endsWith("000000_1"));
+        verify(fs, never()).delete(any(Path.class), anyBoolean());
+    }
+
+    @Test
+    public void openForWrite_closeFails_temporaryDeletedAndNothingPublished() throws IOException {
+        FSDataOutputStream failing = mock(FSDataOutputStream.class);
+        doThrow(new IOException("pipeline failed")).when(failing).close();
+        when(fs.create(any(Path.class), anyBoolean(), anyInt(), anyShort(), anyLong(), any(Progressable.class)))
+                .thenReturn(failing);
+        ObjectStoreOutputStream output = obStore.openForWrite("dataSetName");
+
+        try {
+            output.close();
+            Assert.fail("expected IOException");
+        } catch (IOException e) {
+            verify(fs).delete(argThat(hasToString(startsWith("homeFolder/_tmp/"))), eq(true));
+            verify(fs, never()).rename(any(Path.class), any(Path.class));
+        }
+    }
+
+    @Test
+    public void openForWrite_aborted_objectDirectoryDeleted() throws IOException {
+        when(fs.exists(any())).thenReturn(Boolean.FALSE);
+        ObjectStoreOutputStream output = obStore.openForWrite("dataSetName");
+        output.write(new byte[]{1, 2, 3});
+        output.abort();
+
+        verify(fs).delete(argThat(hasToString(startsWith("homeFolder/_tmp/"))), eq(true));
+        verify(fs, never()).rename(any(Path.class), any(Path.class));
+    }
+
+    @Test
+    public void openDataset_partsClosed_publishedTogetherByOneRename() throws IOException {
+        DatasetWriter writer = obStore.openDataset("dataSetName");
+        OutputStream first = writer.openPart();
+        OutputStream second = writer.openPart();
+        second.write(new byte[]{2});
+        first.write(new byte[]{1});
+        first.close();
+        second.close();
+
+        String id = writer.commit();
+
+        Assert.assertThat(id, not(endsWith(DEFAULT_FILE_NAME)));
+        ArgumentCaptor<Path> written = ArgumentCaptor.forClass(Path.class);
+        verify(fs, times(2)).create(written.capture(), eq(true), anyInt(), anyShort(), anyLong(),
+                any(Progressable.class));
+        assertEquals("000000_1", written.getAllValues().get(0).getName());
+        assertEquals("000001_1", written.getAllValues().get(1).getName());
+        verify(fs).rename(written.getValue().getParent(), new Path("homeFolder/" + id));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void openDataset_partNotClosed_commitRejected() throws IOException {
+        DatasetWriter writer = obStore.openDataset("dataSetName");
+        writer.openPart().write(new byte[]{1});
+
+        writer.commit();
+    }
+
+    @Test
+    public void openDataset_closedWithoutCommit_partsDeleted() throws IOException {
+        try (DatasetWriter writer = obStore.openDataset("dataSetName")) {
+            writer.openPart().close();
+        }
+
+        verify(fs).delete(argThat(hasToString(startsWith("homeFolder/_tmp/"))), eq(true));
+        verify(fs, never()).rename(any(Path.class), any(Path.class));
+    }
+
+    @Test
+    public void saveObject_timeBuckets_publishedIntoBucketOfTimestamp() throws IOException {
+        obStore.setLayout(new TimeBucketedLayout(false));
+
+        ObjectId id = obStore.saveObject(new ByteArrayInputStream(new byte[]{1, 2, 3}), "dataSetName");
+
+        String timestamp = id.getDirectoryName().substring("dataSetName-".length());
+        Path bucket = new Path("homeFolder/" + timestamp.substring(0, 6) + "/" + timestamp.substring(7, 9));
+        verify(fs).mkdirs(bucket);
+        verify(fs).rename(argThat(hasToString(startsWith("homeFolder/_tmp/"))),
+                eq(new Path(bucket + "/" + id.getDirectoryName())));
+    }
+
+    @Test
+    public void getContent_timeBucketsMigrating_flatPathTriedWhenNotInBucket() throws IOException {
+        obStore.setLayout(new TimeBucketedLayout(true));
+        when(fs.open(new Path("homeFolder/160923/14/name-160923-141503/000000_1")))
+                .thenThrow(new FileNotFoundException());
+        when(fs.isDirectory(any(Path.class))).thenReturn(false);
+
+        obStore.getContent("name-160923-141503/000000_1");
+
+        verify(fs).open(new Path("homeFolder/name-160923-141503/000000_1"));
+    }
 }
@@ -0,0 +1,115 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.hdfs;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RawLocalFileSystem;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+public class HdfsTrashReaperTest {
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private FileSystem fs;
+    private HdfsObjectStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        fs = new RawLocalFileSystem();
+        fs.initialize(URI.create("file:///"), new Configuration());
+        store = new HdfsObjectStore(fs, new Path(folder.getRoot().getAbsolutePath()));
+        store.setFastRemove(true);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        fs.close();
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void remove_fastRemove_readFailsImmediately() throws IOException {
+        String id = store.save(new byte[]{1, 2, 3}, "dataSetName");
+
+        store.remove(id);
+
+        try (InputStream in = store.getContent(id)) {
+            in.read();
+        }
+    }
+
+    @Test
+    public void reap_expiredTombstone_deleted() throws IOException {
+        store.save(new byte[]{1, 2, 3}, "first");
+        store.remove(store.save(new byte[]{4, 5, 6}, "second"));
+
+        try (HdfsTrashReaper reaper = new HdfsTrashReaper(store, 2, 100, 0)) {
+            assertEquals(2, reaper.reap());
+        }
+
+        assertEquals(0, fs.listStatus(store.getTrashPath()).length);
+    }
+
+    @Test
+    public void reap_tombstoneWithinGracePeriod_kept() throws IOException {
+        store.remove(store.save(new byte[]{1, 2, 3}, "dataSetName"));
+
+        try (HdfsTrashReaper reaper = new HdfsTrashReaper(store, 2, 100, TimeUnit.HOURS.toMillis(1))) {
+            assertEquals(0, reaper.reap());
+        }
+
+        assertEquals(1, fs.listStatus(store.getTrashPath()).length);
+    }
+
+    @Test
+    public void reap_noTrash_nothingDeleted() throws IOException {
+        try (HdfsTrashReaper reaper = new HdfsTrashReaper(store, 1, 100, 0)) {
+            assertEquals(0, reaper.reap());
+        }
+    }
+
+    @Test
+    public void reap_storeReplaced_reapedThroughNewStore() throws IOException {
+        HdfsObjectStore other = new HdfsObjectStore(fs, new Path(folder.newFolder().getAbsolutePath()));
+        store.remove(store.save(new byte[]{1, 2, 3}, "dataSetName"));
+
+        try (HdfsTrashReaper reaper = new HdfsTrashReaper(other, 1, 100, 0)) {
+            reaper.setStore(store);
+            assertEquals(1, reaper.reap());
+        }
+
+        assertEquals(0, fs.listStatus(store.getTrashPath()).length);
+    }
+
+    @Test
+    public void getRemovalTime_tombstoneName_timestampParsed() {
+        assertEquals(1234L, HdfsTrashReaper.getRemovalTime(new Path("/_trash/dataSet-160101-120000.1234")));
+        assertEquals(0L, HdfsTrashReaper.getRemovalTime(new Path("/_trash/foreign")));
+    }
+}
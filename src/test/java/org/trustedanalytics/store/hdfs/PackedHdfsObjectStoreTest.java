@@ -0,0 +1,178 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.hdfs;
+
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+import org.trustedanalytics.store.hdfs.fs.FsPermissionHelper;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RawLocalFileSystem;
+import org.apache.hadoop.fs.permission.AclEntry;
+import org.apache.hadoop.fs.permission.AclStatus;
+import org.apache.hadoop.fs.permission.FsAction;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+public class PackedHdfsObjectStoreTest {
+
+    private static final byte[] FIRST = new byte[]{1, 2, 3, 4, 5, 6};
+    private static final byte[] SECOND = new byte[]{7, 8, 9, 10, 11, 12};
+    private static final byte[] THIRD = new byte[]{13, 14, 15, 16, 17, 18};
+    private static final ImmutableList<String> TECHNICAL_USERS = ImmutableList.of("vcap", "hive");
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private FileSystem fs;
+    private HdfsObjectStore largeObjects;
+
+    @Before
+    public void setUp() throws IOException {
+        //local file system has no ACLs, calls are only recorded
+        fs = spy(new RawLocalFileSystem());
+        doNothing().when(fs).modifyAclEntries(any(Path.class), anyListOf(AclEntry.class));
+        doReturn(new AclStatus.Builder().owner("owner").group("group").build())
+                .when(fs).getAclStatus(any(Path.class));
+        fs.initialize(URI.create("file:///"), new Configuration());
+        largeObjects = new HdfsObjectStore(TECHNICAL_USERS, fs, new Path(folder.getRoot().getAbsolutePath()));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        fs.close();
+    }
+
+    @Test
+    public void save_smallObject_packedAndReadBack() throws IOException {
+        try (PackedHdfsObjectStore store = new PackedHdfsObjectStore(largeObjects, "writer")) {
+            String id = store.save(FIRST, "dataSetName");
+
+            assertThat(id, startsWith("_packed/writer/dataSetName"));
+            assertArrayEquals(FIRST, ByteStreams.toByteArray(store.getContent(id)));
+        }
+    }
+
+    @Test
+    public void save_firstObject_technicalUsersAclsSetOnPackedDirectoryAndContainer() throws IOException {
+        String packed = folder.getRoot().getAbsolutePath() + "/_packed";
+        List<AclEntry> access = FsPermissionHelper.getAclsForTechnicalUsers(TECHNICAL_USERS, FsAction.READ_EXECUTE);
+        try (PackedHdfsObjectStore store = new PackedHdfsObjectStore(largeObjects, "writer")) {
+            store.save(FIRST, "dataSetName");
+        }
+
+        verify(fs).modifyAclEntries(new Path(packed), access);
+        verify(fs).modifyAclEntries(new Path(packed),
+                FsPermissionHelper.getDefaultAclsForTechnicalUsers(TECHNICAL_USERS, FsAction.READ_EXECUTE));
+        verify(fs).modifyAclEntries(new Path(packed + "/writer-0000000001.pack"), access);
+        verify(fs).modifyAclEntries(new Path(packed + "/writer-0000000001.idx"), access);
+    }
+
+    @Test
+    public void remove_packedObject_tombstoned() throws IOException {
+        try (PackedHdfsObjectStore store = new PackedHdfsObjectStore(largeObjects, "writer")) {
+            String id = store.save(FIRST, "dataSetName");
+
+            store.remove(id);
+
+            assertNotFound(store, id);
+            try {
+                store.remove(id);
+                fail("Tombstoned object removed twice");
+            } catch (NoSuchElementException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void getContent_objectSavedByOtherWriter_foundInItsIndex() throws IOException {
+        try (PackedHdfsObjectStore reader = new PackedHdfsObjectStore(largeObjects, "reader");
+             PackedHdfsObjectStore writer = new PackedHdfsObjectStore(largeObjects, "writer")) {
+            String id = writer.save(SECOND, "dataSetName");
+
+            assertArrayEquals(SECOND, ByteStreams.toByteArray(reader.getContent(id)));
+        }
+    }
+
+    @Test
+    public void compact_halfOfContainerRemoved_liveObjectsRelocated() throws IOException {
+        String first;
+        String second;
+        String third;
+        try (PackedHdfsObjectStore store = new PackedHdfsObjectStore(largeObjects, "writer", 16, 12, 0.5)) {
+            first = store.save(FIRST, "dataSetName");
+            second = store.save(SECOND, "dataSetName");
+            third = store.save(THIRD, "dataSetName");
+            store.remove(first);
+
+            store.compact();
+
+            assertFalse(fs.exists(new Path(folder.getRoot().getAbsolutePath() + "/_packed/writer-0000000001.pack")));
+            assertArrayEquals(SECOND, ByteStreams.toByteArray(store.getContent(second)));
+        }
+        try (PackedHdfsObjectStore restarted = new PackedHdfsObjectStore(largeObjects, "writer", 16, 12, 0.5)) {
+            assertNotFound(restarted, first);
+            assertArrayEquals(SECOND, ByteStreams.toByteArray(restarted.getContent(second)));
+            assertArrayEquals(THIRD, ByteStreams.toByteArray(restarted.getContent(third)));
+        }
+    }
+
+    @Test
+    public void getContent_containerCompactedByOtherInstance_readFromNewLocation() throws IOException {
+        try (PackedHdfsObjectStore writer = new PackedHdfsObjectStore(largeObjects, "writer", 16, 12, 0.5)) {
+            String first = writer.save(FIRST, "dataSetName");
+            String second = writer.save(SECOND, "dataSetName");
+            writer.save(THIRD, "dataSetName");
+            writer.remove(first);
+            try (PackedHdfsObjectStore reader = new PackedHdfsObjectStore(largeObjects, "reader", 16, 12, 0.5)) {
+                writer.compact();
+
+                assertArrayEquals(SECOND, ByteStreams.toByteArray(reader.getContent(second)));
+                assertNotFound(reader, first);
+            }
+        }
+    }
+
+    private void assertNotFound(PackedHdfsObjectStore store, String id) throws IOException {
+        try {
+            store.getContent(id);
+            fail("Removed object is still readable");
+        } catch (FileNotFoundException expected) {
+        }
+    }
+}
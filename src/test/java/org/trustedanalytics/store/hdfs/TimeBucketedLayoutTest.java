@@ -0,0 +1,58 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.hdfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Optional;
+
+import org.junit.Test;
+
+public class TimeBucketedLayoutTest {
+
+    private final TimeBucketedLayout layout = new TimeBucketedLayout(true);
+
+    @Test
+    public void locate_objectId_nestedInDayAndHourBuckets() {
+        assertEquals("160923/14/data-set-160923-141503/000000_1", layout.locate("data-set-160923-141503/000000_1"));
+    }
+
+    @Test
+    public void locate_postfixedDirectoryName_bucketOfTimestamp() {
+        assertEquals("160923/14/name-160923-141503-a1-7Z", layout.locate("name-160923-141503-a1-7Z"));
+    }
+
+    @Test
+    public void locate_noTimestamp_keptDirectlyUnderChroot() {
+        assertEquals("uploaded/000000_1", layout.locate("uploaded/000000_1"));
+        assertEquals(Optional.empty(), layout.locateLegacy("uploaded/000000_1"));
+    }
+
+    @Test
+    public void locateLegacy_migrating_flatPath() {
+        assertEquals(Optional.of("name-160923-141503/000000_1"), layout.locateLegacy("name-160923-141503/000000_1"));
+        assertEquals(Optional.empty(), new TimeBucketedLayout(false).locateLegacy("name-160923-141503/000000_1"));
+    }
+
+    @Test
+    public void isBucket_bucketAndObjectDirectories_told() {
+        assertTrue(layout.isBucket(0, "160923"));
+        assertTrue(layout.isBucket(1, "14"));
+        assertFalse(layout.isBucket(0, "name-160923-141503"));
+    }
+}
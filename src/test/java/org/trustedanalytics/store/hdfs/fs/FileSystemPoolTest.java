@@ -0,0 +1,109 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.hdfs.fs;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+public class FileSystemPoolTest {
+
+    private static final long IDLE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private FileSystemPool pool;
+
+    @After
+    public void closePool() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void get_sameUser_openedOnce() throws Exception {
+        pool = new FileSystemPool(10, IDLE_MILLIS, 0);
+        AtomicInteger opened = new AtomicInteger();
+
+        FileSystem first = pool.get("user", () -> open(opened));
+        FileSystem second = pool.get("user", () -> open(opened));
+
+        assertSame(first, second);
+        assertEquals(1, opened.get());
+    }
+
+    @Test
+    public void get_otherUser_ownFileSystem() throws Exception {
+        pool = new FileSystemPool(10, IDLE_MILLIS, 0);
+
+        FileSystem first = pool.get("first", () -> mock(FileSystem.class));
+        FileSystem second = pool.get("second", () -> mock(FileSystem.class));
+
+        assertNotSame(first, second);
+        assertEquals(2, pool.size());
+    }
+
+    @Test
+    public void get_aboveMaxSize_leastRecentlyUsedClosed() throws Exception {
+        pool = new FileSystemPool(1, IDLE_MILLIS, 0);
+        FileSystem first = pool.get("first", () -> mock(FileSystem.class));
+
+        FileSystem second = pool.get("second", () -> mock(FileSystem.class));
+
+        verify(first, timeout(5000)).close();
+        verify(second, never()).close();
+        assertEquals(1, pool.size());
+    }
+
+    @Test
+    public void get_evictedWithDelay_closedWithPool() throws Exception {
+        pool = new FileSystemPool(1, IDLE_MILLIS, IDLE_MILLIS);
+        FileSystem first = pool.get("first", () -> mock(FileSystem.class));
+        FileSystem second = pool.get("second", () -> mock(FileSystem.class));
+        verify(first, never()).close();
+
+        pool.close();
+
+        verify(first).close();
+        verify(second).close();
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void get_openerFails_exceptionPropagated() throws Exception {
+        pool = new FileSystemPool(10, IDLE_MILLIS, 0);
+
+        pool.get("user", () -> {
+            throw new FileNotFoundException("no file system");
+        });
+    }
+
+    private static FileSystem open(AtomicInteger opened) throws IOException {
+        opened.incrementAndGet();
+        return mock(FileSystem.class);
+    }
+}
@@ -0,0 +1,192 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class TransferEngineTest {
+
+    private static final int BUFFER_SIZE = 4096;
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private final TransferEngine engine = new TransferEngine(BUFFER_SIZE, 4);
+
+    @Test
+    public void copy_streamLongerThanBuffer_contentPreserved() throws IOException {
+        byte[] bytes = randomBytes(BUFFER_SIZE * 3 + 17);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        long copied = engine.copy(new ByteArrayInputStream(bytes), output);
+
+        assertEquals(bytes.length, copied);
+        assertArrayEquals(bytes, output.toByteArray());
+    }
+
+    @Test
+    public void copy_fileToFile_contentPreserved() throws IOException {
+        byte[] bytes = randomBytes(BUFFER_SIZE * 5 + 3);
+        File source = folder.newFile();
+        File target = folder.newFile();
+        Files.write(source.toPath(), bytes);
+
+        try (FileInputStream in = new FileInputStream(source);
+             FileOutputStream out = new FileOutputStream(target)) {
+            assertEquals(bytes.length, engine.copy(in, out));
+        }
+
+        assertArrayEquals(bytes, Files.readAllBytes(target.toPath()));
+    }
+
+    @Test
+    public void copy_streamToChannel_contentPreserved() throws IOException {
+        byte[] bytes = randomBytes(BUFFER_SIZE * 2 + 1);
+        File target = folder.newFile();
+
+        try (FileOutputStream out = new FileOutputStream(target)) {
+            engine.copy(new ByteArrayInputStream(bytes), out.getChannel());
+        }
+
+        assertArrayEquals(bytes, Files.readAllBytes(target.toPath()));
+    }
+
+    @Test
+    public void copyPipelined_streamLongerThanQueue_contentPreserved() throws IOException {
+        byte[] bytes = randomBytes(BUFFER_SIZE * 10 + 5);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        long copied = engine.copyPipelined(new ByteArrayInputStream(bytes), output, BUFFER_SIZE, 2);
+
+        assertEquals(bytes.length, copied);
+        assertArrayEquals(bytes, output.toByteArray());
+    }
+
+    @Test
+    public void copyPipelined_readFails_failurePropagated() {
+        InputStream failing = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("connection reset");
+            }
+        };
+
+        try {
+            engine.copyPipelined(failing, new ByteArrayOutputStream(), BUFFER_SIZE, 2);
+            fail("expected IOException");
+        } catch (IOException e) {
+            assertEquals("connection reset", e.getMessage());
+        }
+    }
+
+    @Test
+    public void copyPipelined_writeFails_readerStopped() throws Exception {
+        int depth = 2;
+        // first chunk taken by writer, depth chunks queued and one waiting for free slot
+        CountDownLatch readerBlocked = new CountDownLatch(depth + 2);
+        CountingInputStream input = new CountingInputStream(randomBytes(BUFFER_SIZE * 100), readerBlocked);
+        OutputStream failing = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                try {
+                    assertTrue(readerBlocked.await(10, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                throw new IOException("disk full");
+            }
+        };
+
+        try {
+            engine.copyPipelined(input, failing, BUFFER_SIZE, depth);
+            fail("expected IOException");
+        } catch (IOException e) {
+            assertEquals("disk full", e.getMessage());
+        }
+
+        assertEquals(depth + 2, input.reads);
+    }
+
+    @Test
+    public void acquire_nonDefaultSize_pooledInSizeClass() {
+        ByteBuffer buffer = engine.acquireHeapBuffer(5000);
+        assertEquals(8192, buffer.capacity());
+        assertEquals(5000, buffer.limit());
+        engine.release(buffer);
+
+        ByteBuffer reused = engine.acquireHeapBuffer(6000);
+
+        assertSame(buffer, reused);
+        assertEquals(6000, reused.limit());
+    }
+
+    @Test
+    public void acquire_aboveLargestSizeClass_notPooled() {
+        int size = 8 * 1024 * 1024 + 1;
+        ByteBuffer buffer = engine.acquireHeapBuffer(size);
+        assertEquals(size, buffer.capacity());
+        engine.release(buffer);
+
+        assertNotSame(buffer, engine.acquireHeapBuffer(size));
+    }
+
+    private byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static class CountingInputStream extends ByteArrayInputStream {
+
+        private final CountDownLatch readLatch;
+        private volatile int reads;
+
+        CountingInputStream(byte[] bytes, CountDownLatch readLatch) {
+            super(bytes);
+            this.readLatch = readLatch;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            reads++;
+            readLatch.countDown();
+            return super.read(b, off, len);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.reactive;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.trustedanalytics.store.MemoryObjectStore;
+
+import com.google.common.io.ByteStreams;
+
+public class ReactiveObjectStoreTest {
+
+    private static final int CHUNK_SIZE = 2;
+
+    private MemoryObjectStore memory;
+    private ReactiveObjectStore store;
+
+    @Before
+    public void setUp() {
+        memory = new MemoryObjectStore();
+        store = new ReactiveObjectStore(memory, Runnable::run, CHUNK_SIZE, 1);
+    }
+
+    @Test
+    public void getContent_chunksPublishedOnDemand() throws IOException {
+        String id = memory.save(new byte[]{1, 2, 3, 4, 5}, "dataSetName");
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        store.getContent(id).subscribe(subscriber);
+
+        subscriber.subscription.request(1);
+        assertEquals(1, subscriber.chunks.size());
+        assertFalse(subscriber.completed);
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        assertTrue(subscriber.completed);
+        assertArrayEquals(new byte[]{1, 2, 3, 4, 5}, subscriber.content());
+    }
+
+    @Test
+    public void getContent_noSuchObject_errorSignalled() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        store.getContent("noSuchObject").subscribe(subscriber);
+
+        subscriber.subscription.request(1);
+        assertTrue(subscriber.error instanceof IOException);
+    }
+
+    @Test
+    public void getContent_invalidRequest_errorSignalled() throws IOException {
+        String id = memory.save(new byte[]{1}, "dataSetName");
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        store.getContent(id).subscribe(subscriber);
+
+        subscriber.subscription.request(0);
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+    }
+
+    @Test
+    public void save_publishedChunks_savedAsOneObject() throws Exception {
+        Publisher<ByteBuffer> content = new ListPublisher(
+                Arrays.asList(ByteBuffer.wrap(new byte[]{1, 2}), ByteBuffer.wrap(new byte[]{3})), null);
+
+        String id = store.save(content, "dataSetName").get();
+
+        assertArrayEquals(new byte[]{1, 2, 3}, ByteStreams.toByteArray(memory.getContent(id)));
+    }
+
+    @Test(expected = ExecutionException.class)
+    public void save_publisherFailed_resultFailed() throws Exception {
+        Publisher<ByteBuffer> content = new ListPublisher(
+                Arrays.asList(ByteBuffer.wrap(new byte[]{1, 2})), new IllegalStateException("failed"));
+
+        CompletableFuture<String> result = store.save(content, "dataSetName");
+
+        result.get();
+    }
+
+    private static class RecordingSubscriber implements Subscriber<ByteBuffer> {
+        private Subscription subscription;
+        private final List<ByteBuffer> chunks = new ArrayList<>();
+        private boolean completed;
+        private Throwable error;
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(ByteBuffer chunk) {
+            chunks.add(chunk);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            this.error = error;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+
+        private byte[] content() {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            chunks.forEach(chunk -> output.write(chunk.array(), chunk.arrayOffset(), chunk.remaining()));
+            return output.toByteArray();
+        }
+    }
+
+    private static class ListPublisher implements Publisher<ByteBuffer> {
+        private final List<ByteBuffer> chunks;
+        private final Throwable error;
+
+        private ListPublisher(List<ByteBuffer> chunks, Throwable error) {
+            this.chunks = chunks;
+            this.error = error;
+        }
+
+        @Override
+        public void subscribe(Subscriber<? super ByteBuffer> subscriber) {
+            Iterator<ByteBuffer> iterator = chunks.iterator();
+            subscriber.onSubscribe(new Subscription() {
+                private boolean finished;
+
+                @Override
+                public void request(long n) {
+                    for (long i = 0; i < n && iterator.hasNext(); i++) {
+                        subscriber.onNext(iterator.next());
+                    }
+                    if (!iterator.hasNext() && !finished) {
+                        finished = true;
+                        if (error == null) {
+                            subscriber.onComplete();
+                        } else {
+                            subscriber.onError(error);
+                        }
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                    finished = true;
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.s3;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.Optional;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.trustedanalytics.store.WriteOptions;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+
+public class S3ObjectOutputStreamTest {
+
+    private static final int PART_SIZE = S3ObjectOutputStream.MIN_PART_SIZE;
+
+    private AmazonS3 amazonS3 = mock(AmazonS3.class);
+
+    @Before
+    public void setUpMocks() {
+        InitiateMultipartUploadResult initiated = new InitiateMultipartUploadResult();
+        initiated.setUploadId("uploadId");
+        when(amazonS3.initiateMultipartUpload(any(InitiateMultipartUploadRequest.class))).thenReturn(initiated);
+        UploadPartResult uploaded = new UploadPartResult();
+        uploaded.setETag("etag");
+        when(amazonS3.uploadPart(any(UploadPartRequest.class))).thenReturn(uploaded);
+    }
+
+    @Test
+    public void close_smallObject_singlePut() throws IOException {
+        S3ObjectOutputStream output = new S3ObjectOutputStream(amazonS3, "bucket", "key", WriteOptions.DEFAULT, PART_SIZE);
+        output.write(new byte[]{1, 2, 3});
+        output.close();
+
+        ArgumentCaptor<PutObjectRequest> request = ArgumentCaptor.forClass(PutObjectRequest.class);
+        verify(amazonS3).putObject(request.capture());
+        assertEquals(3, request.getValue().getMetadata().getContentLength());
+        verify(amazonS3, never()).initiateMultipartUpload(any(InitiateMultipartUploadRequest.class));
+        assertEquals("key", output.getObjectId());
+    }
+
+    @Test
+    public void close_objectLargerThanPart_multipartUpload() throws IOException {
+        S3ObjectOutputStream output = new S3ObjectOutputStream(amazonS3, "bucket", "key", WriteOptions.DEFAULT, PART_SIZE);
+        output.write(new byte[PART_SIZE + 1]);
+        output.close();
+
+        ArgumentCaptor<UploadPartRequest> parts = ArgumentCaptor.forClass(UploadPartRequest.class);
+        verify(amazonS3, times(2)).uploadPart(parts.capture());
+        assertEquals(PART_SIZE, parts.getAllValues().get(0).getPartSize());
+        assertEquals(1, parts.getAllValues().get(1).getPartSize());
+        assertEquals(2, parts.getAllValues().get(1).getPartNumber());
+        ArgumentCaptor<CompleteMultipartUploadRequest> complete =
+                ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        verify(amazonS3).completeMultipartUpload(complete.capture());
+        assertEquals(2, complete.getValue().getPartETags().size());
+    }
+
+    @Test
+    public void abort_multipartUploadStarted_uploadAborted() throws IOException {
+        S3ObjectOutputStream output = new S3ObjectOutputStream(amazonS3, "bucket", "key", WriteOptions.DEFAULT, PART_SIZE);
+        output.write(new byte[PART_SIZE]);
+        output.abort();
+
+        verify(amazonS3).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+        verify(amazonS3, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+    }
+
+    @Test(expected = IOException.class)
+    public void write_partUploadFailed_throwsException() throws IOException {
+        when(amazonS3.uploadPart(any(UploadPartRequest.class))).thenThrow(new AmazonClientException("failed"));
+        S3ObjectOutputStream output = new S3ObjectOutputStream(amazonS3, "bucket", "key", WriteOptions.DEFAULT, PART_SIZE);
+
+        output.write(new byte[PART_SIZE]);
+    }
+
+    @Test
+    public void partSize_expectedLength_grownUpToCap() {
+        long mb = 1024 * 1024;
+        assertEquals(PART_SIZE, S3ObjectOutputStream.partSize(Optional.empty()));
+        assertEquals(PART_SIZE, S3ObjectOutputStream.partSize(Optional.of(1000 * mb)));
+        assertEquals(100 * 1024 * mb / 10000 + 1, S3ObjectOutputStream.partSize(Optional.of(100 * 1024 * mb)));
+        assertEquals(S3ObjectOutputStream.MAX_PART_SIZE,
+                S3ObjectOutputStream.partSize(Optional.of(10 * 1024 * 1024 * mb)));
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.s3;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.trustedanalytics.store.expiry.TtlPolicy;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.BucketLifecycleConfiguration;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+
+public class S3ObjectStoreTest {
+
+    private AmazonS3 amazonS3 = mock(AmazonS3.class);
+    private S3ObjectStore store;
+
+    @Before
+    public void setUp() {
+        store = new S3ObjectStore(amazonS3, "bucket", name -> name);
+    }
+
+    @After
+    public void tearDown() {
+        store.close();
+    }
+
+    @Test
+    public void applyLifecycleRules_prefixPolicy_ruleGeneratedAndForeignRulesKept() throws IOException {
+        BucketLifecycleConfiguration.Rule foreign = new BucketLifecycleConfiguration.Rule().withId("archive");
+        List<BucketLifecycleConfiguration.Rule> existing = new ArrayList<>(Arrays.asList(foreign,
+                new BucketLifecycleConfiguration.Rule().withId(S3ObjectStore.LIFECYCLE_RULE_PREFIX + "old")));
+        when(amazonS3.getBucketLifecycleConfiguration("bucket")).thenReturn(new BucketLifecycleConfiguration(existing));
+        TtlPolicy exactName = new TtlPolicy("report", Duration.ofDays(30));
+
+        List<TtlPolicy> notConverted = store.applyLifecycleRules(Arrays.asList(
+                new TtlPolicy("tmp-*", Duration.ofHours(25)), exactName));
+
+        assertEquals(Arrays.asList(exactName), notConverted);
+        ArgumentCaptor<BucketLifecycleConfiguration> configuration =
+                ArgumentCaptor.forClass(BucketLifecycleConfiguration.class);
+        verify(amazonS3).setBucketLifecycleConfiguration(eq("bucket"), configuration.capture());
+        List<BucketLifecycleConfiguration.Rule> rules = configuration.getValue().getRules();
+        assertEquals(2, rules.size());
+        assertEquals("archive", rules.get(0).getId());
+        assertEquals("downloader/tmp-", rules.get(1).getPrefix());
+        assertEquals(2, rules.get(1).getExpirationInDays());
+    }
+
+    @Test
+    public void applyLifecycleRules_overlappingLaterPolicy_leftToSweeper() throws IOException {
+        List<BucketLifecycleConfiguration.Rule> existing = new ArrayList<>(Arrays.asList(
+                new BucketLifecycleConfiguration.Rule().withPrefix("logs/")));
+        when(amazonS3.getBucketLifecycleConfiguration("bucket")).thenReturn(new BucketLifecycleConfiguration(existing));
+        TtlPolicy shorter = new TtlPolicy("tmp*", Duration.ofDays(1));
+
+        List<TtlPolicy> notConverted = store.applyLifecycleRules(Arrays.asList(
+                new TtlPolicy("tmp_keep*", Duration.ofDays(30)), shorter));
+
+        assertEquals(Arrays.asList(shorter), notConverted);
+        ArgumentCaptor<BucketLifecycleConfiguration> configuration =
+                ArgumentCaptor.forClass(BucketLifecycleConfiguration.class);
+        verify(amazonS3).setBucketLifecycleConfiguration(eq("bucket"), configuration.capture());
+        List<BucketLifecycleConfiguration.Rule> rules = configuration.getValue().getRules();
+        assertEquals(2, rules.size());
+        assertEquals("logs/", rules.get(0).getPrefix());
+        assertEquals("downloader/tmp_keep", rules.get(1).getPrefix());
+    }
+
+    @Test
+    public void listObjectIds_pagedListing_allKeysReturned() {
+        ObjectListing first = listing(true, "downloader/a-160315-142501");
+        ObjectListing second = listing(false, "downloader/b-160315-142502");
+        when(amazonS3.listObjects(any(ListObjectsRequest.class))).thenReturn(first);
+        when(amazonS3.listNextBatchOfObjects(first)).thenReturn(second);
+
+        assertEquals(2, store.listObjectIds().count());
+    }
+
+    private static ObjectListing listing(boolean truncated, String key) {
+        ObjectListing listing = new ObjectListing();
+        S3ObjectSummary summary = new S3ObjectSummary();
+        summary.setKey(key);
+        listing.getObjectSummaries().add(summary);
+        listing.setTruncated(truncated);
+        return listing;
+    }
+}
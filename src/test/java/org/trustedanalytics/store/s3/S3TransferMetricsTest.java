@@ -0,0 +1,57 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.s3;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.trustedanalytics.store.MemoryObjectStore;
+import org.trustedanalytics.store.config.S3TransferProperties;
+
+import com.amazonaws.services.s3.AmazonS3;
+
+public class S3TransferMetricsTest {
+
+    @Test
+    public void metrics_storesSharingEngine_reportedOnce() {
+        S3TransferProperties properties = new S3TransferProperties();
+        properties.setThreads(3);
+        properties.setMaxConnections(7);
+        S3TransferEngine engine = new S3TransferEngine("shared", mock(AmazonS3.class), properties);
+        S3ObjectStore first = new S3ObjectStore(engine, "first", name -> name);
+        S3ObjectStore second = new S3ObjectStore(engine, "second", name -> name);
+
+        try {
+            Collection<Metric<?>> metrics =
+                    new S3TransferMetrics(Arrays.asList(first, second, new MemoryObjectStore())).metrics();
+
+            Map<String, Number> values = metrics.stream().collect(Collectors.toMap(Metric::getName, Metric::getValue));
+            assertEquals(5, values.size());
+            assertEquals(3, values.get("objectstore.shared.threads.max"));
+            assertEquals(7, values.get("objectstore.shared.connections.max"));
+            assertEquals(0, values.get("objectstore.shared.threads.active"));
+        } finally {
+            engine.close();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.trace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JfrPhaseListenerTest {
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void start_recordingEnabled_phaseRecorded() throws IOException {
+        Optional<PhaseListener> listener = PhaseTracing.flightRecorderListener();
+        assumeTrue(listener.isPresent());
+        Path dump = folder.newFile("phases.jfr").toPath();
+
+        try (Recording recording = new Recording()) {
+            recording.enable(JfrPhaseListener.EVENT_NAME);
+            recording.start();
+            listener.get().start(Phase.MKDIRS, "/org/dir").close();
+            recording.stop();
+            recording.dump(dump);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(dump).stream()
+                .filter(event -> event.getEventType().getName().equals(JfrPhaseListener.EVENT_NAME))
+                .collect(Collectors.toList());
+        assertEquals(1, events.size());
+        assertEquals("MKDIRS", events.get(0).getString("phase"));
+        assertEquals("/org/dir", events.get(0).getString("subject"));
+    }
+
+    @Test
+    public void start_noRecording_sharedNoopSpan() {
+        Optional<PhaseListener> listener = PhaseTracing.flightRecorderListener();
+        assumeTrue(listener.isPresent());
+
+        assertTrue(listener.get().start(Phase.WRITE, "path") == PhaseSpan.NONE);
+    }
+}
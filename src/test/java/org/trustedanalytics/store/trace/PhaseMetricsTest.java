@@ -0,0 +1,74 @@
+/**
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.store.trace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+
+public class PhaseMetricsTest {
+
+    @Test
+    public void metrics_nothingRecorded_empty() {
+        assertTrue(new PhaseMetrics().metrics().isEmpty());
+    }
+
+    @Test
+    public void metrics_phasesRecorded_countedPerPhase() {
+        PhaseMetrics metrics = new PhaseMetrics();
+
+        metrics.start(Phase.MKDIRS, "dir").close();
+        metrics.start(Phase.MKDIRS, "dir").close();
+        metrics.start(Phase.PUBLISH, "id").close();
+
+        Map<String, Number> values = metrics.metrics().stream()
+                .collect(Collectors.toMap(Metric::getName, Metric::getValue));
+        assertEquals(6, values.size());
+        assertEquals(2L, values.get("objectstore.phase.mkdirs.count"));
+        assertEquals(1L, values.get("objectstore.phase.publish.count"));
+    }
+
+    @Test
+    public void start_noListener_sharedNoopSpan() {
+        assertSame(PhaseSpan.NONE, PhaseTracing.start(Phase.WRITE, "path"));
+    }
+
+    @Test
+    public void compose_spansClosedInReverseOrder() {
+        List<String> events = new ArrayList<>();
+        PhaseListener first = (phase, subject) -> {
+            events.add("start first");
+            return () -> events.add("end first");
+        };
+        PhaseListener second = (phase, subject) -> {
+            events.add("start second");
+            return () -> events.add("end second");
+        };
+
+        PhaseListener.compose(first, second).start(Phase.WRITE, "path").close();
+
+        assertEquals(Arrays.asList("start first", "start second", "end second", "end first"), events);
+    }
+}